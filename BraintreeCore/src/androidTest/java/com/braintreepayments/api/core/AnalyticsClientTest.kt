@@ -49,6 +49,7 @@ class AnalyticsClientTest {
 
         val testDriver = WorkManagerTestInitHelper.getTestDriver(context)!!
         testDriver.setInitialDelayMet(workSpecId)
+        testDriver.setAllConstraintsMet(workSpecId)
 
         val workInfoAfterDelay =
             WorkManager.getInstance(context).getWorkInfoById(workSpecId).get()
@@ -0,0 +1,192 @@
+package com.braintreepayments.api.core
+
+import android.database.Cursor
+import androidx.room.testing.MigrationTestHelper
+import androidx.sqlite.db.SupportSQLiteDatabase
+import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+
+@RunWith(AndroidJUnit4ClassRunner::class)
+class AnalyticsDatabaseMigrationTest {
+
+    @get:Rule
+    val helper = MigrationTestHelper(
+        InstrumentationRegistry.getInstrumentation(),
+        AnalyticsDatabase::class.java
+    )
+
+    @Test
+    fun migrate8To9_datesExistingEventsToTheMigration() {
+        helper.createDatabase(TEST_DATABASE, 8).use { db ->
+            insertVersion8Event(db, 1, MINIMAL_EVENT_JSON)
+            insertVersion8Event(db, 2, FULL_EVENT_JSON)
+        }
+        val migrationStartedAt = System.currentTimeMillis()
+
+        helper.runMigrationsAndValidate(TEST_DATABASE, 9, true).use { db ->
+            db.query("SELECT `created_at` FROM `analytics_event_blob`").use { cursor ->
+                assertEquals(2, cursor.count)
+                while (cursor.moveToNext()) {
+                    assertTrue(cursor.getLong(0) >= migrationStartedAt)
+                }
+            }
+        }
+    }
+
+    @Test
+    fun migrate8To10_movesLegacyJsonWithAllOptionalKeysIntoColumns() {
+        helper.createDatabase(TEST_DATABASE, 8).use { db ->
+            insertVersion8Event(db, 1, FULL_EVENT_JSON)
+        }
+
+        migrateToLatest().use { db ->
+            queryEvent(db, 1).use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                assertEquals("session-id", cursor.getString("sessionId"))
+                assertTrue(cursor.getLong("created_at") > 0)
+                assertEquals("event-name", cursor.getString("event_name"))
+                assertEquals(123L, cursor.getLong("timestamp"))
+                assertEquals(1L, cursor.getLong("is_vault"))
+                assertEquals("paypal-context-id", cursor.getString("paypal_context_id"))
+                assertEquals("link-type", cursor.getString("link_type"))
+                assertEquals(100L, cursor.getLong("start_time"))
+                assertEquals(180L, cursor.getLong("end_time"))
+                assertEquals("/v1/configuration", cursor.getString("endpoint"))
+                assertEquals(10L, cursor.getLong("connect_duration"))
+                assertEquals(20L, cursor.getLong("tls_handshake_duration"))
+                assertEquals(5L, cursor.getLong("request_write_duration"))
+                assertEquals(45L, cursor.getLong("time_to_first_byte"))
+                assertEquals(15L, cursor.getLong("body_read_duration"))
+                assertEquals(95L, cursor.getLong("total_duration"))
+                assertEquals(256L, cursor.getLong("request_bytes"))
+                assertEquals(512L, cursor.getLong("response_bytes"))
+            }
+        }
+    }
+
+    @Test
+    fun migrate8To10_leavesMissingOptionalKeysNull() {
+        helper.createDatabase(TEST_DATABASE, 8).use { db ->
+            insertVersion8Event(db, 1, MINIMAL_EVENT_JSON)
+        }
+
+        migrateToLatest().use { db ->
+            queryEvent(db, 1).use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                assertEquals("event-name", cursor.getString("event_name"))
+                assertEquals(123L, cursor.getLong("timestamp"))
+                assertEquals(0L, cursor.getLong("is_vault"))
+                OPTIONAL_COLUMNS.forEach { column ->
+                    assertTrue(column, cursor.isNull(cursor.getColumnIndexOrThrow(column)))
+                }
+            }
+        }
+    }
+
+    @Test
+    fun migrate8To10_dropsEventsWhoseJsonCannotBeRead() {
+        helper.createDatabase(TEST_DATABASE, 8).use { db ->
+            insertVersion8Event(db, 1, MINIMAL_EVENT_JSON)
+            insertVersion8Event(db, 2, """{ "t": 123 }""")
+            insertVersion8Event(db, 3, "not json")
+        }
+
+        migrateToLatest().use { db ->
+            db.query("SELECT `_id` FROM `analytics_event_blob`").use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                assertEquals(1L, cursor.getLong(0))
+                assertFalse(cursor.moveToNext())
+            }
+        }
+    }
+
+    @Test
+    fun migrate9To10_keepsSessionIdAndCreatedAt() {
+        helper.createDatabase(TEST_DATABASE, 9).use { db ->
+            db.execSQL(
+                "INSERT INTO `analytics_event_blob` (`_id`, `json_string`, `sessionId`, `created_at`) " +
+                    "VALUES (?, ?, ?, ?)",
+                arrayOf(7L, MINIMAL_EVENT_JSON, "session-id", 456L)
+            )
+        }
+
+        migrateToLatest().use { db ->
+            queryEvent(db, 7).use { cursor ->
+                assertTrue(cursor.moveToFirst())
+                assertEquals("session-id", cursor.getString("sessionId"))
+                assertEquals(456L, cursor.getLong("created_at"))
+                assertNull(cursor.getString("endpoint"))
+            }
+        }
+    }
+
+    private fun migrateToLatest(): SupportSQLiteDatabase =
+        helper.runMigrationsAndValidate(TEST_DATABASE, 10, true, AnalyticsDatabase.MIGRATION_9_10)
+
+    private fun insertVersion8Event(db: SupportSQLiteDatabase, id: Long, json: String) {
+        db.execSQL(
+            "INSERT INTO `analytics_event_blob` (`_id`, `json_string`, `sessionId`) VALUES (?, ?, ?)",
+            arrayOf(id, json, "session-id")
+        )
+    }
+
+    private fun queryEvent(db: SupportSQLiteDatabase, id: Long): Cursor =
+        db.query("SELECT * FROM `analytics_event_blob` WHERE `_id` = ?", arrayOf(id))
+
+    private fun Cursor.getString(column: String): String? = getString(getColumnIndexOrThrow(column))
+
+    private fun Cursor.getLong(column: String): Long = getLong(getColumnIndexOrThrow(column))
+
+    companion object {
+        private const val TEST_DATABASE = "analytics-migration-test"
+
+        // language=JSON
+        private const val MINIMAL_EVENT_JSON = """{ "event_name": "event-name", "t": 123 }"""
+
+        // language=JSON
+        private const val FULL_EVENT_JSON = """
+            {
+              "event_name": "event-name",
+              "t": 123,
+              "is_vault": true,
+              "tenant_name": "Braintree",
+              "paypal_context_id": "paypal-context-id",
+              "link_type": "link-type",
+              "start_time": 100,
+              "end_time": 180,
+              "endpoint": "/v1/configuration",
+              "connect_duration": 10,
+              "tls_handshake_duration": 20,
+              "request_write_duration": 5,
+              "time_to_first_byte": 45,
+              "body_read_duration": 15,
+              "total_duration": 95,
+              "request_bytes": 256,
+              "response_bytes": 512
+            }
+        """
+
+        private val OPTIONAL_COLUMNS = listOf(
+            "paypal_context_id",
+            "link_type",
+            "start_time",
+            "end_time",
+            "endpoint",
+            "connect_duration",
+            "tls_handshake_duration",
+            "request_write_duration",
+            "time_to_first_byte",
+            "body_read_duration",
+            "total_duration",
+            "request_bytes",
+            "response_bytes"
+        )
+    }
+}
@@ -0,0 +1,69 @@
+package com.braintreepayments.api.core
+
+import android.util.Log
+import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner
+import com.braintreepayments.api.testutils.Fixtures
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/**
+ * Compares parsing a configuration and reading every section against parsing it and reading only
+ * the card section, as a card-only integration does. Sections are decoded on first read, so the
+ * card-only path skips decoding the others.
+ *
+ * Each sample parses a fresh [Configuration] from the same response. Results are logged under
+ * [TAG]; they depend on the device, so only the parsed values are asserted.
+ */
+@RunWith(AndroidJUnit4ClassRunner::class)
+class ConfigurationParseBenchmarkTest {
+
+    @Test(timeout = 60000)
+    fun fromJson_readingAllSectionsAndOnlyCardSection() {
+        // class loading and the JIT are not part of what is being measured
+        repeat(WARM_UP_ITERATIONS) {
+            readAllSections(Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ALL_SECTIONS))
+        }
+
+        val allSections = LongArray(ITERATIONS) {
+            measureParseNanos { configuration -> readAllSections(configuration) }
+        }
+        val cardSectionOnly = LongArray(ITERATIONS) {
+            measureParseNanos { configuration ->
+                assertEquals(7, configuration.supportedCardTypes.size)
+            }
+        }
+
+        Log.i(
+            TAG,
+            "median configuration parse reading all sections: " +
+                "${median(allSections) / 1000} us, " +
+                "reading only the card section: ${median(cardSectionOnly) / 1000} us"
+        )
+    }
+
+    private inline fun measureParseNanos(read: (Configuration) -> Unit): Long {
+        val startNanos = System.nanoTime()
+        read(Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ALL_SECTIONS))
+        return System.nanoTime() - startNanos
+    }
+
+    private fun readAllSections(configuration: Configuration) {
+        assertEquals(7, configuration.supportedCardTypes.size)
+        assertEquals("access-token-example", configuration.braintreeApiAccessToken)
+        assertEquals(5, configuration.googlePaySupportedNetworks.size)
+        assertEquals("https://payments.sandbox.braintree-api.com/graphql", configuration.graphQLUrl)
+        assertEquals("paypal_client_id", configuration.payPalClientId)
+        assertEquals("access-token", configuration.venmoAccessToken)
+        assertTrue(configuration.isVisaCheckoutEnabled)
+    }
+
+    private fun median(samples: LongArray) = samples.sorted()[samples.size / 2]
+
+    companion object {
+        private const val TAG = "ConfigurationParseBenchmark"
+        private const val WARM_UP_ITERATIONS = 50
+        private const val ITERATIONS = 500
+    }
+}
@@ -0,0 +1,60 @@
+package com.braintreepayments.api.core
+
+import android.util.Log
+import androidx.test.internal.runner.junit4.AndroidJUnit4ClassRunner
+import com.braintreepayments.api.sharedutils.TLSSocketFactory
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import javax.net.ssl.SSLSocket
+
+/**
+ * Compares the cost of TLS handshakes with the Braintree sandbox when every connection starts
+ * from a new [TLSSocketFactory], so no session can be resumed, against handshakes through the
+ * shared [BraintreeTLSSocketFactory], whose session cache lets later handshakes resume.
+ *
+ * Each sample includes the TCP connect, which both sides pay alike. Results are logged under
+ * [TAG]; they depend on the device and network, so only the handshakes themselves are asserted.
+ */
+@RunWith(AndroidJUnit4ClassRunner::class)
+class TLSSessionResumptionBenchmarkTest {
+
+    @Test(timeout = 60000)
+    fun handshake_withAndWithoutSessionResumption() {
+        val withoutResumption = LongArray(ITERATIONS) {
+            // building the factory is not part of the handshake being measured
+            val socketFactory =
+                TLSSocketFactory(TLSCertificatePinning.createCertificateInputStream())
+            measureHandshakeNanos(socketFactory)
+        }
+
+        val sharedSocketFactory = BraintreeTLSSocketFactory.getInstance()
+        measureHandshakeNanos(sharedSocketFactory) // fills the session cache
+        val withResumption = LongArray(ITERATIONS) { measureHandshakeNanos(sharedSocketFactory) }
+
+        Log.i(
+            TAG,
+            "median TLS handshake without resumption: ${median(withoutResumption) / 1000} us, " +
+                "with resumption: ${median(withResumption) / 1000} us"
+        )
+    }
+
+    private fun measureHandshakeNanos(socketFactory: TLSSocketFactory): Long {
+        val startNanos = System.nanoTime()
+        (socketFactory.createSocket(HOST, PORT) as SSLSocket).use { socket ->
+            socket.startHandshake()
+            val elapsedNanos = System.nanoTime() - startNanos
+            assertTrue(socket.session.isValid)
+            return elapsedNanos
+        }
+    }
+
+    private fun median(samples: LongArray) = samples.sorted()[samples.size / 2]
+
+    companion object {
+        private const val TAG = "TLSResumptionBenchmark"
+        private const val HOST = "api.sandbox.braintreegateway.com"
+        private const val PORT = 443
+        private const val ITERATIONS = 10
+    }
+}
@@ -1,16 +1,20 @@
 package com.braintreepayments.api.core
 
 import android.content.Context
+import android.util.JsonWriter
 import androidx.annotation.VisibleForTesting
 import androidx.work.Data
 import androidx.work.ExistingWorkPolicy
 import androidx.work.ListenableWorker
 import androidx.work.OneTimeWorkRequest
 import androidx.work.WorkManager
+import com.braintreepayments.api.core.AnalyticsSessionContext.AuthorizationType
+import com.braintreepayments.api.sharedutils.BraintreeSharedPreferences
+import com.braintreepayments.api.sharedutils.HttpRequest
 import com.braintreepayments.api.sharedutils.Time
-import org.json.JSONArray
 import org.json.JSONException
-import org.json.JSONObject
+import java.io.IOException
+import java.io.StringWriter
 import java.util.*
 import java.util.concurrent.TimeUnit
 
@@ -22,7 +26,11 @@ internal class AnalyticsClient(
     private val workManager: WorkManager = WorkManager.getInstance(context.applicationContext),
     private val deviceInspector: DeviceInspector = DeviceInspector(),
     private val analyticsParamRepository: AnalyticsParamRepository = AnalyticsParamRepository.instance,
-    private val time: Time = Time()
+    private val time: Time = Time(),
+    private val eventBuffer: AnalyticsEventBuffer = AnalyticsEventBuffer.getInstance(context),
+    private val sharedPreferences: BraintreeSharedPreferences =
+        BraintreeSharedPreferences.getInstance(context),
+    private val uploadPolicy: AnalyticsUploadPolicy = AnalyticsUploadPolicy()
 ) {
     private val applicationContext = context.applicationContext
 
@@ -32,7 +40,12 @@ internal class AnalyticsClient(
         integration: IntegrationType?,
         authorization: Authorization
     ): UUID {
-        scheduleAnalyticsWriteInBackground(event, authorization)
+        val eventBlob = AnalyticsEventBlob.fromEvent(
+            event = event,
+            sessionId = analyticsParamRepository.sessionId,
+            createdAt = time.currentTime
+        )
+        eventBuffer.add(eventBlob)
         return scheduleAnalyticsUploadInBackground(
             configuration,
             authorization,
@@ -40,23 +53,13 @@ internal class AnalyticsClient(
         )
     }
 
-    private fun scheduleAnalyticsWriteInBackground(
-        event: AnalyticsEvent,
-        authorization: Authorization
-    ) {
-        val json = mapAnalyticsEventToFPTIEventJSON(event)
-        val inputData = Data.Builder()
-            .putString(WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(WORK_INPUT_KEY_ANALYTICS_JSON, json)
-            .putString(WORK_INPUT_KEY_SESSION_ID, analyticsParamRepository.sessionId)
-            .build()
-
-        val analyticsWorkRequest = OneTimeWorkRequest.Builder(AnalyticsWriteToDbWorker::class.java)
-            .setInputData(inputData)
-            .build()
-        workManager.enqueueUniqueWork(
-            WORK_NAME_ANALYTICS_WRITE, ExistingWorkPolicy.APPEND_OR_REPLACE, analyticsWorkRequest
-        )
+    /**
+     * Opens the analytics database and a connection to the analytics host in the background, so
+     * the first events sent do not pay for either.
+     */
+    fun warmUp() {
+        httpClient.preconnect(FPTI_ANALYTICS_URL)
+        eventBuffer.warmUp()
     }
 
     fun performAnalyticsWrite(inputData: Data): ListenableWorker.Result {
@@ -65,78 +68,164 @@ internal class AnalyticsClient(
         return if (analyticsJSON == null || sessionId == null) {
             ListenableWorker.Result.failure()
         } else {
-            val eventBlob = AnalyticsEventBlob(
-                jsonString = analyticsJSON,
-                sessionId = sessionId
-            )
+            val eventBlob = try {
+                AnalyticsEventBlob.fromJson(analyticsJSON, sessionId, time.currentTime)
+            } catch (e: JSONException) {
+                return ListenableWorker.Result.failure()
+            }
             val analyticsBlobDao = analyticsDatabase.analyticsEventBlobDao()
             analyticsBlobDao.insertEventBlob(eventBlob)
             ListenableWorker.Result.success()
         }
     }
 
+    /**
+     * Schedules a single upload of the stored events of every session, unless one is already
+     * pending. What the upload needs to know about this session is kept in
+     * [BraintreeSharedPreferences] under a key for the session, so the work request carries no data.
+     */
     private fun scheduleAnalyticsUploadInBackground(
         configuration: Configuration,
         authorization: Authorization,
         integration: IntegrationType?
     ): UUID {
-        val sessionId = analyticsParamRepository.sessionId
-        val inputData = Data.Builder()
-            .putString(WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(WORK_INPUT_KEY_INTEGRATION, integration?.stringValue)
-            .build()
+        AnalyticsSessionContext.create(
+            authorization = authorization,
+            integration = integration?.stringValue,
+            merchantId = configuration.merchantId,
+            environment = configuration.environment
+        )?.let { storeSessionContext(analyticsParamRepository.sessionId, it) }
 
         val analyticsWorkRequest = OneTimeWorkRequest.Builder(AnalyticsUploadWorker::class.java)
             .setInitialDelay(DELAY_TIME_SECONDS, TimeUnit.SECONDS)
-            .setInputData(inputData)
+            .setConstraints(uploadPolicy.constraints)
             .build()
         workManager.enqueueUniqueWork(
-            WORK_NAME_ANALYTICS_UPLOAD + sessionId,
+            WORK_NAME_ANALYTICS_UPLOAD,
             ExistingWorkPolicy.KEEP,
             analyticsWorkRequest
         )
         return analyticsWorkRequest.id
     }
 
-    fun performAnalyticsUpload(inputData: Data): ListenableWorker.Result {
-        val configuration = getConfigurationFromData(inputData)
-        val authorization = getAuthorizationFromData(inputData)
-        val sessionId = inputData.getString(WORK_INPUT_KEY_SESSION_ID)
-        val integration = inputData.getString(WORK_INPUT_KEY_INTEGRATION)
-        return when (null) {
-            configuration, authorization, sessionId, integration -> {
-                ListenableWorker.Result.failure()
+    private fun storeSessionContext(sessionId: String, sessionContext: AnalyticsSessionContext) {
+        val key = sessionContextKey(sessionId)
+        val json = sessionContext.toJson()
+        if (sharedPreferences.getString(key, null) != json) {
+            sharedPreferences.putString(key, json)
+        }
+    }
+
+    /**
+     * Uploads the stored events of every session, one payload per session and [uploadPolicy]
+     * byte budget, deleting the events of each payload once it has been sent. Events of a session
+     * whose context is unknown are left to be pruned.
+     */
+    fun performAnalyticsUpload(): ListenableWorker.Result {
+        return try {
+            // events sent moments ago may still be waiting to be written
+            eventBuffer.flush()
+            val analyticsEventBlobDao = analyticsDatabase.analyticsEventBlobDao()
+            for (sessionId in analyticsEventBlobDao.getSessionIds()) {
+                val sessionContext = getStoredSessionContext(sessionId) ?: continue
+                uploadSessionEvents(analyticsEventBlobDao, sessionId, sessionContext)
             }
+            removeUnusedSessionContexts(analyticsEventBlobDao.getSessionIds())
+            ListenableWorker.Result.success()
+        } catch (e: Exception) {
+            ListenableWorker.Result.retry()
+        }
+    }
+
+    private fun uploadSessionEvents(
+        analyticsEventBlobDao: AnalyticsEventBlobDao,
+        sessionId: String,
+        sessionContext: AnalyticsSessionContext
+    ) {
+        // a client token cannot be rebuilt from its bearer, so its fingerprint goes into the
+        // payload where BraintreeHttpClient would have put it; a tokenization key is its own bearer
+        val isClientToken = sessionContext.authorizationType == AuthorizationType.CLIENT_TOKEN
+        val authorization =
+            if (isClientToken) null else Authorization.fromString(sessionContext.bearer)
+        val metadata = deviceInspector.getDeviceMetadata(
+            context = applicationContext,
+            merchantId = sessionContext.merchantId,
+            environment = sessionContext.environment,
+            sessionId = sessionId,
+            integration = IntegrationType.fromString(sessionContext.integration)
+        )
+        val payloadBlobs = mutableListOf<AnalyticsEventBlob>()
+        var payloadBytes = 0
 
-            else -> {
-                try {
-                    val analyticsEventBlobDao = analyticsDatabase.analyticsEventBlobDao()
-                    val eventBlobs = analyticsEventBlobDao.getBlobsBySessionId(sessionId)
-                    if (eventBlobs.isNotEmpty()) {
-                        val metadata = deviceInspector.getDeviceMetadata(
-                            applicationContext,
-                            configuration,
-                            sessionId,
-                            IntegrationType.fromString(integration)
-                        )
-                        val analyticsRequest =
-                            createFPTIPayload(authorization, eventBlobs, metadata)
+        fun sendPayload() {
+            val analyticsRequest = createFPTIPayload(
+                sessionContext.bearer,
+                sessionContext.authorizationType,
+                payloadBlobs,
+                metadata,
+                authorizationFingerprint = sessionContext.bearer.takeIf { isClientToken }
+            )
+            httpClient.post(
+                FPTI_ANALYTICS_URL,
+                analyticsRequest,
+                null,
+                authorization,
+                compressData = true
+            )
+            analyticsEventBlobDao.deleteEventBlobs(payloadBlobs.toList())
+            payloadBlobs.clear()
+            payloadBytes = 0
+        }
 
-                        httpClient.post(
-                            FPTI_ANALYTICS_URL,
-                            analyticsRequest.toString(),
-                            configuration,
-                            authorization
-                        )
-                        analyticsEventBlobDao.deleteEventBlobs(eventBlobs)
-                    }
-                    ListenableWorker.Result.success()
-                } catch (e: Exception) {
-                    ListenableWorker.Result.failure()
+        var lastReadId = 0L
+        do {
+            val eventBlobs = analyticsEventBlobDao.getBlobsBySessionId(
+                sessionId,
+                afterId = lastReadId,
+                limit = UPLOAD_PAGE_SIZE
+            )
+            for (eventBlob in eventBlobs) {
+                val eventBytes = estimateJsonLength(eventBlob)
+                if (payloadBlobs.isNotEmpty() &&
+                    payloadBytes + eventBytes > uploadPolicy.maxPayloadBytes
+                ) {
+                    sendPayload()
                 }
+                payloadBlobs.add(eventBlob)
+                payloadBytes += eventBytes
             }
+            lastReadId = eventBlobs.lastOrNull()?.id ?: break
+        } while (eventBlobs.size == UPLOAD_PAGE_SIZE)
+
+        if (payloadBlobs.isNotEmpty()) {
+            sendPayload()
+        }
+    }
+
+    // a close enough estimate of the size of an event's JSON to split payloads without writing them
+    private fun estimateJsonLength(eventBlob: AnalyticsEventBlob): Int = eventBlob.run {
+        EVENT_JSON_BASE_LENGTH + name.length + (payPalContextId?.length ?: 0) +
+            (linkType?.length ?: 0) + (endpoint?.length ?: 0) +
+            if (connectDuration != null) EVENT_JSON_NETWORK_TIMING_LENGTH else 0
+    }
+
+    private fun getStoredSessionContext(sessionId: String): AnalyticsSessionContext? =
+        sharedPreferences.getString(sessionContextKey(sessionId), null)?.let {
+            AnalyticsSessionContext.fromJson(it)
+        }
+
+    /**
+     * Removes the stored contexts of sessions that have no events left, except the current one;
+     * the next event of a session stores its context again.
+     */
+    private fun removeUnusedSessionContexts(sessionIdsWithEvents: List<String>) {
+        val keepKeys = (sessionIdsWithEvents + analyticsParamRepository.sessionId)
+            .map { sessionContextKey(it) }
+            .toSet()
+        val unusedKeys = sharedPreferences.keys
+            .filter { it.startsWith(SESSION_CONTEXT_KEY_PREFIX) && it !in keepKeys }
+        if (unusedKeys.isNotEmpty()) {
+            sharedPreferences.removeKeys(*unusedKeys.toTypedArray())
         }
     }
 
@@ -160,111 +249,116 @@ internal class AnalyticsClient(
             name = "crash",
             timestamp = time.currentTime
         )
-        val eventJSON = mapAnalyticsEventToFPTIEventJSON(event)
         val eventBlobs = listOf(
-            AnalyticsEventBlob(
-                jsonString = eventJSON,
-                sessionId = ""
-            )
+            AnalyticsEventBlob.fromEvent(event, sessionId = "", createdAt = time.currentTime)
         )
         try {
-            val analyticsRequest = createFPTIPayload(authorization, eventBlobs, metadata)
+            val analyticsRequest = createFPTIPayload(
+                authorization.bearer,
+                AuthorizationType.of(authorization),
+                eventBlobs,
+                metadata
+            )
             httpClient.post(
                 path = FPTI_ANALYTICS_URL,
-                data = analyticsRequest.toString(),
+                data = analyticsRequest,
                 configuration = null,
                 authorization = authorization,
+                priority = HttpRequest.PRIORITY_BACKGROUND,
                 callback = null
             )
-        } catch (e: JSONException) { /* ignored */
+        } catch (e: IOException) { /* ignored */
         }
     }
 
-    @Throws(JSONException::class)
+    /**
+     * Writes the FPTI payload for [eventBlobs] straight from their columns, without building a
+     * JSON tree first.
+     *
+     * @param authorizationFingerprint written at the top level of the payload when the request is
+     * sent without the client token it was taken from
+     */
+    @Throws(IOException::class)
     private fun createFPTIPayload(
-        authorization: Authorization?,
+        bearer: String?,
+        authorizationType: AuthorizationType?,
         eventBlobs: List<AnalyticsEventBlob>,
-        metadata: DeviceMetadata
-    ): JSONObject {
-        val batchParamsJSON = mapDeviceMetadataToFPTIBatchParamsJSON(metadata)
-        authorization?.let {
-            if (it is ClientToken) {
-                batchParamsJSON.put(FPTI_KEY_AUTH_FINGERPRINT, it.bearer)
-            } else {
-                batchParamsJSON.put(FPTI_KEY_TOKENIZATION_KEY, it.bearer)
-            }
-        }
-
-        val eventsContainerJSON = JSONObject()
-        eventsContainerJSON.put(FPTI_KEY_BATCH_PARAMS, batchParamsJSON)
-
-        val eventParamsJSON = JSONArray()
-        for (blob in eventBlobs) {
-            eventParamsJSON.put(JSONObject(blob.jsonString))
+        metadata: DeviceMetadata,
+        authorizationFingerprint: String? = null
+    ): String {
+        val stringWriter = StringWriter()
+        JsonWriter(stringWriter).use { writer ->
+            writer.beginObject()
+            // Single-element "events" array required by FPTI formatting
+            writer.name(FPTI_KEY_EVENTS).beginArray()
+            writer.beginObject()
+            writer.name(FPTI_KEY_BATCH_PARAMS)
+            writeFPTIBatchParams(writer, metadata, bearer, authorizationType)
+            writer.name(FPTI_KEY_EVENT_PARAMS).beginArray()
+            eventBlobs.forEach { it.writeTo(writer) }
+            writer.endArray()
+            writer.endObject()
+            writer.endArray()
+            writeOptional(writer, AUTHORIZATION_FINGERPRINT_KEY, authorizationFingerprint)
+            writer.endObject()
         }
-        eventsContainerJSON.put(FPTI_KEY_EVENT_PARAMS, eventParamsJSON)
-
-        // Single-element "events" array required by FPTI formatting
-        val eventsArray = JSONArray(arrayOf(eventsContainerJSON))
-        return JSONObject().put(FPTI_KEY_EVENTS, eventsArray)
-    }
-
-    private fun mapAnalyticsEventToFPTIEventJSON(event: AnalyticsEvent): String {
-        val json = JSONObject()
-            .put(FPTI_KEY_EVENT_NAME, event.name)
-            .put(FPTI_KEY_TIMESTAMP, event.timestamp)
-            .put(FPTI_KEY_IS_VAULT, event.isVaultRequest)
-            .put(FPTI_KEY_TENANT_NAME, "Braintree")
-            .putOpt(FPTI_KEY_PAYPAL_CONTEXT_ID, event.payPalContextId)
-            .putOpt(FPTI_KEY_LINK_TYPE, event.linkType)
-            .putOpt(FPTI_KEY_START_TIME, event.startTime)
-            .putOpt(FPTI_KEY_END_TIME, event.endTime)
-            .putOpt(FPTI_KEY_ENDPOINT, event.endpoint)
-        return json.toString()
+        return stringWriter.toString()
     }
 
-    @Throws(JSONException::class)
-    private fun mapDeviceMetadataToFPTIBatchParamsJSON(metadata: DeviceMetadata): JSONObject {
+    @Throws(IOException::class)
+    private fun writeFPTIBatchParams(
+        writer: JsonWriter,
+        metadata: DeviceMetadata,
+        bearer: String?,
+        authorizationType: AuthorizationType?
+    ) {
         val isVenmoInstalled = deviceInspector.isVenmoInstalled(applicationContext)
-        return metadata.run {
-            JSONObject()
-                .put(FPTI_BATCH_KEY_APP_ID, appId)
-                .put(FPTI_BATCH_KEY_APP_NAME, appName)
-                .put(FPTI_BATCH_KEY_CLIENT_SDK_VERSION, clientSDKVersion)
-                .put(FPTI_BATCH_KEY_CLIENT_OS, clientOs)
-                .put(FPTI_BATCH_KEY_COMPONENT, component)
-                .put(FPTI_BATCH_KEY_DEVICE_MANUFACTURER, deviceManufacturer)
-                .put(FPTI_BATCH_KEY_DEVICE_MODEL, deviceModel)
-                .put(FPTI_BATCH_KEY_DROP_IN_SDK_VERSION, dropInSDKVersion)
-                .put(FPTI_BATCH_KEY_EVENT_SOURCE, eventSource)
-                .put(FPTI_BATCH_KEY_ENVIRONMENT, environment)
-                .put(FPTI_BATCH_KEY_INTEGRATION_TYPE, integrationType?.stringValue)
-                .put(FPTI_BATCH_KEY_IS_SIMULATOR, isSimulator)
-                .put(FPTI_BATCH_KEY_MERCHANT_APP_VERSION, merchantAppVersion)
-                .put(FPTI_BATCH_KEY_MERCHANT_ID, merchantId)
-                .put(FPTI_BATCH_KEY_PLATFORM, platform)
-                .put(FPTI_BATCH_KEY_SESSION_ID, sessionId)
-                .put(FPTI_BATCH_KEY_VENMO_INSTALLED, isVenmoInstalled)
+        writer.beginObject()
+        metadata.run {
+            writeOptional(writer, FPTI_BATCH_KEY_APP_ID, appId)
+            writeOptional(writer, FPTI_BATCH_KEY_APP_NAME, appName)
+            writeOptional(writer, FPTI_BATCH_KEY_CLIENT_SDK_VERSION, clientSDKVersion)
+            writeOptional(writer, FPTI_BATCH_KEY_CLIENT_OS, clientOs)
+            writeOptional(writer, FPTI_BATCH_KEY_COMPONENT, component)
+            writeOptional(writer, FPTI_BATCH_KEY_DEVICE_MANUFACTURER, deviceManufacturer)
+            writeOptional(writer, FPTI_BATCH_KEY_DEVICE_MODEL, deviceModel)
+            writeOptional(writer, FPTI_BATCH_KEY_DROP_IN_SDK_VERSION, dropInSDKVersion)
+            writeOptional(writer, FPTI_BATCH_KEY_EVENT_SOURCE, eventSource)
+            writeOptional(writer, FPTI_BATCH_KEY_ENVIRONMENT, environment)
+            writeOptional(writer, FPTI_BATCH_KEY_INTEGRATION_TYPE, integrationType?.stringValue)
+            writer.name(FPTI_BATCH_KEY_IS_SIMULATOR).value(isSimulator)
+            writeOptional(writer, FPTI_BATCH_KEY_MERCHANT_APP_VERSION, merchantAppVersion)
+            writeOptional(writer, FPTI_BATCH_KEY_MERCHANT_ID, merchantId)
+            writeOptional(writer, FPTI_BATCH_KEY_PLATFORM, platform)
+            writeOptional(writer, FPTI_BATCH_KEY_SESSION_ID, sessionId)
+        }
+        writer.name(FPTI_BATCH_KEY_VENMO_INSTALLED).value(isVenmoInstalled)
+        authorizationType?.let {
+            val key = if (it == AuthorizationType.CLIENT_TOKEN) {
+                FPTI_KEY_AUTH_FINGERPRINT
+            } else {
+                FPTI_KEY_TOKENIZATION_KEY
+            }
+            writeOptional(writer, key, bearer)
         }
+        writer.endObject()
+    }
+
+    // null values are left out, as JSONObject.put did
+    @Throws(IOException::class)
+    private fun writeOptional(writer: JsonWriter, name: String, value: String?) {
+        value?.let { writer.name(name).value(it) }
     }
 
     companion object {
         private const val FPTI_ANALYTICS_URL = "https://api-m.paypal.com/v1/tracking/batch/events"
 
-        private const val FPTI_KEY_PAYPAL_CONTEXT_ID = "paypal_context_id"
-        private const val FPTI_KEY_IS_VAULT = "is_vault"
-        private const val FPTI_KEY_LINK_TYPE = "link_type"
         private const val FPTI_KEY_TOKENIZATION_KEY = "tokenization_key"
+        private const val AUTHORIZATION_FINGERPRINT_KEY = "authorizationFingerprint"
         private const val FPTI_KEY_AUTH_FINGERPRINT = "authorization_fingerprint"
         private const val FPTI_KEY_EVENTS = "events"
         private const val FPTI_KEY_BATCH_PARAMS = "batch_params"
         private const val FPTI_KEY_EVENT_PARAMS = "event_params"
-        private const val FPTI_KEY_EVENT_NAME = "event_name"
-        private const val FPTI_KEY_TIMESTAMP = "t"
-        private const val FPTI_KEY_TENANT_NAME = "tenant_name"
-        private const val FPTI_KEY_START_TIME = "start_time"
-        private const val FPTI_KEY_END_TIME = "end_time"
-        private const val FPTI_KEY_ENDPOINT = "endpoint"
 
         private const val FPTI_BATCH_KEY_VENMO_INSTALLED = "venmo_installed"
         private const val FPTI_BATCH_KEY_APP_ID = "app_id"
@@ -287,26 +381,20 @@ internal class AnalyticsClient(
         const val WORK_NAME_ANALYTICS_UPLOAD = "uploadAnalytics"
         const val WORK_NAME_ANALYTICS_WRITE = "writeAnalyticsToDb"
 
-        const val WORK_INPUT_KEY_AUTHORIZATION = "authorization"
-        const val WORK_INPUT_KEY_CONFIGURATION = "configuration"
-        const val WORK_INPUT_KEY_INTEGRATION = "integration"
         const val WORK_INPUT_KEY_SESSION_ID = "sessionId"
         const val WORK_INPUT_KEY_ANALYTICS_JSON = "analyticsJson"
 
         private const val DELAY_TIME_SECONDS = 30L
 
-        private fun getAuthorizationFromData(inputData: Data?): Authorization? =
-            inputData?.getString(WORK_INPUT_KEY_AUTHORIZATION)?.let {
-                Authorization.fromString(it)
-            }
+        // events are read and uploaded in pages of this size to keep memory use bounded
+        private const val UPLOAD_PAGE_SIZE = 100
 
-        private fun getConfigurationFromData(inputData: Data?): Configuration? =
-            inputData?.getString(WORK_INPUT_KEY_CONFIGURATION)?.let {
-                try {
-                    Configuration.fromJson(it)
-                } catch (ignored: JSONException) {
-                    null
-                }
-            }
+        // approximate JSON length of an event's fixed keys, and of its network timing when present
+        private const val EVENT_JSON_BASE_LENGTH = 100
+        private const val EVENT_JSON_NETWORK_TIMING_LENGTH = 250
+
+        private const val SESSION_CONTEXT_KEY_PREFIX = "analyticsSession."
+
+        private fun sessionContextKey(sessionId: String) = SESSION_CONTEXT_KEY_PREFIX + sessionId
     }
 }
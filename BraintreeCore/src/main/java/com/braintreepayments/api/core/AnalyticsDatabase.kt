@@ -1,16 +1,20 @@
 package com.braintreepayments.api.core
 
 import android.content.Context
+import androidx.annotation.VisibleForTesting
 import androidx.room.AutoMigration
 import androidx.room.Database
 import androidx.room.DeleteTable
 import androidx.room.Room
 import androidx.room.RoomDatabase
 import androidx.room.migration.AutoMigrationSpec
+import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
+import org.json.JSONException
 
 // Ref: https://developer.android.com/training/data-storage/room/migrating-db-versions
 @Database(
-    version = 8,
+    version = 10,
     entities = [AnalyticsEventBlob::class],
     autoMigrations = [
         AutoMigration(from = 1, to = 2),
@@ -19,7 +23,8 @@ import androidx.room.migration.AutoMigrationSpec
         AutoMigration(from = 4, to = 5),
         AutoMigration(from = 5, to = 6),
         AutoMigration(from = 6, to = 7, spec = AnalyticsDatabase.DeleteAnalyticsEventTableAutoMigration::class),
-        AutoMigration(from = 7, to = 8)
+        AutoMigration(from = 7, to = 8),
+        AutoMigration(from = 8, to = 9, spec = AnalyticsDatabase.AddCreatedAtAutoMigration::class)
     ]
 )
 internal abstract class AnalyticsDatabase : RoomDatabase() {
@@ -29,8 +34,89 @@ internal abstract class AnalyticsDatabase : RoomDatabase() {
     @DeleteTable(tableName = "analytics_event")
     class DeleteAnalyticsEventTableAutoMigration : AutoMigrationSpec
 
+    /**
+     * Dates events stored before `created_at` existed to the time of the migration, so they are not
+     * pruned as expired before they have had a chance to be uploaded.
+     */
+    class AddCreatedAtAutoMigration : AutoMigrationSpec {
+        override fun onPostMigrate(db: SupportSQLiteDatabase) {
+            db.execSQL(
+                "UPDATE analytics_event_blob SET created_at = ?",
+                arrayOf(System.currentTimeMillis())
+            )
+        }
+    }
+
     companion object {
 
+        /**
+         * Moves events from the JSON `json_string` column into typed columns. Rows whose JSON can't
+         * be read are dropped, since they could not have been uploaded either.
+         */
+        @VisibleForTesting
+        internal val MIGRATION_9_10 = object : Migration(9, 10) {
+            override fun migrate(db: SupportSQLiteDatabase) {
+                db.execSQL(
+                    "CREATE TABLE IF NOT EXISTS `analytics_event_blob_new` (" +
+                        "`_id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                        "`sessionId` TEXT NOT NULL DEFAULT '', " +
+                        "`created_at` INTEGER NOT NULL DEFAULT 0, " +
+                        "`event_name` TEXT NOT NULL, " +
+                        "`timestamp` INTEGER NOT NULL, " +
+                        "`is_vault` INTEGER NOT NULL, " +
+                        "`paypal_context_id` TEXT, " +
+                        "`link_type` TEXT, " +
+                        "`start_time` INTEGER, " +
+                        "`end_time` INTEGER, " +
+                        "`endpoint` TEXT, " +
+                        "`connect_duration` INTEGER, " +
+                        "`tls_handshake_duration` INTEGER, " +
+                        "`request_write_duration` INTEGER, " +
+                        "`time_to_first_byte` INTEGER, " +
+                        "`body_read_duration` INTEGER, " +
+                        "`total_duration` INTEGER, " +
+                        "`request_bytes` INTEGER, " +
+                        "`response_bytes` INTEGER)"
+                )
+                db.query("SELECT `_id`, `json_string`, `sessionId`, `created_at` FROM `analytics_event_blob`")
+                    .use { cursor ->
+                        while (cursor.moveToNext()) {
+                            val eventBlob = try {
+                                AnalyticsEventBlob.fromJson(
+                                    json = cursor.getString(1),
+                                    sessionId = cursor.getString(2),
+                                    createdAt = cursor.getLong(3)
+                                )
+                            } catch (e: JSONException) {
+                                continue
+                            }
+                            insertEventBlob(db, cursor.getLong(0), eventBlob)
+                        }
+                    }
+                db.execSQL("DROP TABLE `analytics_event_blob`")
+                db.execSQL("ALTER TABLE `analytics_event_blob_new` RENAME TO `analytics_event_blob`")
+                db.execSQL(
+                    "CREATE INDEX IF NOT EXISTS `index_analytics_event_blob_sessionId` " +
+                        "ON `analytics_event_blob` (`sessionId`)"
+                )
+            }
+
+            private fun insertEventBlob(db: SupportSQLiteDatabase, id: Long, eventBlob: AnalyticsEventBlob) {
+                eventBlob.run {
+                    db.execSQL(
+                        "INSERT INTO `analytics_event_blob_new` VALUES " +
+                            "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        arrayOf(
+                            id, sessionId, createdAt, name, timestamp, if (isVaultRequest) 1 else 0,
+                            payPalContextId, linkType, startTime, endTime, endpoint, connectDuration,
+                            tlsHandshakeDuration, requestWriteDuration, timeToFirstByte,
+                            bodyReadDuration, totalDuration, requestBytes, responseBytes
+                        )
+                    )
+                }
+            }
+        }
+
         @Volatile
         private var INSTANCE: AnalyticsDatabase? = null
 
@@ -42,7 +128,9 @@ internal abstract class AnalyticsDatabase : RoomDatabase() {
                     context.applicationContext,
                     AnalyticsDatabase::class.java,
                     "analytics_database"
-                ).build()
+                )
+                    .addMigrations(MIGRATION_9_10)
+                    .build()
                 INSTANCE = instance
                 // return instance
                 instance
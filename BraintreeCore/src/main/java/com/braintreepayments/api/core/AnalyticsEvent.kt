@@ -1,5 +1,7 @@
 package com.braintreepayments.api.core
 
+import com.braintreepayments.api.sharedutils.HttpResponseTiming
+
 internal data class AnalyticsEvent(
     val name: String,
     val timestamp: Long,
@@ -8,5 +10,6 @@ internal data class AnalyticsEvent(
     val isVaultRequest: Boolean = false,
     val startTime: Long? = null,
     val endTime: Long? = null,
-    val endpoint: String? = null
+    val endpoint: String? = null,
+    val networkTiming: HttpResponseTiming? = null
 )
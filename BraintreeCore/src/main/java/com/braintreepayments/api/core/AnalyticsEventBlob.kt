@@ -1,16 +1,158 @@
 package com.braintreepayments.api.core
 
+import android.util.JsonWriter
 import androidx.room.ColumnInfo
 import androidx.room.Entity
+import androidx.room.Index
 import androidx.room.PrimaryKey
+import com.braintreepayments.api.sharedutils.Json
+import org.json.JSONException
+import org.json.JSONObject
+import java.io.IOException
+import java.io.StringWriter
 
 /**
- * Store Analytics as a JSON string. The schema of the Analytics data is enforced JSON
- * at the JSON level. JSON encoded events can be sent directly to the analytics server.
+ * Stores an analytics event as one column per FPTI event param, so events can be written into an
+ * upload payload as they are read without parsing or building intermediate JSON.
+ *
+ * [createdAt] is the time in milliseconds the event was recorded, used to prune events that were
+ * never uploaded. The network timing columns are either all set or all null, except
+ * [responseBytes], which is null when the response size is unknown.
  */
-@Entity(tableName = "analytics_event_blob")
+@Entity(tableName = "analytics_event_blob", indices = [Index(value = ["sessionId"])])
 internal data class AnalyticsEventBlob(
     @PrimaryKey(autoGenerate = true) @ColumnInfo(name = "_id") val id: Long = 0L,
-    @ColumnInfo(name = "json_string") val jsonString: String,
     @ColumnInfo(defaultValue = "") val sessionId: String,
-)
+    @ColumnInfo(name = "created_at", defaultValue = "0") val createdAt: Long = 0L,
+    @ColumnInfo(name = "event_name") val name: String,
+    @ColumnInfo(name = "timestamp") val timestamp: Long,
+    @ColumnInfo(name = "is_vault") val isVaultRequest: Boolean = false,
+    @ColumnInfo(name = "paypal_context_id") val payPalContextId: String? = null,
+    @ColumnInfo(name = "link_type") val linkType: String? = null,
+    @ColumnInfo(name = "start_time") val startTime: Long? = null,
+    @ColumnInfo(name = "end_time") val endTime: Long? = null,
+    @ColumnInfo(name = "endpoint") val endpoint: String? = null,
+    @ColumnInfo(name = "connect_duration") val connectDuration: Long? = null,
+    @ColumnInfo(name = "tls_handshake_duration") val tlsHandshakeDuration: Long? = null,
+    @ColumnInfo(name = "request_write_duration") val requestWriteDuration: Long? = null,
+    @ColumnInfo(name = "time_to_first_byte") val timeToFirstByte: Long? = null,
+    @ColumnInfo(name = "body_read_duration") val bodyReadDuration: Long? = null,
+    @ColumnInfo(name = "total_duration") val totalDuration: Long? = null,
+    @ColumnInfo(name = "request_bytes") val requestBytes: Long? = null,
+    @ColumnInfo(name = "response_bytes") val responseBytes: Long? = null,
+) {
+
+    /**
+     * Writes the event as an FPTI event params object.
+     */
+    @Throws(IOException::class)
+    fun writeTo(writer: JsonWriter) {
+        writer.beginObject()
+        writer.name(KEY_EVENT_NAME).value(name)
+        writer.name(KEY_TIMESTAMP).value(timestamp)
+        writer.name(KEY_IS_VAULT).value(isVaultRequest)
+        writer.name(KEY_TENANT_NAME).value(TENANT_NAME)
+        payPalContextId?.let { writer.name(KEY_PAYPAL_CONTEXT_ID).value(it) }
+        linkType?.let { writer.name(KEY_LINK_TYPE).value(it) }
+        startTime?.let { writer.name(KEY_START_TIME).value(it) }
+        endTime?.let { writer.name(KEY_END_TIME).value(it) }
+        endpoint?.let { writer.name(KEY_ENDPOINT).value(it) }
+        connectDuration?.let { writer.name(KEY_CONNECT_DURATION).value(it) }
+        tlsHandshakeDuration?.let { writer.name(KEY_TLS_HANDSHAKE_DURATION).value(it) }
+        requestWriteDuration?.let { writer.name(KEY_REQUEST_WRITE_DURATION).value(it) }
+        timeToFirstByte?.let { writer.name(KEY_TIME_TO_FIRST_BYTE).value(it) }
+        bodyReadDuration?.let { writer.name(KEY_BODY_READ_DURATION).value(it) }
+        totalDuration?.let { writer.name(KEY_TOTAL_DURATION).value(it) }
+        requestBytes?.let { writer.name(KEY_REQUEST_BYTES).value(it) }
+        responseBytes?.let { writer.name(KEY_RESPONSE_BYTES).value(it) }
+        writer.endObject()
+    }
+
+    /**
+     * @return the event as an FPTI event params JSON string
+     */
+    @Throws(IOException::class)
+    fun toJson(): String {
+        val stringWriter = StringWriter()
+        JsonWriter(stringWriter).use { writeTo(it) }
+        return stringWriter.toString()
+    }
+
+    companion object {
+        private const val TENANT_NAME = "Braintree"
+
+        private const val KEY_EVENT_NAME = "event_name"
+        private const val KEY_TIMESTAMP = "t"
+        private const val KEY_IS_VAULT = "is_vault"
+        private const val KEY_TENANT_NAME = "tenant_name"
+        private const val KEY_PAYPAL_CONTEXT_ID = "paypal_context_id"
+        private const val KEY_LINK_TYPE = "link_type"
+        private const val KEY_START_TIME = "start_time"
+        private const val KEY_END_TIME = "end_time"
+        private const val KEY_ENDPOINT = "endpoint"
+        private const val KEY_CONNECT_DURATION = "connect_duration"
+        private const val KEY_TLS_HANDSHAKE_DURATION = "tls_handshake_duration"
+        private const val KEY_REQUEST_WRITE_DURATION = "request_write_duration"
+        private const val KEY_TIME_TO_FIRST_BYTE = "time_to_first_byte"
+        private const val KEY_BODY_READ_DURATION = "body_read_duration"
+        private const val KEY_TOTAL_DURATION = "total_duration"
+        private const val KEY_REQUEST_BYTES = "request_bytes"
+        private const val KEY_RESPONSE_BYTES = "response_bytes"
+
+        fun fromEvent(event: AnalyticsEvent, sessionId: String, createdAt: Long): AnalyticsEventBlob {
+            val timing = event.networkTiming
+            return AnalyticsEventBlob(
+                sessionId = sessionId,
+                createdAt = createdAt,
+                name = event.name,
+                timestamp = event.timestamp,
+                isVaultRequest = event.isVaultRequest,
+                payPalContextId = event.payPalContextId,
+                linkType = event.linkType,
+                startTime = event.startTime,
+                endTime = event.endTime,
+                endpoint = event.endpoint,
+                connectDuration = timing?.connectDuration,
+                tlsHandshakeDuration = timing?.tlsHandshakeDuration,
+                requestWriteDuration = timing?.requestWriteDuration,
+                timeToFirstByte = timing?.timeToFirstByte,
+                bodyReadDuration = timing?.bodyReadDuration,
+                totalDuration = timing?.totalDuration,
+                requestBytes = timing?.bytesSent,
+                responseBytes = timing?.bytesReceived?.takeIf { it >= 0 }
+            )
+        }
+
+        /**
+         * Reads an event from the FPTI event params JSON written by [toJson], or stored by earlier
+         * versions of the SDK.
+         */
+        @Throws(JSONException::class)
+        fun fromJson(json: String, sessionId: String, createdAt: Long): AnalyticsEventBlob {
+            val jsonObject = JSONObject(json)
+            return AnalyticsEventBlob(
+                sessionId = sessionId,
+                createdAt = createdAt,
+                name = jsonObject.getString(KEY_EVENT_NAME),
+                timestamp = jsonObject.getLong(KEY_TIMESTAMP),
+                isVaultRequest = jsonObject.optBoolean(KEY_IS_VAULT),
+                payPalContextId = Json.optString(jsonObject, KEY_PAYPAL_CONTEXT_ID, null),
+                linkType = Json.optString(jsonObject, KEY_LINK_TYPE, null),
+                startTime = optLong(jsonObject, KEY_START_TIME),
+                endTime = optLong(jsonObject, KEY_END_TIME),
+                endpoint = Json.optString(jsonObject, KEY_ENDPOINT, null),
+                connectDuration = optLong(jsonObject, KEY_CONNECT_DURATION),
+                tlsHandshakeDuration = optLong(jsonObject, KEY_TLS_HANDSHAKE_DURATION),
+                requestWriteDuration = optLong(jsonObject, KEY_REQUEST_WRITE_DURATION),
+                timeToFirstByte = optLong(jsonObject, KEY_TIME_TO_FIRST_BYTE),
+                bodyReadDuration = optLong(jsonObject, KEY_BODY_READ_DURATION),
+                totalDuration = optLong(jsonObject, KEY_TOTAL_DURATION),
+                requestBytes = optLong(jsonObject, KEY_REQUEST_BYTES),
+                responseBytes = optLong(jsonObject, KEY_RESPONSE_BYTES)
+            )
+        }
+
+        private fun optLong(jsonObject: JSONObject, name: String): Long? =
+            if (jsonObject.isNull(name)) null else jsonObject.getLong(name)
+    }
+}
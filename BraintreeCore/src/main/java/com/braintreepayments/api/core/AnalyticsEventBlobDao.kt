@@ -11,9 +11,34 @@ internal interface AnalyticsEventBlobDao {
     @Insert
     fun insertEventBlob(eventBlob: AnalyticsEventBlob)
 
-    @Query("SELECT * FROM analytics_event_blob WHERE sessionId = :sessionId")
-    fun getBlobsBySessionId(sessionId: String): List<AnalyticsEventBlob>
+    @Insert
+    fun insertEventBlobs(eventBlobs: List<AnalyticsEventBlob>)
+
+    @Query("SELECT DISTINCT sessionId FROM analytics_event_blob")
+    fun getSessionIds(): List<String>
+
+    /**
+     * Returns up to [limit] of the session's events with an id greater than [afterId], in the
+     * order they were inserted. Pass the id of the last event of one page to get the next.
+     */
+    @Query(
+        "SELECT * FROM analytics_event_blob WHERE sessionId = :sessionId AND _id > :afterId " +
+            "ORDER BY _id LIMIT :limit"
+    )
+    fun getBlobsBySessionId(sessionId: String, afterId: Long, limit: Int): List<AnalyticsEventBlob>
 
     @Delete
     fun deleteEventBlobs(blobs: List<AnalyticsEventBlob>)
+
+    @Query("DELETE FROM analytics_event_blob WHERE created_at < :createdBefore")
+    fun deleteEventBlobsCreatedBefore(createdBefore: Long): Int
+
+    /**
+     * Deletes the oldest events until at most [maxCount] remain.
+     */
+    @Query(
+        "DELETE FROM analytics_event_blob WHERE _id NOT IN " +
+            "(SELECT _id FROM analytics_event_blob ORDER BY _id DESC LIMIT :maxCount)"
+    )
+    fun deleteOldestEventBlobsBeyond(maxCount: Int): Int
 }
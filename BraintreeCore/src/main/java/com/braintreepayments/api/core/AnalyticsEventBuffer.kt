@@ -0,0 +1,218 @@
+package com.braintreepayments.api.core
+
+import android.content.ComponentCallbacks2
+import android.content.Context
+import android.content.res.Configuration as AndroidConfiguration
+import androidx.work.Data
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import com.braintreepayments.api.sharedutils.Time
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Holds analytics events in memory and writes them to the [AnalyticsDatabase] in batches, one
+ * transaction per batch.
+ *
+ * Events are added to a bounded ring buffer without locking, from any thread. A single writer
+ * thread drains the buffer once [flushBatchSize] events are waiting or [flushDelayMillis] after
+ * the first waiting event arrived, whichever comes first, and also as soon as the app moves to the
+ * background. Events that do not fit in the buffer, or that could not be written, are handed to
+ * [AnalyticsWriteToDbWorker] so they still reach the database.
+ *
+ * Each flush also prunes the database of events older than [maxEventAgeMillis] and of the oldest
+ * events beyond [maxStoredEvents], so events whose upload never succeeds do not pile up.
+ *
+ * The buffer and the database are shared by every [BraintreeClient] in the process, so these
+ * limits are not exposed through [BraintreeOptions]: clients configured differently would fight
+ * over one table. [getInstance] always uses the defaults, [MAX_STORED_EVENTS] events and
+ * [MAX_EVENT_AGE_MILLIS]; the constructor parameters exist for tests.
+ */
+@Suppress("TooGenericExceptionCaught")
+internal class AnalyticsEventBuffer(
+    private val analyticsDatabase: AnalyticsDatabase,
+    private val workManager: () -> WorkManager,
+    private val executor: ScheduledExecutorService,
+    private val capacity: Int = CAPACITY,
+    private val flushBatchSize: Int = FLUSH_BATCH_SIZE,
+    private val flushDelayMillis: Long = FLUSH_DELAY_MILLIS,
+    private val maxStoredEvents: Int = MAX_STORED_EVENTS,
+    private val maxEventAgeMillis: Long = MAX_EVENT_AGE_MILLIS,
+    private val time: Time = Time()
+) {
+
+    private val slots = AtomicReferenceArray<AnalyticsEventBlob?>(capacity)
+
+    // the next slot a producer claims; only ever increases
+    private val tail = AtomicLong()
+
+    // the next slot the writer reads; only the writer advances it
+    private val head = AtomicLong()
+
+    private val isFlushScheduled = AtomicBoolean()
+    private val flushLock = Any()
+
+    /**
+     * The number of events waiting to be written.
+     */
+    val size: Int
+        get() = (tail.get() - head.get()).toInt()
+
+    fun add(eventBlob: AnalyticsEventBlob) {
+        if (!offer(eventBlob)) {
+            writeWithWorkManager(listOf(eventBlob))
+            return
+        }
+        if (size >= flushBatchSize) {
+            executor.execute { flush() }
+        } else if (isFlushScheduled.compareAndSet(false, true)) {
+            executor.schedule(Runnable { flush() }, flushDelayMillis, TimeUnit.MILLISECONDS)
+        }
+    }
+
+    /**
+     * Writes every waiting event to the database on the calling thread.
+     */
+    fun flush() {
+        synchronized(flushLock) {
+            isFlushScheduled.set(false)
+            val eventBlobs = drain()
+            if (eventBlobs.isEmpty()) return
+            val analyticsEventBlobDao = try {
+                analyticsDatabase.analyticsEventBlobDao().also { it.insertEventBlobs(eventBlobs) }
+            } catch (e: Exception) {
+                writeWithWorkManager(eventBlobs)
+                return
+            }
+            prune(analyticsEventBlobDao)
+        }
+    }
+
+    private fun prune(analyticsEventBlobDao: AnalyticsEventBlobDao) {
+        try {
+            analyticsEventBlobDao.deleteEventBlobsCreatedBefore(time.currentTime - maxEventAgeMillis)
+            analyticsEventBlobDao.deleteOldestEventBlobsBeyond(maxStoredEvents)
+        } catch (e: Exception) {
+            // retried on the next flush
+        }
+    }
+
+    /**
+     * Opens the database on the writer thread, so the first flush does not pay for it.
+     */
+    fun warmUp() {
+        executor.execute {
+            try {
+                analyticsDatabase.openHelper.writableDatabase
+            } catch (e: Exception) {
+                // the database is opened again on first use
+            }
+        }
+    }
+
+    /**
+     * Flushes in the background when the app's UI is hidden, since the process may be stopped
+     * before the next scheduled flush.
+     */
+    fun registerFlushOnBackground(context: Context) {
+        context.applicationContext.registerComponentCallbacks(object : ComponentCallbacks2 {
+            override fun onTrimMemory(level: Int) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    executor.execute { flush() }
+                }
+            }
+
+            override fun onConfigurationChanged(newConfig: AndroidConfiguration) = Unit
+
+            @Deprecated("Deprecated in ComponentCallbacks")
+            override fun onLowMemory() = Unit
+        })
+    }
+
+    private fun offer(eventBlob: AnalyticsEventBlob): Boolean {
+        while (true) {
+            val claimed = tail.get()
+            if (claimed - head.get() >= capacity) return false
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                slots.set(indexOf(claimed), eventBlob)
+                return true
+            }
+        }
+    }
+
+    // called with flushLock held, so there is a single reader
+    private fun drain(): List<AnalyticsEventBlob> {
+        val eventBlobs = mutableListOf<AnalyticsEventBlob>()
+        var next = head.get()
+        while (next < tail.get()) {
+            val index = indexOf(next)
+            // a claimed slot stays empty until its producer stores the event; stop there and
+            // leave the rest for the next flush
+            val eventBlob = slots.get(index) ?: break
+            slots.set(index, null)
+            next++
+            head.set(next)
+            eventBlobs.add(eventBlob)
+        }
+        return eventBlobs
+    }
+
+    private fun indexOf(position: Long) = (position % capacity).toInt()
+
+    private fun writeWithWorkManager(eventBlobs: List<AnalyticsEventBlob>) {
+        try {
+            val workManager = workManager()
+            eventBlobs.forEach { eventBlob ->
+                val inputData = Data.Builder()
+                    .putString(AnalyticsClient.WORK_INPUT_KEY_ANALYTICS_JSON, eventBlob.toJson())
+                    .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, eventBlob.sessionId)
+                    .build()
+                val analyticsWorkRequest =
+                    OneTimeWorkRequest.Builder(AnalyticsWriteToDbWorker::class.java)
+                        .setInputData(inputData)
+                        .build()
+                workManager.enqueueUniqueWork(
+                    AnalyticsClient.WORK_NAME_ANALYTICS_WRITE,
+                    ExistingWorkPolicy.APPEND_OR_REPLACE,
+                    analyticsWorkRequest
+                )
+            }
+        } catch (e: Exception) {
+            // analytics are best effort
+        }
+    }
+
+    companion object {
+        private const val CAPACITY = 256
+        private const val FLUSH_BATCH_SIZE = 32
+        private const val FLUSH_DELAY_MILLIS = 1000L
+        private const val MAX_STORED_EVENTS = 1000
+        private val MAX_EVENT_AGE_MILLIS = TimeUnit.DAYS.toMillis(7)
+
+        @Volatile
+        private var INSTANCE: AnalyticsEventBuffer? = null
+
+        fun getInstance(context: Context): AnalyticsEventBuffer =
+            INSTANCE ?: synchronized(this) {
+                INSTANCE ?: run {
+                    val applicationContext = context.applicationContext
+                    val executor = Executors.newSingleThreadScheduledExecutor { runnable ->
+                        Thread(runnable, "braintree-analytics-writer").apply { isDaemon = true }
+                    }
+                    AnalyticsEventBuffer(
+                        AnalyticsDatabase.getInstance(applicationContext),
+                        { WorkManager.getInstance(applicationContext) },
+                        executor
+                    ).also {
+                        it.registerFlushOnBackground(applicationContext)
+                        INSTANCE = it
+                    }
+                }
+            }
+    }
+}
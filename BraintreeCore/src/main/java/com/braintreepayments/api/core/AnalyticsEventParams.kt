@@ -1,6 +1,7 @@
 package com.braintreepayments.api.core
 
 import androidx.annotation.RestrictTo
+import com.braintreepayments.api.sharedutils.HttpResponseTiming
 
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 data class AnalyticsEventParams(
@@ -9,5 +10,6 @@ data class AnalyticsEventParams(
     var isVaultRequest: Boolean = false,
     var startTime: Long? = null,
     var endTime: Long? = null,
-    var endpoint: String? = null
+    var endpoint: String? = null,
+    var networkTiming: HttpResponseTiming? = null
 )
@@ -0,0 +1,89 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.Json
+import org.json.JSONException
+import org.json.JSONObject
+
+/**
+ * What the uploader needs to know about an analytics session, beyond its events, to build the
+ * batch params of the session's payloads. Stored for each session that has events waiting.
+ *
+ * Only the bearer of the session's authorization is kept, never the client token itself.
+ */
+internal data class AnalyticsSessionContext(
+    val bearer: String,
+    val authorizationType: AuthorizationType,
+    val integration: String?,
+    val merchantId: String?,
+    val environment: String?
+) {
+
+    /**
+     * The kind of authorization [bearer] was taken from, which decides how uploads present it.
+     */
+    enum class AuthorizationType {
+        CLIENT_TOKEN,
+        TOKENIZATION_KEY;
+
+        companion object {
+            fun of(authorization: Authorization?): AuthorizationType? = when (authorization) {
+                is ClientToken -> CLIENT_TOKEN
+                is TokenizationKey -> TOKENIZATION_KEY
+                else -> null
+            }
+        }
+    }
+
+    fun toJson(): String = JSONObject()
+        .put(BEARER_KEY, bearer)
+        .put(AUTHORIZATION_TYPE_KEY, authorizationType.name)
+        .putOpt(INTEGRATION_KEY, integration)
+        .putOpt(MERCHANT_ID_KEY, merchantId)
+        .putOpt(ENVIRONMENT_KEY, environment)
+        .toString()
+
+    companion object {
+        private const val BEARER_KEY = "bearer"
+        private const val AUTHORIZATION_TYPE_KEY = "authorizationType"
+        private const val INTEGRATION_KEY = "integration"
+        private const val MERCHANT_ID_KEY = "merchantId"
+        private const val ENVIRONMENT_KEY = "environment"
+
+        /**
+         * @return the context of a session authorized by [authorization], or null if it has no
+         * bearer to upload with
+         */
+        fun create(
+            authorization: Authorization,
+            integration: String?,
+            merchantId: String?,
+            environment: String?
+        ): AnalyticsSessionContext? {
+            val bearer = authorization.bearer ?: return null
+            val authorizationType = AuthorizationType.of(authorization) ?: return null
+            return AnalyticsSessionContext(
+                bearer,
+                authorizationType,
+                integration,
+                merchantId,
+                environment
+            )
+        }
+
+        fun fromJson(json: String): AnalyticsSessionContext? = try {
+            val jsonObject = JSONObject(json)
+            AnalyticsSessionContext(
+                bearer = jsonObject.getString(BEARER_KEY),
+                authorizationType =
+                    AuthorizationType.valueOf(jsonObject.getString(AUTHORIZATION_TYPE_KEY)),
+                integration = Json.optString(jsonObject, INTEGRATION_KEY, null),
+                merchantId = Json.optString(jsonObject, MERCHANT_ID_KEY, null),
+                environment = Json.optString(jsonObject, ENVIRONMENT_KEY, null)
+            )
+        } catch (ignored: JSONException) {
+            null
+        } catch (ignored: IllegalArgumentException) {
+            null
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.braintreepayments.api.core
+
+import androidx.work.Constraints
+import androidx.work.NetworkType
+
+/**
+ * Controls when and how stored analytics events are uploaded.
+ *
+ * @property requiresUnmeteredNetwork only upload on an unmetered network, e.g. Wi-Fi
+ * @property requiresBatteryNotLow postpone uploads while the battery is low
+ * @property maxPayloadBytes the approximate size, before compression, above which the events of a
+ * session are split into several payloads; a single event larger than this is still sent on its own
+ */
+internal data class AnalyticsUploadPolicy(
+    val requiresUnmeteredNetwork: Boolean = false,
+    val requiresBatteryNotLow: Boolean = false,
+    val maxPayloadBytes: Int = MAX_PAYLOAD_BYTES
+) {
+
+    val constraints: Constraints
+        get() = Constraints.Builder()
+            .setRequiredNetworkType(
+                if (requiresUnmeteredNetwork) NetworkType.UNMETERED else NetworkType.CONNECTED
+            )
+            .setRequiresBatteryNotLow(requiresBatteryNotLow)
+            .build()
+
+    companion object {
+        private const val MAX_PAYLOAD_BYTES = 64 * 1024
+    }
+}
@@ -17,6 +17,6 @@ internal class AnalyticsUploadWorker(
 
     override fun doWork(): Result {
         val analyticsClient = AnalyticsClient(applicationContext)
-        return analyticsClient.performAnalyticsUpload(inputData)
+        return analyticsClient.performAnalyticsUpload()
     }
 }
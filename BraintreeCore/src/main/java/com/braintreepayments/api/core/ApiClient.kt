@@ -1,6 +1,7 @@
 package com.braintreepayments.api.core
 
 import androidx.annotation.RestrictTo
+import com.braintreepayments.api.sharedutils.HttpResponseCallback
 import org.json.JSONException
 import org.json.JSONObject
 
@@ -14,15 +15,20 @@ class ApiClient(
 ) {
 
     fun tokenizeGraphQL(tokenizePayload: JSONObject, callback: TokenizeCallback) =
-        braintreeClient.run {
-            sendGraphQLPOST(tokenizePayload) { responseBody, httpError ->
-                parseResponseToJSON(responseBody)?.let { json ->
-                    callback.onResult(json, null)
-                } ?: httpError?.let { error ->
-                    callback.onResult(null, error)
-                }
-            }
-        }
+        braintreeClient.sendGraphQLPOST(tokenizePayload, createResponseCallback(callback))
+
+    /**
+     * Tokenizes via GraphQL on behalf of the operation tracked by [cancellationHandle].
+     */
+    fun tokenizeGraphQL(
+        tokenizePayload: JSONObject,
+        cancellationHandle: CancellationHandle,
+        callback: TokenizeCallback
+    ) = braintreeClient.sendGraphQLPOST(
+        tokenizePayload,
+        cancellationHandle,
+        createResponseCallback(callback)
+    )
 
     fun tokenizeREST(paymentMethod: PaymentMethod, callback: TokenizeCallback) =
         braintreeClient.run {
@@ -32,12 +38,36 @@ class ApiClient(
             sendPOST(
                 url = url,
                 data = paymentMethod.buildJSON().toString(),
-            ) { responseBody, httpError ->
-                parseResponseToJSON(responseBody)?.let { json ->
-                    callback.onResult(json, null)
-                } ?: httpError?.let { error ->
-                    callback.onResult(null, error)
-                }
+                responseCallback = createResponseCallback(callback)
+            )
+        }
+
+    /**
+     * Tokenizes via REST on behalf of the operation tracked by [cancellationHandle].
+     */
+    fun tokenizeREST(
+        paymentMethod: PaymentMethod,
+        cancellationHandle: CancellationHandle,
+        callback: TokenizeCallback
+    ) = braintreeClient.run {
+        val url = versionedPath("$PAYMENT_METHOD_ENDPOINT/${paymentMethod.apiPath}")
+        paymentMethod.sessionId = analyticsParamRepository.sessionId
+
+        sendPOST(
+            url = url,
+            data = paymentMethod.buildJSON().toString(),
+            additionalHeaders = emptyMap(),
+            cancellationHandle = cancellationHandle,
+            responseCallback = createResponseCallback(callback)
+        )
+    }
+
+    private fun createResponseCallback(callback: TokenizeCallback) =
+        HttpResponseCallback { responseBody, httpError ->
+            parseResponseToJSON(responseBody)?.let { json ->
+                callback.onResult(json, null)
+            } ?: httpError?.let { error ->
+                callback.onResult(null, error)
             }
         }
 
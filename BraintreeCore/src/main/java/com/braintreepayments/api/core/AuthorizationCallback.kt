@@ -0,0 +1,14 @@
+package com.braintreepayments.api.core
+
+/**
+ * Callback for receiving result of [AuthorizationProvider.fetchAuthorization] and
+ * [AuthorizationLoader.loadAuthorization].
+ */
+fun interface AuthorizationCallback {
+
+    /**
+     * @param authorizationResult an [AuthorizationResult] containing a client token or tokenization
+     * key, or an [Exception]
+     */
+    fun onAuthorizationResult(authorizationResult: AuthorizationResult)
+}
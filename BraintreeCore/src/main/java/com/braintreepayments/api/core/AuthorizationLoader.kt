@@ -0,0 +1,176 @@
+package com.braintreepayments.api.core
+
+import android.content.Context
+import com.braintreepayments.api.sharedutils.Time
+import java.util.concurrent.TimeUnit
+
+/**
+ * Fetches authorization from an [AuthorizationProvider] ahead of a payment flow and keeps it for
+ * later flows, so that starting checkout does not wait for a round trip to your server.
+ *
+ * As soon as authorization arrives, Braintree configuration is loaded for it in the background.
+ * Concurrent requests share a single fetch. A client token is kept until shortly before it
+ * expires and is refreshed in the background when it is used close to expiry; a tokenization key
+ * is kept until [invalidate] is called.
+ *
+ * Create one instance per [AuthorizationProvider] and keep it for as long as its authorization is
+ * valid for your app, for example for the lifetime of a signed-in customer session.
+ */
+class AuthorizationLoader internal constructor(
+    private val authorizationProvider: AuthorizationProvider,
+    private val onAuthorizationLoaded: (String) -> Unit,
+    private val time: Time = Time(),
+    private val clientTokenTimeToLiveMillis: Long = CLIENT_TOKEN_TIME_TO_LIVE,
+    private val refreshAheadMillis: Long = REFRESH_AHEAD
+) {
+
+    /**
+     * @param context Android Context
+     * @param authorizationProvider [AuthorizationProvider] used to fetch authorization
+     */
+    constructor(context: Context, authorizationProvider: AuthorizationProvider) : this(
+        authorizationProvider,
+        { authorization -> BraintreeClient(context.applicationContext, authorization).warmUp() }
+    )
+
+    // a null expiry never passes, as for tokenization keys
+    private class CachedAuthorization(val value: String, val expiresAtMillis: Long?)
+
+    private val lock = Any()
+    private val pendingCallbacks = mutableListOf<AuthorizationCallback>()
+    private var cachedAuthorization: CachedAuthorization? = null
+    private var isFetching = false
+
+    // bumped by invalidate() so that a fetch started before it cannot cache its result
+    private var generation = 0
+
+    /**
+     * Start fetching authorization in the background if none is cached or the cached one is close
+     * to expiry. Call this as early as possible, for example when your checkout screen is created.
+     */
+    fun prefetch() {
+        val fetchGeneration = synchronized(lock) {
+            val cached = cachedAuthorization
+            if (isFetching || (cached != null && !isDueForRefresh(cached))) {
+                null
+            } else {
+                startFetch()
+            }
+        }
+        fetchGeneration?.let { fetchAuthorization(it) }
+    }
+
+    /**
+     * Deliver cached authorization to [callback], or fetch it if none is cached.
+     *
+     * @param callback [AuthorizationCallback]; invoked immediately when authorization is cached,
+     * otherwise on the thread that completes [AuthorizationProvider.fetchAuthorization]
+     */
+    fun loadAuthorization(callback: AuthorizationCallback) {
+        var cachedValue: String? = null
+        val fetchGeneration = synchronized(lock) {
+            val cached = cachedAuthorization?.takeIf { !isExpired(it) }
+            if (cached != null) {
+                cachedValue = cached.value
+            } else {
+                pendingCallbacks.add(callback)
+            }
+            if (isFetching || (cached != null && !isDueForRefresh(cached))) {
+                null
+            } else {
+                startFetch()
+            }
+        }
+        cachedValue?.let { callback.onAuthorizationResult(AuthorizationResult.Success(it)) }
+        fetchGeneration?.let { fetchAuthorization(it) }
+    }
+
+    /**
+     * Discard cached authorization, for example when the signed-in customer changes. The next
+     * [loadAuthorization] or [prefetch] fetches new authorization. The result of a fetch that is
+     * still in flight is discarded; callbacks waiting for it receive newly fetched authorization
+     * instead.
+     */
+    fun invalidate() {
+        synchronized(lock) {
+            cachedAuthorization = null
+            isFetching = false
+            generation++
+        }
+    }
+
+    // must be called while holding lock
+    private fun startFetch(): Int {
+        isFetching = true
+        return generation
+    }
+
+    private fun isExpired(cached: CachedAuthorization) =
+        cached.expiresAtMillis?.let { time.currentTime >= it } ?: false
+
+    private fun isDueForRefresh(cached: CachedAuthorization) =
+        cached.expiresAtMillis?.let { time.currentTime >= it - refreshAheadMillis } ?: false
+
+    @Suppress("TooGenericExceptionCaught")
+    private fun fetchAuthorization(fetchGeneration: Int) {
+        try {
+            authorizationProvider.fetchAuthorization { result ->
+                onAuthorizationFetched(fetchGeneration, result)
+            }
+        } catch (e: Exception) {
+            onAuthorizationFetched(fetchGeneration, AuthorizationResult.Failure(e))
+        }
+    }
+
+    private fun onAuthorizationFetched(fetchGeneration: Int, result: AuthorizationResult) {
+        val validatedResult = when (result) {
+            is AuthorizationResult.Success -> validate(result)
+            is AuthorizationResult.Failure -> result
+        }
+        var refetchGeneration: Int? = null
+        val callbacks = synchronized(lock) {
+            if (fetchGeneration != generation) {
+                // invalidated while in flight; make sure waiting callbacks still get a result
+                if (!isFetching && pendingCallbacks.isNotEmpty()) {
+                    refetchGeneration = startFetch()
+                }
+                null
+            } else {
+                isFetching = false
+                if (validatedResult is AuthorizationResult.Success) {
+                    cachedAuthorization = CachedAuthorization(
+                        validatedResult.authorization,
+                        getExpiry(Authorization.fromString(validatedResult.authorization))
+                    )
+                }
+                pendingCallbacks.toList().also { pendingCallbacks.clear() }
+            }
+        }
+        if (callbacks == null) {
+            refetchGeneration?.let { fetchAuthorization(it) }
+            return
+        }
+        if (validatedResult is AuthorizationResult.Success) {
+            onAuthorizationLoaded(validatedResult.authorization)
+        }
+        callbacks.forEach { it.onAuthorizationResult(validatedResult) }
+    }
+
+    private fun validate(result: AuthorizationResult.Success): AuthorizationResult {
+        val authorization = Authorization.fromString(result.authorization)
+        return if (authorization is InvalidAuthorization) {
+            AuthorizationResult.Failure(BraintreeException(authorization.errorMessage))
+        } else {
+            result
+        }
+    }
+
+    private fun getExpiry(authorization: Authorization): Long? =
+        if (authorization is ClientToken) time.currentTime + clientTokenTimeToLiveMillis else null
+
+    companion object {
+        // client tokens are valid for 24 hours; leave a margin for clock skew and checkout time
+        private val CLIENT_TOKEN_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(23)
+        private val REFRESH_AHEAD = TimeUnit.HOURS.toMillis(1)
+    }
+}
@@ -0,0 +1,16 @@
+package com.braintreepayments.api.core
+
+/**
+ * Supplies a client token or tokenization key to an [AuthorizationLoader], typically by requesting
+ * a client token from your server.
+ */
+fun interface AuthorizationProvider {
+
+    /**
+     * Fetch authorization and pass the result to [callback]. The callback may be invoked on any
+     * thread.
+     *
+     * @param callback [AuthorizationCallback]
+     */
+    fun fetchAuthorization(callback: AuthorizationCallback)
+}
@@ -0,0 +1,17 @@
+package com.braintreepayments.api.core
+
+/**
+ * Result of fetching authorization
+ */
+sealed class AuthorizationResult {
+
+    /**
+     * The [authorization], a client token or tokenization key, was fetched successfully.
+     */
+    class Success(val authorization: String) : AuthorizationResult()
+
+    /**
+     * There was an [error] fetching authorization.
+     */
+    class Failure(val error: Exception) : AuthorizationResult()
+}
@@ -5,12 +5,20 @@ import android.content.pm.ActivityInfo
 import android.net.Uri
 import androidx.annotation.RestrictTo
 import androidx.annotation.VisibleForTesting
+import com.braintreepayments.api.sharedutils.HttpCall
+import com.braintreepayments.api.sharedutils.HttpClient
+import com.braintreepayments.api.sharedutils.HttpRequest
 import com.braintreepayments.api.sharedutils.HttpResponseCallback
 import com.braintreepayments.api.sharedutils.HttpResponseTiming
 import com.braintreepayments.api.sharedutils.ManifestValidator
+import com.braintreepayments.api.sharedutils.NetworkResponseCallback
 import com.braintreepayments.api.sharedutils.Time
+import kotlinx.coroutines.CancellableContinuation
+import kotlinx.coroutines.suspendCancellableCoroutine
 import org.json.JSONException
 import org.json.JSONObject
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
 
 /**
  * Core Braintree class that handles network requests.
@@ -111,12 +119,29 @@ class BraintreeClient @VisibleForTesting internal constructor(
         crashReporter.start()
     }
 
+    /**
+     * How often configuration has been served from cache rather than fetched from the network.
+     *
+     * @suppress
+     */
+    val configurationCacheMetrics: ConfigurationCacheMetrics
+        get() = configurationLoader.cacheMetrics
+
     /**
      * Retrieve Braintree configuration.
      *
-     * @param callback [ConfigurationCallback]
+     * @param callback [ConfigurationCallback], notified on the main thread
+     */
+    fun getConfiguration(callback: ConfigurationCallback) =
+        loadConfiguration { configuration, configError ->
+            httpClient.runOnMain { callback.onResult(configuration, configError) }
+        }
+
+    /**
+     * Loads configuration and notifies [callback] on the thread that produced it: the calling
+     * thread when it is cached in memory, otherwise a background thread.
      */
-    fun getConfiguration(callback: ConfigurationCallback) {
+    private fun loadConfiguration(callback: ConfigurationCallback) {
         if (authorization is InvalidAuthorization) {
             callback.onResult(null, createAuthError())
             return
@@ -131,6 +156,48 @@ class BraintreeClient @VisibleForTesting internal constructor(
         }
     }
 
+    /**
+     * Retrieve Braintree configuration, suspending until it is available.
+     *
+     * Configuration shares the caches and the in-flight configuration request of every other
+     * caller. It is loaded off the main thread and the coroutine resumes on its own dispatcher, so
+     * callers that are not on the main thread never wait for it. Cancelling the coroutine stops
+     * waiting for configuration without cancelling the shared load.
+     *
+     * @return [Configuration]
+     * @throws BraintreeException when authorization is invalid or configuration cannot be loaded
+     */
+    suspend fun awaitConfiguration(): Configuration =
+        suspendCancellableCoroutine { continuation ->
+            loadConfiguration { configuration, configError ->
+                if (configuration != null) {
+                    continuation.resume(configuration)
+                } else {
+                    continuation.resumeWithException(
+                        configError ?: BraintreeException("Configuration could not be loaded")
+                    )
+                }
+            }
+        }
+
+    /**
+     * Prepares for an upcoming payment flow by loading configuration, opening connections to the
+     * Braintree client API, GraphQL and analytics hosts, and opening the analytics database, all
+     * in the background. Call this when a user is likely to check out soon, so that the first
+     * tokenization only pays for its own round trip.
+     */
+    fun warmUp() {
+        analyticsClient.warmUp()
+        loadConfiguration { configuration, _ ->
+            configuration?.let {
+                httpClient.preconnect(it.clientApiUrl)
+                if (it.isGraphQLEnabled) {
+                    graphQLClient.preconnect(it.graphQLUrl)
+                }
+            }
+        }
+    }
+
     /**
      * @suppress
      */
@@ -139,7 +206,7 @@ class BraintreeClient @VisibleForTesting internal constructor(
         params: AnalyticsEventParams = AnalyticsEventParams()
     ) {
         val timestamp = time.currentTime
-        getConfiguration { configuration, _ ->
+        loadConfiguration { configuration, _ ->
             val event = AnalyticsEvent(
                 name = eventName,
                 timestamp = timestamp,
@@ -149,6 +216,7 @@ class BraintreeClient @VisibleForTesting internal constructor(
                 startTime = params.startTime,
                 endTime = params.endTime,
                 endpoint = params.endpoint,
+                networkTiming = params.networkTiming,
             )
             sendAnalyticsEvent(event, configuration, authorization)
         }
@@ -172,14 +240,25 @@ class BraintreeClient @VisibleForTesting internal constructor(
     /**
      * @suppress
      */
-    fun sendGET(url: String, responseCallback: HttpResponseCallback) {
+    fun sendGET(url: String, responseCallback: HttpResponseCallback) =
+        get(url, responseCallback.notifiedOnMainThread())
+
+    private fun get(url: String, responseCallback: HttpResponseCallback) {
         if (authorization is InvalidAuthorization) {
             responseCallback.onResult(null, createAuthError())
             return
         }
-        getConfiguration { configuration, configError ->
+        loadConfiguration { configuration, configError ->
             if (configuration != null) {
-                httpClient.get(url, configuration, authorization) { response, httpError ->
+                httpClient.get(
+                    url,
+                    configuration,
+                    authorization,
+                    HttpClient.NO_RETRY,
+                    HttpRequest.PRIORITY_USER_CRITICAL,
+                    emptyMap(),
+                    false
+                ) { response, httpError ->
                     response?.let {
                         try {
                             sendAnalyticsTimingEvent(url, response.timing)
@@ -197,6 +276,18 @@ class BraintreeClient @VisibleForTesting internal constructor(
         }
     }
 
+    /**
+     * Suspending counterpart of [sendGET]. The coroutine resumes on its own dispatcher rather than
+     * the main thread. Identical GETs in flight are shared between callers, so cancelling the
+     * coroutine stops waiting for the response without aborting the request.
+     *
+     * @suppress
+     */
+    suspend fun awaitGET(url: String): String? =
+        suspendCancellableCoroutine { continuation ->
+            get(url, continuation.asResponseCallback())
+        }
+
     /**
      * @suppress
      */
@@ -206,19 +297,52 @@ class BraintreeClient @VisibleForTesting internal constructor(
         data: String,
         additionalHeaders: Map<String, String> = emptyMap(),
         responseCallback: HttpResponseCallback,
+    ) = sendPOST(url, data, additionalHeaders, null, responseCallback)
+
+    /**
+     * Sends a POST request on behalf of the operation tracked by [cancellationHandle]. Once the
+     * handle is cancelled the request is aborted and [responseCallback] is not invoked.
+     *
+     * @suppress
+     */
+    fun sendPOST(
+        url: String,
+        data: String,
+        additionalHeaders: Map<String, String>,
+        cancellationHandle: CancellationHandle?,
+        responseCallback: HttpResponseCallback,
+    ) = post(
+        url,
+        data,
+        additionalHeaders,
+        cancellationHandle,
+        responseCallback.notifiedOnMainThread(cancellationHandle)
+    )
+
+    private fun post(
+        url: String,
+        data: String,
+        additionalHeaders: Map<String, String>,
+        cancellationHandle: CancellationHandle?,
+        responseCallback: HttpResponseCallback,
     ) {
         if (authorization is InvalidAuthorization) {
             responseCallback.onResult(null, createAuthError())
             return
         }
-        getConfiguration { configuration, configError ->
+        loadConfiguration { configuration, configError ->
+            if (cancellationHandle?.isCancelled == true) {
+                return@loadConfiguration
+            }
             if (configuration != null) {
                 httpClient.post(
                     path = url,
                     data = data,
                     configuration = configuration,
                     authorization = authorization,
-                    additionalHeaders = additionalHeaders
+                    additionalHeaders = additionalHeaders,
+                    httpCall = cancellationHandle?.httpCall,
+                    notifyOnMainThread = false
                 ) { response, httpError ->
                     response?.let {
                         try {
@@ -238,50 +362,132 @@ class BraintreeClient @VisibleForTesting internal constructor(
     }
 
     /**
+     * Suspending counterpart of [sendPOST]. The coroutine resumes on its own dispatcher rather than
+     * the main thread. Cancelling the coroutine aborts the request in flight.
+     *
+     * @suppress
+     */
+    suspend fun awaitPOST(
+        url: String,
+        data: String,
+        additionalHeaders: Map<String, String> = emptyMap()
+    ): String? = awaitResponse { cancellationHandle, responseCallback ->
+        post(url, data, additionalHeaders, cancellationHandle, responseCallback)
+    }
+
+    /**
+     * @suppress
+     */
+    fun sendGraphQLPOST(json: JSONObject?, responseCallback: HttpResponseCallback) =
+        graphQLPost(json, null, responseCallback.notifiedOnMainThread())
+
+    /**
+     * Sends a GraphQL request on behalf of the operation tracked by [cancellationHandle]. Once the
+     * handle is cancelled the request is aborted and [responseCallback] is not invoked.
+     *
      * @suppress
      */
-    fun sendGraphQLPOST(json: JSONObject?, responseCallback: HttpResponseCallback) {
+    fun sendGraphQLPOST(
+        json: JSONObject?,
+        cancellationHandle: CancellationHandle,
+        responseCallback: HttpResponseCallback
+    ) = graphQLPost(
+        json,
+        cancellationHandle,
+        responseCallback.notifiedOnMainThread(cancellationHandle)
+    )
+
+    private fun graphQLPost(
+        json: JSONObject?,
+        cancellationHandle: CancellationHandle?,
+        responseCallback: HttpResponseCallback
+    ) {
         if (authorization is InvalidAuthorization) {
             responseCallback.onResult(null, createAuthError())
             return
         }
-        getConfiguration { configuration, configError ->
+        loadConfiguration { configuration, configError ->
+            if (cancellationHandle?.isCancelled == true) {
+                return@loadConfiguration
+            }
             if (configuration != null) {
                 graphQLClient.post(
                     json?.toString(),
                     configuration,
-                    authorization
-                ) { response, httpError ->
-                    response?.let {
-                        try {
-                            json?.optString(GraphQLConstants.Keys.QUERY)
-                                ?.let { query ->
-                                    val queryDiscardHolder = query.replace(Regex("^[^\\(]*"), "")
-                                    val finalQuery = query.replace(queryDiscardHolder, "")
-                                    val params = AnalyticsEventParams(
-                                        startTime = it.timing.startTime,
-                                        endTime = it.timing.endTime,
-                                        endpoint = finalQuery
-                                    )
-                                    sendAnalyticsEvent(
-                                        CoreAnalytics.apiRequestLatency,
-                                        params
-                                    )
-                                }
-                            responseCallback.onResult(it.body, null)
-                        } catch (jsonException: JSONException) {
-                            responseCallback.onResult(null, jsonException)
-                        }
-                    } ?: httpError?.let { error ->
-                        responseCallback.onResult(null, error)
-                    }
-                }
+                    authorization,
+                    cancellationHandle?.httpCall,
+                    false,
+                    createGraphQLResponseCallback(json, responseCallback)
+                )
             } else {
                 responseCallback.onResult(null, configError)
             }
         }
     }
 
+    private fun createGraphQLResponseCallback(
+        json: JSONObject?,
+        responseCallback: HttpResponseCallback
+    ) = NetworkResponseCallback { response, httpError ->
+        response?.let {
+            try {
+                sendGraphQLTimingEvent(json, it.timing)
+                responseCallback.onResult(it.body, null)
+            } catch (jsonException: JSONException) {
+                responseCallback.onResult(null, jsonException)
+            }
+        } ?: httpError?.let { error ->
+            responseCallback.onResult(null, error)
+        }
+    }
+
+    /**
+     * Suspending counterpart of [sendGraphQLPOST]. The coroutine resumes on its own dispatcher
+     * rather than the main thread. Cancelling the coroutine aborts the request in flight.
+     *
+     * @suppress
+     */
+    suspend fun awaitGraphQLPOST(json: JSONObject?): String? =
+        awaitResponse { cancellationHandle, responseCallback ->
+            graphQLPost(json, cancellationHandle, responseCallback)
+        }
+
+    /**
+     * Sends a request and suspends until it completes. The request gets no deadline of its own;
+     * callers bound it with `withTimeout`, which cancels it like any other cancellation.
+     */
+    private suspend fun awaitResponse(
+        send: (CancellationHandle, HttpResponseCallback) -> Unit
+    ): String? = suspendCancellableCoroutine { continuation ->
+        val cancellationHandle = CancellationHandle(HttpCall.NO_DEADLINE)
+        continuation.invokeOnCancellation { cancellationHandle.cancel() }
+        send(cancellationHandle, continuation.asResponseCallback())
+    }
+
+    /**
+     * Adapts a callback of the callback API, which is always notified on the main thread, to the
+     * request path shared with the suspending API, which notifies on a background thread. The
+     * result of a cancelled operation is dropped.
+     */
+    private fun HttpResponseCallback.notifiedOnMainThread(
+        cancellationHandle: CancellationHandle? = null
+    ) = HttpResponseCallback { responseBody, httpError ->
+        httpClient.runOnMain {
+            if (cancellationHandle?.isCancelled != true) {
+                onResult(responseBody, httpError)
+            }
+        }
+    }
+
+    private fun CancellableContinuation<String?>.asResponseCallback() =
+        HttpResponseCallback { responseBody, httpError ->
+            if (httpError != null) {
+                resumeWithException(httpError)
+            } else {
+                resume(responseBody)
+            }
+        }
+
     /**
      * @suppress
      */
@@ -315,7 +521,7 @@ class BraintreeClient @VisibleForTesting internal constructor(
      * @suppress
      */
     internal fun reportCrash() =
-        getConfiguration { configuration, _ ->
+        loadConfiguration { configuration, _ ->
             analyticsClient.reportCrash(
                 applicationContext,
                 configuration,
@@ -329,6 +535,20 @@ class BraintreeClient @VisibleForTesting internal constructor(
         return launchesBrowserSwitchAsNewTask
     }
 
+    private fun sendGraphQLTimingEvent(json: JSONObject?, timing: HttpResponseTiming) {
+        json?.optString(GraphQLConstants.Keys.QUERY)?.let { query ->
+            val queryDiscardHolder = query.replace(Regex("^[^\\(]*"), "")
+            val finalQuery = query.replace(queryDiscardHolder, "")
+            val params = AnalyticsEventParams(
+                startTime = timing.startTime,
+                endTime = timing.endTime,
+                endpoint = finalQuery,
+                networkTiming = timing
+            )
+            sendAnalyticsEvent(CoreAnalytics.apiRequestLatency, params)
+        }
+    }
+
     private fun sendAnalyticsTimingEvent(endpoint: String, timing: HttpResponseTiming) {
         var cleanedPath = endpoint.replace(Regex("/merchants/([A-Za-z0-9]+)/client_api"), "")
         cleanedPath = cleanedPath.replace(
@@ -340,7 +560,8 @@ class BraintreeClient @VisibleForTesting internal constructor(
             AnalyticsEventParams(
                 startTime = timing.startTime,
                 endTime = timing.endTime,
-                endpoint = cleanedPath
+                endpoint = cleanedPath,
+                networkTiming = timing
             )
         )
     }
@@ -15,7 +15,16 @@ internal data class BraintreeClientParams(
     val analyticsClient: AnalyticsClient = AnalyticsClient(context),
     val browserSwitchClient: BrowserSwitchClient = BrowserSwitchClient(),
     val manifestValidator: ManifestValidator = ManifestValidator(),
-    val configurationLoader: ConfigurationLoader = ConfigurationLoader(context, httpClient),
+    val configurationStaleWhileRevalidateMillis: Long =
+        ConfigurationLoader.DEFAULT_STALE_WHILE_REVALIDATE,
+    val configurationCacheKeyScope: ConfigurationLoader.CacheKeyScope =
+        ConfigurationLoader.CacheKeyScope.AUTHORIZATION,
+    val configurationLoader: ConfigurationLoader = ConfigurationLoader(
+        context,
+        httpClient,
+        configurationStaleWhileRevalidateMillis,
+        configurationCacheKeyScope
+    ),
     val integrationType: IntegrationType,
 ) {
 
@@ -24,6 +33,8 @@ internal data class BraintreeClientParams(
         authorization = options.authorization,
         returnUrlScheme = options.returnUrlScheme ?: createDefaultReturnUrlScheme(options.context),
         appLinkReturnUri = options.appLinkReturnUri,
+        configurationStaleWhileRevalidateMillis = options.configurationStaleWhileRevalidateMillis,
+        configurationCacheKeyScope = options.configurationCacheKeyScope,
         integrationType = options.integrationType ?: IntegrationType.CUSTOM
     )
 
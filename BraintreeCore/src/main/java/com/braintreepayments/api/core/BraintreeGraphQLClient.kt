@@ -1,9 +1,10 @@
 package com.braintreepayments.api.core
 
+import com.braintreepayments.api.sharedutils.HttpCall
 import com.braintreepayments.api.sharedutils.HttpClient
 import com.braintreepayments.api.sharedutils.HttpRequest
 import com.braintreepayments.api.sharedutils.NetworkResponseCallback
-import com.braintreepayments.api.sharedutils.TLSSocketFactory
+import com.braintreepayments.api.sharedutils.RetryPolicy
 import java.util.Locale
 import javax.net.ssl.SSLException
 
@@ -23,15 +24,7 @@ internal class BraintreeGraphQLClient(
             callback.onResult(null, BraintreeException(message))
             return
         }
-        val request = HttpRequest()
-            .method("POST")
-            .path(path)
-            .data(data)
-            .baseUrl(configuration.graphQLUrl)
-            .addHeader("User-Agent", "braintree/android/" + BuildConfig.VERSION_NAME)
-            .addHeader("Authorization",
-                String.format(Locale.US, "Bearer %s", authorization.bearer))
-            .addHeader("Braintree-Version", GraphQLConstants.Headers.API_VERSION)
+        val request = buildRequest(path, data, configuration, authorization)
         httpClient.sendRequest(request, callback)
     }
 
@@ -40,22 +33,41 @@ internal class BraintreeGraphQLClient(
         configuration: Configuration,
         authorization: Authorization,
         callback: NetworkResponseCallback
+    ) = post("", data, configuration, authorization, callback)
+
+    /**
+     * Makes an asynchronous GraphQL POST request that belongs to [httpCall]. Cancelling the call
+     * aborts the request.
+     */
+    fun post(
+        data: String?,
+        configuration: Configuration,
+        authorization: Authorization,
+        httpCall: HttpCall,
+        callback: NetworkResponseCallback
+    ) = post(data, configuration, authorization, httpCall, true, callback)
+
+    /**
+     * Makes an asynchronous GraphQL POST request that belongs to [httpCall], if any, and notifies
+     * [callback] on the main thread or, when [notifyOnMainThread] is false, on the background
+     * thread that finished the request.
+     */
+    @Suppress("LongParameterList")
+    fun post(
+        data: String?,
+        configuration: Configuration,
+        authorization: Authorization,
+        httpCall: HttpCall?,
+        notifyOnMainThread: Boolean,
+        callback: NetworkResponseCallback
     ) {
         if (authorization is InvalidAuthorization) {
             val message = authorization.errorMessage
             callback.onResult(null, BraintreeException(message))
             return
         }
-        val request = HttpRequest()
-            .method("POST")
-            .path("")
-            .data(data)
-            .baseUrl(configuration.graphQLUrl)
-            .addHeader("User-Agent", "braintree/android/" + BuildConfig.VERSION_NAME)
-            .addHeader("Authorization",
-                String.format(Locale.US, "Bearer %s", authorization.bearer))
-            .addHeader("Braintree-Version", GraphQLConstants.Headers.API_VERSION)
-        httpClient.sendRequest(request, callback)
+        val request = buildRequest("", data, configuration, authorization)
+        httpClient.sendRequest(request, RetryPolicy.NONE, httpCall, notifyOnMainThread, callback)
     }
 
     @Throws(Exception::class)
@@ -69,24 +81,34 @@ internal class BraintreeGraphQLClient(
             val message = authorization.errorMessage
             throw BraintreeException(message)
         }
-        val request = HttpRequest()
-            .method("POST")
-            .path(path)
-            .data(data)
-            .baseUrl(configuration.graphQLUrl)
-            .addHeader("User-Agent", "braintree/android/" + BuildConfig.VERSION_NAME)
-            .addHeader("Authorization",
-                String.format(Locale.US, "Bearer %s", authorization.bearer))
-            .addHeader("Braintree-Version", GraphQLConstants.Headers.API_VERSION)
+        val request = buildRequest(path, data, configuration, authorization)
         return httpClient.sendRequest(request)
     }
 
+    /**
+     * Opens a connection to the host of [url] in the background for later requests to reuse.
+     */
+    fun preconnect(url: String) = httpClient.preconnect(url)
+
+    private fun buildRequest(
+        path: String?,
+        data: String?,
+        configuration: Configuration,
+        authorization: Authorization
+    ): HttpRequest = HttpRequest()
+        .method("POST")
+        .path(path)
+        .data(data)
+        .baseUrl(configuration.graphQLUrl)
+        .addHeader("User-Agent", "braintree/android/" + BuildConfig.VERSION_NAME)
+        .addHeader("Authorization", String.format(Locale.US, "Bearer %s", authorization.bearer))
+        .addHeader("Braintree-Version", GraphQLConstants.Headers.API_VERSION)
+
     companion object {
 
         @Throws(SSLException::class)
         private fun createDefaultHttpClient(): HttpClient {
-            val socketFactory =
-                TLSSocketFactory(TLSCertificatePinning.createCertificateInputStream())
+            val socketFactory = BraintreeTLSSocketFactory.getInstance()
             return HttpClient(socketFactory, BraintreeGraphQLResponseParser())
         }
     }
@@ -1,11 +1,14 @@
 package com.braintreepayments.api.core
 
 import android.net.Uri
+import com.braintreepayments.api.sharedutils.HttpCall
 import com.braintreepayments.api.sharedutils.HttpClient
 import com.braintreepayments.api.sharedutils.HttpClient.RetryStrategy
 import com.braintreepayments.api.sharedutils.HttpRequest
+import com.braintreepayments.api.sharedutils.HttpResponse
+import com.braintreepayments.api.sharedutils.HttpResponseBodyDecoder
 import com.braintreepayments.api.sharedutils.NetworkResponseCallback
-import com.braintreepayments.api.sharedutils.TLSSocketFactory
+import com.braintreepayments.api.sharedutils.RetryPolicy
 import org.json.JSONException
 import org.json.JSONObject
 import javax.net.ssl.SSLException
@@ -30,7 +33,7 @@ internal class BraintreeHttpClient(
         configuration: Configuration?,
         authorization: Authorization?,
         callback: NetworkResponseCallback
-    ) = get(path, configuration, authorization, HttpClient.NO_RETRY, callback)
+    ) = get(path, configuration, authorization, HttpClient.NO_RETRY, callback = callback)
 
     /**
      * Make a HTTP GET request to Braintree using the base url, path and authorization provided.
@@ -39,6 +42,7 @@ internal class BraintreeHttpClient(
      * @param configuration configuration for the Braintree Android SDK.
      * @param authorization
      * @param retryStrategy retry strategy
+     * @param priority scheduling priority of the request
      * @param callback [NetworkResponseCallback]
      */
     operator fun get(
@@ -46,37 +50,109 @@ internal class BraintreeHttpClient(
         configuration: Configuration?,
         authorization: Authorization?,
         @RetryStrategy retryStrategy: Int,
+        @HttpRequest.Priority priority: Int = HttpRequest.PRIORITY_USER_CRITICAL,
+        callback: NetworkResponseCallback
+    ) = get(path, configuration, authorization, retryStrategy, priority, emptyMap(), callback)
+
+    /**
+     * Make a HTTP GET request to Braintree with extra headers, such as the `If-None-Match` and
+     * `If-Modified-Since` headers of a conditional request.
+     * @param path The path or url to request from the server via GET
+     * @param configuration configuration for the Braintree Android SDK.
+     * @param authorization
+     * @param retryStrategy retry strategy
+     * @param priority scheduling priority of the request
+     * @param additionalHeaders extra headers to send with the request
+     * @param callback [NetworkResponseCallback]
+     */
+    operator fun get(
+        path: String,
+        configuration: Configuration?,
+        authorization: Authorization?,
+        @RetryStrategy retryStrategy: Int,
+        @HttpRequest.Priority priority: Int,
+        additionalHeaders: Map<String, String>,
+        callback: NetworkResponseCallback
+    ) = get(
+        path,
+        configuration,
+        authorization,
+        retryStrategy,
+        priority,
+        additionalHeaders,
+        true,
+        callback
+    )
+
+    /**
+     * Make a HTTP GET request to Braintree, notifying [callback] either on the main thread or on
+     * the background thread that finished the request.
+     * @param path The path or url to request from the server via GET
+     * @param configuration configuration for the Braintree Android SDK.
+     * @param authorization
+     * @param retryStrategy retry strategy
+     * @param priority scheduling priority of the request
+     * @param additionalHeaders extra headers to send with the request
+     * @param notifyOnMainThread true to notify [callback] on the main thread
+     * @param callback [NetworkResponseCallback]
+     */
+    @Suppress("LongParameterList")
+    operator fun get(
+        path: String,
+        configuration: Configuration?,
+        authorization: Authorization?,
+        @RetryStrategy retryStrategy: Int,
+        @HttpRequest.Priority priority: Int,
+        additionalHeaders: Map<String, String>,
+        notifyOnMainThread: Boolean,
+        callback: NetworkResponseCallback
+    ) = get(
+        path,
+        configuration,
+        authorization,
+        retryStrategy,
+        priority,
+        additionalHeaders,
+        notifyOnMainThread,
+        null,
+        callback
+    )
+
+    /**
+     * Make a HTTP GET request to Braintree whose response body is decoded as it is read.
+     * @param path The path or url to request from the server via GET
+     * @param configuration configuration for the Braintree Android SDK.
+     * @param authorization
+     * @param retryStrategy retry strategy
+     * @param priority scheduling priority of the request
+     * @param additionalHeaders extra headers to send with the request
+     * @param notifyOnMainThread true to notify [callback] on the main thread
+     * @param bodyDecoder decodes a successful response body into [HttpResponse.decodedBody]
+     * instead of [HttpResponse.body]; null to read the body as a String
+     * @param callback [NetworkResponseCallback]
+     */
+    @Suppress("LongParameterList")
+    operator fun get(
+        path: String,
+        configuration: Configuration?,
+        authorization: Authorization?,
+        @RetryStrategy retryStrategy: Int,
+        @HttpRequest.Priority priority: Int,
+        additionalHeaders: Map<String, String>,
+        notifyOnMainThread: Boolean,
+        bodyDecoder: HttpResponseBodyDecoder?,
         callback: NetworkResponseCallback
     ) {
-        if (authorization is InvalidAuthorization) {
-            val message = authorization.errorMessage
-            callback.onResult(null, BraintreeException(message))
-            return
-        }
-        val isRelativeURL = !path.startsWith("http")
-        if (configuration == null && isRelativeURL) {
-            val message =
-                "Braintree HTTP GET request without configuration cannot have a relative path."
-            val relativeURLNotAllowedError = BraintreeException(message)
-            callback.onResult(null, relativeURLNotAllowedError)
+        val request = try {
+            buildGetRequest(path, configuration, authorization)
+        } catch (e: BraintreeException) {
+            callback.onResult(null, e)
             return
         }
-        val targetPath = if (authorization is ClientToken) {
-            Uri.parse(path).buildUpon()
-                .appendQueryParameter(AUTHORIZATION_FINGERPRINT_KEY, authorization.bearer)
-                .toString()
-        } else {
-            path
-        }
-        val request = HttpRequest().method("GET").path(targetPath)
-            .addHeader(USER_AGENT_HEADER, "braintree/android/" + BuildConfig.VERSION_NAME)
-        if (isRelativeURL && configuration != null) {
-            request.baseUrl(configuration.clientApiUrl)
-        }
-        if (authorization is TokenizationKey) {
-            request.addHeader(CLIENT_KEY_HEADER, authorization.bearer)
-        }
-        httpClient.sendRequest(request, retryStrategy, callback)
+        additionalHeaders.forEach { (name, value) -> request.addHeader(name, value) }
+        request.priority(priority)
+        bodyDecoder?.let { request.bodyDecoder(it) }
+        httpClient.sendRequest(request, retryStrategy, notifyOnMainThread, callback)
     }
 
     /**
@@ -86,54 +162,38 @@ internal class BraintreeHttpClient(
      * @param data The body of the POST request
      * @param configuration configuration for the Braintree Android SDK.
      * @param authorization
+     * @param additionalHeaders extra headers to send with the request
+     * @param priority scheduling priority of the request
+     * @param httpCall the call the request belongs to; cancelling it aborts the request
+     * @param notifyOnMainThread false to notify [callback] on the background thread that finished
+     * the request instead of the main thread
      * @param callback [NetworkResponseCallback]
      */
-    @Suppress("CyclomaticComplexMethod")
+    @Suppress("LongParameterList")
     fun post(
         path: String,
         data: String,
         configuration: Configuration?,
         authorization: Authorization?,
         additionalHeaders: Map<String, String> = emptyMap(),
+        @HttpRequest.Priority priority: Int = HttpRequest.PRIORITY_USER_CRITICAL,
+        httpCall: HttpCall? = null,
+        notifyOnMainThread: Boolean = true,
         callback: NetworkResponseCallback?
     ) {
-        if (authorization is InvalidAuthorization) {
-            val message = authorization.errorMessage
-            callback?.onResult(null, BraintreeException(message))
+        val request = try {
+            buildPostRequest(path, data, configuration, authorization)
+        } catch (e: BraintreeException) {
+            callback?.onResult(null, e)
             return
-        }
-        val isRelativeURL = !path.startsWith("http")
-        if (configuration == null && isRelativeURL) {
-            val message =
-                "Braintree HTTP GET request without configuration cannot have a relative path."
-            val relativeURLNotAllowedError = BraintreeException(message)
-            callback?.onResult(null, relativeURLNotAllowedError)
+        } catch (e: JSONException) {
+            callback?.onResult(null, e)
             return
         }
-        val requestData = if (authorization is ClientToken) {
-            try {
-                JSONObject(data).put(
-                    AUTHORIZATION_FINGERPRINT_KEY,
-                    authorization.authorizationFingerprint
-                ).toString()
-            } catch (e: JSONException) {
-                callback?.onResult(null, e)
-                return
-            }
-        } else {
-            data
-        }
-        val request = HttpRequest().method("POST").path(path).data(requestData)
-            .addHeader(USER_AGENT_HEADER, "braintree/android/" + BuildConfig.VERSION_NAME)
-        if (isRelativeURL && configuration != null) {
-            request.baseUrl(configuration.clientApiUrl)
-        }
-        if (authorization is TokenizationKey) {
-            request.addHeader(CLIENT_KEY_HEADER, authorization.bearer)
-        }
         authorization?.bearer?.let { token -> request.addHeader("Authorization", "Bearer $token") }
         additionalHeaders.forEach { (name, value) -> request.addHeader(name, value) }
-        httpClient.sendRequest(request, callback)
+        request.priority(priority)
+        httpClient.sendRequest(request, RetryPolicy.NONE, httpCall, notifyOnMainThread, callback)
     }
 
     /**
@@ -143,16 +203,85 @@ internal class BraintreeHttpClient(
      * @param data the body of the post request
      * @param configuration configuration for the Braintree Android SDK.
      * @param authorization
+     * @param compressData gzip the body when it is large enough to benefit; the endpoint must
+     * accept compressed request bodies
      * @return the HTTP response body
      */
     @Throws(Exception::class)
     fun post(
-        path: String, data: String, configuration: Configuration?, authorization: Authorization?
+        path: String,
+        data: String,
+        configuration: Configuration?,
+        authorization: Authorization?,
+        compressData: Boolean = false
     ): String {
+        val request = buildPostRequest(path, data, configuration, authorization)
+        if (compressData) {
+            request.compressData(HttpRequest.DEFAULT_COMPRESSION_THRESHOLD_BYTES)
+        }
+        return httpClient.sendRequest(request)
+    }
+
+    /**
+     * Opens a connection to the host of [url] in the background for later requests to reuse.
+     */
+    fun preconnect(url: String) = httpClient.preconnect(url)
+
+    /**
+     * Runs [task] on the scheduler lane for [priority].
+     * @throws java.util.concurrent.RejectedExecutionException if the lane cannot accept more work
+     */
+    fun runOnBackground(@HttpRequest.Priority priority: Int, task: Runnable) =
+        httpClient.runOnBackground(task, priority)
+
+    /**
+     * Runs [task] on the main thread, where request callbacks are notified unless asked otherwise.
+     */
+    fun runOnMain(task: Runnable) = httpClient.runOnMain(task)
+
+    @Throws(BraintreeException::class)
+    private fun buildGetRequest(
+        path: String,
+        configuration: Configuration?,
+        authorization: Authorization?
+    ): HttpRequest {
         if (authorization is InvalidAuthorization) {
-            val message = authorization.errorMessage
+            throw BraintreeException(authorization.errorMessage)
+        }
+        val isRelativeURL = !path.startsWith("http")
+        if (configuration == null && isRelativeURL) {
+            val message =
+                "Braintree HTTP GET request without configuration cannot have a relative path."
             throw BraintreeException(message)
         }
+        val targetPath = if (authorization is ClientToken) {
+            Uri.parse(path).buildUpon()
+                .appendQueryParameter(AUTHORIZATION_FINGERPRINT_KEY, authorization.bearer)
+                .toString()
+        } else {
+            path
+        }
+        val request = HttpRequest().method("GET").path(targetPath)
+            .addHeader(USER_AGENT_HEADER, "braintree/android/" + BuildConfig.VERSION_NAME)
+        if (isRelativeURL && configuration != null) {
+            request.baseUrl(configuration.clientApiUrl)
+        }
+        if (authorization is TokenizationKey) {
+            request.addHeader(CLIENT_KEY_HEADER, authorization.bearer)
+        }
+        return request
+    }
+
+    @Throws(BraintreeException::class, JSONException::class)
+    private fun buildPostRequest(
+        path: String,
+        data: String,
+        configuration: Configuration?,
+        authorization: Authorization?
+    ): HttpRequest {
+        if (authorization is InvalidAuthorization) {
+            throw BraintreeException(authorization.errorMessage)
+        }
         val isRelativeURL = !path.startsWith("http")
         if (configuration == null && isRelativeURL) {
             val message =
@@ -175,7 +304,7 @@ internal class BraintreeHttpClient(
         if (authorization is TokenizationKey) {
             request.addHeader(CLIENT_KEY_HEADER, authorization.bearer)
         }
-        return httpClient.sendRequest(request)
+        return request
     }
 
     companion object {
@@ -185,8 +314,7 @@ internal class BraintreeHttpClient(
 
         @Throws(SSLException::class)
         private fun createDefaultHttpClient(): HttpClient {
-            val socketFactory =
-                TLSSocketFactory(TLSCertificatePinning.createCertificateInputStream())
+            val socketFactory = BraintreeTLSSocketFactory.getInstance()
             return HttpClient(socketFactory, BraintreeHttpResponseParser())
         }
     }
@@ -2,6 +2,7 @@ package com.braintreepayments.api.core
 
 import com.braintreepayments.api.sharedutils.AuthorizationException
 import com.braintreepayments.api.sharedutils.BaseHttpResponseParser
+import com.braintreepayments.api.sharedutils.HttpResponseBodyDecoder
 import com.braintreepayments.api.sharedutils.HttpResponseParser
 import com.braintreepayments.api.sharedutils.UnprocessableEntityException
 import java.net.HttpURLConnection
@@ -19,9 +20,25 @@ internal class BraintreeHttpResponseParser(
      * @return the body of the http response.
      */
     @Throws(Exception::class)
+    override fun parse(responseCode: Int, connection: HttpURLConnection): String =
+        translateErrors { baseParser.parse(responseCode, connection) }
+
+    /**
+     * @param responseCode the response code returned when the http request was made.
+     * @param connection the connection through which the http request was made.
+     * @param decoder decodes the body of a successful response.
+     * @return the decoded body of the http response.
+     */
+    @Throws(Exception::class)
+    override fun parse(
+        responseCode: Int,
+        connection: HttpURLConnection,
+        decoder: HttpResponseBodyDecoder
+    ): Any? = translateErrors { baseParser.parse(responseCode, connection, decoder) }
+
     @Suppress("SwallowedException")
-    override fun parse(responseCode: Int, connection: HttpURLConnection): String = try {
-        baseParser.parse(responseCode, connection)
+    private inline fun <T> translateErrors(parse: () -> T): T = try {
+        parse()
     } catch (e: AuthorizationException) {
         val errorMessage = ErrorWithResponse(AUTH_ERROR_CODE, e.message).message
         throw AuthorizationException(errorMessage)
@@ -3,10 +3,21 @@ package com.braintreepayments.api.core
 import android.content.Context
 import android.net.Uri
 
+/**
+ * @property configurationStaleWhileRevalidateMillis how long past its time to live cached
+ * configuration is still served while a background request refreshes it; 0 always waits for fresh
+ * configuration
+ * @property configurationCacheKeyScope whether cached configuration is kept per authorization or
+ * shared by the client tokens of a merchant
+ */
 internal data class BraintreeOptions(
     val context: Context,
     val authorization: Authorization,
     val returnUrlScheme: String? = null,
     val appLinkReturnUri: Uri? = null,
     val integrationType: IntegrationType? = null,
+    val configurationStaleWhileRevalidateMillis: Long =
+        ConfigurationLoader.DEFAULT_STALE_WHILE_REVALIDATE,
+    val configurationCacheKeyScope: ConfigurationLoader.CacheKeyScope =
+        ConfigurationLoader.CacheKeyScope.AUTHORIZATION,
 )
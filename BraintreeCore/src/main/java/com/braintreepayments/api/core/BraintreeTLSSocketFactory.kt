@@ -0,0 +1,26 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.TLSSocketFactory
+import javax.net.ssl.SSLException
+
+/**
+ * Holds the process-wide [TLSSocketFactory] that trusts the certificates in
+ * [TLSCertificatePinning].
+ *
+ * Building the factory parses the pinned certificate bundle, fills a [java.security.KeyStore] and
+ * initializes an [javax.net.ssl.SSLContext], so it is done once and shared by every
+ * [BraintreeHttpClient] and [BraintreeGraphQLClient]. Sharing a single factory also lets TLS
+ * sessions resume and keep-alive connections be reused across clients.
+ */
+internal object BraintreeTLSSocketFactory {
+
+    @Volatile
+    private var INSTANCE: TLSSocketFactory? = null
+
+    @Throws(SSLException::class)
+    fun getInstance(): TLSSocketFactory =
+        INSTANCE ?: synchronized(this) {
+            INSTANCE ?: TLSSocketFactory(TLSCertificatePinning.createCertificateInputStream())
+                .also { INSTANCE = it }
+        }
+}
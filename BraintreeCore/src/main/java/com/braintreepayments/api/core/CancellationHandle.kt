@@ -0,0 +1,43 @@
+package com.braintreepayments.api.core
+
+import androidx.annotation.RestrictTo
+import com.braintreepayments.api.sharedutils.HttpCall
+
+/**
+ * A handle to an operation that sends network requests, such as tokenizing a card. Call [cancel]
+ * when the result is no longer needed, for example when the user leaves checkout.
+ *
+ * Cancelling aborts the request in flight, and the callback of the operation is not invoked
+ * afterwards. An operation that outlives its time budget fails with an error instead.
+ */
+class CancellationHandle @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) @JvmOverloads constructor(
+    timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS
+) {
+
+    internal val httpCall = HttpCall(timeoutMillis)
+
+    /**
+     * `true` once [cancel] has been called.
+     */
+    val isCancelled: Boolean
+        get() = httpCall.isCancelled
+
+    /**
+     * Cancels the operation. Calling this after the operation has completed has no effect.
+     */
+    fun cancel() {
+        httpCall.cancel()
+    }
+
+    companion object {
+
+        /**
+         * Total time allowed for an operation's requests, including any retries. The budget starts
+         * when the operation starts, so time spent waiting for configuration counts against it,
+         * but the configuration request itself is bounded by its own timeouts rather than by this
+         * budget.
+         */
+        @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+        const val DEFAULT_TIMEOUT_MILLIS = 60_000L
+    }
+}
@@ -2,6 +2,7 @@ package com.braintreepayments.api.core
 
 import android.util.Base64
 import androidx.annotation.RestrictTo
+import com.braintreepayments.api.sharedutils.Json
 import org.json.JSONException
 import org.json.JSONObject
 
@@ -25,6 +26,13 @@ class ClientToken @Throws(InvalidArgumentException::class) internal constructor(
     internal val authorizationFingerprint: String
     internal val customerId: String?
 
+    /**
+     * The environment and merchant account the client token was generated for, when the client
+     * token states them.
+     */
+    internal val environment: String?
+    internal val merchantAccountId: String?
+
     init {
         try {
             val clientTokenStringDecoded = String(Base64.decode(clientTokenString, Base64.DEFAULT))
@@ -33,6 +41,8 @@ class ClientToken @Throws(InvalidArgumentException::class) internal constructor(
             authorizationFingerprint = jsonObject.getString(AUTHORIZATION_FINGERPRINT_KEY)
             bearer = authorizationFingerprint
             customerId = parseCustomerId(authorizationFingerprint)
+            environment = Json.optString(jsonObject, ENVIRONMENT_KEY, null)
+            merchantAccountId = Json.optString(jsonObject, MERCHANT_ACCOUNT_ID_KEY, null)
         } catch (e: NullPointerException) {
             throw InvalidArgumentException("Client token was invalid")
         } catch (e: JSONException) {
@@ -45,6 +55,8 @@ class ClientToken @Throws(InvalidArgumentException::class) internal constructor(
             "([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)"
         private const val CONFIG_URL_KEY = "configUrl"
         private const val AUTHORIZATION_FINGERPRINT_KEY = "authorizationFingerprint"
+        private const val ENVIRONMENT_KEY = "environment"
+        private const val MERCHANT_ACCOUNT_ID_KEY = "merchantAccountId"
 
         private fun parseCustomerId(authorizationFingerprint: String?): String? {
             val result = authorizationFingerprint?.let { fingerPrint ->
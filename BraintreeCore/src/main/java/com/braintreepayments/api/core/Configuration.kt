@@ -1,7 +1,9 @@
 package com.braintreepayments.api.core
 
 import androidx.annotation.RestrictTo
+import com.braintreepayments.api.sharedutils.HttpResponseBodyDecoder
 import com.braintreepayments.api.sharedutils.Json
+import com.braintreepayments.api.sharedutils.JsonStreamDecoder
 import org.json.JSONException
 import org.json.JSONObject
 
@@ -34,7 +36,19 @@ import org.json.JSONObject
  * @property payPalUserAgreementUrl the PayPal app user agreement url.
  * @property supportedCardTypes a list of card types supported by the merchant.
  */
-class Configuration internal constructor(configurationString: String) {
+class Configuration private constructor(
+    private val json: JSONObject,
+    configurationString: String?
+) {
+
+    internal constructor(configurationString: String) :
+        this(JSONObject(configurationString), configurationString)
+
+    /**
+     * @param json configuration that has already been parsed, such as by [decoder]; it must not be
+     * modified afterwards
+     */
+    internal constructor(json: JSONObject) : this(json, null)
 
     /**
      * @suppress
@@ -63,6 +77,24 @@ class Configuration internal constructor(configurationString: String) {
         fun fromJson(configurationString: String): Configuration {
             return Configuration(configurationString)
         }
+
+        /**
+         * Decodes a configuration response as it is read from the connection, so the body is
+         * tokenized once and never held as a String.
+         */
+        internal val decoder = HttpResponseBodyDecoder { body ->
+            Configuration(JsonStreamDecoder.readObject(body))
+        }
+
+        private fun parseChallenges(json: JSONObject): Set<String> {
+            val challenges = mutableSetOf<String>()
+            json.optJSONArray(CHALLENGES_KEY)?.let { challengesArray ->
+                for (i in 0 until challengesArray.length()) {
+                    challenges.add(challengesArray.optString(i, ""))
+                }
+            }
+            return challenges
+        }
     }
 
     // region Public Properties
@@ -71,19 +103,28 @@ class Configuration internal constructor(configurationString: String) {
     val clientApiUrl: String
     val environment: String
     val isCvvChallengePresent: Boolean
+        get() = challenges.contains("cvv")
     val isGooglePayEnabled: Boolean
+        get() = googlePayConfiguration.isEnabled
     val isLocalPaymentEnabled: Boolean
     val isPayPalEnabled: Boolean
     val isPostalCodeChallengePresent: Boolean
+        get() = challenges.contains("postal_code")
     val isThreeDSecureEnabled: Boolean
     val isVenmoEnabled: Boolean
+        get() = venmoConfiguration.isAccessTokenValid
     val isVisaCheckoutEnabled: Boolean
+        get() = visaCheckoutConfiguration.isEnabled
     val merchantAccountId: String?
     val merchantId: String
     val payPalDirectBaseUrl: String?
+        get() = payPalConfiguration.directBaseUrl
     val payPalPrivacyUrl: String?
+        get() = payPalConfiguration.privacyUrl
     val payPalUserAgreementUrl: String?
+        get() = payPalConfiguration.userAgreementUrl
     val supportedCardTypes: List<String>
+        get() = cardConfiguration.supportedCardTypes
     // endregion
 
     // region Internal Properties
@@ -93,12 +134,14 @@ class Configuration internal constructor(configurationString: String) {
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val braintreeApiAccessToken: String
+        get() = braintreeApiConfiguration.accessToken
 
     /**
      * @return the base url for accessing Braintree API.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val braintreeApiUrl: String
+        get() = braintreeApiConfiguration.url
 
     /**
      * @return the authorization fingerprint to use for Google Payment, only allows tokenizing
@@ -106,200 +149,183 @@ class Configuration internal constructor(configurationString: String) {
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val googlePayAuthorizationFingerprint: String?
+        get() = googlePayConfiguration.googleAuthorizationFingerprint
 
     /**
      * @return the Google Pay display name to show to the user.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val googlePayDisplayName: String
+        get() = googlePayConfiguration.displayName
 
     /**
      * @return the current Google Pay environment.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val googlePayEnvironment: String?
+        get() = googlePayConfiguration.environment
 
     /**
      * @return the PayPal Client ID used by Google Pay.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val googlePayPayPalClientId: String
+        get() = googlePayConfiguration.paypalClientId
 
     /**
      * @return a list of supported card networks for Google Pay.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val googlePaySupportedNetworks: List<String>
+        get() = googlePayConfiguration.supportedNetworks
 
     /**
      * @return the GraphQL url.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val graphQLUrl: String
+        get() = graphQLConfiguration.url
 
     /**
      * @return a boolean indicating whether Braintree API is enabled for this merchant.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val isBraintreeApiEnabled: Boolean
+        get() = braintreeApiConfiguration.isEnabled
 
     /**
      * @return `true` if fraud device data collection should occur; `false` otherwise.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val isFraudDataCollectionEnabled: Boolean
+        get() = cardConfiguration.isFraudDataCollectionEnabled
 
     /**
      * @return `true` if GraphQL is enabled for the merchant account; `false` otherwise.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val isGraphQLEnabled: Boolean
+        get() = graphQLConfiguration.isEnabled
 
     /**
      * @return `true` if PayPal touch is currently disabled, `false` otherwise.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val isPayPalTouchDisabled: Boolean
+        get() = payPalConfiguration.isTouchDisabled
 
     /**
      * @return the PayPal app client id.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val payPalClientId: String?
+        get() = payPalConfiguration.clientId
 
     /**
      * @return the PayPal currency code.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val payPalCurrencyIsoCode: String?
+        get() = payPalConfiguration.currencyIsoCode
 
     /**
      * @return the PayPal app display name.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val payPalDisplayName: String?
+        get() = payPalConfiguration.displayName
 
     /**
      * @return the current environment for PayPal.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val payPalEnvironment: String?
+        get() = payPalConfiguration.environment
 
     /**
      * @return the Access Token used by the Venmo app to tokenize on behalf of the merchant.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val venmoAccessToken: String
+        get() = venmoConfiguration.accessToken
 
     /**
      * @return the Venmo environment used to handle this payment.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val venmoEnvironment: String
+        get() = venmoConfiguration.environment
 
     /**
      * @return the Venmo merchant id used by the Venmo app to authorize payment.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val venmoMerchantId: String
+        get() = venmoConfiguration.merchantId
 
     /**
      * @return a boolean indicating whether ECD is enabled for this Venmo merchant.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val venmoEnrichedCustomerDataEnabled: Boolean
+        get() = venmoConfiguration.enrichedCustomerDataEnabled
 
     /**
      * @return the Visa Checkout API key configured in the Braintree Control Panel.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val visaCheckoutApiKey: String
+        get() = visaCheckoutConfiguration.apiKey
 
     /**
      * @return the Visa Checkout External Client ID configured in the Braintree Control Panel.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val visaCheckoutExternalClientId: String
+        get() = visaCheckoutConfiguration.externalClientId
 
     /**
      * @return the Visa Checkout supported networks enabled for the merchant account.
      * @suppress
      */
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP) val visaCheckoutSupportedNetworks: List<String>
+        get() = visaCheckoutConfiguration.acceptedCardBrands
 
-    private val braintreeApiConfiguration: BraintreeApiConfiguration
-    private val cardConfiguration: CardConfiguration
-    private val challenges: MutableSet<String>
-    private val configurationString: String
-    private val googlePayConfiguration: GooglePayConfiguration
-    private val graphQLConfiguration: GraphQLConfiguration
-    private val payPalConfiguration: PayPalConfiguration
-    private val venmoConfiguration: VenmoConfiguration
-    private val visaCheckoutConfiguration: VisaCheckoutConfiguration
+    // configuration decoded from a stream is only turned back into a String when it is persisted
+    private val configurationString: String by lazy { configurationString ?: json.toString() }
+
+    // sections are decoded on first access, so an integration only pays for the ones it uses
+    private val braintreeApiConfiguration by lazy {
+        BraintreeApiConfiguration(json.optJSONObject(BRAINTREE_API_KEY))
+    }
+    private val cardConfiguration by lazy { CardConfiguration(json.optJSONObject(CARD_KEY)) }
+    private val challenges: Set<String> by lazy { parseChallenges(json) }
+    private val googlePayConfiguration by lazy {
+        GooglePayConfiguration(json.optJSONObject(GOOGLE_PAY_KEY))
+    }
+    private val graphQLConfiguration by lazy {
+        GraphQLConfiguration(json.optJSONObject(GRAPHQL_KEY))
+    }
+    private val payPalConfiguration by lazy { PayPalConfiguration(json.optJSONObject(PAYPAL_KEY)) }
+    private val venmoConfiguration by lazy {
+        VenmoConfiguration(json.optJSONObject(PAY_WITH_VENMO_KEY))
+    }
+    private val visaCheckoutConfiguration by lazy {
+        VisaCheckoutConfiguration(json.optJSONObject(VISA_CHECKOUT_KEY))
+    }
     // endregion
 
     init {
-        this.configurationString = configurationString
-        val json = JSONObject(configurationString)
+        // required fields are read up front so that invalid configuration fails to parse
         assetsUrl = Json.optString(json, ASSETS_URL_KEY, "")
-        clientApiUrl = json.getString(CLIENT_API_URL_KEY)
-
-        // parse json challenges
-        challenges = mutableSetOf()
-        json.optJSONArray(CHALLENGES_KEY)?.let { challengesArray ->
-            for (i in 0 until challengesArray.length()) {
-                challenges.add(challengesArray.optString(i, ""))
-            }
-        }
-
-        braintreeApiConfiguration = BraintreeApiConfiguration(json.optJSONObject(BRAINTREE_API_KEY))
-        cardConfiguration = CardConfiguration(json.optJSONObject(CARD_KEY))
         cardinalAuthenticationJwt = Json.optString(json, CARDINAL_AUTHENTICATION_JWT, null)
+        clientApiUrl = json.getString(CLIENT_API_URL_KEY)
         environment = json.getString(ENVIRONMENT_KEY)
-        googlePayConfiguration = GooglePayConfiguration(json.optJSONObject(GOOGLE_PAY_KEY))
-        graphQLConfiguration = GraphQLConfiguration(json.optJSONObject(GRAPHQL_KEY))
         isPayPalEnabled = json.optBoolean(PAYPAL_ENABLED_KEY, false)
         isThreeDSecureEnabled = json.optBoolean(THREE_D_SECURE_ENABLED_KEY, false)
+        isLocalPaymentEnabled = isPayPalEnabled // Local Payments are enabled when PayPal is enabled
         merchantAccountId = Json.optString(json, MERCHANT_ACCOUNT_ID_KEY, null)
         merchantId = json.getString(MERCHANT_ID_KEY)
-        payPalConfiguration = PayPalConfiguration(json.optJSONObject(PAYPAL_KEY))
-        venmoConfiguration = VenmoConfiguration(json.optJSONObject(PAY_WITH_VENMO_KEY))
-        visaCheckoutConfiguration = VisaCheckoutConfiguration(json.optJSONObject(VISA_CHECKOUT_KEY))
-
-        isCvvChallengePresent = challenges.contains("cvv")
-        isGooglePayEnabled = googlePayConfiguration.isEnabled
-        isLocalPaymentEnabled = isPayPalEnabled // Local Payments are enabled when PayPal is enabled
-        isPostalCodeChallengePresent = challenges.contains("postal_code")
-        isVenmoEnabled = venmoConfiguration.isAccessTokenValid
-        isVisaCheckoutEnabled = visaCheckoutConfiguration.isEnabled
-        payPalDirectBaseUrl = payPalConfiguration.directBaseUrl
-        payPalPrivacyUrl = payPalConfiguration.privacyUrl
-        payPalUserAgreementUrl = payPalConfiguration.userAgreementUrl
-
-        braintreeApiAccessToken = braintreeApiConfiguration.accessToken
-        braintreeApiUrl = braintreeApiConfiguration.url
-        googlePayAuthorizationFingerprint = googlePayConfiguration.googleAuthorizationFingerprint
-        googlePayDisplayName = googlePayConfiguration.displayName
-        googlePayEnvironment = googlePayConfiguration.environment
-        googlePayPayPalClientId = googlePayConfiguration.paypalClientId
-        googlePaySupportedNetworks = googlePayConfiguration.supportedNetworks
-        graphQLUrl = graphQLConfiguration.url
-        isBraintreeApiEnabled = braintreeApiConfiguration.isEnabled
-        isFraudDataCollectionEnabled = cardConfiguration.isFraudDataCollectionEnabled
-        isGraphQLEnabled = graphQLConfiguration.isEnabled
-        isPayPalTouchDisabled = payPalConfiguration.isTouchDisabled
-        payPalClientId = payPalConfiguration.clientId
-        payPalCurrencyIsoCode = payPalConfiguration.currencyIsoCode
-        payPalDisplayName = payPalConfiguration.displayName
-        payPalEnvironment = payPalConfiguration.environment
-        supportedCardTypes = cardConfiguration.supportedCardTypes
-        venmoAccessToken = venmoConfiguration.accessToken
-        venmoEnvironment = venmoConfiguration.environment
-        venmoMerchantId = venmoConfiguration.merchantId
-        venmoEnrichedCustomerDataEnabled = venmoConfiguration.enrichedCustomerDataEnabled
-        visaCheckoutApiKey = visaCheckoutConfiguration.apiKey
-        visaCheckoutExternalClientId = visaCheckoutConfiguration.externalClientId
-        visaCheckoutSupportedNetworks = visaCheckoutConfiguration.acceptedCardBrands
     }
 
     // region Public Methods
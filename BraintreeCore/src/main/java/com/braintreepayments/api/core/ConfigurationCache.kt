@@ -1,28 +1,50 @@
 package com.braintreepayments.api.core
 
 import android.content.Context
+import android.util.Base64
 import com.braintreepayments.api.sharedutils.BraintreeSharedPreferences
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 
+/**
+ * Stores fetched configuration on disk in a [ConfigurationStore]. Entries written to
+ * [BraintreeSharedPreferences] by earlier versions of the SDK are moved into the store the first
+ * time they are looked up; the first save in each process removes the ones that are left.
+ */
 internal class ConfigurationCache(
+    private val configurationStore: ConfigurationStore,
     private val sharedPreferences: BraintreeSharedPreferences
 ) {
 
+    private val legacyEntriesRemoved = AtomicBoolean()
+
     fun getConfiguration(cacheKey: String): String? {
         return getConfiguration(cacheKey, System.currentTimeMillis())
     }
 
     fun getConfiguration(cacheKey: String, currentTimeMillis: Long): String? {
-        val timestampKey = "${cacheKey}_timestamp"
-        if (sharedPreferences.containsKey(timestampKey)) {
-            val timeInCache = currentTimeMillis - sharedPreferences.getLong(timestampKey)
-            if (timeInCache < TIME_TO_LIVE) {
-                return sharedPreferences.getString(cacheKey, "")
-            }
-        }
-        return null
+        return getConfiguration(cacheKey, currentTimeMillis, TIME_TO_LIVE)
+    }
+
+    /**
+     * @return the configuration stored under [cacheKey] if it was saved less than [maxAgeMillis]
+     * ago, even when that is longer than [TIME_TO_LIVE]
+     */
+    fun getStaleConfiguration(cacheKey: String, maxAgeMillis: Long): String? {
+        return getConfiguration(cacheKey, System.currentTimeMillis(), maxAgeMillis)
     }
 
+    fun getConfiguration(cacheKey: String, currentTimeMillis: Long, maxAgeMillis: Long): String? {
+        val entry = configurationStore.read(cacheKey) ?: migrateLegacyEntry(cacheKey)
+        return entry?.takeIf { currentTimeMillis - it.metadata.cachedAtMillis < maxAgeMillis }
+            ?.configurationJson
+    }
+
+    /**
+     * @return when the configuration stored under [cacheKey] was saved, or null if there is none
+     */
+    fun getTimestamp(cacheKey: String): Long? = getMetadata(cacheKey)?.cachedAtMillis
+
     fun saveConfiguration(configuration: Configuration, cacheKey: String?) {
         saveConfiguration(configuration, cacheKey, System.currentTimeMillis())
     }
@@ -32,23 +54,129 @@ internal class ConfigurationCache(
         cacheKey: String?,
         currentTimeMillis: Long
     ) {
-        val timestampKey = "${cacheKey}_timestamp"
-        sharedPreferences.putStringAndLong(
-            cacheKey,
+        saveConfiguration(configuration, cacheKey, currentTimeMillis, null, null)
+    }
+
+    /**
+     * Saves [configuration] along with the `ETag` and `Last-Modified` validators of the response
+     * it came from, so a later refresh can ask the server whether it has changed.
+     */
+    fun saveConfiguration(
+        configuration: Configuration,
+        cacheKey: String?,
+        eTag: String?,
+        lastModified: String?
+    ) {
+        saveConfiguration(configuration, cacheKey, System.currentTimeMillis(), eTag, lastModified)
+    }
+
+    fun saveConfiguration(
+        configuration: Configuration,
+        cacheKey: String?,
+        currentTimeMillis: Long,
+        eTag: String?,
+        lastModified: String?
+    ) {
+        // validators of an earlier response must not outlive the configuration they describe
+        configurationStore.write(
+            "$cacheKey",
             configuration.toJson(),
-            timestampKey,
-            currentTimeMillis
+            ConfigurationStore.Metadata(currentTimeMillis, eTag, lastModified)
         )
+        if (legacyEntriesRemoved.compareAndSet(false, true)) {
+            removeLegacyEntries()
+        }
+    }
+
+    /**
+     * @return the `ETag` of the response the configuration under [cacheKey] came from, if any
+     */
+    fun getETag(cacheKey: String): String? = getMetadata(cacheKey)?.eTag
+
+    /**
+     * @return the `Last-Modified` date of the response the configuration under [cacheKey] came
+     * from, if any
+     */
+    fun getLastModified(cacheKey: String): String? = getMetadata(cacheKey)?.lastModified
+
+    /**
+     * Restarts the time to live of the configuration under [cacheKey] after the server confirmed
+     * that it has not changed.
+     */
+    fun refreshTimestamp(cacheKey: String) {
+        refreshTimestamp(cacheKey, System.currentTimeMillis())
+    }
+
+    fun refreshTimestamp(cacheKey: String, currentTimeMillis: Long) {
+        getMetadata(cacheKey)?.let { metadata ->
+            configurationStore.writeMetadata(
+                cacheKey,
+                metadata.copy(cachedAtMillis = currentTimeMillis)
+            )
+        }
+    }
+
+    private fun getMetadata(cacheKey: String): ConfigurationStore.Metadata? =
+        configurationStore.readMetadata(cacheKey) ?: migrateLegacyEntry(cacheKey)?.metadata
+
+    private fun migrateLegacyEntry(cacheKey: String): ConfigurationStore.Entry? {
+        val timestampKey = "${cacheKey}_timestamp"
+        if (!sharedPreferences.containsKey(timestampKey)) return null
+
+        val eTagKey = "${cacheKey}_etag"
+        val lastModifiedKey = "${cacheKey}_last_modified"
+        val configurationJson = sharedPreferences.getString(cacheKey, null)
+        val metadata = ConfigurationStore.Metadata(
+            cachedAtMillis = sharedPreferences.getLong(timestampKey),
+            eTag = sharedPreferences.getString(eTagKey, null),
+            lastModified = sharedPreferences.getString(lastModifiedKey, null)
+        )
+        configurationJson?.let { configurationStore.write(cacheKey, it, metadata) }
+        sharedPreferences.removeKeys(cacheKey, timestampKey, eTagKey, lastModifiedKey)
+        return configurationJson?.let { ConfigurationStore.Entry(metadata, it) }
+    }
+
+    /**
+     * Removes configuration entries that earlier versions wrote to shared preferences for
+     * authorizations that were never looked up again, such as rotated client tokens. Other keys
+     * in the same preferences file are left alone, even if they end in `_timestamp`.
+     */
+    private fun removeLegacyEntries() {
+        val legacyKeys = sharedPreferences.keys
+            .filter { it.endsWith(LEGACY_TIMESTAMP_SUFFIX) }
+            .map { it.removeSuffix(LEGACY_TIMESTAMP_SUFFIX) }
+            .filter { isLegacyCacheKey(it) }
+            .flatMap { listOf(it, "${it}_timestamp", "${it}_etag", "${it}_last_modified") }
+        if (legacyKeys.isNotEmpty()) {
+            sharedPreferences.removeKeys(*legacyKeys.toTypedArray())
+        }
     }
 
     companion object {
-        private val TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5)
+        private const val LEGACY_TIMESTAMP_SUFFIX = "_timestamp"
+        private const val LEGACY_CONFIGURATION_PATH = "/v1/configuration"
+
+        /**
+         * Earlier versions keyed configuration by the Base64 encoding of its configuration URL
+         * followed by the authorization's bearer.
+         */
+        private fun isLegacyCacheKey(key: String): Boolean {
+            val decodedKey = try {
+                String(Base64.decode(key, Base64.DEFAULT), Charsets.UTF_8)
+            } catch (e: IllegalArgumentException) {
+                return false
+            }
+            return decodedKey.startsWith("http") && decodedKey.contains(LEGACY_CONFIGURATION_PATH)
+        }
+
+        val TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5)
 
         @Volatile
         private var INSTANCE: ConfigurationCache? = null
         fun getInstance(context: Context): ConfigurationCache =
             INSTANCE ?: synchronized(this) {
                 INSTANCE ?: ConfigurationCache(
+                    ConfigurationStore.getInstance(context),
                     BraintreeSharedPreferences.getInstance(context)
                 ).also { INSTANCE = it }
             }
@@ -0,0 +1,84 @@
+package com.braintreepayments.api.core
+
+import androidx.annotation.RestrictTo
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Tracks how often configuration is served from the in-memory or persisted cache instead of being
+ * fetched from the network. This is the only record of configuration cache hits and misses; the
+ * caches themselves do not count lookups.
+ *
+ * @suppress
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+class ConfigurationCacheMetrics internal constructor() {
+
+    private val memoryHits = AtomicLong()
+    private val persistedHits = AtomicLong()
+    private val merchantScopedHits = AtomicLong()
+    private val misses = AtomicLong()
+
+    internal fun recordMemoryHit(merchantScoped: Boolean) {
+        memoryHits.incrementAndGet()
+        if (merchantScoped) merchantScopedHits.incrementAndGet()
+    }
+
+    internal fun recordPersistedHit(merchantScoped: Boolean) {
+        persistedHits.incrementAndGet()
+        if (merchantScoped) merchantScopedHits.incrementAndGet()
+    }
+
+    internal fun recordMiss() {
+        misses.incrementAndGet()
+    }
+
+    /**
+     * The number of configuration loads served from cache, including stale configuration served
+     * while it is refreshed.
+     */
+    val hitCount: Long
+        get() = memoryHits.get() + persistedHits.get()
+
+    /**
+     * The number of [hitCount] loads served from configuration already parsed in memory.
+     */
+    val memoryHitCount: Long
+        get() = memoryHits.get()
+
+    /**
+     * The number of [hitCount] loads that had to read and parse the persisted cache.
+     */
+    val persistedHitCount: Long
+        get() = persistedHits.get()
+
+    /**
+     * The number of [hitCount] loads that were served from an entry shared by every client token of
+     * the merchant. Always 0 unless configuration is cached per merchant.
+     */
+    val merchantScopedHitCount: Long
+        get() = merchantScopedHits.get()
+
+    /**
+     * The number of configuration loads that had to wait for the network.
+     */
+    val missCount: Long
+        get() = misses.get()
+
+    /**
+     * The fraction of configuration loads, between 0 and 1, that were served from cache.
+     */
+    val hitRate: Double
+        get() {
+            val hitCount = hitCount
+            val total = hitCount + misses.get()
+            return if (total == 0L) 0.0 else hitCount.toDouble() / total
+        }
+
+    internal companion object {
+
+        /**
+         * Shared by every [BraintreeClient] in the process.
+         */
+        val instance: ConfigurationCacheMetrics by lazy { ConfigurationCacheMetrics() }
+    }
+}
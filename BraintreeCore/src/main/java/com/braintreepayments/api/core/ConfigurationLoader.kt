@@ -4,16 +4,71 @@ import android.content.Context
 import android.net.Uri
 import android.util.Base64
 import com.braintreepayments.api.sharedutils.HttpClient
+import com.braintreepayments.api.sharedutils.HttpRequest
+import com.braintreepayments.api.sharedutils.HttpResponse
+import com.braintreepayments.api.sharedutils.NetworkResponseCallback
 import org.json.JSONException
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.RejectedExecutionException
 
+/**
+ * Loads configuration from memory, the persisted cache or the network, in that order. The
+ * persisted cache is only read and written on the configuration lane, so loading never does disk
+ * I/O on the calling thread. Memory hits are delivered on the calling thread and other results on
+ * the background thread that produced them; callers that need the main thread switch to it
+ * themselves.
+ *
+ * Once a cached configuration is older than [ConfigurationCache.TIME_TO_LIVE] it is still returned
+ * for up to [staleWhileRevalidateMillis] more, while a single background request refreshes it.
+ * Past that maximum age, loading waits for a fresh configuration from the network. The window is
+ * set with [BraintreeOptions.configurationStaleWhileRevalidateMillis] and defaults to 0, which
+ * disables serving stale configuration.
+ *
+ * Configuration is cached per authorization by default. With [CacheKeyScope.MERCHANT], set with
+ * [BraintreeOptions.configurationCacheKeyScope], configuration fetched for one client token is
+ * reused for later client tokens of the same merchant, environment and merchant account, after
+ * checking that the cached configuration belongs to that merchant. Other authorizations are always
+ * cached by their bearer.
+ */
 internal class ConfigurationLoader(
     private val httpClient: BraintreeHttpClient,
-    private val configurationCache: ConfigurationCache
+    private val configurationCache: ConfigurationCache,
+    private val memoryCache: ConfigurationMemoryCache = ConfigurationMemoryCache(),
+    val staleWhileRevalidateMillis: Long = DEFAULT_STALE_WHILE_REVALIDATE,
+    val cacheKeyScope: CacheKeyScope = CacheKeyScope.AUTHORIZATION,
+    val cacheMetrics: ConfigurationCacheMetrics = ConfigurationCacheMetrics()
 ) {
-    constructor(context: Context, httpClient: BraintreeHttpClient) : this(
-        httpClient, ConfigurationCache.getInstance(context)
+    constructor(
+        context: Context,
+        httpClient: BraintreeHttpClient,
+        staleWhileRevalidateMillis: Long = DEFAULT_STALE_WHILE_REVALIDATE,
+        cacheKeyScope: CacheKeyScope = CacheKeyScope.AUTHORIZATION
+    ) : this(
+        httpClient,
+        ConfigurationCache.getInstance(context),
+        ConfigurationMemoryCache.instance,
+        staleWhileRevalidateMillis,
+        cacheKeyScope,
+        cacheMetrics = ConfigurationCacheMetrics.instance
     )
 
+    enum class CacheKeyScope {
+        /**
+         * Cache configuration separately for every authorization.
+         */
+        AUTHORIZATION,
+
+        /**
+         * Share cached configuration between client tokens of the same merchant.
+         */
+        MERCHANT
+    }
+
+    private val maxAgeMillis = ConfigurationCache.TIME_TO_LIVE + staleWhileRevalidateMillis
+    private val pendingRefreshes: MutableSet<String> =
+        Collections.newSetFromMap(ConcurrentHashMap())
+
     fun loadConfiguration(authorization: Authorization, callback: ConfigurationLoaderCallback) {
         if (authorization is InvalidAuthorization) {
             val message = authorization.errorMessage
@@ -21,48 +76,227 @@ internal class ConfigurationLoader(
             callback.onResult(null, BraintreeException(message), null)
             return
         }
-        val configUrl = Uri.parse(authorization.configUrl)
-            .buildUpon()
-            .appendQueryParameter("configVersion", "3")
-            .build()
-            .toString()
-        val cachedConfig = getCachedConfiguration(authorization, configUrl)
+        getMemoryCachedConfiguration(authorization)?.let { configuration ->
+            cacheMetrics.recordMemoryHit(isMerchantScoped(authorization))
+            callback.onResult(configuration, null, null)
+            return
+        }
+        val configUrl = createConfigUrl(authorization)
+        try {
+            httpClient.runOnBackground(HttpRequest.PRIORITY_CONFIGURATION) {
+                val cacheLookup = lookUpPersistedCache(authorization, configUrl)
+                onPersistedCacheLookedUp(authorization, configUrl, cacheLookup, callback)
+            }
+        } catch (e: RejectedExecutionException) {
+            // the lane is saturated; the request reports the error if it is rejected as well
+            onPersistedCacheLookedUp(authorization, configUrl, PersistedCacheLookup(), callback)
+        }
+    }
+
+    /**
+     * What the persisted cache holds for an authorization.
+     *
+     * @property configuration a configuration within its time to live
+     * @property staleConfiguration an expired configuration that may be served while it is
+     * refreshed
+     * @property isStaleConfigurationInMemory whether [staleConfiguration] came from the memory
+     * cache rather than the persisted cache
+     * @property expiredConfiguration an expired configuration that a conditional request asks the
+     * server to revalidate
+     * @property conditionalHeaders the validators to send back when requesting configuration
+     */
+    private class PersistedCacheLookup(
+        val configuration: Configuration? = null,
+        val staleConfiguration: Configuration? = null,
+        val isStaleConfigurationInMemory: Boolean = false,
+        val expiredConfiguration: Configuration? = null,
+        val conditionalHeaders: Map<String, String> = emptyMap()
+    )
+
+    private fun lookUpPersistedCache(
+        authorization: Authorization,
+        configUrl: String
+    ): PersistedCacheLookup {
+        getCachedConfiguration(authorization, configUrl)?.let { configuration ->
+            return PersistedCacheLookup(configuration = configuration)
+        }
+        val conditionalHeaders = createConditionalHeaders(authorization, configUrl)
+        getMemoryStaleConfiguration(authorization)?.let { staleConfiguration ->
+            return PersistedCacheLookup(
+                staleConfiguration = staleConfiguration,
+                isStaleConfigurationInMemory = true,
+                conditionalHeaders = conditionalHeaders
+            )
+        }
+        getPersistedStaleConfiguration(authorization, configUrl)?.let { staleConfiguration ->
+            return PersistedCacheLookup(
+                staleConfiguration = staleConfiguration,
+                conditionalHeaders = conditionalHeaders
+            )
+        }
+        if (conditionalHeaders.isEmpty()) {
+            return PersistedCacheLookup()
+        }
+        // validators without a usable cached copy would turn a 304 into a failed load, so the
+        // request goes out unconditionally and its response replaces the unusable entry
+        val expiredConfiguration = getExpiredConfiguration(authorization, configUrl)
+            ?: return PersistedCacheLookup()
+        return PersistedCacheLookup(
+            expiredConfiguration = expiredConfiguration,
+            conditionalHeaders = conditionalHeaders
+        )
+    }
 
-        cachedConfig?.let {
+    private fun onPersistedCacheLookedUp(
+        authorization: Authorization,
+        configUrl: String,
+        cacheLookup: PersistedCacheLookup,
+        callback: ConfigurationLoaderCallback
+    ) {
+        cacheLookup.configuration?.let { cachedConfig ->
+            cacheMetrics.recordPersistedHit(isMerchantScoped(authorization))
             callback.onResult(cachedConfig, null, null)
-        } ?: run {
-            httpClient.get(
-                configUrl, null, authorization, HttpClient.RETRY_MAX_3_TIMES
-            ) { response, httpError ->
-                val responseBody = response?.body
-                val timing = response?.timing
-                if (responseBody != null) {
-                    try {
-                        val configuration = Configuration.fromJson(responseBody)
-                        saveConfigurationToCache(configuration, authorization, configUrl)
-                        callback.onResult(configuration, null, timing)
-                    } catch (jsonException: JSONException) {
-                        callback.onResult(null, jsonException, null)
-                    }
-                } else {
-                    httpError?.let { error ->
-                        val errorMessageFormat = "Request for configuration has failed: %s"
-                        val errorMessage = String.format(errorMessageFormat, error.message)
-                        val configurationException = ConfigurationException(errorMessage, error)
-                        callback.onResult(null, configurationException, null)
-                    }
+            return
+        }
+        cacheLookup.staleConfiguration?.let { staleConfig ->
+            if (cacheLookup.isStaleConfigurationInMemory) {
+                cacheMetrics.recordMemoryHit(isMerchantScoped(authorization))
+            } else {
+                cacheMetrics.recordPersistedHit(isMerchantScoped(authorization))
+            }
+            callback.onResult(staleConfig, null, null)
+            refreshConfiguration(
+                authorization,
+                configUrl,
+                staleConfig,
+                cacheLookup.conditionalHeaders
+            )
+            return
+        }
+        cacheMetrics.recordMiss()
+        sendConfigurationRequest(
+            authorization,
+            configUrl,
+            cacheLookup.conditionalHeaders,
+            HttpClient.RETRY_MAX_3_TIMES,
+            HttpRequest.PRIORITY_CONFIGURATION
+        ) { response, httpError ->
+            if (response != null) {
+                try {
+                    processResponse(
+                        response,
+                        authorization,
+                        configUrl,
+                        cacheLookup.expiredConfiguration
+                    )?.let { configuration ->
+                        callback.onResult(configuration, null, response.timing)
+                    } ?: callback.onResult(null, createEmptyResponseException(), null)
+                } catch (jsonException: JSONException) {
+                    callback.onResult(null, jsonException, null)
+                }
+            } else {
+                httpError?.let { error ->
+                    callback.onResult(null, createConfigurationException(error), null)
                 }
             }
         }
     }
 
+    /**
+     * Requests configuration, conditionally when a cached copy has an `ETag` or `Last-Modified`
+     * validator to send back. The response is decoded into a [Configuration] as it is read, and
+     * [callback] is notified on the thread that finished the request.
+     */
+    private fun sendConfigurationRequest(
+        authorization: Authorization,
+        configUrl: String,
+        conditionalHeaders: Map<String, String>,
+        @HttpClient.RetryStrategy retryStrategy: Int,
+        @HttpRequest.Priority priority: Int,
+        callback: NetworkResponseCallback
+    ) = httpClient.get(
+        configUrl,
+        null,
+        authorization,
+        retryStrategy,
+        priority,
+        conditionalHeaders,
+        false,
+        Configuration.decoder,
+        callback
+    )
+
+    private fun createConditionalHeaders(
+        authorization: Authorization,
+        configUrl: String
+    ): Map<String, String> {
+        val cacheKey = createCacheKey(authorization, configUrl)
+        val headers = mutableMapOf<String, String>()
+        configurationCache.getETag(cacheKey)?.takeIf { it.isNotEmpty() }?.let {
+            headers[IF_NONE_MATCH_HEADER] = it
+        }
+        configurationCache.getLastModified(cacheKey)?.takeIf { it.isNotEmpty() }?.let {
+            headers[IF_MODIFIED_SINCE_HEADER] = it
+        }
+        return headers
+    }
+
+    /**
+     * @param cachedConfiguration the cached configuration a conditional request revalidated
+     * @return the configuration carried by [response] or, when the response is
+     * `304 Not Modified`, the cached configuration with its expiry pushed back; null if neither is
+     * available
+     */
+    @Throws(JSONException::class)
+    private fun processResponse(
+        response: HttpResponse,
+        authorization: Authorization,
+        configUrl: String,
+        cachedConfiguration: Configuration?
+    ): Configuration? {
+        if (response.isNotModified) {
+            val configuration = cachedConfiguration ?: return null
+            val cacheKey = createCacheKey(authorization, configUrl)
+            writeToPersistedCache { configurationCache.refreshTimestamp(cacheKey) }
+            memoryCache.saveConfiguration(createMemoryCacheKey(authorization), configuration)
+            return configuration
+        }
+        val configuration = response.decodedBody as? Configuration
+            ?: response.body?.let { Configuration.fromJson(it) }
+            ?: return null
+        saveConfigurationToCache(configuration, authorization, configUrl, response)
+        return configuration
+    }
+
     private fun saveConfigurationToCache(
         configuration: Configuration,
         authorization: Authorization,
-        configUrl: String
+        configUrl: String,
+        response: HttpResponse
     ) {
         val cacheKey = createCacheKey(authorization, configUrl)
-        configurationCache.saveConfiguration(configuration, cacheKey)
+        val eTag = response.getHeader(ETAG_HEADER)
+        val lastModified = response.getHeader(LAST_MODIFIED_HEADER)
+        writeToPersistedCache {
+            if (eTag == null && lastModified == null) {
+                configurationCache.saveConfiguration(configuration, cacheKey)
+            } else {
+                configurationCache.saveConfiguration(configuration, cacheKey, eTag, lastModified)
+            }
+        }
+        memoryCache.saveConfiguration(createMemoryCacheKey(authorization), configuration)
+    }
+
+    /**
+     * Writes to the persisted cache on the configuration lane. The memory cache already holds the
+     * configuration, so the write is skipped if the lane is saturated.
+     */
+    private fun writeToPersistedCache(write: () -> Unit) {
+        try {
+            httpClient.runOnBackground(HttpRequest.PRIORITY_CONFIGURATION) { write() }
+        } catch (ignored: RejectedExecutionException) {
+            // the next fetch saves it again
+        }
     }
 
     private fun getCachedConfiguration(
@@ -73,14 +307,166 @@ internal class ConfigurationLoader(
         val cachedConfigResponse = configurationCache.getConfiguration(cacheKey) ?: return null
         return try {
             Configuration.fromJson(cachedConfigResponse)
+                .takeIf { isCachedFor(authorization, it) }
+                ?.also { configuration ->
+                    configurationCache.getTimestamp(cacheKey)?.let { cachedAtMillis ->
+                        memoryCache.saveConfiguration(
+                            createMemoryCacheKey(authorization),
+                            configuration,
+                            cachedAtMillis
+                        )
+                    }
+                }
+        } catch (e: JSONException) {
+            null
+        }
+    }
+
+    private fun getMemoryStaleConfiguration(authorization: Authorization): Configuration? {
+        if (staleWhileRevalidateMillis <= 0) return null
+        return memoryCache.getStaleConfiguration(createMemoryCacheKey(authorization), maxAgeMillis)
+            ?.takeIf { isCachedFor(authorization, it) }
+    }
+
+    private fun getPersistedStaleConfiguration(
+        authorization: Authorization,
+        configUrl: String
+    ): Configuration? {
+        if (staleWhileRevalidateMillis <= 0) return null
+        val cacheKey = createCacheKey(authorization, configUrl)
+        val cachedConfigResponse =
+            configurationCache.getStaleConfiguration(cacheKey, maxAgeMillis) ?: return null
+        return try {
+            Configuration.fromJson(cachedConfigResponse)
+                .takeIf { isCachedFor(authorization, it) }
+                ?.also { configuration ->
+                    configurationCache.getTimestamp(cacheKey)?.let { cachedAtMillis ->
+                        memoryCache.saveConfiguration(
+                            createMemoryCacheKey(authorization),
+                            configuration,
+                            cachedAtMillis
+                        )
+                    }
+                }
+        } catch (e: JSONException) {
+            null
+        }
+    }
+
+    private fun getExpiredConfiguration(
+        authorization: Authorization,
+        configUrl: String
+    ): Configuration? {
+        val cacheKey = createCacheKey(authorization, configUrl)
+        val cachedConfigResponse =
+            configurationCache.getStaleConfiguration(cacheKey, Long.MAX_VALUE) ?: return null
+        return try {
+            Configuration.fromJson(cachedConfigResponse).takeIf { isCachedFor(authorization, it) }
         } catch (e: JSONException) {
             null
         }
     }
 
+    /**
+     * Fetches configuration in the background and saves it to cache. Only one refresh per
+     * authorization is in flight at a time; failures are ignored so the stale configuration keeps
+     * being served until it reaches its maximum age.
+     */
+    private fun refreshConfiguration(
+        authorization: Authorization,
+        configUrl: String,
+        staleConfiguration: Configuration,
+        conditionalHeaders: Map<String, String>
+    ) {
+        val cacheKey = createCacheKey(authorization, configUrl)
+        if (!pendingRefreshes.add(cacheKey)) return
+
+        sendConfigurationRequest(
+            authorization,
+            configUrl,
+            conditionalHeaders,
+            HttpClient.NO_RETRY,
+            HttpRequest.PRIORITY_BACKGROUND
+        ) { response, _ ->
+            try {
+                response?.let {
+                    processResponse(it, authorization, configUrl, staleConfiguration)
+                }
+            } catch (ignored: JSONException) {
+                // keep serving the stale configuration
+            } finally {
+                pendingRefreshes.remove(cacheKey)
+            }
+        }
+    }
+
+    private fun getMemoryCachedConfiguration(authorization: Authorization): Configuration? =
+        memoryCache.getConfiguration(createMemoryCacheKey(authorization))
+            ?.takeIf { isCachedFor(authorization, it) }
+
+    private fun isMerchantScoped(authorization: Authorization) =
+        createMerchantScope(authorization) != null
+
+    private fun createCacheKey(authorization: Authorization, configUrl: String): String {
+        val scope = createMerchantScope(authorization) ?: "$configUrl${authorization.bearer}"
+        return Base64.encodeToString(scope.toByteArray(), 0)
+    }
+
+    private fun createMemoryCacheKey(authorization: Authorization): String =
+        createMerchantScope(authorization) ?: ConfigurationMemoryCache.createKey(authorization)
+
+    /**
+     * @return a cache key shared by every client token of the same merchant, environment and
+     * merchant account, or null if [authorization] is cached on its own
+     */
+    private fun createMerchantScope(authorization: Authorization): String? {
+        if (cacheKeyScope != CacheKeyScope.MERCHANT || authorization !is ClientToken) return null
+        parseMerchantId(authorization.configUrl) ?: return null
+        return "merchant:${authorization.configUrl}|${authorization.environment.orEmpty()}|" +
+            authorization.merchantAccountId.orEmpty()
+    }
+
+    /**
+     * Guards against reusing a merchant-scoped entry for a client token it does not belong to.
+     */
+    private fun isCachedFor(authorization: Authorization, configuration: Configuration): Boolean {
+        if (createMerchantScope(authorization) == null) return true
+        val clientToken = authorization as ClientToken
+        return configuration.merchantId == parseMerchantId(clientToken.configUrl) &&
+            clientToken.environment.let { it == null || it == configuration.environment } &&
+            clientToken.merchantAccountId.let {
+                it == null || it == configuration.merchantAccountId
+            }
+    }
+
     companion object {
-        private fun createCacheKey(authorization: Authorization, configUrl: String): String {
-            return Base64.encodeToString("$configUrl${authorization.bearer}".toByteArray(), 0)
+        // serving configuration past its time-to-live is opt-in
+        const val DEFAULT_STALE_WHILE_REVALIDATE = 0L
+
+        private const val ETAG_HEADER = "ETag"
+        private const val LAST_MODIFIED_HEADER = "Last-Modified"
+        private const val IF_NONE_MATCH_HEADER = "If-None-Match"
+        private const val IF_MODIFIED_SINCE_HEADER = "If-Modified-Since"
+
+        private fun createConfigUrl(authorization: Authorization): String =
+            Uri.parse(authorization.configUrl)
+                .buildUpon()
+                .appendQueryParameter("configVersion", "3")
+                .build()
+                .toString()
+
+        private fun createConfigurationException(error: Exception): ConfigurationException {
+            val errorMessageFormat = "Request for configuration has failed: %s"
+            val errorMessage = String.format(errorMessageFormat, error.message)
+            return ConfigurationException(errorMessage, error)
         }
+
+        private fun createEmptyResponseException() =
+            createConfigurationException(BraintreeException("Empty response"))
+
+        private val MERCHANT_PATH = Regex("/merchants/([^/]+)/")
+
+        private fun parseMerchantId(configUrl: String): String? =
+            MERCHANT_PATH.find(configUrl)?.groupValues?.get(1)
     }
 }
@@ -0,0 +1,90 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.Time
+
+/**
+ * Process-wide cache of parsed [Configuration] objects, consulted before [ConfigurationCache] so
+ * that repeated configuration lookups skip reading and re-parsing the persisted JSON. Entries are
+ * keyed by authorization and configuration URL and expire on the same schedule as the persisted
+ * cache. Expired entries are kept until they are either refreshed or older than the maximum age
+ * passed to [getStaleConfiguration].
+ */
+internal class ConfigurationMemoryCache(
+    private val time: Time = Time(),
+    private val maxEntries: Int = MAX_ENTRIES
+) {
+
+    private class Entry(val configuration: Configuration, val cachedAtMillis: Long)
+
+    // access-ordered so that the least recently used authorization is evicted first
+    private val entries = object : LinkedHashMap<String, Entry>(maxEntries, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry>?) =
+            size > maxEntries
+    }
+
+    fun getConfiguration(authorization: Authorization): Configuration? =
+        getConfiguration(createKey(authorization))
+
+    /**
+     * @param key a key created by [createKey], or another key shared by several authorizations
+     */
+    fun getConfiguration(key: String): Configuration? = synchronized(entries) {
+        entries[key]?.takeUnless { isExpired(it) }?.configuration
+    }
+
+    /**
+     * @return the configuration saved for [authorization], even if it has expired, as long as it
+     * was fetched less than [maxAgeMillis] ago; older entries are removed.
+     */
+    fun getStaleConfiguration(authorization: Authorization, maxAgeMillis: Long): Configuration? =
+        getStaleConfiguration(createKey(authorization), maxAgeMillis)
+
+    fun getStaleConfiguration(key: String, maxAgeMillis: Long): Configuration? {
+        return synchronized(entries) {
+            val entry = entries[key]
+            if (entry != null && time.currentTime - entry.cachedAtMillis >= maxAgeMillis) {
+                entries.remove(key)
+                null
+            } else {
+                entry?.configuration
+            }
+        }
+    }
+
+    /**
+     * @param cachedAtMillis when the configuration was fetched; entries loaded from the persisted
+     * cache keep their original timestamp so they do not outlive it.
+     */
+    fun saveConfiguration(
+        authorization: Authorization,
+        configuration: Configuration,
+        cachedAtMillis: Long = time.currentTime
+    ) {
+        saveConfiguration(createKey(authorization), configuration, cachedAtMillis)
+    }
+
+    fun saveConfiguration(
+        key: String,
+        configuration: Configuration,
+        cachedAtMillis: Long = time.currentTime
+    ) {
+        synchronized(entries) {
+            entries[key] = Entry(configuration, cachedAtMillis)
+        }
+    }
+
+    private fun isExpired(entry: Entry) =
+        time.currentTime - entry.cachedAtMillis >= ConfigurationCache.TIME_TO_LIVE
+
+    companion object {
+        private const val MAX_ENTRIES = 8
+
+        /**
+         * Shared by every [BraintreeClient] in the process.
+         */
+        val instance: ConfigurationMemoryCache by lazy { ConfigurationMemoryCache() }
+
+        fun createKey(authorization: Authorization) =
+            "${authorization.configUrl}${authorization.bearer}"
+    }
+}
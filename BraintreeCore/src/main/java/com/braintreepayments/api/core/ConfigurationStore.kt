@@ -0,0 +1,236 @@
+package com.braintreepayments.api.core
+
+import android.content.Context
+import android.util.AtomicFile
+import com.braintreepayments.api.sharedutils.Time
+import java.io.BufferedInputStream
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileNotFoundException
+import java.io.IOException
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+
+/**
+ * Persists cached configuration in a file per cache key, kept out of the shared preferences file
+ * so that neither has to be rewritten or held in memory along with the other.
+ *
+ * Each file holds a small header (format version, timestamp and response validators) followed by
+ * the length-prefixed UTF-8 configuration JSON. Files are replaced by writing a new copy and
+ * renaming it over the old one, so a reader never sees a partially written entry.
+ *
+ * The store is bounded: on the first write in a process, and on writes at least
+ * [minTrimIntervalMillis] after the last trim, entries that have not been read or written for
+ * [maxUnusedMillis] are removed, followed by the least recently used entries until at most
+ * [maxEntries] remain and their files total no more than [maxBytes]. Configuration is written a
+ * few times an hour at most, so the store only briefly holds more entries than that. An entry was last used when
+ * its file was last written or, if later, when it was last read by this process; reads are
+ * recorded in memory so they never touch the file system.
+ *
+ * Every method does disk I/O, so none should be called on the main thread.
+ */
+internal class ConfigurationStore(
+    private val directory: File,
+    private val maxEntries: Int = MAX_ENTRIES,
+    private val maxBytes: Long = MAX_BYTES,
+    private val maxUnusedMillis: Long = MAX_UNUSED_MILLIS,
+    private val minTrimIntervalMillis: Long = MIN_TRIM_INTERVAL_MILLIS,
+    private val time: Time = Time()
+) {
+
+    /**
+     * @property cachedAtMillis when the configuration was fetched or last revalidated
+     * @property eTag the `ETag` of the response the configuration came from, if any
+     * @property lastModified the `Last-Modified` date of that response, if any
+     */
+    data class Metadata(
+        val cachedAtMillis: Long,
+        val eTag: String? = null,
+        val lastModified: String? = null
+    )
+
+    class Entry(val metadata: Metadata, val configurationJson: String)
+
+    // when each entry was last read by this process, by file name
+    private val lastReadMillis = mutableMapOf<String, Long>()
+
+    // null until the first trim in this process
+    private var lastTrimMillis: Long? = null
+
+    /**
+     * @return the entry stored under [cacheKey], or null if there is none or it is unreadable
+     */
+    @Synchronized
+    fun read(cacheKey: String): Entry? = read(cacheKey, readConfiguration = true)
+
+    /**
+     * Reads only the header of the entry stored under [cacheKey], skipping the configuration.
+     */
+    @Synchronized
+    fun readMetadata(cacheKey: String): Metadata? = read(cacheKey, readConfiguration = false)
+        ?.metadata
+
+    @Synchronized
+    fun write(cacheKey: String, configurationJson: String, metadata: Metadata) {
+        if (!directory.isDirectory && !directory.mkdirs()) return
+
+        val file = createAtomicFile(cacheKey)
+        val outputStream = try {
+            file.startWrite()
+        } catch (e: IOException) {
+            return
+        }
+        try {
+            val out = DataOutputStream(BufferedOutputStream(outputStream))
+            out.writeInt(FORMAT_VERSION)
+            writeMetadata(out, metadata)
+            val configurationBytes = configurationJson.toByteArray(Charsets.UTF_8)
+            out.writeInt(configurationBytes.size)
+            out.write(configurationBytes)
+            out.flush()
+            file.finishWrite(outputStream)
+            file.baseFile.setLastModified(time.currentTime)
+        } catch (e: IOException) {
+            file.failWrite(outputStream)
+        }
+        if (isTrimDue()) trim()
+    }
+
+    /**
+     * Replaces the metadata of the entry stored under [cacheKey], keeping its configuration.
+     */
+    @Synchronized
+    fun writeMetadata(cacheKey: String, metadata: Metadata) {
+        read(cacheKey)?.let { entry -> write(cacheKey, entry.configurationJson, metadata) }
+    }
+
+    @Synchronized
+    fun delete(cacheKey: String) {
+        val file = createAtomicFile(cacheKey)
+        file.delete()
+        lastReadMillis.remove(file.baseFile.name)
+    }
+
+    @Synchronized
+    fun clear() {
+        directory.listFiles()?.forEach { it.delete() }
+        lastReadMillis.clear()
+    }
+
+    /**
+     * Removes unused entries and then the least recently used ones until the store is within its
+     * entry count and byte budget.
+     */
+    @Synchronized
+    fun trim() {
+        val now = time.currentTime
+        lastTrimMillis = now
+        val (unused, inUse) = listEntryFiles()
+            .map { it to lastUsedMillis(it) }
+            .sortedByDescending { (_, lastUsedMillis) -> lastUsedMillis }
+            .partition { (_, lastUsedMillis) -> now - lastUsedMillis >= maxUnusedMillis }
+        unused.forEach { (file, _) -> deleteEntryFile(file) }
+
+        var totalBytes = 0L
+        inUse.forEachIndexed { index, (file, _) ->
+            totalBytes += file.length()
+            // always keep the most recently used entry, which is usually the one just written
+            if (index > 0 && (index >= maxEntries || totalBytes > maxBytes)) {
+                deleteEntryFile(file)
+            }
+        }
+    }
+
+    private fun isTrimDue(): Boolean =
+        lastTrimMillis.let { it == null || time.currentTime - it >= minTrimIntervalMillis }
+
+    private fun lastUsedMillis(file: File): Long =
+        maxOf(file.lastModified(), lastReadMillis[file.name] ?: 0L)
+
+    private fun deleteEntryFile(file: File) {
+        AtomicFile(file).delete()
+        lastReadMillis.remove(file.name)
+    }
+
+    private fun listEntryFiles(): List<File> =
+        directory.listFiles { file -> ENTRY_FILE_NAME.matches(file.name) }?.toList().orEmpty()
+
+    private fun read(cacheKey: String, readConfiguration: Boolean): Entry? {
+        val file = createAtomicFile(cacheKey)
+        val inputStream = try {
+            file.openRead()
+        } catch (e: FileNotFoundException) {
+            return null
+        }
+        lastReadMillis[file.baseFile.name] = time.currentTime
+        return try {
+            DataInputStream(BufferedInputStream(inputStream, READ_BUFFER_SIZE)).use { input ->
+                if (input.readInt() != FORMAT_VERSION) return null
+                val metadata = Metadata(
+                    cachedAtMillis = input.readLong(),
+                    eTag = readNullableString(input),
+                    lastModified = readNullableString(input)
+                )
+                val configurationJson = if (readConfiguration) {
+                    val configurationBytes = ByteArray(input.readInt())
+                    input.readFully(configurationBytes)
+                    String(configurationBytes, Charsets.UTF_8)
+                } else {
+                    ""
+                }
+                Entry(metadata, configurationJson)
+            }
+        } catch (e: IOException) {
+            null
+        }
+    }
+
+    private fun createAtomicFile(cacheKey: String) = AtomicFile(File(directory, fileName(cacheKey)))
+
+    companion object {
+        private const val DIRECTORY_NAME = "com.braintreepayments.api.configuration"
+        private const val FORMAT_VERSION = 1
+        private const val READ_BUFFER_SIZE = 8 * 1024
+
+        private const val MAX_ENTRIES = 16
+        private const val MAX_BYTES = 256L * 1024
+        private val MAX_UNUSED_MILLIS = TimeUnit.DAYS.toMillis(7)
+        private val MIN_TRIM_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1)
+
+        // SHA-256 hex digests, which excludes the temporary files used by AtomicFile
+        private val ENTRY_FILE_NAME = Regex("[0-9a-f]{64}")
+
+        @Volatile
+        private var INSTANCE: ConfigurationStore? = null
+
+        @JvmStatic
+        fun getInstance(context: Context): ConfigurationStore =
+            INSTANCE ?: synchronized(this) {
+                INSTANCE ?: ConfigurationStore(
+                    File(context.applicationContext.noBackupFilesDir, DIRECTORY_NAME)
+                ).also { INSTANCE = it }
+            }
+
+        // cache keys are Base64 and may contain characters that are not valid in file names
+        private fun fileName(cacheKey: String): String =
+            MessageDigest.getInstance("SHA-256")
+                .digest(cacheKey.toByteArray(Charsets.UTF_8))
+                .joinToString("") { "%02x".format(it) }
+
+        private fun writeMetadata(out: DataOutputStream, metadata: Metadata) {
+            out.writeLong(metadata.cachedAtMillis)
+            writeNullableString(out, metadata.eTag)
+            writeNullableString(out, metadata.lastModified)
+        }
+
+        private fun writeNullableString(out: DataOutputStream, value: String?) {
+            out.writeBoolean(value != null)
+            value?.let { out.writeUTF(it) }
+        }
+
+        private fun readNullableString(input: DataInputStream): String? =
+            if (input.readBoolean()) input.readUTF() else null
+    }
+}
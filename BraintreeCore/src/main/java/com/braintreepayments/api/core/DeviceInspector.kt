@@ -18,6 +18,20 @@ internal class DeviceInspector(
         configuration: Configuration?,
         sessionId: String?,
         integration: IntegrationType?
+    ): DeviceMetadata = getDeviceMetadata(
+        context = context,
+        merchantId = configuration?.merchantId,
+        environment = configuration?.environment,
+        sessionId = sessionId,
+        integration = integration
+    )
+
+    fun getDeviceMetadata(
+        context: Context?,
+        merchantId: String?,
+        environment: String?,
+        sessionId: String?,
+        integration: IntegrationType?
     ): DeviceMetadata {
         return DeviceMetadata(
             appId = context?.packageName,
@@ -28,12 +42,12 @@ internal class DeviceInspector(
             deviceManufacturer = Build.MANUFACTURER,
             deviceModel = Build.MODEL,
             dropInSDKVersion = dropInVersion,
-            environment = configuration?.environment,
+            environment = environment,
             eventSource = "mobile-native",
             integrationType = integration,
             isSimulator = isDeviceEmulator,
             merchantAppVersion = getAppVersion(context),
-            merchantId = configuration?.merchantId,
+            merchantId = merchantId,
             platform = "Android",
             sessionId = sessionId
         )
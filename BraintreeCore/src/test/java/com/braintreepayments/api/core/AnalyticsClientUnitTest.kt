@@ -8,6 +8,9 @@ import com.braintreepayments.api.core.AnalyticsClient.Companion.WORK_INPUT_KEY_S
 import com.braintreepayments.api.core.AnalyticsClient.Companion.WORK_NAME_ANALYTICS_UPLOAD
 import com.braintreepayments.api.core.Authorization.Companion.fromString
 import com.braintreepayments.api.core.Configuration.Companion.fromJson
+import com.braintreepayments.api.sharedutils.BraintreeSharedPreferences
+import com.braintreepayments.api.sharedutils.HttpRequest
+import com.braintreepayments.api.sharedutils.HttpResponseTiming
 import com.braintreepayments.api.sharedutils.Time
 import com.braintreepayments.api.testutils.Fixtures
 import io.mockk.*
@@ -40,6 +43,8 @@ class AnalyticsClientUnitTest {
     private lateinit var workManager: WorkManager
     private lateinit var analyticsDatabase: AnalyticsDatabase
     private lateinit var analyticsEventBlobDao: AnalyticsEventBlobDao
+    private lateinit var eventBuffer: AnalyticsEventBuffer
+    private lateinit var sharedPreferences: BraintreeSharedPreferences
 
     private lateinit var sut: AnalyticsClient
 
@@ -64,11 +69,18 @@ class AnalyticsClientUnitTest {
         analyticsEventBlobDao = mockk(relaxed = true)
         workManager = mockk(relaxed = true)
         time = mockk(relaxed = true)
+        eventBuffer = mockk(relaxed = true)
+        sharedPreferences = mockk(relaxed = true)
 
         every { analyticsDatabase.analyticsEventBlobDao() } returns analyticsEventBlobDao
         every { analyticsParamRepository.sessionId } returns sessionId
 
         every { time.currentTime } returns 123
+        every {
+            sharedPreferences.getString("analyticsSession.$sessionId", null)
+        } returns createSessionContextJson(authorization)
+        every { sharedPreferences.keys } returns setOf("analyticsSession.$sessionId")
+        every { analyticsEventBlobDao.getSessionIds() } returns listOf(sessionId)
 
         sut = AnalyticsClient(
             context = context,
@@ -77,29 +89,25 @@ class AnalyticsClientUnitTest {
             workManager = workManager,
             deviceInspector = deviceInspector,
             analyticsParamRepository = analyticsParamRepository,
-            time = time
+            time = time,
+            eventBuffer = eventBuffer,
+            sharedPreferences = sharedPreferences
         )
     }
 
     @Test
     @Throws(JSONException::class)
-    fun sendEvent_convertsAnalyticsEventWithRequiredParamsToJSONAndEnqueuesItForWriteToDbWorker() {
-        val workRequestSlot = slot<OneTimeWorkRequest>()
-        every {
-            workManager.enqueueUniqueWork(
-                "writeAnalyticsToDb",
-                ExistingWorkPolicy.APPEND_OR_REPLACE,
-                capture(workRequestSlot)
-            )
-        } returns mockk()
+    fun sendEvent_convertsAnalyticsEventWithRequiredParamsToJSONAndAddsItToEventBuffer() {
+        val eventBlobSlot = slot<AnalyticsEventBlob>()
+        every { eventBuffer.add(capture(eventBlobSlot)) } returns Unit
 
         val event = AnalyticsEvent(eventName, timestamp = 123)
 
         sut.sendEvent(configuration, event, integration, authorization)
 
-        val workSpec = workRequestSlot.captured.workSpec
-        assertEquals(AnalyticsWriteToDbWorker::class.java.name, workSpec.workerClassName)
-        assertEquals(authorization.toString(), workSpec.input.getString("authorization"))
+        val eventBlob = eventBlobSlot.captured
+        assertEquals(sessionId, eventBlob.sessionId)
+        assertEquals(123L, eventBlob.createdAt)
 
         // language=JSON
         val expectedJSON = """
@@ -110,7 +118,58 @@ class AnalyticsClientUnitTest {
           "tenant_name": "Braintree"
         }
         """
-        val actualJSON = workSpec.input.getString(WORK_INPUT_KEY_ANALYTICS_JSON)!!
+        val actualJSON = eventBlobSlot.captured.toJson()
+        JSONAssert.assertEquals(JSONObject(expectedJSON), JSONObject(actualJSON), true)
+    }
+
+    @Test
+    fun sendEvent_whenEventHasNetworkTiming_addsPhaseDurationsToJSON() {
+        val eventBlobSlot = slot<AnalyticsEventBlob>()
+        every { eventBuffer.add(capture(eventBlobSlot)) } returns Unit
+
+        val timing = HttpResponseTiming(
+            startTime = 100,
+            endTime = 180,
+            connectDuration = 10,
+            tlsHandshakeDuration = 20,
+            requestWriteDuration = 5,
+            timeToFirstByte = 45,
+            bodyReadDuration = 15,
+            totalDuration = 95,
+            bytesSent = 256,
+            bytesReceived = -1
+        )
+        val event = AnalyticsEvent(
+            eventName,
+            timestamp = 123,
+            startTime = 100,
+            endTime = 180,
+            endpoint = "/v1/configuration",
+            networkTiming = timing
+        )
+
+        sut.sendEvent(configuration, event, integration, authorization)
+
+        // language=JSON
+        val expectedJSON = """
+        {
+          "event_name": "sample-event-name",
+          "t": 123,
+          "is_vault": false,
+          "tenant_name": "Braintree",
+          "start_time": 100,
+          "end_time": 180,
+          "endpoint": "/v1/configuration",
+          "connect_duration": 10,
+          "tls_handshake_duration": 20,
+          "request_write_duration": 5,
+          "time_to_first_byte": 45,
+          "body_read_duration": 15,
+          "total_duration": 95,
+          "request_bytes": 256
+        }
+        """
+        val actualJSON = eventBlobSlot.captured.toJson()
         JSONAssert.assertEquals(JSONObject(expectedJSON), JSONObject(actualJSON), true)
     }
 
@@ -160,6 +219,14 @@ class AnalyticsClientUnitTest {
         JSONAssert.assertEquals(JSONObject(expectedJSON), JSONObject(actualJSON), true)
     }
 
+    @Test
+    fun warmUp_preconnectsToAnalyticsHostAndWarmsUpEventBuffer() {
+        sut.warmUp()
+
+        verify { httpClient.preconnect("https://api-m.paypal.com/v1/tracking/batch/events") }
+        verify { eventBuffer.warmUp() }
+    }
+
     @Test
     fun writeAnalytics_whenAnalyticsJSONIsPresent_returnsSuccess() {
         val inputData = Data.Builder()
@@ -182,56 +249,80 @@ class AnalyticsClientUnitTest {
         val analyticsEventBlobSlot = slot<AnalyticsEventBlob>()
         every { analyticsEventBlobDao.insertEventBlob(capture(analyticsEventBlobSlot)) } returns Unit
 
-        val json = JSONObject().put("fake", "json").toString()
+        val json = JSONObject()
+            .put("event_name", "fake-event")
+            .put("t", 456)
+            .put("paypal_context_id", "fake-paypal-context-id")
+            .toString()
         val inputData = Data.Builder()
             .putString(WORK_INPUT_KEY_ANALYTICS_JSON, json)
             .putString(WORK_INPUT_KEY_SESSION_ID, sessionId)
             .build()
 
-        sut.performAnalyticsWrite(inputData)
+        val result = sut.performAnalyticsWrite(inputData)
 
+        assertTrue(result is ListenableWorker.Result.Success)
         val blob = analyticsEventBlobSlot.captured
-        assertEquals(json, blob.jsonString)
+        assertEquals(sessionId, blob.sessionId)
+        assertEquals("fake-event", blob.name)
+        assertEquals(456L, blob.timestamp)
+        assertEquals("fake-paypal-context-id", blob.payPalContextId)
     }
 
     @Test
-    @Throws(Exception::class)
-    fun uploadAnalytics_whenNoEventsExist_doesNothing() {
+    fun writeAnalytics_whenAnalyticsJSONIsInvalid_returnsFailure() {
         val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
+            .putString(WORK_INPUT_KEY_ANALYTICS_JSON, """{ "fake": "json" }""")
+            .putString(WORK_INPUT_KEY_SESSION_ID, sessionId)
             .build()
-        val sut =
-            AnalyticsClient(context, httpClient, analyticsDatabase, workManager, deviceInspector)
-        sut.performAnalyticsUpload(inputData)
 
-        // or confirmVerified(httpClient)
+        val result = sut.performAnalyticsWrite(inputData)
+
+        assertTrue(result is ListenableWorker.Result.Failure)
+        verify(exactly = 0) { analyticsEventBlobDao.insertEventBlob(any()) }
+    }
+
+    @Test
+    fun uploadAnalytics_whenNoEventsExist_doesNothing() {
+        every { analyticsEventBlobDao.getSessionIds() } returns emptyList()
+
+        val result = sut.performAnalyticsUpload()
+
+        assertTrue(result is ListenableWorker.Result.Success)
         verify { httpClient wasNot Called }
     }
 
+    @Test
+    fun uploadAnalytics_flushesEventBufferBeforeReadingEvents() {
+        sut.performAnalyticsUpload()
+
+        verifyOrder {
+            eventBuffer.flush()
+            analyticsEventBlobDao.getSessionIds()
+        }
+    }
+
     @Test
     @Throws(Exception::class)
     @Suppress("LongMethod")
     fun uploadAnalytics_whenEventsExist_sendsAllEvents() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
         val metadata = createSampleDeviceMetadata()
 
         every { deviceInspector.isVenmoInstalled(context) } returns true
         every {
-            deviceInspector.getDeviceMetadata(context, any(), sessionId, integration)
+            deviceInspector.getDeviceMetadata(
+                context,
+                configuration.merchantId,
+                configuration.environment,
+                sessionId,
+                integration
+            )
         } returns metadata
 
         val blobs = listOf(
-            AnalyticsEventBlob(jsonString = """{ "fake": "json" }""", sessionId = sessionId)
+            AnalyticsEventBlob(sessionId = sessionId, name = "fake-event", timestamp = 456)
         )
-        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId) } returns blobs
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
 
         val analyticsJSONSlot = slot<String>()
         every {
@@ -239,11 +330,12 @@ class AnalyticsClientUnitTest {
                 "https://api-m.paypal.com/v1/tracking/batch/events",
                 capture(analyticsJSONSlot),
                 any(),
-                any()
+                any(),
+                true
             )
         }
 
-        sut.performAnalyticsUpload(inputData)
+        sut.performAnalyticsUpload()
 
         // language=JSON
         val expectedJSON = """
@@ -270,7 +362,12 @@ class AnalyticsClientUnitTest {
                 "tokenization_key": "sandbox_tmxhyf7d_dcpspy2brwdjr3qn"
               },
               "event_params": [
-                { "fake": "json" }
+                {
+                  "event_name": "fake-event",
+                  "t": 456,
+                  "is_vault": false,
+                  "tenant_name": "Braintree"
+                }
               ]
             }
           ]
@@ -281,160 +378,166 @@ class AnalyticsClientUnitTest {
     }
 
     @Test
-    fun uploadAnalytics_whenConfigurationIsNull_doesNothing() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
+    fun uploadAnalytics_sendsEventsOfEachSessionInItsOwnPayload() {
+        val otherSessionId = "other-session-id"
+        every { analyticsEventBlobDao.getSessionIds() } returns listOf(sessionId, otherSessionId)
+        every {
+            sharedPreferences.getString("analyticsSession.$otherSessionId", null)
+        } returns createSessionContextJson(fromString(Fixtures.BASE64_CLIENT_TOKEN2))
+        val blobs =
+            listOf(AnalyticsEventBlob(id = 1, sessionId = sessionId, name = "event", timestamp = 1))
+        val otherBlobs = listOf(
+            AnalyticsEventBlob(id = 2, sessionId = otherSessionId, name = "event", timestamp = 1)
+        )
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
+        every {
+            analyticsEventBlobDao.getBlobsBySessionId(otherSessionId, 0L, 100)
+        } returns otherBlobs
 
-        val result = sut.performAnalyticsUpload(inputData)
-        assertTrue(result is ListenableWorker.Result.Failure)
+        val result = sut.performAnalyticsUpload()
 
-        // or confirmVerified(httpClient)
-        verify { httpClient wasNot Called }
+        assertTrue(result is ListenableWorker.Result.Success)
+        verify(exactly = 2) { httpClient.post(any(), any(), null, any(), true) }
+        verify {
+            deviceInspector.getDeviceMetadata(
+                context,
+                configuration.merchantId,
+                configuration.environment,
+                otherSessionId,
+                integration
+            )
+        }
+        verify { analyticsEventBlobDao.deleteEventBlobs(blobs) }
+        verify { analyticsEventBlobDao.deleteEventBlobs(otherBlobs) }
     }
 
     @Test
-    @Throws(JSONException::class)
-    fun uploadAnalytics_whenAuthorizationIsNull_doesNothing() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
+    fun uploadAnalytics_whenSessionContextIsNotStored_leavesSessionEvents() {
+        every {
+            sharedPreferences.getString("analyticsSession.$sessionId", null)
+        } returns null
 
-        val result = sut.performAnalyticsUpload(inputData)
-        assertTrue(result is ListenableWorker.Result.Failure)
+        val result = sut.performAnalyticsUpload()
 
-        // or confirmVerified(httpClient)
+        assertTrue(result is ListenableWorker.Result.Success)
         verify { httpClient wasNot Called }
+        verify(exactly = 0) { analyticsEventBlobDao.deleteEventBlobs(any()) }
     }
 
     @Test
     @Throws(JSONException::class)
     fun uploadAnalytics_whenAuthorizationIsClientToken_includesAuthFingerprintBatchParam() {
-        val inputData = Data.Builder()
-            .putString(
-                AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION,
-                Fixtures.BASE64_CLIENT_TOKEN2
-            )
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
-
         every {
-            deviceInspector.getDeviceMetadata(context, any(), sessionId, integration)
+            sharedPreferences.getString("analyticsSession.$sessionId", null)
+        } returns createSessionContextJson(fromString(Fixtures.BASE64_CLIENT_TOKEN2))
+        every {
+            deviceInspector.getDeviceMetadata(context, any(), any(), sessionId, integration)
         } returns createSampleDeviceMetadata()
-
         val blobs = listOf(
-            AnalyticsEventBlob(
-                jsonString = """{ "fake": "json" }""",
-                sessionId = sessionId
-            )
+            AnalyticsEventBlob(sessionId = sessionId, name = "fake-event", timestamp = 456)
         )
-        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId) } returns blobs
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
 
         val analyticsJSONSlot = slot<String>()
-        every { httpClient.post(any(), capture(analyticsJSONSlot), any(), any()) }
+        every { httpClient.post(any(), capture(analyticsJSONSlot), any(), any(), any()) }
 
-        sut.performAnalyticsUpload(inputData)
+        sut.performAnalyticsUpload()
 
         val analyticsJson = JSONObject(analyticsJSONSlot.captured)
-
         val eventJSON = analyticsJson.getJSONArray("events")[0] as JSONObject
         val batchParams = eventJSON["batch_params"] as JSONObject
         assertEquals("encoded_auth_fingerprint", batchParams["authorization_fingerprint"])
+        // the stored context has no client token to authorize the request with
+        assertEquals("encoded_auth_fingerprint", analyticsJson["authorizationFingerprint"])
+        verify { httpClient.post(any(), any(), null, null, true) }
     }
 
     @Test
-    @Throws(JSONException::class)
-    fun uploadAnalytics_whenSessionIdIsNull_doesNothing() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
+    fun uploadAnalytics_whenAuthorizationIsTokenizationKey_sendsItAsAuthorization() {
+        val blobs = listOf(
+            AnalyticsEventBlob(sessionId = sessionId, name = "fake-event", timestamp = 456)
+        )
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
+        val authorizationSlot = slot<Authorization>()
+        every { httpClient.post(any(), any(), any(), capture(authorizationSlot), any()) }
 
-        val result = sut.performAnalyticsUpload(inputData)
-        assertTrue(result is ListenableWorker.Result.Failure)
+        sut.performAnalyticsUpload()
 
-        // or confirmVerified(httpClient)
-        verify { httpClient wasNot Called }
+        assertTrue(authorizationSlot.captured is TokenizationKey)
+        assertEquals(Fixtures.TOKENIZATION_KEY, authorizationSlot.captured.bearer)
     }
 
     @Test
-    @Throws(JSONException::class)
-    fun uploadAnalytics_whenIntegrationIsNull_doesNothing() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .build()
+    fun uploadAnalytics_readsEventsInPagesAndSendsThemTogether() {
+        val firstPage = (1L..100L).map {
+            AnalyticsEventBlob(id = it, sessionId = sessionId, name = "event", timestamp = 1)
+        }
+        val lastPage = listOf(
+            AnalyticsEventBlob(id = 101, sessionId = sessionId, name = "event", timestamp = 1)
+        )
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns firstPage
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 100L, 100) } returns lastPage
 
-        val result = sut.performAnalyticsUpload(inputData)
-        assertTrue(result is ListenableWorker.Result.Failure)
+        val result = sut.performAnalyticsUpload()
 
-        // or confirmVerified(httpClient)
-        verify { httpClient wasNot Called }
+        assertTrue(result is ListenableWorker.Result.Success)
+        verify(exactly = 1) { httpClient.post(any(), any(), null, any(), true) }
+        verify { analyticsEventBlobDao.deleteEventBlobs(firstPage + lastPage) }
+        verify(exactly = 0) { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 101L, any()) }
     }
 
     @Test
-    @Throws(Exception::class)
-    fun uploadAnalytics_deletesDatabaseEventsOnSuccessResponse() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
-
-        val metadata = createSampleDeviceMetadata()
-        every {
-            deviceInspector.getDeviceMetadata(context, any(), sessionId, integration)
-        } returns metadata
-
-        val blobs = listOf(
-            AnalyticsEventBlob(
-                jsonString = """{ "fake": "json" }""",
-                sessionId = sessionId
-            )
+    fun uploadAnalytics_splitsSessionEventsIntoPayloadsWithinByteBudget() {
+        val sut = AnalyticsClient(
+            context = context,
+            httpClient = httpClient,
+            analyticsDatabase = analyticsDatabase,
+            workManager = workManager,
+            deviceInspector = deviceInspector,
+            analyticsParamRepository = analyticsParamRepository,
+            time = time,
+            eventBuffer = eventBuffer,
+            sharedPreferences = sharedPreferences,
+            uploadPolicy = AnalyticsUploadPolicy(maxPayloadBytes = 250)
         )
-        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId) } returns blobs
+        val blobs = (1L..3L).map {
+            AnalyticsEventBlob(id = it, sessionId = sessionId, name = "event", timestamp = it)
+        }
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
 
-        sut.performAnalyticsUpload(inputData)
+        sut.performAnalyticsUpload()
 
-        verify { analyticsEventBlobDao.deleteEventBlobs(blobs) }
+        verify(exactly = 2) { httpClient.post(any(), any(), null, any(), true) }
+        verifyOrder {
+            analyticsEventBlobDao.deleteEventBlobs(blobs.subList(0, 2))
+            analyticsEventBlobDao.deleteEventBlobs(blobs.subList(2, 3))
+        }
     }
 
     @Test
-    @Throws(Exception::class)
-    fun uploadAnalytics_whenAnalyticsSendFails_returnsError() {
-        val inputData = Data.Builder()
-            .putString(AnalyticsClient.WORK_INPUT_KEY_AUTHORIZATION, authorization.toString())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_CONFIGURATION, configuration.toJson())
-            .putString(AnalyticsClient.WORK_INPUT_KEY_SESSION_ID, sessionId)
-            .putString(AnalyticsClient.WORK_INPUT_KEY_INTEGRATION, integration.stringValue)
-            .build()
+    fun uploadAnalytics_whenAnalyticsSendFails_keepsEventsAndReturnsRetry() {
+        val blobs = listOf(AnalyticsEventBlob(sessionId = sessionId, name = "event", timestamp = 1))
+        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId, 0L, 100) } returns blobs
+        every { httpClient.post(any(), any(), any(), any(), any()) } throws Exception("error")
 
-        every {
-            deviceInspector.getDeviceMetadata(context, any(), sessionId, integration)
-        } returns createSampleDeviceMetadata()
+        val result = sut.performAnalyticsUpload()
 
-        val blobs = listOf(
-            AnalyticsEventBlob(
-                jsonString = """{ "fake": "json" }""",
-                sessionId = sessionId
-            )
+        assertTrue(result is ListenableWorker.Result.Retry)
+        verify(exactly = 0) { analyticsEventBlobDao.deleteEventBlobs(any()) }
+    }
+
+    @Test
+    fun uploadAnalytics_removesContextsOfOtherSessionsWithoutEvents() {
+        every { analyticsEventBlobDao.getSessionIds() } returns emptyList()
+        every { sharedPreferences.keys } returns setOf(
+            "analyticsSession.$sessionId",
+            "analyticsSession.old-session-id",
+            "InstallationGUID"
         )
-        every { analyticsEventBlobDao.getBlobsBySessionId(sessionId) } returns blobs
 
-        val httpError = Exception("error")
-        every { httpClient.post(any(), any(), any(), any()) } throws httpError
+        sut.performAnalyticsUpload()
 
-        val result = sut.performAnalyticsUpload(inputData)
-        assertTrue(result is ListenableWorker.Result.Failure)
+        verify { sharedPreferences.removeKeys("analyticsSession.old-session-id") }
     }
 
     @Test
@@ -454,6 +557,7 @@ class AnalyticsClientUnitTest {
                 data = capture(analyticsJSONSlot),
                 configuration = any(),
                 authorization = authorization,
+                priority = HttpRequest.PRIORITY_BACKGROUND,
                 callback = any()
             )
         } returns Unit
@@ -518,18 +622,86 @@ class AnalyticsClientUnitTest {
     }
 
     @Test
-    fun `sendEvent enqueues work to upload analytic events with sessionId in the name`() {
-        sut.sendEvent(configuration, AnalyticsEvent("event-name", timestamp), integration, authorization)
-
-        verify {
+    fun sendEvent_enqueuesOneUploadForAllSessionsWithoutData() {
+        val workRequestSlot = slot<OneTimeWorkRequest>()
+        every {
             workManager.enqueueUniqueWork(
-                WORK_NAME_ANALYTICS_UPLOAD + sessionId,
+                WORK_NAME_ANALYTICS_UPLOAD,
                 ExistingWorkPolicy.KEEP,
-                any<OneTimeWorkRequest>()
+                capture(workRequestSlot)
+            )
+        } returns mockk()
+
+        sut.sendEvent(configuration, AnalyticsEvent(eventName, timestamp), integration, authorization)
+
+        val workSpec = workRequestSlot.captured.workSpec
+        assertEquals(AnalyticsUploadWorker::class.java.name, workSpec.workerClassName)
+        assertEquals(30000, workSpec.initialDelay)
+        assertTrue(workSpec.input.keyValueMap.isEmpty())
+        assertEquals(NetworkType.CONNECTED, workSpec.constraints.requiredNetworkType)
+        assertFalse(workSpec.constraints.requiresBatteryNotLow())
+    }
+
+    @Test
+    fun sendEvent_withUploadPolicy_setsUploadConstraints() {
+        val sut = AnalyticsClient(
+            context = context,
+            httpClient = httpClient,
+            analyticsDatabase = analyticsDatabase,
+            workManager = workManager,
+            deviceInspector = deviceInspector,
+            analyticsParamRepository = analyticsParamRepository,
+            time = time,
+            eventBuffer = eventBuffer,
+            sharedPreferences = sharedPreferences,
+            uploadPolicy = AnalyticsUploadPolicy(
+                requiresUnmeteredNetwork = true,
+                requiresBatteryNotLow = true
+            )
+        )
+        val workRequestSlot = slot<OneTimeWorkRequest>()
+        every {
+            workManager.enqueueUniqueWork(any(), any(), capture(workRequestSlot))
+        } returns mockk()
+
+        sut.sendEvent(configuration, AnalyticsEvent(eventName, timestamp), integration, authorization)
+
+        val constraints = workRequestSlot.captured.workSpec.constraints
+        assertEquals(NetworkType.UNMETERED, constraints.requiredNetworkType)
+        assertTrue(constraints.requiresBatteryNotLow())
+    }
+
+    @Test
+    fun sendEvent_storesSessionContext() {
+        every {
+            sharedPreferences.getString("analyticsSession.$sessionId", null)
+        } returns null
+
+        sut.sendEvent(configuration, AnalyticsEvent(eventName, timestamp), integration, authorization)
+
+        verify {
+            sharedPreferences.putString(
+                "analyticsSession.$sessionId",
+                createSessionContextJson(authorization)
             )
         }
     }
 
+    @Test
+    fun sendEvent_whenSessionContextIsAlreadyStored_doesNotStoreItAgain() {
+        sut.sendEvent(configuration, AnalyticsEvent(eventName, timestamp), integration, authorization)
+
+        verify(exactly = 0) { sharedPreferences.putString(any(), any()) }
+    }
+
+    private fun createSessionContextJson(authorization: Authorization) =
+        AnalyticsSessionContext.create(
+            authorization = authorization,
+            integration = integration.stringValue,
+            merchantId = configuration.merchantId,
+            environment = configuration.environment
+        )!!.toJson()
+
     companion object {
         private fun createSampleDeviceMetadata() = DeviceMetadata(
             appId = "fake-app-id",
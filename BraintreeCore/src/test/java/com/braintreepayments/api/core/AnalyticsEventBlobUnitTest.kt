@@ -0,0 +1,110 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.HttpResponseTiming
+import org.json.JSONException
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.skyscreamer.jsonassert.JSONAssert
+
+@RunWith(RobolectricTestRunner::class)
+class AnalyticsEventBlobUnitTest {
+
+    @Test
+    fun fromEvent_copiesEventParamsIntoColumns() {
+        val event = AnalyticsEvent(
+            name = "event-name",
+            timestamp = 123,
+            payPalContextId = "paypal-context-id",
+            linkType = "link-type",
+            isVaultRequest = true,
+            startTime = 100,
+            endTime = 180,
+            endpoint = "/v1/configuration",
+            networkTiming = HttpResponseTiming(
+                startTime = 100,
+                endTime = 180,
+                connectDuration = 10,
+                tlsHandshakeDuration = 20,
+                requestWriteDuration = 5,
+                timeToFirstByte = 45,
+                bodyReadDuration = 15,
+                totalDuration = 95,
+                bytesSent = 256,
+                bytesReceived = 512
+            )
+        )
+
+        val eventBlob = AnalyticsEventBlob.fromEvent(event, "session-id", createdAt = 456)
+
+        assertEquals("session-id", eventBlob.sessionId)
+        assertEquals(456L, eventBlob.createdAt)
+        assertEquals("event-name", eventBlob.name)
+        assertEquals(123L, eventBlob.timestamp)
+        assertEquals("paypal-context-id", eventBlob.payPalContextId)
+        assertEquals("link-type", eventBlob.linkType)
+        assertEquals(true, eventBlob.isVaultRequest)
+        assertEquals("/v1/configuration", eventBlob.endpoint)
+        assertEquals(10L, eventBlob.connectDuration)
+        assertEquals(95L, eventBlob.totalDuration)
+        assertEquals(256L, eventBlob.requestBytes)
+        assertEquals(512L, eventBlob.responseBytes)
+    }
+
+    @Test
+    fun toJson_leavesOutMissingParams() {
+        val eventBlob = AnalyticsEventBlob(
+            sessionId = "session-id",
+            name = "event-name",
+            timestamp = 123,
+            linkType = "link-type"
+        )
+
+        // language=JSON
+        val expectedJSON = """
+        {
+          "event_name": "event-name",
+          "t": 123,
+          "is_vault": false,
+          "tenant_name": "Braintree",
+          "link_type": "link-type"
+        }
+        """
+        JSONAssert.assertEquals(JSONObject(expectedJSON), JSONObject(eventBlob.toJson()), true)
+    }
+
+    @Test
+    fun fromJson_readsWhatToJsonWrote() {
+        val eventBlob = AnalyticsEventBlob(
+            sessionId = "session-id",
+            createdAt = 456,
+            name = "event-name",
+            timestamp = 123,
+            isVaultRequest = true,
+            payPalContextId = "paypal-context-id",
+            startTime = 100,
+            endTime = 180,
+            endpoint = "/v1/configuration",
+            connectDuration = 10,
+            tlsHandshakeDuration = 20,
+            requestWriteDuration = 5,
+            timeToFirstByte = 45,
+            bodyReadDuration = 15,
+            totalDuration = 95,
+            requestBytes = 256
+        )
+
+        val readEventBlob = AnalyticsEventBlob.fromJson(eventBlob.toJson(), "session-id", 456)
+
+        assertEquals(eventBlob, readEventBlob)
+        assertNull(readEventBlob.responseBytes)
+    }
+
+    @Test(expected = JSONException::class)
+    fun fromJson_whenEventNameIsMissing_throwsJSONException() {
+        AnalyticsEventBlob.fromJson("""{ "t": 123 }""", "session-id", 456)
+    }
+}
@@ -0,0 +1,196 @@
+package com.braintreepayments.api.core
+
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequest
+import androidx.work.WorkManager
+import com.braintreepayments.api.core.AnalyticsClient.Companion.WORK_INPUT_KEY_ANALYTICS_JSON
+import com.braintreepayments.api.core.AnalyticsClient.Companion.WORK_INPUT_KEY_SESSION_ID
+import com.braintreepayments.api.sharedutils.Time
+import io.mockk.every
+import io.mockk.mockk
+import io.mockk.slot
+import io.mockk.verify
+import io.mockk.verifyOrder
+import org.json.JSONObject
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class AnalyticsEventBufferUnitTest {
+
+    private lateinit var analyticsDatabase: AnalyticsDatabase
+    private lateinit var analyticsEventBlobDao: AnalyticsEventBlobDao
+    private lateinit var workManager: WorkManager
+    private lateinit var executor: ScheduledExecutorService
+    private lateinit var time: Time
+
+    private lateinit var sut: AnalyticsEventBuffer
+
+    @Before
+    fun beforeEach() {
+        analyticsDatabase = mockk(relaxed = true)
+        analyticsEventBlobDao = mockk(relaxed = true)
+        workManager = mockk(relaxed = true)
+        executor = mockk(relaxed = true)
+        time = mockk()
+        every { time.currentTime } returns 10_000L
+        every { analyticsDatabase.analyticsEventBlobDao() } returns analyticsEventBlobDao
+
+        sut = AnalyticsEventBuffer(
+            analyticsDatabase,
+            { workManager },
+            executor,
+            capacity = 4,
+            flushBatchSize = 3,
+            flushDelayMillis = 1000,
+            maxStoredEvents = 50,
+            maxEventAgeMillis = 4000,
+            time = time
+        )
+    }
+
+    @Test
+    fun add_schedulesOneDelayedFlushUntilFlushed() {
+        sut.add(createEventBlob("1"))
+        sut.add(createEventBlob("2"))
+
+        verify(exactly = 1) { executor.schedule(any<Runnable>(), 1000, TimeUnit.MILLISECONDS) }
+        verify(exactly = 0) { executor.execute(any<Runnable>()) }
+        assertEquals(2, sut.size)
+
+        sut.flush()
+        sut.add(createEventBlob("3"))
+
+        verify(exactly = 2) { executor.schedule(any<Runnable>(), 1000, TimeUnit.MILLISECONDS) }
+    }
+
+    @Test
+    fun warmUp_opensDatabaseOnWriterThread() {
+        val runnableSlot = slot<Runnable>()
+        every { executor.execute(capture(runnableSlot)) } returns Unit
+
+        sut.warmUp()
+
+        verify(exactly = 0) { analyticsDatabase.openHelper }
+        runnableSlot.captured.run()
+        verify { analyticsDatabase.openHelper.writableDatabase }
+    }
+
+    @Test
+    fun add_whenBatchSizeIsReached_flushesImmediately() {
+        sut.add(createEventBlob("1"))
+        sut.add(createEventBlob("2"))
+        sut.add(createEventBlob("3"))
+
+        verify(exactly = 1) { executor.execute(any<Runnable>()) }
+    }
+
+    @Test
+    fun flush_insertsWaitingEventsInOneBatchInOrder() {
+        val eventBlobsSlot = slot<List<AnalyticsEventBlob>>()
+        every { analyticsEventBlobDao.insertEventBlobs(capture(eventBlobsSlot)) } returns Unit
+
+        sut.add(createEventBlob("1"))
+        sut.add(createEventBlob("2"))
+        sut.flush()
+
+        assertEquals(listOf("1", "2"), eventBlobsSlot.captured.map { it.name })
+        assertEquals(0, sut.size)
+        verify(exactly = 0) { analyticsEventBlobDao.insertEventBlob(any()) }
+    }
+
+    @Test
+    fun flush_afterInsertingPrunesExpiredAndExcessEvents() {
+        sut.add(createEventBlob("1"))
+        sut.flush()
+
+        verifyOrder {
+            analyticsEventBlobDao.insertEventBlobs(any())
+            analyticsEventBlobDao.deleteEventBlobsCreatedBefore(6_000L)
+            analyticsEventBlobDao.deleteOldestEventBlobsBeyond(50)
+        }
+    }
+
+    @Test
+    fun flush_whenPruningFails_doesNotWriteEventsAgain() {
+        every { analyticsEventBlobDao.deleteEventBlobsCreatedBefore(any()) } throws
+            IllegalStateException()
+
+        sut.add(createEventBlob("1"))
+        sut.flush()
+
+        verify(exactly = 0) {
+            workManager.enqueueUniqueWork(any(), any(), any<OneTimeWorkRequest>())
+        }
+    }
+
+    @Test
+    fun flush_whenBufferIsEmpty_doesNotTouchDatabase() {
+        sut.flush()
+
+        verify(exactly = 0) { analyticsDatabase.analyticsEventBlobDao() }
+    }
+
+    @Test
+    fun flush_reusesSlotsAfterWrappingAround() {
+        val batches = mutableListOf<List<AnalyticsEventBlob>>()
+        every { analyticsEventBlobDao.insertEventBlobs(capture(batches)) } returns Unit
+
+        repeat(3) { sut.add(createEventBlob("first-$it")) }
+        sut.flush()
+        repeat(3) { sut.add(createEventBlob("second-$it")) }
+        sut.flush()
+
+        assertEquals(
+            listOf("second-0", "second-1", "second-2"),
+            batches[1].map { it.name }
+        )
+    }
+
+    @Test
+    fun add_whenBufferIsFull_writesEventWithWorkManager() {
+        val workRequestSlot = slot<OneTimeWorkRequest>()
+        every {
+            workManager.enqueueUniqueWork(
+                "writeAnalyticsToDb",
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                capture(workRequestSlot)
+            )
+        } returns mockk()
+
+        repeat(4) { sut.add(createEventBlob("$it")) }
+        sut.add(createEventBlob("overflow"))
+
+        assertEquals(4, sut.size)
+        val workSpec = workRequestSlot.captured.workSpec
+        assertEquals(AnalyticsWriteToDbWorker::class.java.name, workSpec.workerClassName)
+        val eventJson = JSONObject(workSpec.input.getString(WORK_INPUT_KEY_ANALYTICS_JSON)!!)
+        assertEquals("overflow", eventJson.getString("event_name"))
+        assertEquals("session-id", workSpec.input.getString(WORK_INPUT_KEY_SESSION_ID))
+    }
+
+    @Test
+    fun flush_whenInsertFails_writesEventsWithWorkManager() {
+        every { analyticsEventBlobDao.insertEventBlobs(any()) } throws IllegalStateException()
+
+        sut.add(createEventBlob("1"))
+        sut.add(createEventBlob("2"))
+        sut.flush()
+
+        verify(exactly = 2) {
+            workManager.enqueueUniqueWork(
+                "writeAnalyticsToDb",
+                ExistingWorkPolicy.APPEND_OR_REPLACE,
+                any<OneTimeWorkRequest>()
+            )
+        }
+    }
+
+    private fun createEventBlob(name: String) =
+        AnalyticsEventBlob(sessionId = "session-id", name = name, timestamp = 123)
+}
@@ -0,0 +1,82 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.core.AnalyticsSessionContext.AuthorizationType
+import com.braintreepayments.api.testutils.Fixtures
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class AnalyticsSessionContextUnitTest {
+
+    @Test
+    fun fromJson_readsWhatToJsonWrote() {
+        val sessionContext = AnalyticsSessionContext(
+            bearer = "bearer",
+            authorizationType = AuthorizationType.CLIENT_TOKEN,
+            integration = "custom",
+            merchantId = "merchant-id",
+            environment = "sandbox"
+        )
+
+        assertEquals(sessionContext, AnalyticsSessionContext.fromJson(sessionContext.toJson()))
+    }
+
+    @Test
+    fun fromJson_whenOptionalFieldsAreMissing_returnsNulls() {
+        val sessionContext = AnalyticsSessionContext.fromJson(
+            """{ "bearer": "bearer", "authorizationType": "TOKENIZATION_KEY" }"""
+        )!!
+
+        assertEquals("bearer", sessionContext.bearer)
+        assertEquals(AuthorizationType.TOKENIZATION_KEY, sessionContext.authorizationType)
+        assertNull(sessionContext.integration)
+        assertNull(sessionContext.merchantId)
+        assertNull(sessionContext.environment)
+    }
+
+    @Test
+    fun fromJson_whenBearerIsMissing_returnsNull() {
+        assertNull(
+            AnalyticsSessionContext.fromJson(
+                """{ "authorizationType": "CLIENT_TOKEN", "integration": "custom" }"""
+            )
+        )
+    }
+
+    @Test
+    fun fromJson_whenAuthorizationTypeIsUnknown_returnsNull() {
+        assertNull(
+            AnalyticsSessionContext.fromJson(
+                """{ "bearer": "bearer", "authorizationType": "UNKNOWN" }"""
+            )
+        )
+    }
+
+    @Test
+    fun create_withClientToken_keepsOnlyItsBearer() {
+        val clientToken = Authorization.fromString(Fixtures.BASE64_CLIENT_TOKEN)
+
+        val sessionContext =
+            AnalyticsSessionContext.create(clientToken, "custom", "merchant-id", "sandbox")!!
+
+        assertEquals(clientToken.bearer, sessionContext.bearer)
+        assertEquals(AuthorizationType.CLIENT_TOKEN, sessionContext.authorizationType)
+        assertFalse(sessionContext.toJson().contains(Fixtures.BASE64_CLIENT_TOKEN))
+    }
+
+    @Test
+    fun create_withInvalidAuthorization_returnsNull() {
+        val invalidAuthorization = Authorization.fromString("invalid")
+
+        assertNull(AnalyticsSessionContext.create(invalidAuthorization, null, null, null))
+    }
+
+    @Test
+    fun fromJson_whenJsonIsInvalid_returnsNull() {
+        assertNull(AnalyticsSessionContext.fromJson("not json"))
+    }
+}
@@ -0,0 +1,180 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.Time
+import com.braintreepayments.api.testutils.Fixtures
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class AuthorizationLoaderUnitTest {
+
+    private val time: Time = mockk()
+    private val pendingFetches = mutableListOf<AuthorizationCallback>()
+    private val loadedAuthorizations = mutableListOf<String>()
+    private val results = mutableListOf<AuthorizationResult>()
+
+    private lateinit var sut: AuthorizationLoader
+
+    @Before
+    fun beforeEach() {
+        every { time.currentTime } returns 0L
+        sut = AuthorizationLoader(
+            { callback -> pendingFetches.add(callback) },
+            { authorization -> loadedAuthorizations.add(authorization) },
+            time,
+            clientTokenTimeToLiveMillis = 1000L,
+            refreshAheadMillis = 100L
+        )
+    }
+
+    @Test
+    fun prefetch_fetchesAuthorizationAndLoadsConfigurationForIt() {
+        sut.prefetch()
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        assertEquals(listOf(Fixtures.BASE64_CLIENT_TOKEN), loadedAuthorizations)
+    }
+
+    @Test
+    fun loadAuthorization_afterPrefetch_deliversCachedAuthorizationWithoutFetching() {
+        sut.prefetch()
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        sut.loadAuthorization { results.add(it) }
+
+        assertEquals(Fixtures.BASE64_CLIENT_TOKEN, successValue(results.single()))
+        assertTrue(pendingFetches.isEmpty())
+    }
+
+    @Test
+    fun loadAuthorization_whileFetching_sharesTheFetch() {
+        sut.prefetch()
+        sut.loadAuthorization { results.add(it) }
+        sut.loadAuthorization { results.add(it) }
+
+        assertEquals(1, pendingFetches.size)
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        assertEquals(2, results.size)
+        results.forEach { assertEquals(Fixtures.BASE64_CLIENT_TOKEN, successValue(it)) }
+    }
+
+    @Test
+    fun loadAuthorization_closeToExpiry_deliversCachedAuthorizationAndRefreshes() {
+        sut.loadAuthorization { results.add(it) }
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+        every { time.currentTime } returns 950L
+
+        sut.loadAuthorization { results.add(it) }
+
+        assertEquals(2, results.size)
+        assertEquals(1, pendingFetches.size)
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN2)
+        assertEquals(2, results.size)
+
+        sut.loadAuthorization { results.add(it) }
+        assertEquals(Fixtures.BASE64_CLIENT_TOKEN2, successValue(results.last()))
+    }
+
+    @Test
+    fun loadAuthorization_afterClientTokenExpires_waitsForNewAuthorization() {
+        sut.loadAuthorization { results.add(it) }
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+        every { time.currentTime } returns 1000L
+
+        sut.loadAuthorization { results.add(it) }
+
+        assertEquals(1, results.size)
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN2)
+        assertEquals(Fixtures.BASE64_CLIENT_TOKEN2, successValue(results.last()))
+    }
+
+    @Test
+    fun loadAuthorization_withTokenizationKey_neverExpires() {
+        sut.loadAuthorization { results.add(it) }
+        completeFetch(Fixtures.TOKENIZATION_KEY)
+        every { time.currentTime } returns Long.MAX_VALUE - 1
+
+        sut.loadAuthorization { results.add(it) }
+
+        assertEquals(2, results.size)
+        assertTrue(pendingFetches.isEmpty())
+    }
+
+    @Test
+    fun loadAuthorization_whenAuthorizationIsInvalid_deliversFailureAndDoesNotCache() {
+        sut.loadAuthorization { results.add(it) }
+        completeFetch("not an authorization")
+
+        val failure = results.single() as AuthorizationResult.Failure
+        assertTrue(failure.error is BraintreeException)
+        assertTrue(loadedAuthorizations.isEmpty())
+
+        sut.loadAuthorization { results.add(it) }
+        assertEquals(1, pendingFetches.size)
+    }
+
+    @Test
+    fun loadAuthorization_whenProviderFails_deliversFailure() {
+        val error = Exception("server unavailable")
+        sut.loadAuthorization { results.add(it) }
+        pendingFetches.removeAt(0).onAuthorizationResult(AuthorizationResult.Failure(error))
+
+        assertEquals(error, (results.single() as AuthorizationResult.Failure).error)
+    }
+
+    @Test
+    fun invalidate_discardsCachedAuthorization() {
+        sut.prefetch()
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        sut.invalidate()
+        sut.loadAuthorization { results.add(it) }
+
+        assertTrue(results.isEmpty())
+        assertEquals(1, pendingFetches.size)
+    }
+
+    @Test
+    fun invalidate_whileFetching_discardsTheInFlightResult() {
+        sut.prefetch()
+        sut.invalidate()
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        assertTrue(loadedAuthorizations.isEmpty())
+        sut.loadAuthorization { results.add(it) }
+        assertTrue(results.isEmpty())
+        assertEquals(1, pendingFetches.size)
+
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN2)
+        assertEquals(Fixtures.BASE64_CLIENT_TOKEN2, successValue(results.single()))
+    }
+
+    @Test
+    fun invalidate_whileCallbackIsWaiting_deliversNewlyFetchedAuthorization() {
+        sut.loadAuthorization { results.add(it) }
+        sut.invalidate()
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN)
+
+        assertTrue(results.isEmpty())
+        assertEquals(1, pendingFetches.size)
+
+        completeFetch(Fixtures.BASE64_CLIENT_TOKEN2)
+        assertEquals(Fixtures.BASE64_CLIENT_TOKEN2, successValue(results.single()))
+        assertEquals(listOf(Fixtures.BASE64_CLIENT_TOKEN2), loadedAuthorizations)
+    }
+
+    private fun completeFetch(authorization: String) {
+        pendingFetches.removeAt(0)
+            .onAuthorizationResult(AuthorizationResult.Success(authorization))
+    }
+
+    private fun successValue(result: AuthorizationResult) =
+        (result as AuthorizationResult.Success).authorization
+}
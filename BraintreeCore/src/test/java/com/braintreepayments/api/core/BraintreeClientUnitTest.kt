@@ -3,16 +3,24 @@ package com.braintreepayments.api.core
 import android.content.Context
 import android.content.pm.ActivityInfo
 import android.net.Uri
+import android.os.Looper
 import androidx.fragment.app.FragmentActivity
 import androidx.test.core.app.ApplicationProvider
 import androidx.work.testing.WorkManagerTestInitHelper
 import com.braintreepayments.api.BrowserSwitchClient
+import com.braintreepayments.api.sharedutils.HttpCall
+import com.braintreepayments.api.sharedutils.HttpResponse
 import com.braintreepayments.api.sharedutils.HttpResponseCallback
+import com.braintreepayments.api.sharedutils.HttpResponseTiming
 import com.braintreepayments.api.sharedutils.ManifestValidator
 import com.braintreepayments.api.sharedutils.NetworkResponseCallback
 import com.braintreepayments.api.sharedutils.Time
 import com.braintreepayments.api.testutils.Fixtures
 import io.mockk.*
+import kotlinx.coroutines.CoroutineStart
+import kotlinx.coroutines.cancelAndJoin
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
 import org.json.JSONException
 import org.json.JSONObject
 import org.junit.Assert.*
@@ -20,6 +28,7 @@ import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
+import org.robolectric.Shadows.shadowOf
 
 @RunWith(RobolectricTestRunner::class)
 class BraintreeClientUnitTest {
@@ -55,6 +64,7 @@ class BraintreeClientUnitTest {
         expectedAuthException = BraintreeException(message)
 
         every { context.applicationContext } returns applicationContext
+        every { braintreeHttpClient.runOnMain(any()) } answers { firstArg<Runnable>().run() }
         WorkManagerTestInitHelper.initializeTestWorkManager(context)
     }
 
@@ -71,7 +81,10 @@ class BraintreeClientUnitTest {
         val callback = mockk<ConfigurationCallback>(relaxed = true)
         sut.getConfiguration(callback)
 
-        verify { callback.onResult(configuration, null) }
+        verifyOrder {
+            braintreeHttpClient.runOnMain(any())
+            callback.onResult(configuration, null)
+        }
     }
 
     @Test
@@ -96,6 +109,7 @@ class BraintreeClientUnitTest {
 
         val callback = mockk<ConfigurationCallback>(relaxed = true)
         sut.getConfiguration(callback)
+        shadowOf(Looper.getMainLooper()).idle()
 
         val authErrorSlot = slot<BraintreeException>()
         verify { callback.onResult(isNull(), capture(authErrorSlot)) }
@@ -121,6 +135,10 @@ class BraintreeClientUnitTest {
                 "sample-url",
                 configuration,
                 authorization,
+                any(),
+                any(),
+                any(),
+                false,
                 capture(networkResponseCallbackSlot)
             )
         }
@@ -128,6 +146,26 @@ class BraintreeClientUnitTest {
         assertTrue(networkResponseCallbackSlot.isCaptured)
     }
 
+    @Test
+    fun sendGET_notifiesCallbackOnMainThread() {
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(mockk(relaxed = true))
+            .build()
+        val response = HttpResponse("response-body", HttpResponseTiming(1, 2))
+        every {
+            braintreeHttpClient.get(any(), any(), any(), any(), any(), any(), false, any())
+        } answers { lastArg<NetworkResponseCallback>().onResult(response, null) }
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+        val httpResponseCallback = mockk<HttpResponseCallback>(relaxed = true)
+
+        sut.sendGET("sample-url", httpResponseCallback)
+
+        verifyOrder {
+            braintreeHttpClient.runOnMain(any())
+            httpResponseCallback.onResult("response-body", null)
+        }
+    }
+
     @Test
     fun sendGET_onGetConfigurationFailure_forwardsErrorToCallback() {
         val configError = Exception("configuration error")
@@ -150,6 +188,7 @@ class BraintreeClientUnitTest {
 
         val httpResponseCallback = mockk<HttpResponseCallback>(relaxed = true)
         sut.sendGET("sample-url", httpResponseCallback)
+        shadowOf(Looper.getMainLooper()).idle()
 
         val authErrorSlot = slot<BraintreeException>()
         verify { httpResponseCallback.onResult(isNull(), capture(authErrorSlot)) }
@@ -177,6 +216,7 @@ class BraintreeClientUnitTest {
                 data = "{}",
                 configuration = configuration,
                 authorization = authorization,
+                notifyOnMainThread = false,
                 callback = capture(networkResponseCallbackSlot)
             )
         }
@@ -259,6 +299,7 @@ class BraintreeClientUnitTest {
 
         val httpResponseCallback = mockk<HttpResponseCallback>(relaxed = true)
         sut.sendPOST("sample-url", "{}", emptyMap(), httpResponseCallback)
+        shadowOf(Looper.getMainLooper()).idle()
 
         val authErrorSlot = slot<BraintreeException>()
         verify { httpResponseCallback.onResult(isNull(), capture(authErrorSlot)) }
@@ -284,6 +325,8 @@ class BraintreeClientUnitTest {
                 "{}",
                 configuration,
                 authorization,
+                null,
+                false,
                 capture(networkResponseCallbackSlot)
             )
         }
@@ -312,6 +355,7 @@ class BraintreeClientUnitTest {
 
         val httpResponseCallback = mockk<HttpResponseCallback>(relaxed = true)
         sut.sendGraphQLPOST(JSONObject(), httpResponseCallback)
+        shadowOf(Looper.getMainLooper()).idle()
 
         val authErrorSlot = slot<BraintreeException>()
         verify { httpResponseCallback.onResult(isNull(), capture(authErrorSlot)) }
@@ -319,6 +363,141 @@ class BraintreeClientUnitTest {
         assertEquals(expectedAuthException.message, authErrorSlot.captured.message)
     }
 
+    @Test
+    fun awaitConfiguration_returnsConfigurationFromConfigurationLoader() = runBlocking {
+        val configuration = mockk<Configuration>(relaxed = true)
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        assertSame(configuration, sut.awaitConfiguration())
+        verify(exactly = 0) { braintreeHttpClient.runOnMain(any()) }
+    }
+
+    @Test
+    fun awaitConfiguration_whenInvalidAuth_throwsAuthError() = runBlocking {
+        val sut = BraintreeClient(context, "invalid-auth-string")
+
+        val error = assertThrows(BraintreeException::class.java) {
+            runBlocking { sut.awaitConfiguration() }
+        }
+        assertEquals(expectedAuthException.message, error.message)
+    }
+
+    @Test
+    fun awaitGET_returnsResponseBody() = runBlocking {
+        val configuration = mockk<Configuration>(relaxed = true)
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+        every {
+            braintreeHttpClient.get(
+                "sample-url", configuration, authorization, any(), any(), any(), false, any()
+            )
+        } answers {
+            lastArg<NetworkResponseCallback>().onResult(
+                HttpResponse("response-body", HttpResponseTiming(1, 2)),
+                null
+            )
+        }
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        assertEquals("response-body", sut.awaitGET("sample-url"))
+        verify(exactly = 0) { braintreeHttpClient.runOnMain(any()) }
+    }
+
+    @Test
+    fun awaitGET_onGetConfigurationFailure_throwsConfigurationError() = runBlocking {
+        val configError = Exception("configuration error")
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configurationError(configError)
+            .build()
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        val error = assertThrows(Exception::class.java) {
+            runBlocking { sut.awaitGET("sample-url") }
+        }
+        assertEquals(configError.message, error.message)
+    }
+
+    @Test
+    fun awaitPOST_forwardsRequestToHttpClient() = runBlocking {
+        val configuration = mockk<Configuration>(relaxed = true)
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+        val headers = mapOf("name" to "value")
+        every {
+            braintreeHttpClient.post(
+                path = "sample-url",
+                data = "{}",
+                configuration = configuration,
+                authorization = authorization,
+                additionalHeaders = headers,
+                httpCall = any(),
+                notifyOnMainThread = false,
+                callback = any()
+            )
+        } answers {
+            lastArg<NetworkResponseCallback>().onResult(
+                HttpResponse("response-body", HttpResponseTiming(1, 2)),
+                null
+            )
+        }
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        assertEquals("response-body", sut.awaitPOST("sample-url", "{}", headers))
+        verify(exactly = 0) { braintreeHttpClient.runOnMain(any()) }
+    }
+
+    @Test
+    fun awaitPOST_whenCoroutineIsCancelled_cancelsRequestInFlight() = runBlocking {
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(mockk(relaxed = true))
+            .build()
+        val httpCallSlot = slot<HttpCall>()
+        every {
+            braintreeHttpClient.post(
+                path = any(),
+                data = any(),
+                configuration = any(),
+                authorization = any(),
+                additionalHeaders = any(),
+                httpCall = capture(httpCallSlot),
+                notifyOnMainThread = any(),
+                callback = any()
+            )
+        } just runs
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        val job = launch(start = CoroutineStart.UNDISPATCHED) { sut.awaitPOST("sample-url", "{}") }
+        job.cancelAndJoin()
+
+        assertTrue(httpCallSlot.captured.isCancelled)
+    }
+
+    @Test
+    fun awaitGraphQLPOST_forwardsRequestToGraphQLClient() = runBlocking {
+        val configuration = mockk<Configuration>(relaxed = true)
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+        every {
+            braintreeGraphQLClient.post(
+                "{}", configuration, authorization, any<HttpCall>(), false, any()
+            )
+        } answers {
+            lastArg<NetworkResponseCallback>().onResult(
+                HttpResponse("response-body", HttpResponseTiming(1, 2)),
+                null
+            )
+        }
+        val sut = BraintreeClient(createDefaultParams(configurationLoader))
+
+        assertEquals("response-body", sut.awaitGraphQLPOST(JSONObject()))
+    }
+
     @Test
     @Throws(JSONException::class)
     fun sendAnalyticsEvent_sendsEventToAnalyticsClient() {
@@ -357,6 +536,43 @@ class BraintreeClientUnitTest {
         verify { analyticsClient wasNot Called }
     }
 
+    @Test
+    fun warmUp_warmsAnalyticsAndPreconnectsToConfiguredHosts() {
+        val configuration: Configuration = mockk {
+            every { clientApiUrl } returns "https://api.example.com/merchants/id/client_api"
+            every { graphQLUrl } returns "https://graphql.example.com/graphql"
+            every { isGraphQLEnabled } returns true
+        }
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+
+        val params = createDefaultParams(configurationLoader)
+        val sut = BraintreeClient(params)
+        sut.warmUp()
+
+        verify { analyticsClient.warmUp() }
+        verify { braintreeHttpClient.preconnect("https://api.example.com/merchants/id/client_api") }
+        verify { braintreeGraphQLClient.preconnect("https://graphql.example.com/graphql") }
+    }
+
+    @Test
+    fun warmUp_whenGraphQLIsDisabled_doesNotPreconnectToGraphQL() {
+        val configuration: Configuration = mockk {
+            every { clientApiUrl } returns "https://api.example.com/merchants/id/client_api"
+            every { isGraphQLEnabled } returns false
+        }
+        val configurationLoader = MockkConfigurationLoaderBuilder()
+            .configuration(configuration)
+            .build()
+
+        val params = createDefaultParams(configurationLoader)
+        val sut = BraintreeClient(params)
+        sut.warmUp()
+
+        verify(exactly = 0) { braintreeGraphQLClient.preconnect(any()) }
+    }
+
     @Test
     fun isUrlSchemeDeclaredInAndroidManifest_forwardsInvocationToManifestValidator() {
         every {
@@ -417,6 +633,48 @@ class BraintreeClientUnitTest {
         )
     }
 
+    @Test
+    fun configurationStaleWhileRevalidate_isDisabledByDefault() {
+        val params = BraintreeClientParams(BraintreeOptions(applicationContext, authorization))
+        assertEquals(0L, params.configurationLoader.staleWhileRevalidateMillis)
+    }
+
+    @Test
+    fun configurationStaleWhileRevalidate_reachesConfigurationLoaderFromOptions() {
+        val params = BraintreeClientParams(
+            BraintreeOptions(
+                applicationContext,
+                authorization,
+                configurationStaleWhileRevalidateMillis = 60_000L
+            )
+        )
+        assertEquals(60_000L, params.configurationLoader.staleWhileRevalidateMillis)
+    }
+
+    @Test
+    fun configurationCacheKeyScope_isAuthorizationByDefault() {
+        val params = BraintreeClientParams(BraintreeOptions(applicationContext, authorization))
+        assertEquals(
+            ConfigurationLoader.CacheKeyScope.AUTHORIZATION,
+            params.configurationLoader.cacheKeyScope
+        )
+    }
+
+    @Test
+    fun configurationCacheKeyScope_reachesConfigurationLoaderFromOptions() {
+        val params = BraintreeClientParams(
+            BraintreeOptions(
+                applicationContext,
+                authorization,
+                configurationCacheKeyScope = ConfigurationLoader.CacheKeyScope.MERCHANT
+            )
+        )
+        assertEquals(
+            ConfigurationLoader.CacheKeyScope.MERCHANT,
+            params.configurationLoader.cacheKeyScope
+        )
+    }
+
     @Test
     fun integrationType_returnsCustomByDefault() {
         val context = ApplicationProvider.getApplicationContext<Context>()
@@ -4,7 +4,9 @@ import com.braintreepayments.api.testutils.Fixtures
 import com.braintreepayments.api.testutils.FixturesHelper
 import com.braintreepayments.api.sharedutils.HttpClient
 import com.braintreepayments.api.sharedutils.HttpRequest
+import com.braintreepayments.api.sharedutils.HttpResponseBodyDecoder
 import com.braintreepayments.api.sharedutils.NetworkResponseCallback
+import com.braintreepayments.api.sharedutils.RetryPolicy
 import io.mockk.every
 import io.mockk.just
 import io.mockk.mockk
@@ -62,7 +64,7 @@ class BraintreeHttpClientUnitTest {
 
         val httpRequestSlot = slot<HttpRequest>()
         every {
-            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, callback)
+            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, true, callback)
         } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
@@ -82,7 +84,7 @@ class BraintreeHttpClientUnitTest {
         val httpRequestSlot = slot<HttpRequest>()
         val callback = mockk<NetworkResponseCallback>()
         every {
-            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, callback)
+            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, true, callback)
         } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
@@ -107,7 +109,7 @@ class BraintreeHttpClientUnitTest {
         val httpRequestSlot = slot<HttpRequest>()
         val callback = mockk<NetworkResponseCallback>()
         every {
-            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, callback)
+            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, true, callback)
         } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
@@ -126,6 +128,32 @@ class BraintreeHttpClientUnitTest {
         assertEquals("GET", httpRequest.method)
     }
 
+    @Test
+    fun get_withBodyDecoder_setsDecoderOnRequest() {
+        val tokenizationKey = Authorization.fromString(Fixtures.TOKENIZATION_KEY)
+        val bodyDecoder = HttpResponseBodyDecoder { it.read() }
+        val httpRequestSlot = slot<HttpRequest>()
+        val callback = mockk<NetworkResponseCallback>()
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), HttpClient.NO_RETRY, false, callback)
+        } returns Unit
+
+        val sut = BraintreeHttpClient(httpClient)
+        sut.get(
+            "https://example.com/config",
+            null,
+            tokenizationKey,
+            HttpClient.NO_RETRY,
+            HttpRequest.PRIORITY_CONFIGURATION,
+            emptyMap(),
+            false,
+            bodyDecoder,
+            callback
+        )
+
+        assertSame(bodyDecoder, httpRequestSlot.captured.bodyDecoder)
+    }
+
     @Test
     fun get_withInvalidToken_forwardsExceptionToCallback() {
         val authorization: Authorization =
@@ -258,7 +286,9 @@ class BraintreeHttpClientUnitTest {
 
         val callback = mockk<NetworkResponseCallback>()
         val httpRequestSlot = slot<HttpRequest>()
-        every { httpClient.sendRequest(capture(httpRequestSlot), callback) } returns Unit
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), RetryPolicy.NONE, null, true, callback)
+        } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
         sut.post(
@@ -290,7 +320,9 @@ class BraintreeHttpClientUnitTest {
 
         val callback = mockk<NetworkResponseCallback>()
         val httpRequestSlot = slot<HttpRequest>()
-        every { httpClient.sendRequest(capture(httpRequestSlot), callback) } returns Unit
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), RetryPolicy.NONE, null, true, callback)
+        } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
         sut.post(
@@ -347,7 +379,9 @@ class BraintreeHttpClientUnitTest {
 
         val httpRequestSlot = slot<HttpRequest>()
         val callback = mockk<NetworkResponseCallback>()
-        every { httpClient.sendRequest(capture(httpRequestSlot), callback) } returns Unit
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), RetryPolicy.NONE, null, true, callback)
+        } returns Unit
 
         val sut = BraintreeHttpClient(httpClient)
         sut.post(
@@ -420,7 +454,9 @@ class BraintreeHttpClientUnitTest {
         every { tokenizationKey.bearer } returns token
 
         val httpRequestSlot = slot<HttpRequest>()
-        every { httpClient.sendRequest(capture(httpRequestSlot), any()) } just runs
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), any(), any(), any(), any())
+        } just runs
 
         val sut = BraintreeHttpClient(httpClient)
         sut.post(
@@ -441,7 +477,9 @@ class BraintreeHttpClientUnitTest {
         every { tokenizationKey.bearer } returns null
 
         val httpRequestSlot = slot<HttpRequest>()
-        every { httpClient.sendRequest(capture(httpRequestSlot), any()) } just runs
+        every {
+            httpClient.sendRequest(capture(httpRequestSlot), any(), any(), any(), any())
+        } just runs
 
         val sut = BraintreeHttpClient(httpClient)
         sut.post(
@@ -475,7 +513,7 @@ class BraintreeHttpClientUnitTest {
             httpClient.sendRequest(withArg {
                 assertEquals(it.headers["name1"], "value1")
                 assertEquals(it.headers["name2"], "value2")
-            }, callback)
+            }, RetryPolicy.NONE, null, true, callback)
         }
     }
 }
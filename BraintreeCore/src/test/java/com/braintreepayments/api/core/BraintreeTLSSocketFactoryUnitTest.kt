@@ -0,0 +1,34 @@
+package com.braintreepayments.api.core
+
+import org.junit.Assert.assertSame
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+@RunWith(RobolectricTestRunner::class)
+class BraintreeTLSSocketFactoryUnitTest {
+
+    @Test
+    fun getInstance_returnsTheSameFactoryOnEveryCall() {
+        val first = BraintreeTLSSocketFactory.getInstance()
+        val second = BraintreeTLSSocketFactory.getInstance()
+
+        assertSame(first, second)
+    }
+
+    @Test
+    fun getInstance_returnsTheSameFactoryAcrossThreads() {
+        val executor = Executors.newFixedThreadPool(4)
+        try {
+            val factories = (1..8)
+                .map { executor.submit(Callable { BraintreeTLSSocketFactory.getInstance() }) }
+                .map { it.get() }
+
+            factories.forEach { assertSame(BraintreeTLSSocketFactory.getInstance(), it) }
+        } finally {
+            executor.shutdown()
+        }
+    }
+}
@@ -59,4 +59,16 @@ class ClientTokenUnitTest {
             ) as ClientToken
         assertEquals("fake-customer-123", clientToken.customerId)
     }
+
+    @Test
+    fun parsesEnvironmentAndMerchantAccountIdWhenPresent() {
+        val clientToken =
+            fromString(
+                FixturesHelper.base64Encode(
+                    Fixtures.CLIENT_TOKEN_WITH_AUTHORIZATION_FINGERPRINT_OPTIONS
+                )
+            ) as ClientToken
+        assertEquals("sandbox", clientToken.environment)
+        assertNull(clientToken.merchantAccountId)
+    }
 }
@@ -1,5 +1,6 @@
 package com.braintreepayments.api.core
 
+import android.util.Base64
 import com.braintreepayments.api.testutils.Fixtures
 import com.braintreepayments.api.core.Configuration.Companion.fromJson
 import com.braintreepayments.api.sharedutils.BraintreeSharedPreferences
@@ -7,38 +8,76 @@ import org.robolectric.RobolectricTestRunner
 import io.mockk.*
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Rule
 import org.junit.Test
+import org.junit.rules.TemporaryFolder
 import org.junit.runner.RunWith
 import java.util.concurrent.TimeUnit
 
 @RunWith(RobolectricTestRunner::class)
 class ConfigurationCacheUnitTest {
 
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
     private var braintreeSharedPreferences: BraintreeSharedPreferences = mockk(relaxed = true)
+    private lateinit var configurationStore: ConfigurationStore
+
+    @Before
+    fun beforeEach() {
+        configurationStore = ConfigurationStore(temporaryFolder.newFolder())
+    }
 
     @Test
-    fun saveConfiguration_savesConfigurationInSharedPrefs() {
+    fun saveConfiguration_savesConfigurationInStore() {
         val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
-        val sut = ConfigurationCache(braintreeSharedPreferences)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
         sut.saveConfiguration(configuration, "cacheKey", 123L)
-        verify {
-            braintreeSharedPreferences.putStringAndLong(
-                "cacheKey",
-                configuration.toJson(),
-                "cacheKey_timestamp",
-                123L
-            )
-        }
+
+        val entry = configurationStore.read("cacheKey")
+        assertEquals(configuration.toJson(), entry?.configurationJson)
+        assertEquals(ConfigurationStore.Metadata(123L), entry?.metadata)
     }
 
     @Test
-    fun getConfiguration_returnsConfigurationFromSharedPrefs() {
+    fun saveConfiguration_withValidators_storesThemAlongsideConfiguration() {
         val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
-        every { braintreeSharedPreferences.containsKey("cacheKey_timestamp") } returns true
-        every { braintreeSharedPreferences.getLong("cacheKey_timestamp") } returns 0L
-        every { braintreeSharedPreferences.getString("cacheKey", "") } returns configuration.toJson()
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 123L, "\"etag\"", "last-modified")
+
+        assertEquals("\"etag\"", sut.getETag("cacheKey"))
+        assertEquals("last-modified", sut.getLastModified("cacheKey"))
+        assertEquals(123L, sut.getTimestamp("cacheKey"))
+    }
 
-        val sut = ConfigurationCache(braintreeSharedPreferences)
+    @Test
+    fun saveConfiguration_withoutValidators_clearsPreviousValidators() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 123L, "\"etag\"", "last-modified")
+        sut.saveConfiguration(configuration, "cacheKey", 456L)
+
+        assertNull(sut.getETag("cacheKey"))
+        assertNull(sut.getLastModified("cacheKey"))
+    }
+
+    @Test
+    fun refreshTimestamp_updatesOnlyTheTimestamp() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 123L, "\"etag\"", null)
+        sut.refreshTimestamp("cacheKey", 456L)
+
+        assertEquals(456L, sut.getTimestamp("cacheKey"))
+        assertEquals("\"etag\"", sut.getETag("cacheKey"))
+        assertEquals(configuration.toJson(), sut.getConfiguration("cacheKey", 456L))
+    }
+
+    @Test
+    fun getConfiguration_returnsConfigurationFromStore() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
         sut.saveConfiguration(configuration, "cacheKey", 0)
 
         assertEquals(
@@ -50,13 +89,102 @@ class ConfigurationCacheUnitTest {
     @Test
     fun getConfiguration_whenCacheEntryExpires_returnsNull() {
         val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
-        every { braintreeSharedPreferences.containsKey("cacheKey_timestamp") } returns true
-        every { braintreeSharedPreferences.getLong("cacheKey_timestamp") } returns TimeUnit.MINUTES.toMillis(5)
-        every { braintreeSharedPreferences.getString("cacheKey", "") } returns configuration.toJson()
-
-        val sut = ConfigurationCache(braintreeSharedPreferences)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
         sut.saveConfiguration(configuration, "cacheKey", 0)
 
         assertNull(sut.getConfiguration("cacheKey", TimeUnit.MINUTES.toMillis(20)))
     }
+
+    @Test
+    fun getConfiguration_withMaxAge_returnsExpiredEntryYoungerThanMaxAge() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 0)
+        val maxAge = TimeUnit.MINUTES.toMillis(30)
+
+        assertEquals(
+            configuration.toJson(),
+            sut.getConfiguration("cacheKey", TimeUnit.MINUTES.toMillis(20), maxAge)
+        )
+        assertNull(sut.getConfiguration("cacheKey", maxAge, maxAge))
+    }
+
+    @Test
+    fun getConfiguration_whenNotInStore_migratesLegacySharedPrefsEntry() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        every { braintreeSharedPreferences.containsKey("cacheKey_timestamp") } returns true
+        every { braintreeSharedPreferences.getLong("cacheKey_timestamp") } returns 0L
+        every { braintreeSharedPreferences.getString("cacheKey", null) } returns configuration.toJson()
+        every { braintreeSharedPreferences.getString("cacheKey_etag", null) } returns "\"etag\""
+        every { braintreeSharedPreferences.getString("cacheKey_last_modified", null) } returns null
+
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+
+        assertEquals(configuration.toJson(), sut.getConfiguration("cacheKey", 1L))
+        assertEquals(
+            ConfigurationStore.Metadata(0L, "\"etag\"", null),
+            configurationStore.readMetadata("cacheKey")
+        )
+        verify {
+            braintreeSharedPreferences.removeKeys(
+                "cacheKey",
+                "cacheKey_timestamp",
+                "cacheKey_etag",
+                "cacheKey_last_modified"
+            )
+        }
+    }
+
+    @Test
+    fun getConfiguration_whenNoEntryAnywhere_returnsNull() {
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+
+        assertNull(sut.getConfiguration("cacheKey", 0L))
+        assertNull(sut.getTimestamp("cacheKey"))
+        verify(exactly = 0) { braintreeSharedPreferences.removeKeys(*anyVararg()) }
+    }
+
+    @Test
+    fun saveConfiguration_removesLegacySharedPrefsEntriesOnce() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        val legacyKey = Base64.encodeToString(
+            "https://api.example.com/merchants/id/client_api/v1/configuration?configVersion=3bearer"
+                .toByteArray(),
+            Base64.DEFAULT
+        )
+        every { braintreeSharedPreferences.keys } returns setOf(
+            legacyKey,
+            "${legacyKey}_timestamp",
+            "${legacyKey}_etag",
+            "InstallationGUID"
+        )
+
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 123L)
+        sut.saveConfiguration(configuration, "cacheKey", 456L)
+
+        verify(exactly = 1) {
+            braintreeSharedPreferences.removeKeys(
+                legacyKey,
+                "${legacyKey}_timestamp",
+                "${legacyKey}_etag",
+                "${legacyKey}_last_modified"
+            )
+        }
+    }
+
+    @Test
+    fun saveConfiguration_keepsOtherSharedPrefsEntriesEndingInTimestamp() {
+        val configuration = fromJson(Fixtures.CONFIGURATION_WITHOUT_ACCESS_TOKEN)
+        every { braintreeSharedPreferences.keys } returns setOf(
+            "session",
+            "session_timestamp",
+            "${Base64.encodeToString("not a url".toByteArray(), Base64.DEFAULT)}_timestamp"
+        )
+
+        val sut = ConfigurationCache(configurationStore, braintreeSharedPreferences)
+        sut.saveConfiguration(configuration, "cacheKey", 123L)
+
+        verify(exactly = 0) { braintreeSharedPreferences.removeKeys(*anyVararg()) }
+    }
 }
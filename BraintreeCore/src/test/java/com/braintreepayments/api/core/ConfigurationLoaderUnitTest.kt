@@ -3,16 +3,22 @@ package com.braintreepayments.api.core
 import android.util.Base64
 import com.braintreepayments.api.testutils.Fixtures
 import com.braintreepayments.api.sharedutils.HttpClient
+import com.braintreepayments.api.sharedutils.HttpRequest
 import com.braintreepayments.api.sharedutils.HttpResponse
 import com.braintreepayments.api.sharedutils.HttpResponseTiming
 import com.braintreepayments.api.sharedutils.NetworkResponseCallback
+import com.braintreepayments.api.sharedutils.Time
 import io.mockk.*
 import org.robolectric.RobolectricTestRunner
 import org.json.JSONException
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import java.lang.Exception
+import java.util.concurrent.TimeUnit
 
 @RunWith(RobolectricTestRunner::class)
 class ConfigurationLoaderUnitTest {
@@ -21,6 +27,63 @@ class ConfigurationLoaderUnitTest {
     private var callback: ConfigurationLoaderCallback = mockk(relaxed = true)
     private var authorization: Authorization = mockk(relaxed = true)
 
+    @Before
+    fun beforeEach() {
+        // run cache I/O inline
+        every { braintreeHttpClient.runOnBackground(any(), any()) } answers {
+            secondArg<Runnable>().run()
+        }
+    }
+
+    @Test
+    fun loadConfiguration_readsPersistedCacheAndRespondsOnConfigurationLane() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getConfiguration(any()) } returns
+            Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN
+        val backgroundSlot = slot<Runnable>()
+        every {
+            braintreeHttpClient.runOnBackground(
+                HttpRequest.PRIORITY_CONFIGURATION,
+                capture(backgroundSlot)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache)
+        sut.loadConfiguration(authorization, callback)
+
+        verify { configurationCache wasNot Called }
+        verify(exactly = 0) { callback.onResult(any(), any(), any()) }
+        backgroundSlot.captured.run()
+        verify { configurationCache.getConfiguration(any()) }
+        verify { callback.onResult(ofType(Configuration::class), null, null) }
+        verify(exactly = 0) { braintreeHttpClient.runOnMain(any()) }
+    }
+
+    @Test
+    fun loadConfiguration_savesFetchedConfigurationOnConfigurationLane() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        respondWithConfiguration()
+        val backgroundTasks = mutableListOf<Runnable>()
+        every {
+            braintreeHttpClient.runOnBackground(
+                HttpRequest.PRIORITY_CONFIGURATION,
+                capture(backgroundTasks)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache)
+        sut.loadConfiguration(authorization, callback)
+        // the cache lookup finds nothing and sends the request
+        backgroundTasks.removeAt(0).run()
+
+        verify { callback.onResult(ofType(Configuration::class), null, any()) }
+        verify(exactly = 0) { configurationCache.saveConfiguration(any(), any()) }
+        backgroundTasks.single().run()
+        verify { configurationCache.saveConfiguration(ofType(Configuration::class), any()) }
+    }
+
     @Test
     fun loadConfiguration_loadsConfigurationForTheCurrentEnvironment() {
 
@@ -37,6 +100,10 @@ class ConfigurationLoaderUnitTest {
                     null,
                     authorization,
                     HttpClient.RETRY_MAX_3_TIMES,
+                    HttpRequest.PRIORITY_CONFIGURATION,
+                    any(),
+                    false,
+                    any(),
                     capture(callbackSlot)
             )
         }
@@ -65,6 +132,10 @@ class ConfigurationLoaderUnitTest {
                     null,
                     authorization,
                     HttpClient.RETRY_MAX_3_TIMES,
+                    HttpRequest.PRIORITY_CONFIGURATION,
+                    any(),
+                    false,
+                    any(),
                     capture(callbackSlot)
             )
         }
@@ -83,6 +154,37 @@ class ConfigurationLoaderUnitTest {
         }
     }
 
+    @Test
+    fun loadConfiguration_decodesResponseAsItIsReadAndDeliversDecodedConfiguration() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val configuration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache)
+        sut.loadConfiguration(authorization, callback)
+
+        val callbackSlot = slot<NetworkResponseCallback>()
+        verify {
+            braintreeHttpClient.get(
+                    any(),
+                    null,
+                    authorization,
+                    any(),
+                    any(),
+                    any(),
+                    false,
+                    Configuration.decoder,
+                    capture(callbackSlot)
+            )
+        }
+        callbackSlot.captured.onResult(
+            HttpResponse(null, HttpResponseTiming(0, 0), decodedBody = configuration), null
+        )
+
+        verify { callback.onResult(refEq(configuration), null, HttpResponseTiming(0, 0)) }
+        verify { configurationCache.saveConfiguration(refEq(configuration), any()) }
+    }
+
     @Test
     fun loadConfiguration_onJSONParsingError_forwardsExceptionToErrorResponseListener() {
         every { authorization.configUrl } returns "https://example.com/config"
@@ -96,6 +198,10 @@ class ConfigurationLoaderUnitTest {
                     null,
                     authorization,
                     HttpClient.RETRY_MAX_3_TIMES,
+                    HttpRequest.PRIORITY_CONFIGURATION,
+                    any(),
+                    false,
+                    any(),
                     capture(callbackSlot)
             )
         }
@@ -120,6 +226,10 @@ class ConfigurationLoaderUnitTest {
                     null,
                     authorization,
                     HttpClient.RETRY_MAX_3_TIMES,
+                    HttpRequest.PRIORITY_CONFIGURATION,
+                    any(),
+                    false,
+                    any(),
                     capture(callbackSlot)
             )
         }
@@ -172,9 +282,490 @@ class ConfigurationLoaderUnitTest {
                     null,
                     authorization,
                     ofType(Int::class),
+                    ofType(Int::class),
+                    any(),
+                    false,
+                    any(),
                     ofType(NetworkResponseCallback::class)
             )
         }
         verify { callback.onResult(ofType(Configuration::class), null, null) }
     }
+
+    @Test
+    fun loadConfiguration_whenConfigurationIsInMemory_skipsPersistedCacheAndNetwork() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val configuration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+        val memoryCache = ConfigurationMemoryCache()
+        memoryCache.saveConfiguration(authorization, configuration)
+        val cacheMetrics = ConfigurationCacheMetrics()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            memoryCache,
+            cacheMetrics = cacheMetrics
+        )
+        sut.loadConfiguration(authorization, callback)
+
+        verify { callback.onResult(configuration, null, null) }
+        verify(exactly = 0) { configurationCache.getConfiguration(any()) }
+        verifyConfigurationRequestCount(0)
+        assertEquals(1, cacheMetrics.hitCount)
+        assertEquals(1, cacheMetrics.memoryHitCount)
+        assertEquals(0, cacheMetrics.persistedHitCount)
+    }
+
+    @Test
+    fun loadConfiguration_countsPersistedAndMemoryHitsSeparately() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getConfiguration(any()) } returns
+            Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN
+        every { configurationCache.getTimestamp(any()) } returns System.currentTimeMillis()
+        val cacheMetrics = ConfigurationCacheMetrics()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheMetrics = cacheMetrics
+        )
+        sut.loadConfiguration(authorization, callback)
+        assertEquals(1, cacheMetrics.persistedHitCount)
+        assertEquals(0, cacheMetrics.memoryHitCount)
+
+        sut.loadConfiguration(authorization, callback)
+        assertEquals(1, cacheMetrics.persistedHitCount)
+        assertEquals(1, cacheMetrics.memoryHitCount)
+        assertEquals(2, cacheMetrics.hitCount)
+        verify(exactly = 1) { configurationCache.getConfiguration(any()) }
+    }
+
+    @Test
+    fun loadConfiguration_afterFetchingConfiguration_servesNextLoadFromMemory() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        respondWithConfiguration()
+        val cacheMetrics = ConfigurationCacheMetrics()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheMetrics = cacheMetrics
+        )
+        val configurations = mutableListOf<Configuration?>()
+        repeat(2) {
+            sut.loadConfiguration(authorization) { configuration, _, _ ->
+                configurations.add(configuration)
+            }
+        }
+
+        assertSame(configurations[0], configurations[1])
+        verifyConfigurationRequestCount(1)
+        assertEquals(1, cacheMetrics.missCount)
+        assertEquals(1, cacheMetrics.hitCount)
+        assertEquals(1, cacheMetrics.memoryHitCount)
+    }
+
+    @Test
+    fun loadConfiguration_whenConfigurationIsStale_returnsItAndRefreshesOnceInBackground() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val time: Time = mockk()
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        val staleConfiguration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+        val memoryCache = ConfigurationMemoryCache(time)
+        memoryCache.saveConfiguration(authorization, staleConfiguration, cachedAtMillis = 0L)
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            memoryCache,
+            staleWhileRevalidateMillis = TimeUnit.MINUTES.toMillis(25)
+        )
+        sut.loadConfiguration(authorization, callback)
+        sut.loadConfiguration(authorization, callback)
+
+        verify(exactly = 2) { callback.onResult(staleConfiguration, null, null) }
+        val callbackSlot = slot<NetworkResponseCallback>()
+        verify(exactly = 1) {
+            braintreeHttpClient.get(
+                "https://example.com/config?configVersion=3",
+                null,
+                authorization,
+                HttpClient.NO_RETRY,
+                HttpRequest.PRIORITY_BACKGROUND,
+                any(),
+                false,
+                any(),
+                capture(callbackSlot)
+            )
+        }
+
+        callbackSlot.captured.onResult(
+            HttpResponse(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN, HttpResponseTiming(0, 0)),
+            null
+        )
+        verify { configurationCache.saveConfiguration(ofType(Configuration::class), any()) }
+        assertNotSame(staleConfiguration, memoryCache.getConfiguration(authorization))
+    }
+
+    @Test
+    fun loadConfiguration_byDefault_doesNotServeStaleConfiguration() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val time: Time = mockk()
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        val staleConfiguration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+        val memoryCache = ConfigurationMemoryCache(time)
+        memoryCache.saveConfiguration(authorization, staleConfiguration, cachedAtMillis = 0L)
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache, memoryCache)
+        sut.loadConfiguration(authorization, callback)
+
+        verify(exactly = 0) { callback.onResult(any(), any(), any()) }
+        verify {
+            braintreeHttpClient.get(
+                "https://example.com/config?configVersion=3",
+                null,
+                authorization,
+                HttpClient.RETRY_MAX_3_TIMES,
+                HttpRequest.PRIORITY_CONFIGURATION,
+                any(),
+                false,
+                any(),
+                any()
+            )
+        }
+    }
+
+    @Test
+    fun loadConfiguration_whenConfigurationIsOlderThanMaxAge_waitsForNetwork() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val time: Time = mockk()
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        val staleConfiguration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+        val memoryCache = ConfigurationMemoryCache(time)
+        memoryCache.saveConfiguration(authorization, staleConfiguration, cachedAtMillis = 0L)
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            memoryCache,
+            staleWhileRevalidateMillis = TimeUnit.MINUTES.toMillis(1)
+        )
+        sut.loadConfiguration(authorization, callback)
+
+        verify(exactly = 0) { callback.onResult(any(), any(), any()) }
+        verify {
+            braintreeHttpClient.get(
+                "https://example.com/config?configVersion=3",
+                null,
+                authorization,
+                HttpClient.RETRY_MAX_3_TIMES,
+                HttpRequest.PRIORITY_CONFIGURATION,
+                any(),
+                false,
+                any(),
+                any()
+            )
+        }
+    }
+
+    @Test
+    fun loadConfiguration_savesResponseValidatorsToCache() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        val callbackSlot = slot<NetworkResponseCallback>()
+        every {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), capture(callbackSlot)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache)
+        sut.loadConfiguration(authorization, callback)
+        callbackSlot.captured.onResult(
+            HttpResponse(
+                Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN,
+                HttpResponseTiming(0, 0),
+                mapOf("ETag" to "\"v1\"", "Last-Modified" to "Mon, 01 Jan 2024 00:00:00 GMT")
+            ),
+            null
+        )
+
+        verify {
+            configurationCache.saveConfiguration(
+                ofType(Configuration::class),
+                any(),
+                "\"v1\"",
+                "Mon, 01 Jan 2024 00:00:00 GMT"
+            )
+        }
+    }
+
+    @Test
+    fun loadConfiguration_whenCacheHasValidators_sendsConditionalRequest() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getETag(any()) } returns "\"v1\""
+        every { configurationCache.getLastModified(any()) } returns null
+        every {
+            configurationCache.getStaleConfiguration(any(), Long.MAX_VALUE)
+        } returns Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN
+
+        val sut = ConfigurationLoader(braintreeHttpClient, configurationCache)
+        sut.loadConfiguration(authorization, callback)
+
+        verify {
+            braintreeHttpClient.get(
+                "https://example.com/config?configVersion=3",
+                null,
+                authorization,
+                HttpClient.RETRY_MAX_3_TIMES,
+                HttpRequest.PRIORITY_CONFIGURATION,
+                mapOf("If-None-Match" to "\"v1\""),
+                false,
+                any(),
+                any()
+            )
+        }
+    }
+
+    @Test
+    fun loadConfiguration_whenCachedConfigurationIsUnusable_sendsUnconditionalRequest() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getETag(any()) } returns "\"v1\""
+        every { configurationCache.getLastModified(any()) } returns null
+        every {
+            configurationCache.getStaleConfiguration(any(), Long.MAX_VALUE)
+        } returns "not json"
+        val callbackSlot = slot<NetworkResponseCallback>()
+        every {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), capture(callbackSlot)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            staleWhileRevalidateMillis = 0
+        )
+        sut.loadConfiguration(authorization, callback)
+
+        verify {
+            braintreeHttpClient.get(
+                "https://example.com/config?configVersion=3",
+                null,
+                authorization,
+                HttpClient.RETRY_MAX_3_TIMES,
+                HttpRequest.PRIORITY_CONFIGURATION,
+                emptyMap(),
+                false,
+                any(),
+                any()
+            )
+        }
+        callbackSlot.captured.onResult(
+            HttpResponse(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN, HttpResponseTiming(0, 0)),
+            null
+        )
+        verify { callback.onResult(ofType(Configuration::class), null, any()) }
+        verify { configurationCache.saveConfiguration(ofType(Configuration::class), any()) }
+    }
+
+    @Test
+    fun loadConfiguration_onNotModified_extendsCachedConfiguration() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getETag(any()) } returns "\"v1\""
+        every { configurationCache.getLastModified(any()) } returns null
+        every {
+            configurationCache.getStaleConfiguration(any(), Long.MAX_VALUE)
+        } returns Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN
+        val callbackSlot = slot<NetworkResponseCallback>()
+        every {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), capture(callbackSlot)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            staleWhileRevalidateMillis = 0
+        )
+        sut.loadConfiguration(authorization, callback)
+        val timing = HttpResponseTiming(0, 10)
+        callbackSlot.captured.onResult(
+            HttpResponse(null, timing, emptyMap(), isNotModified = true),
+            null
+        )
+
+        verify { callback.onResult(ofType(Configuration::class), null, timing) }
+        verify { configurationCache.refreshTimestamp(any()) }
+        verify(exactly = 0) { configurationCache.saveConfiguration(any(), any()) }
+    }
+
+    @Test
+    fun loadConfiguration_whenStaleRefreshIsNotModified_keepsStaleConfigurationWithoutParsing() {
+        every { authorization.configUrl } returns "https://example.com/config"
+        every { authorization.bearer } returns "bearer"
+        every { configurationCache.getETag(any()) } returns "\"v1\""
+        every { configurationCache.getLastModified(any()) } returns null
+        val time: Time = mockk()
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        val staleConfiguration = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+        val memoryCache = ConfigurationMemoryCache(time)
+        memoryCache.saveConfiguration(authorization, staleConfiguration, cachedAtMillis = 0L)
+        val callbackSlot = slot<NetworkResponseCallback>()
+        every {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), capture(callbackSlot)
+            )
+        } just runs
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            memoryCache,
+            staleWhileRevalidateMillis = TimeUnit.MINUTES.toMillis(25)
+        )
+        sut.loadConfiguration(authorization, callback)
+        callbackSlot.captured.onResult(
+            HttpResponse(null, HttpResponseTiming(0, 0), emptyMap(), isNotModified = true),
+            null
+        )
+
+        verify { configurationCache.refreshTimestamp(any()) }
+        verify(exactly = 0) { configurationCache.getStaleConfiguration(any(), Long.MAX_VALUE) }
+        assertSame(staleConfiguration, memoryCache.getConfiguration(authorization))
+    }
+
+    @Test
+    fun loadConfiguration_withNewClientTokenForSameMerchant_reusesCachedConfiguration() {
+        respondWithConfiguration()
+        val cacheMetrics = ConfigurationCacheMetrics()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheKeyScope = ConfigurationLoader.CacheKeyScope.MERCHANT,
+            cacheMetrics = cacheMetrics
+        )
+        val configurations = mutableListOf<Configuration?>()
+        sut.loadConfiguration(createClientToken("fingerprint-1")) { configuration, _, _ ->
+            configurations.add(configuration)
+        }
+        sut.loadConfiguration(createClientToken("fingerprint-2")) { configuration, _, _ ->
+            configurations.add(configuration)
+        }
+
+        assertSame(configurations[0], configurations[1])
+        verifyConfigurationRequestCount(1)
+        assertEquals(1, cacheMetrics.missCount)
+        assertEquals(1, cacheMetrics.merchantScopedHitCount)
+        assertEquals(0.5, cacheMetrics.hitRate, 0.0)
+    }
+
+    @Test
+    fun loadConfiguration_withClientTokenForAnotherMerchantAccount_fetchesConfiguration() {
+        respondWithConfiguration()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheKeyScope = ConfigurationLoader.CacheKeyScope.MERCHANT
+        )
+        sut.loadConfiguration(createClientToken("fingerprint-1"), callback)
+        sut.loadConfiguration(
+            createClientToken("fingerprint-2", merchantAccountId = "other_merchant_account_id"),
+            callback
+        )
+
+        verifyConfigurationRequestCount(2)
+    }
+
+    @Test
+    fun loadConfiguration_whenMerchantScopedEntryBelongsToAnotherMerchant_fetchesConfiguration() {
+        val clientToken = createClientToken("fingerprint", merchantId = "other_merchant_id")
+        every { configurationCache.getConfiguration(any()) } returns
+            Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN
+        respondWithConfiguration()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheKeyScope = ConfigurationLoader.CacheKeyScope.MERCHANT
+        )
+        sut.loadConfiguration(clientToken, callback)
+
+        verifyConfigurationRequestCount(1)
+    }
+
+    @Test
+    fun loadConfiguration_byDefault_cachesEachClientTokenSeparately() {
+        respondWithConfiguration()
+        val cacheMetrics = ConfigurationCacheMetrics()
+
+        val sut = ConfigurationLoader(
+            braintreeHttpClient,
+            configurationCache,
+            ConfigurationMemoryCache(),
+            cacheMetrics = cacheMetrics
+        )
+        sut.loadConfiguration(createClientToken("fingerprint-1"), callback)
+        sut.loadConfiguration(createClientToken("fingerprint-2"), callback)
+
+        verifyConfigurationRequestCount(2)
+        assertEquals(0.0, cacheMetrics.hitRate, 0.0)
+    }
+
+    private fun respondWithConfiguration() {
+        every {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), any(),
+                any<NetworkResponseCallback>()
+            )
+        } answers {
+            lastArg<NetworkResponseCallback>().onResult(
+                HttpResponse(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN, HttpResponseTiming(0, 0)),
+                null
+            )
+        }
+    }
+
+    private fun verifyConfigurationRequestCount(count: Int) {
+        verify(exactly = count) {
+            braintreeHttpClient.get(
+                any(), any(), any(), any(), any(), any(), any(), any(), any(),
+                any<NetworkResponseCallback>()
+            )
+        }
+    }
+
+    private fun createClientToken(
+        authorizationFingerprint: String,
+        merchantId: String = "integration_merchant_id",
+        merchantAccountId: String = "integration_merchant_account_id"
+    ): Authorization {
+        val json = """
+            {
+              "authorizationFingerprint": "$authorizationFingerprint",
+              "configUrl": "https://api.example.com/merchants/$merchantId/client_api/v1/configuration",
+              "environment": "test",
+              "merchantAccountId": "$merchantAccountId"
+            }
+        """
+        return Authorization.fromString(Base64.encodeToString(json.toByteArray(), Base64.NO_WRAP))
+    }
 }
@@ -0,0 +1,95 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.Time
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+class ConfigurationMemoryCacheUnitTest {
+
+    private val time: Time = mockk()
+    private val configuration: Configuration = mockk()
+    private lateinit var authorization: Authorization
+
+    @Before
+    fun beforeEach() {
+        authorization = createAuthorization("bearer")
+        every { time.currentTime } returns 0L
+    }
+
+    @Test
+    fun getConfiguration_returnsSavedConfiguration() {
+        val sut = ConfigurationMemoryCache(time)
+        sut.saveConfiguration(authorization, configuration)
+
+        assertSame(configuration, sut.getConfiguration(authorization))
+    }
+
+    @Test
+    fun getConfiguration_whenNothingSaved_returnsNull() {
+        val sut = ConfigurationMemoryCache(time)
+
+        assertNull(sut.getConfiguration(authorization))
+    }
+
+    @Test
+    fun getConfiguration_whenEntryIsOlderThanTimeToLive_returnsNull() {
+        val sut = ConfigurationMemoryCache(time)
+        sut.saveConfiguration(authorization, configuration, cachedAtMillis = 0L)
+
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(5) - 1
+        assertSame(configuration, sut.getConfiguration(authorization))
+
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(5)
+        assertNull(sut.getConfiguration(authorization))
+    }
+
+    @Test
+    fun getStaleConfiguration_returnsExpiredEntryUntilMaxAge() {
+        val sut = ConfigurationMemoryCache(time)
+        sut.saveConfiguration(authorization, configuration, cachedAtMillis = 0L)
+        val maxAge = TimeUnit.MINUTES.toMillis(30)
+
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        assertNull(sut.getConfiguration(authorization))
+        assertSame(configuration, sut.getStaleConfiguration(authorization, maxAge))
+
+        every { time.currentTime } returns maxAge
+        assertNull(sut.getStaleConfiguration(authorization, maxAge))
+
+        every { time.currentTime } returns TimeUnit.MINUTES.toMillis(10)
+        assertNull(sut.getStaleConfiguration(authorization, maxAge))
+    }
+
+    @Test
+    fun getConfiguration_keysEntriesByAuthorization() {
+        val sut = ConfigurationMemoryCache(time)
+        sut.saveConfiguration(authorization, configuration)
+
+        assertNull(sut.getConfiguration(createAuthorization("other-bearer")))
+    }
+
+    @Test
+    fun saveConfiguration_whenFull_evictsLeastRecentlyUsedEntry() {
+        val sut = ConfigurationMemoryCache(time, maxEntries = 2)
+        val first = createAuthorization("first")
+        val second = createAuthorization("second")
+        sut.saveConfiguration(first, configuration)
+        sut.saveConfiguration(second, configuration)
+        sut.getConfiguration(first)
+
+        sut.saveConfiguration(createAuthorization("third"), configuration)
+
+        assertSame(configuration, sut.getConfiguration(first))
+        assertNull(sut.getConfiguration(second))
+    }
+
+    private fun createAuthorization(bearer: String): Authorization = mockk {
+        every { configUrl } returns "https://example.com/config"
+        every { this@mockk.bearer } returns bearer
+    }
+}
@@ -0,0 +1,206 @@
+package com.braintreepayments.api.core
+
+import com.braintreepayments.api.sharedutils.Time
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import java.io.File
+import java.security.MessageDigest
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+class ConfigurationStoreUnitTest {
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private lateinit var directory: File
+    private lateinit var sut: ConfigurationStore
+
+    @Before
+    fun beforeEach() {
+        directory = File(temporaryFolder.root, "configuration")
+        sut = ConfigurationStore(directory)
+    }
+
+    @Test
+    fun read_whenNothingWritten_returnsNull() {
+        assertNull(sut.read("cacheKey"))
+        assertNull(sut.readMetadata("cacheKey"))
+    }
+
+    @Test
+    fun write_createsOneFilePerCacheKey() {
+        sut.write("cacheKey/1+", "{}", ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey/2+", "{}", ConfigurationStore.Metadata(2L))
+
+        assertEquals(2, directory.listFiles()?.size)
+    }
+
+    @Test
+    fun read_returnsWhatWasWritten() {
+        val json = "{\"clientApiUrl\":\"https://example.com/é\"}"
+        val metadata = ConfigurationStore.Metadata(123L, "\"etag\"", "last-modified")
+        sut.write("cacheKey", json, metadata)
+
+        val entry = sut.read("cacheKey")
+        assertEquals(json, entry?.configurationJson)
+        assertEquals(metadata, entry?.metadata)
+        assertEquals(metadata, sut.readMetadata("cacheKey"))
+    }
+
+    @Test
+    fun write_replacesPreviousEntry() {
+        sut.write("cacheKey", "{\"old\":true}", ConfigurationStore.Metadata(1L, "\"etag\""))
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(2L))
+
+        val entry = sut.read("cacheKey")
+        assertEquals("{}", entry?.configurationJson)
+        assertEquals(ConfigurationStore.Metadata(2L), entry?.metadata)
+    }
+
+    @Test
+    fun writeMetadata_keepsConfiguration() {
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(1L))
+        sut.writeMetadata("cacheKey", ConfigurationStore.Metadata(2L, null, "last-modified"))
+
+        val entry = sut.read("cacheKey")
+        assertEquals("{}", entry?.configurationJson)
+        assertEquals(ConfigurationStore.Metadata(2L, null, "last-modified"), entry?.metadata)
+    }
+
+    @Test
+    fun writeMetadata_whenNoEntry_doesNothing() {
+        sut.writeMetadata("cacheKey", ConfigurationStore.Metadata(2L))
+
+        assertNull(sut.read("cacheKey"))
+    }
+
+    @Test
+    fun delete_removesEntry() {
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(1L))
+        sut.delete("cacheKey")
+
+        assertNull(sut.read("cacheKey"))
+    }
+
+    @Test
+    fun clear_removesAllEntries() {
+        sut.write("cacheKey1", "{}", ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey2", "{}", ConfigurationStore.Metadata(1L))
+        sut.clear()
+
+        assertNull(sut.read("cacheKey1"))
+        assertNull(sut.read("cacheKey2"))
+    }
+
+    @Test
+    fun read_whenFileIsCorrupt_returnsNull() {
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(1L))
+        directory.listFiles()!!.single().writeBytes(byteArrayOf(0, 0, 0, 1, 0))
+
+        assertNull(sut.read("cacheKey"))
+        assertNull(sut.readMetadata("cacheKey"))
+    }
+
+    @Test
+    fun trim_whenOverMaxEntries_evictsLeastRecentlyUsedEntries() {
+        sut = ConfigurationStore(directory, maxEntries = 2)
+        sut.write("cacheKey1", "{}", ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey2", "{}", ConfigurationStore.Metadata(1L))
+        setLastUsed("cacheKey1", 1_000L)
+        setLastUsed("cacheKey2", 2_000L)
+        sut.read("cacheKey1")
+        sut.write("cacheKey3", "{}", ConfigurationStore.Metadata(1L))
+
+        sut.trim()
+
+        assertNotNull(sut.read("cacheKey1"))
+        assertNull(sut.read("cacheKey2"))
+        assertNotNull(sut.read("cacheKey3"))
+    }
+
+    @Test
+    fun read_recordsUseWithoutTouchingTheFile() {
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(1L))
+        setLastUsed("cacheKey", 1_000L)
+
+        sut.read("cacheKey")
+
+        assertEquals(1_000L, directory.listFiles()!!.single().lastModified())
+    }
+
+    @Test
+    fun trim_whenOverMaxBytes_evictsLeastRecentlyUsedEntries() {
+        val json = "{\"padding\":\"${"x".repeat(100)}\"}"
+        sut = ConfigurationStore(directory, maxBytes = 300L)
+        sut.write("cacheKey1", json, ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey2", json, ConfigurationStore.Metadata(1L))
+        setLastUsed("cacheKey1", 1_000L)
+        setLastUsed("cacheKey2", 2_000L)
+        sut.write("cacheKey3", json, ConfigurationStore.Metadata(1L))
+
+        sut.trim()
+
+        assertNull(sut.read("cacheKey1"))
+        assertNotNull(sut.read("cacheKey2"))
+        assertNotNull(sut.read("cacheKey3"))
+    }
+
+    @Test
+    fun write_trimsOnFirstWriteAndThenAtMostOncePerInterval() {
+        val time: Time = mockk()
+        every { time.currentTime } returns System.currentTimeMillis()
+        sut = ConfigurationStore(
+            directory,
+            maxEntries = 1,
+            minTrimIntervalMillis = TimeUnit.HOURS.toMillis(1),
+            time = time
+        )
+        sut.write("cacheKey1", "{}", ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey2", "{}", ConfigurationStore.Metadata(1L))
+
+        assertEquals(2, directory.listFiles()?.size)
+
+        every { time.currentTime } returns System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1)
+        sut.write("cacheKey3", "{}", ConfigurationStore.Metadata(1L))
+
+        assertEquals(1, directory.listFiles()?.size)
+    }
+
+    @Test
+    fun write_whenSingleEntryExceedsMaxBytes_keepsIt() {
+        sut = ConfigurationStore(directory, maxBytes = 1L)
+        sut.write("cacheKey", "{}", ConfigurationStore.Metadata(1L))
+
+        assertNotNull(sut.read("cacheKey"))
+    }
+
+    @Test
+    fun trim_removesEntriesUnusedForLongerThanMaxUnused() {
+        sut = ConfigurationStore(directory, maxUnusedMillis = TimeUnit.DAYS.toMillis(1))
+        sut.write("cacheKey1", "{}", ConfigurationStore.Metadata(1L))
+        sut.write("cacheKey2", "{}", ConfigurationStore.Metadata(1L))
+        setLastUsed("cacheKey1", System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2))
+
+        sut.trim()
+
+        assertNull(sut.read("cacheKey1"))
+        assertNotNull(sut.read("cacheKey2"))
+    }
+
+    private fun setLastUsed(cacheKey: String, lastUsedMillis: Long) {
+        val fileName = MessageDigest.getInstance("SHA-256")
+            .digest(cacheKey.toByteArray(Charsets.UTF_8))
+            .joinToString("") { "%02x".format(it) }
+        File(directory, fileName).setLastModified(lastUsedMillis)
+    }
+}
@@ -2,7 +2,9 @@ package com.braintreepayments.api.core
 
 import android.text.TextUtils
 import com.braintreepayments.api.testutils.Fixtures
+import org.json.JSONArray
 import org.json.JSONException
+import org.json.JSONObject
 import org.junit.Assert.*
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -377,4 +379,65 @@ class ConfigurationUnitTest {
         val sut = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_GRAPHQL)
         assertEquals("https://example-graphql.com/graphql", sut.graphQLUrl)
     }
+
+    @Test
+    fun decoder_decodesConfigurationFromStream() {
+        val expected = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN)
+
+        val sut = Configuration.decoder.decode(
+            Fixtures.CONFIGURATION_WITH_ACCESS_TOKEN.byteInputStream()
+        ) as Configuration
+
+        assertEquals(expected.clientApiUrl, sut.clientApiUrl)
+        assertEquals(expected.merchantId, sut.merchantId)
+        assertEquals(expected.braintreeApiAccessToken, sut.braintreeApiAccessToken)
+        assertEquals(JSONObject(expected.toJson()).toString(), sut.toJson())
+    }
+
+    @Test(expected = JSONException::class)
+    fun decoder_throwsWhenNoClientApiUrlPresent() {
+        Configuration.decoder.decode(
+            Fixtures.CONFIGURATION_WITHOUT_CLIENT_API_URL.byteInputStream()
+        )
+    }
+
+    @Test
+    fun fromJson_withAllSections_decodesEverySectionOnAccess() {
+        val sut = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ALL_SECTIONS)
+
+        assertTrue(sut.isCvvChallengePresent)
+        assertTrue(sut.isPostalCodeChallengePresent)
+        assertTrue(sut.isFraudDataCollectionEnabled)
+        assertEquals(7, sut.supportedCardTypes.size)
+        assertTrue(sut.isGooglePayEnabled)
+        assertTrue(sut.isGraphQLEnabled)
+        assertEquals("USD", sut.payPalCurrencyIsoCode)
+        assertTrue(sut.isVenmoEnabled)
+        assertTrue(sut.isVisaCheckoutEnabled)
+        assertEquals("access-token-example", sut.braintreeApiAccessToken)
+    }
+
+    @Test
+    fun sectionProperties_areDecodedOnceAndMemoized() {
+        val sut = Configuration.fromJson(Fixtures.CONFIGURATION_WITH_ALL_SECTIONS)
+
+        assertSame(sut.supportedCardTypes, sut.supportedCardTypes)
+        assertSame(sut.googlePaySupportedNetworks, sut.googlePaySupportedNetworks)
+    }
+
+    @Test
+    fun sections_areDecodedOnFirstRead() {
+        val json = JSONObject(Fixtures.CONFIGURATION_WITH_ALL_SECTIONS)
+        val sut = Configuration(json)
+        sut.supportedCardTypes
+
+        // only sections that have not been read yet pick up changes to the underlying JSON
+        json.getJSONObject("creditCards").put("supportedCardTypes", JSONArray())
+        json.getJSONObject("androidPay").put("displayName", "Changed after parsing")
+        json.getJSONObject("payWithVenmo").put("merchantId", "changed-venmo-merchant-id")
+
+        assertEquals(7, sut.supportedCardTypes.size)
+        assertEquals("Changed after parsing", sut.googlePayDisplayName)
+        assertEquals("changed-venmo-merchant-id", sut.venmoMerchantId)
+    }
 }
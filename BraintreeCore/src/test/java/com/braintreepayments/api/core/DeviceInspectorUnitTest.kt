@@ -360,6 +360,19 @@ class DeviceInspectorUnitTest {
         assertEquals("integration_merchant_id", metadata.merchantId)
     }
 
+    @Test
+    fun getDeviceMetadata_withoutConfiguration_forwardsMerchantIdAndEnvironment() {
+        val metadata = sut.getDeviceMetadata(
+            context = context,
+            merchantId = "merchant-id",
+            environment = "sandbox",
+            sessionId = "session-id",
+            integration = IntegrationType.CUSTOM
+        )
+        assertEquals("merchant-id", metadata.merchantId)
+        assertEquals("sandbox", metadata.environment)
+    }
+
     @Test
     fun isPayPalInstalled_forwardsIsPayPalInstalledResultFromAppHelper() {
         every { appHelper.isAppInstalled(context, "com.paypal.android.p2pmobile") } returns true
@@ -6,6 +6,7 @@ import com.braintreepayments.api.core.AnalyticsParamRepository
 import com.braintreepayments.api.core.ApiClient
 import com.braintreepayments.api.core.BraintreeClient
 import com.braintreepayments.api.core.BraintreeException
+import com.braintreepayments.api.core.CancellationHandle
 import com.braintreepayments.api.core.Configuration
 import com.braintreepayments.api.core.GraphQLConstants
 import org.json.JSONException
@@ -57,13 +58,22 @@ class CardClient internal constructor(
      * [CardTokenizeCallback.onCardResult] method will be invoked with a
      * [CardResult.Failure] with an [Exception] describing the error.
      *
+     * Call [CancellationHandle.cancel] on the returned handle if the result is no longer needed,
+     * for example when the user leaves checkout. The request in flight is aborted and the
+     * [CardTokenizeCallback] is not invoked.
+     *
      * @param card     [Card]
      * @param callback [CardTokenizeCallback]
+     * @return a [CancellationHandle] for the tokenization
      */
-    fun tokenize(card: Card, callback: CardTokenizeCallback) {
+    fun tokenize(card: Card, callback: CardTokenizeCallback): CancellationHandle {
+        val cancellationHandle = CancellationHandle()
         analyticsParamRepository.resetSessionId()
         braintreeClient.sendAnalyticsEvent(CardAnalytics.CARD_TOKENIZE_STARTED)
         braintreeClient.getConfiguration { configuration: Configuration?, error: Exception? ->
+            if (cancellationHandle.isCancelled) {
+                return@getConfiguration
+            }
             if (error != null) {
                 callbackFailure(callback, CardResult.Failure(error))
                 return@getConfiguration
@@ -79,7 +89,8 @@ class CardClient internal constructor(
                 try {
                     val tokenizePayload = card.buildJSONForGraphQL()
                     apiClient.tokenizeGraphQL(
-                        tokenizePayload
+                        tokenizePayload,
+                        cancellationHandle
                     ) { tokenizationResponse: JSONObject?, exception: Exception? ->
                         handleTokenizeResponse(
                             tokenizationResponse, exception, callback
@@ -92,7 +103,8 @@ class CardClient internal constructor(
                 }
             } else {
                 apiClient.tokenizeREST(
-                    card
+                    card,
+                    cancellationHandle
                 ) { tokenizationResponse: JSONObject?, exception: Exception? ->
                     handleTokenizeResponse(
                         tokenizationResponse, exception, callback
@@ -100,6 +112,7 @@ class CardClient internal constructor(
                 }
             }
         }
+        return cancellationHandle
     }
 
     private fun handleTokenizeResponse(
@@ -4,15 +4,20 @@ import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 import com.braintreepayments.api.core.AnalyticsParamRepository;
 import com.braintreepayments.api.core.ApiClient;
 import com.braintreepayments.api.core.BraintreeClient;
+import com.braintreepayments.api.core.CancellationHandle;
 import com.braintreepayments.api.core.Configuration;
+import com.braintreepayments.api.core.ConfigurationCallback;
 import com.braintreepayments.api.core.TokenizeCallback;
 import com.braintreepayments.api.testutils.Fixtures;
 import com.braintreepayments.api.testutils.MockApiClientBuilder;
@@ -88,7 +93,8 @@ public class CardClientUnitTest {
 
         InOrder inOrder = Mockito.inOrder(card, apiClient);
         inOrder.verify(card).setSessionId("session-id");
-        inOrder.verify(apiClient).tokenizeGraphQL(any(JSONObject.class), any(TokenizeCallback.class));
+        inOrder.verify(apiClient).tokenizeGraphQL(any(JSONObject.class),
+                any(CancellationHandle.class), any(TokenizeCallback.class));
     }
 
     @Test
@@ -114,6 +120,40 @@ public class CardClientUnitTest {
         assertEquals("3744a73e-b1ab-0dbd-85f0-c12a0a4bd3d1", cardNonce.getString());
     }
 
+    @Test
+    public void tokenize_returnsCancellationHandleForTheTokenizeRequest() {
+        BraintreeClient braintreeClient = new MockBraintreeClientBuilder()
+                .configuration(graphQLDisabledConfig)
+                .build();
+
+        CardClient sut = new CardClient(braintreeClient, apiClient, analyticsParamRepository);
+        CancellationHandle cancellationHandle = sut.tokenize(card, cardTokenizeCallback);
+
+        verify(apiClient).tokenizeREST(same(card), same(cancellationHandle),
+                any(TokenizeCallback.class));
+    }
+
+    @Test
+    public void tokenize_whenCancelledBeforeConfigurationIsFetched_doesNotTokenize() {
+        BraintreeClient braintreeClient = new MockBraintreeClientBuilder()
+                .configuration(graphQLDisabledConfig)
+                .build();
+        // hold the configuration callback until the handle has been cancelled
+        ArgumentCaptor<ConfigurationCallback> configurationCallbackCaptor =
+                ArgumentCaptor.forClass(ConfigurationCallback.class);
+        doNothing().when(braintreeClient).getConfiguration(any(ConfigurationCallback.class));
+
+        CardClient sut = new CardClient(braintreeClient, apiClient, analyticsParamRepository);
+        CancellationHandle cancellationHandle = sut.tokenize(card, cardTokenizeCallback);
+        cancellationHandle.cancel();
+
+        verify(braintreeClient).getConfiguration(configurationCallbackCaptor.capture());
+        configurationCallbackCaptor.getValue().onResult(graphQLDisabledConfig, null);
+
+        verifyNoInteractions(apiClient);
+        verifyNoInteractions(cardTokenizeCallback);
+    }
+
     @Test
     public void tokenize_whenGraphQLDisabled_tokenizesWithREST() throws JSONException {
         BraintreeClient braintreeClient = new MockBraintreeClientBuilder()
@@ -25,6 +25,10 @@ import androidx.navigation.fragment.NavHostFragment;
 import androidx.navigation.ui.AppBarConfiguration;
 import androidx.navigation.ui.NavigationUI;
 
+import com.braintreepayments.api.core.AuthorizationCallback;
+import com.braintreepayments.api.core.AuthorizationLoader;
+import com.braintreepayments.api.core.AuthorizationResult;
+
 import java.util.Arrays;
 import java.util.List;
 
@@ -33,6 +37,7 @@ public class DemoActivity extends AppCompatActivity implements ActivityCompat.On
     private AppBarConfiguration appBarConfiguration;
 
     private DemoClientTokenProvider clientTokenProvider;
+    private AuthorizationLoader authorizationLoader;
 
     private SharedPreferences.OnSharedPreferenceChangeListener sharedPreferenceChangeListener;
 
@@ -42,6 +47,8 @@ public class DemoActivity extends AppCompatActivity implements ActivityCompat.On
         requestWindowFeature(Window.FEATURE_INDETERMINATE_PROGRESS);
         setContentView(R.layout.activity_demo);
         clientTokenProvider = new DemoClientTokenProvider(this);
+        authorizationLoader = new AuthorizationLoader(this, this::fetchAuthorizationFromServer);
+        authorizationLoader.prefetch();
 
         setupActionBar();
         setProgressBarIndeterminateVisibility(true);
@@ -61,7 +68,31 @@ public class DemoActivity extends AppCompatActivity implements ActivityCompat.On
     }
 
     public void fetchAuthorization(BraintreeAuthorizationCallback callback) {
-        clientTokenProvider.getClientToken(callback);
+        authorizationLoader.loadAuthorization(authorizationResult -> {
+            if (authorizationResult instanceof AuthorizationResult.Success) {
+                callback.onResult(new BraintreeAuthorizationResult.Success(
+                    ((AuthorizationResult.Success) authorizationResult).getAuthorization())
+                );
+            } else if (authorizationResult instanceof AuthorizationResult.Failure) {
+                callback.onResult(new BraintreeAuthorizationResult.Error(
+                    ((AuthorizationResult.Failure) authorizationResult).getError())
+                );
+            }
+        });
+    }
+
+    private void fetchAuthorizationFromServer(AuthorizationCallback callback) {
+        clientTokenProvider.getClientToken(authResult -> {
+            if (authResult instanceof BraintreeAuthorizationResult.Success) {
+                callback.onAuthorizationResult(new AuthorizationResult.Success(
+                    ((BraintreeAuthorizationResult.Success) authResult).getAuthString())
+                );
+            } else if (authResult instanceof BraintreeAuthorizationResult.Error) {
+                callback.onAuthorizationResult(new AuthorizationResult.Failure(
+                    ((BraintreeAuthorizationResult.Error) authResult).getError())
+                );
+            }
+        });
     }
 
     @Override
@@ -110,6 +141,7 @@ public class DemoActivity extends AppCompatActivity implements ActivityCompat.On
 
     private void performReset() {
         setProgressBarIndeterminateVisibility(true);
+        authorizationLoader.invalidate();
     }
 
     public void showDialog(String message) {
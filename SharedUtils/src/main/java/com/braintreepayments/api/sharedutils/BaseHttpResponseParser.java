@@ -1,10 +1,13 @@
 package com.braintreepayments.api.sharedutils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 import java.util.zip.GZIPInputStream;
 
 import static java.net.HttpURLConnection.HTTP_ACCEPTED;
@@ -12,6 +15,7 @@ import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
 import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
@@ -28,16 +32,22 @@ public class BaseHttpResponseParser implements HttpResponseParser {
     private static final int HTTP_UPGRADE_REQUIRED = 426;
     private static final int HTTP_TOO_MANY_REQUESTS = 429;
 
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
     /**
      * @param responseCode the response code returned when the http request was made.
      * @param connection the connection through which the http request was made.
-     * @return the body of the http response.
+     * @return the body of the http response, or null for {@code 304 Not Modified}, which answers
+     * a conditional request successfully without a body.
      */
     public String parse(int responseCode, HttpURLConnection connection) throws Exception {
         String responseBody = parseBody(responseCode, connection);
         switch (responseCode) {
             case HTTP_OK: case HTTP_CREATED: case HTTP_ACCEPTED:
                 return responseBody;
+            case HTTP_NOT_MODIFIED:
+                return null;
             case HTTP_BAD_REQUEST: case HTTP_UNPROCESSABLE_ENTITY:
                 throw new UnprocessableEntityException(responseBody);
             case HTTP_UNAUTHORIZED:
@@ -47,21 +57,45 @@ public class BaseHttpResponseParser implements HttpResponseParser {
             case HTTP_UPGRADE_REQUIRED:
                 throw new UpgradeRequiredException(responseBody);
             case HTTP_TOO_MANY_REQUESTS:
-                throw new RateLimitException("You are being rate-limited. Please try again in a few minutes.");
+                throw new RateLimitException("You are being rate-limited. Please try again in a few minutes.",
+                        parseRetryAfterMillis(connection.getHeaderField(RETRY_AFTER_HEADER)));
             case HTTP_INTERNAL_ERROR:
                 throw new ServerException(responseBody);
             case HTTP_UNAVAILABLE:
-                throw new ServiceUnavailableException(responseBody);
+                throw new ServiceUnavailableException(responseBody,
+                        parseRetryAfterMillis(connection.getHeaderField(RETRY_AFTER_HEADER)));
             default:
                 throw new UnexpectedException(responseBody);
         }
     }
 
+    /**
+     * Decodes a successful body with {@code decoder} straight from the connection's stream, so
+     * it is not copied into a String first. Other responses are parsed as by
+     * {@link #parse(int, HttpURLConnection)}.
+     *
+     * @return the decoded body, or null for {@code 304 Not Modified}
+     */
+    @Override
+    public Object parse(int responseCode, HttpURLConnection connection,
+                        HttpResponseBodyDecoder decoder) throws Exception {
+        switch (responseCode) {
+            case HTTP_OK: case HTTP_CREATED: case HTTP_ACCEPTED:
+                return decodeStream(connection.getInputStream(),
+                        "gzip".equals(connection.getContentEncoding()), decoder);
+            default:
+                return parse(responseCode, connection);
+        }
+    }
+
     private String parseBody(int responseCode, HttpURLConnection connection) throws IOException {
         boolean gzip = "gzip".equals(connection.getContentEncoding());
+        int contentLength = connection.getContentLength();
         switch (responseCode) {
             case HTTP_OK: case HTTP_CREATED: case HTTP_ACCEPTED:
-                return readStream(connection.getInputStream(), gzip);
+            case HTTP_NOT_MODIFIED:
+                // a 304 has no body, but consuming the empty stream releases the socket to the pool
+                return readStream(connection.getInputStream(), gzip, contentLength);
             case HTTP_TOO_MANY_REQUESTS:
                 return null;
             case HTTP_UNAUTHORIZED:
@@ -72,28 +106,90 @@ public class BaseHttpResponseParser implements HttpResponseParser {
             case HTTP_INTERNAL_ERROR:
             case HTTP_UNAVAILABLE:
             default:
-                return readStream(connection.getErrorStream(), gzip);
+                return readStream(connection.getErrorStream(), gzip, contentLength);
+        }
+    }
+
+    /**
+     * @param retryAfter the value of a {@code Retry-After} header, either a number of seconds or
+     *                   an HTTP date.
+     * @return the delay in milliseconds, or -1 if the value is missing or malformed.
+     */
+    static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Math.max(0, Long.parseLong(value)) * 1000;
+        } catch (NumberFormatException ignored) {
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = dateFormat.parse(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        } catch (ParseException ignored) {
+            return -1;
         }
     }
 
-    private String readStream(InputStream in, boolean gzip) throws IOException {
+    private Object decodeStream(InputStream in, boolean gzip, HttpResponseBodyDecoder decoder)
+            throws Exception {
+        if (in == null) {
+            return null;
+        }
+        try {
+            if (gzip) {
+                in = new GZIPInputStream(in, ResponseBufferPool.READ_BUFFER_SIZE);
+            }
+            Object decodedBody = decoder.decode(in);
+
+            // drain whatever the decoder left unread so the socket can go back to the pool
+            byte[] buffer = ResponseBufferPool.acquireReadBuffer();
+            try {
+                while (in.read(buffer) != -1) {
+                    // discard
+                }
+            } finally {
+                ResponseBufferPool.releaseReadBuffer(buffer);
+            }
+            return decodedBody;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Decodes the body into a String using buffers from {@link ResponseBufferPool}. The output
+     * buffer is sized from {@code Content-Length} up front (the compressed length serves as a
+     * lower bound for gzip bodies), and the result is decoded straight from it, so the body is not
+     * copied again on its way into the String.
+     */
+    private String readStream(InputStream in, boolean gzip, int contentLength) throws IOException {
         if (in == null) {
             return null;
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseBufferPool.ResponseBodyOutputStream out =
+                ResponseBufferPool.acquireOutputStream(contentLength);
+        byte[] buffer = ResponseBufferPool.acquireReadBuffer();
         try {
             if (gzip) {
-                in = new GZIPInputStream(in);
+                in = new GZIPInputStream(in, ResponseBufferPool.READ_BUFFER_SIZE);
             }
 
-            byte[] buffer = new byte[1024];
             for (int count; (count = in.read(buffer)) != -1; ) {
                 out.write(buffer, 0, count);
             }
-            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            return out.toUtf8String();
 
         } finally {
+            ResponseBufferPool.releaseReadBuffer(buffer);
+            ResponseBufferPool.release(out);
             try {
                 in.close();
             } catch (IOException ignored) {}
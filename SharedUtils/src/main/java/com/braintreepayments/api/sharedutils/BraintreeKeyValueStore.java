@@ -0,0 +1,463 @@
+package com.braintreepayments.api.sharedutils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.AtomicFile;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link SharedPreferences} implementation backed by a single binary file, used in place of the
+ * platform implementation by {@link BraintreeSharedPreferences}.
+ *
+ * Values are loaded once on a background thread and then served from memory. Edits are applied
+ * to memory immediately and written behind on a dedicated thread; edits made while a write is
+ * pending are coalesced into that write. Unlike the platform implementation, {@link #apply()}
+ * never registers work that blocks the main thread when an activity or service stops.
+ *
+ * Change listeners are notified synchronously on the thread that applied the edit.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class BraintreeKeyValueStore implements SharedPreferences {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_BOOLEAN = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_STRING_SET = 5;
+
+    private static volatile ExecutorService WRITE_EXECUTOR;
+
+    /**
+     * Creates a store in the app's files directory. If the store does not exist yet, the contents
+     * of the platform preferences file named {@code legacyPreferencesName} are moved into it.
+     */
+    static BraintreeKeyValueStore create(Context context, String fileName,
+                                         String legacyPreferencesName) {
+        File file = new File(context.getFilesDir(), fileName);
+        SharedPreferences legacyPreferences = file.exists() ? null
+                : context.getSharedPreferences(legacyPreferencesName, Context.MODE_PRIVATE);
+        return new BraintreeKeyValueStore(file, getWriteExecutor(), legacyPreferences);
+    }
+
+    private static Executor getWriteExecutor() {
+        if (WRITE_EXECUTOR == null) {
+            synchronized (BraintreeKeyValueStore.class) {
+                // double check that executor was not created in another thread
+                if (WRITE_EXECUTOR == null) {
+                    WRITE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "braintree-key-value-store");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        return WRITE_EXECUTOR;
+    }
+
+    private final AtomicFile file;
+    private final Executor writeExecutor;
+
+    private final Object lock = new Object();
+    private final Object writeLock = new Object();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private final Set<OnSharedPreferenceChangeListener> listeners =
+            new CopyOnWriteArraySet<>();
+
+    // guarded by lock
+    private Map<String, Object> values = new HashMap<>();
+    private long memoryGeneration;
+
+    // guarded by writeLock
+    private long diskGeneration;
+
+    @VisibleForTesting
+    BraintreeKeyValueStore(File file, Executor writeExecutor,
+                           @Nullable SharedPreferences legacyPreferences) {
+        this.file = new AtomicFile(file);
+        this.writeExecutor = writeExecutor;
+        writeExecutor.execute(() -> load(legacyPreferences));
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        awaitLoaded();
+        synchronized (lock) {
+            return new HashMap<>(values);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        Object value = get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    @Nullable
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        Object value = get(key);
+        return value != null ? (Set<String>) value : defValues;
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        Object value = get(key);
+        return value != null ? (Integer) value : defValue;
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        Object value = get(key);
+        return value != null ? (Long) value : defValue;
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        Object value = get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Editor edit() {
+        return new StoreEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+            OnSharedPreferenceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private Object get(String key) {
+        awaitLoaded();
+        synchronized (lock) {
+            return values.get(key);
+        }
+    }
+
+    private void awaitLoaded() {
+        boolean interrupted = false;
+        while (loaded.getCount() > 0) {
+            try {
+                loaded.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load(@Nullable SharedPreferences legacyPreferences) {
+        Map<String, Object> loadedValues = null;
+        boolean migrated = false;
+        try {
+            loadedValues = readFromDisk();
+            if (loadedValues == null && legacyPreferences != null) {
+                loadedValues = new HashMap<>(legacyPreferences.getAll());
+                migrated = true;
+            }
+        } catch (RuntimeException ignored) {
+            // start empty rather than fail every read
+        } finally {
+            synchronized (lock) {
+                if (loadedValues != null) {
+                    values = loadedValues;
+                }
+                if (migrated) {
+                    memoryGeneration++;
+                }
+            }
+            loaded.countDown();
+        }
+
+        if (migrated && writeToDisk()) {
+            legacyPreferences.edit().clear().apply();
+        }
+    }
+
+    @Nullable
+    private Map<String, Object> readFromDisk() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(file.openRead()))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return new HashMap<>();
+            }
+            int count = in.readInt();
+            Map<String, Object> result = new HashMap<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = readString(in);
+                result.put(key, readValue(in));
+            }
+            return result;
+        } catch (FileNotFoundException e) {
+            return null;
+        } catch (IOException e) {
+            // a corrupt file is treated as empty rather than re-running the legacy migration
+            return new HashMap<>();
+        }
+    }
+
+    private void scheduleWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            writeExecutor.execute(() -> {
+                // clear the flag first so edits made during this write schedule another one
+                writeScheduled.set(false);
+                writeToDisk();
+            });
+        }
+    }
+
+    private boolean writeToDisk() {
+        synchronized (writeLock) {
+            Map<String, Object> snapshot;
+            long generation;
+            synchronized (lock) {
+                generation = memoryGeneration;
+                if (generation == diskGeneration) {
+                    return true;
+                }
+                snapshot = new HashMap<>(values);
+            }
+
+            FileOutputStream outputStream;
+            try {
+                outputStream = file.startWrite();
+            } catch (IOException e) {
+                return false;
+            }
+            try {
+                DataOutputStream out =
+                        new DataOutputStream(new BufferedOutputStream(outputStream));
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeValue(out, entry.getValue());
+                }
+                out.flush();
+                file.finishWrite(outputStream);
+                diskGeneration = generation;
+                return true;
+            } catch (IOException e) {
+                file.failWrite(outputStream);
+                return false;
+            }
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Set) {
+            out.writeByte(TYPE_STRING_SET);
+            Set<?> set = (Set<?>) value;
+            out.writeInt(set.size());
+            for (Object item : set) {
+                writeString(out, (String) item);
+            }
+        } else {
+            throw new IOException("Unsupported value type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INT:
+                return in.readInt();
+            case TYPE_FLOAT:
+                return in.readFloat();
+            case TYPE_STRING_SET:
+                int size = in.readInt();
+                Set<String> set = new HashSet<>(size);
+                for (int i = 0; i < size; i++) {
+                    set.add(readString(in));
+                }
+                return set;
+            default:
+                throw new IOException("Unknown value type: " + type);
+        }
+    }
+
+    // length-prefixed UTF-8, since writeUTF is limited to 64KB
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class StoreEditor implements Editor {
+
+        private final Map<String, Object> modifications = new HashMap<>();
+        private boolean clear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            return put(key, values != null ? new HashSet<>(values) : null);
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            return put(key, value);
+        }
+
+        @Override
+        public Editor remove(String key) {
+            // the editor itself marks a removal, since null is a valid put
+            return put(key, this);
+        }
+
+        @Override
+        public Editor clear() {
+            synchronized (this) {
+                clear = true;
+            }
+            return this;
+        }
+
+        @Override
+        public void apply() {
+            if (commitToMemory()) {
+                scheduleWrite();
+            }
+        }
+
+        @Override
+        public boolean commit() {
+            return !commitToMemory() || writeToDisk();
+        }
+
+        private synchronized Editor put(String key, @Nullable Object value) {
+            modifications.put(key, value != null ? value : this);
+            return this;
+        }
+
+        private boolean commitToMemory() {
+            awaitLoaded();
+            Set<String> changedKeys = new HashSet<>();
+            synchronized (this) {
+                synchronized (lock) {
+                    if (clear && !values.isEmpty()) {
+                        changedKeys.addAll(values.keySet());
+                        values.clear();
+                    }
+                    clear = false;
+                    for (Map.Entry<String, Object> entry : modifications.entrySet()) {
+                        String key = entry.getKey();
+                        Object value = entry.getValue();
+                        if (value == this) {
+                            if (values.remove(key) != null) {
+                                changedKeys.add(key);
+                            }
+                        } else if (!value.equals(values.put(key, value))) {
+                            changedKeys.add(key);
+                        }
+                    }
+                    modifications.clear();
+                    if (!changedKeys.isEmpty()) {
+                        memoryGeneration++;
+                    }
+                }
+            }
+            for (String key : changedKeys) {
+                for (OnSharedPreferenceChangeListener listener : listeners) {
+                    listener.onSharedPreferenceChanged(BraintreeKeyValueStore.this, key);
+                }
+            }
+            return !changedKeys.isEmpty();
+        }
+    }
+}
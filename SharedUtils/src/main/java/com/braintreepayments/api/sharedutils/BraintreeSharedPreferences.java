@@ -6,11 +6,16 @@ import android.content.SharedPreferences;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.HashSet;
+import java.util.Set;
+
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class BraintreeSharedPreferences {
 
     private static final String PREFERENCES_FILE_KEY =
         "com.braintreepayments.api.SHARED_PREFERENCES";
+    private static final String KEY_VALUE_STORE_FILE_NAME =
+        "com.braintreepayments.api.KEY_VALUE_STORE";
     private static volatile BraintreeSharedPreferences INSTANCE;
 
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
@@ -28,7 +33,9 @@ public class BraintreeSharedPreferences {
     }
 
     private static SharedPreferences createSharedPreferencesInstance(Context context) {
-        return context.getSharedPreferences(PREFERENCES_FILE_KEY, Context.MODE_PRIVATE);
+        // values written by earlier versions to the platform preferences file move to the store
+        return BraintreeKeyValueStore.create(
+                context.getApplicationContext(), KEY_VALUE_STORE_FILE_NAME, PREFERENCES_FILE_KEY);
     }
 
     private final SharedPreferences sharedPreferences;
@@ -77,6 +84,25 @@ public class BraintreeSharedPreferences {
                 .apply();
     }
 
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public void putLong(String key, long value) {
+        sharedPreferences.edit().putLong(key, value).apply();
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public Set<String> getKeys() {
+        return new HashSet<>(sharedPreferences.getAll().keySet());
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    public void removeKeys(String... keys) {
+        SharedPreferences.Editor editor = sharedPreferences.edit();
+        for (String key : keys) {
+            editor.remove(key);
+        }
+        editor.apply();
+    }
+
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
     public void clearSharedPreferences() {
         sharedPreferences.edit().clear().apply();
@@ -0,0 +1,95 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Random;
+
+/**
+ * {@link RetryPolicy} that waits a random delay between zero and an exponentially growing cap
+ * ("full jitter") before each retry, so that devices failing at the same moment don't retry in
+ * lockstep.
+ *
+ * A {@code Retry-After} hint sent with a 429 or 503 response takes precedence over the computed
+ * delay. Requests are only retried when doing so is safe: client errors are never retried, and
+ * POST and PATCH requests are only retried when they carry an idempotency key.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class ExponentialBackoffRetryPolicy implements RetryPolicy {
+
+    static final long DEFAULT_BASE_DELAY_MILLIS = 250;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 5000;
+    static final long MAX_RETRY_AFTER_MILLIS = 30000;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final Random random;
+
+    public ExponentialBackoffRetryPolicy(int maxAttempts) {
+        this(maxAttempts, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    public ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelayMillis,
+                                         long maxDelayMillis) {
+        this(maxAttempts, baseDelayMillis, maxDelayMillis, new Random());
+    }
+
+    @VisibleForTesting
+    ExponentialBackoffRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis,
+                                  Random random) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.random = random;
+    }
+
+    @Override
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public long getRetryDelayMillis(HttpRequest request, int attempt, Exception error) {
+        if (!isRetryable(request) || !isRetryable(error)) {
+            return DO_NOT_RETRY;
+        }
+
+        long retryAfterMillis = getRetryAfterMillis(error);
+        if (retryAfterMillis > MAX_RETRY_AFTER_MILLIS) {
+            // the server asked for a longer pause than the user should wait for
+            return DO_NOT_RETRY;
+        } else if (retryAfterMillis >= 0) {
+            return retryAfterMillis;
+        }
+
+        // cap the exponent to avoid overflow; the delay is bounded by maxDelayMillis anyway
+        int exponent = Math.min(Math.max(attempt - 1, 0), 30);
+        long cap = Math.min(maxDelayMillis, baseDelayMillis << exponent);
+        return (long) (random.nextDouble() * (cap + 1));
+    }
+
+    private static boolean isRetryable(HttpRequest request) {
+        String method = request.getMethod();
+        boolean isIdempotentMethod =
+                !"POST".equalsIgnoreCase(method) && !"PATCH".equalsIgnoreCase(method);
+        return isIdempotentMethod || request.getIdempotencyKey() != null;
+    }
+
+    private static boolean isRetryable(Exception error) {
+        // these describe a problem with the request itself; sending it again won't help
+        return !(error instanceof AuthenticationException
+                || error instanceof AuthorizationException
+                || error instanceof UnprocessableEntityException
+                || error instanceof UpgradeRequiredException);
+    }
+
+    private static long getRetryAfterMillis(Exception error) {
+        if (error instanceof RateLimitException) {
+            return ((RateLimitException) error).getRetryAfterMillis();
+        } else if (error instanceof ServiceUnavailableException) {
+            return ((ServiceUnavailableException) error).getRetryAfterMillis();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,120 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tracks one logical call, which may span several requests and retries, so that it can be
+ * cancelled by its caller or bounded by a total time budget.
+ *
+ * Cancelling or expiring a call disconnects the {@link HttpURLConnection} it is currently using,
+ * which makes a blocked read or write fail immediately and frees the background thread.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class HttpCall {
+
+    /**
+     * Timeout value for a call that is only bounded by the timeouts of its individual requests.
+     */
+    public static final long NO_DEADLINE = 0;
+
+    private final long deadlineNanos;
+    private final AtomicBoolean deadlineScheduled = new AtomicBoolean();
+
+    private volatile boolean cancelled;
+    private volatile boolean expired;
+
+    private HttpURLConnection connection;
+
+    public HttpCall() {
+        this(NO_DEADLINE);
+    }
+
+    /**
+     * @param timeoutMillis the total budget for the call, counted from now, or
+     * {@link #NO_DEADLINE}.
+     */
+    public HttpCall(long timeoutMillis) {
+        deadlineNanos = (timeoutMillis > 0)
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * Aborts the request in flight, if any. Results that arrive after this call are discarded.
+     */
+    public void cancel() {
+        cancelled = true;
+        abort();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true once the total budget of the call has been spent.
+     */
+    public boolean isExpired() {
+        return expired || (deadlineNanos != 0 && System.nanoTime() - deadlineNanos >= 0);
+    }
+
+    boolean hasDeadline() {
+        return deadlineNanos != 0;
+    }
+
+    /**
+     * @return the time left before the deadline, or {@link Long#MAX_VALUE} if the call has none.
+     */
+    long getRemainingMillis() {
+        if (deadlineNanos == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    /**
+     * @return true the first time it is called, so that a deadline timer is armed only once per
+     * call.
+     */
+    boolean markDeadlineScheduled() {
+        return deadlineScheduled.compareAndSet(false, true);
+    }
+
+    void expire() {
+        if (!cancelled) {
+            expired = true;
+            abort();
+        }
+    }
+
+    /**
+     * Registers the connection a request of this call is about to use.
+     *
+     * @throws IOException if the call was cancelled or expired before the request started.
+     */
+    synchronized void attach(HttpURLConnection connection) throws IOException {
+        if (cancelled || expired) {
+            throw new IOException("Call was aborted before the request was sent");
+        }
+        this.connection = connection;
+    }
+
+    synchronized void detach() {
+        connection = null;
+    }
+
+    private void abort() {
+        HttpURLConnection activeConnection;
+        synchronized (this) {
+            activeConnection = connection;
+            connection = null;
+        }
+        if (activeConnection != null) {
+            activeConnection.disconnect();
+        }
+    }
+}
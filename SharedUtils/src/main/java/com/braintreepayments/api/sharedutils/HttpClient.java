@@ -7,10 +7,8 @@ import androidx.annotation.VisibleForTesting;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.MalformedURLException;
-import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.net.ssl.SSLSocketFactory;
 
@@ -27,24 +25,130 @@ public class HttpClient {
 
     static final int MAX_RETRY_ATTEMPTS = 3;
 
+    private static final int PRECONNECT_TIMEOUT_MILLIS = 10000;
+
     private final Scheduler scheduler;
     private final SynchronousHttpClient syncHttpClient;
 
-    private final Map<URL, Integer> retryCountMap;
+    private final RetryPolicy retryMax3TimesPolicy;
+    private final RequestCoalescer requestCoalescer;
+
+    private volatile HttpTimingListener timingListener;
 
     public HttpClient(SSLSocketFactory socketFactory, HttpResponseParser httpResponseParser) {
-        this(new SynchronousHttpClient(socketFactory, httpResponseParser), new ThreadScheduler());
+        this(new SynchronousHttpClient(socketFactory, httpResponseParser),
+                ThreadScheduler.getInstance(),
+                new ExponentialBackoffRetryPolicy(MAX_RETRY_ATTEMPTS),
+                RequestCoalescer.getInstance());
     }
 
     @VisibleForTesting
     HttpClient(SynchronousHttpClient syncHttpClient, Scheduler scheduler) {
+        this(syncHttpClient, scheduler, new ExponentialBackoffRetryPolicy(MAX_RETRY_ATTEMPTS));
+    }
+
+    @VisibleForTesting
+    HttpClient(SynchronousHttpClient syncHttpClient, Scheduler scheduler,
+               RetryPolicy retryMax3TimesPolicy) {
+        this(syncHttpClient, scheduler, retryMax3TimesPolicy, new RequestCoalescer());
+    }
+
+    @VisibleForTesting
+    HttpClient(SynchronousHttpClient syncHttpClient, Scheduler scheduler,
+               RetryPolicy retryMax3TimesPolicy, RequestCoalescer requestCoalescer) {
         this.syncHttpClient = syncHttpClient;
         this.scheduler = scheduler;
-        this.retryCountMap = new HashMap<>();
+        this.retryMax3TimesPolicy = retryMax3TimesPolicy;
+        this.requestCoalescer = requestCoalescer;
     }
 
     public String sendRequest(HttpRequest request) throws Exception {
-        return syncHttpClient.request(request).getBody();
+        HttpResponse httpResponse = syncHttpClient.request(request);
+        notifyTimingListener(request, httpResponse);
+        return httpResponse.getBody();
+    }
+
+    /**
+     * @param listener notified with the phase-level timing of every request this client completes
+     * successfully, or null to stop notifications.
+     */
+    public void setTimingListener(HttpTimingListener listener) {
+        this.timingListener = listener;
+    }
+
+    /**
+     * @return connection reuse metrics of this client's {@link TLSSocketFactory}, or null if the
+     * client was not configured with one. The metrics belong to the socket factory, so they cover
+     * every client that shares it; the Braintree clients all share a single process-wide factory.
+     */
+    public HttpConnectionMetrics getConnectionMetrics() {
+        return syncHttpClient.getConnectionMetrics();
+    }
+
+    /**
+     * @param priority the {@link HttpRequest.Priority} lane to report on.
+     * @return a snapshot of the queue depth and wait times of the given background lane, or null
+     * if this client does not schedule work on bounded lanes.
+     */
+    public SchedulerLaneMetrics getSchedulerMetrics(@HttpRequest.Priority int priority) {
+        if (scheduler instanceof ThreadScheduler) {
+            return ((ThreadScheduler) scheduler).getMetrics(priority);
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of GET requests, across all clients, that were served by joining an
+     * identical request already in flight instead of being sent.
+     */
+    public long getCoalescedRequestCount() {
+        return requestCoalescer.getCoalescedRequestCount();
+    }
+
+    /**
+     * Runs work that a request depends on, such as reading a cache, on the lane of the given
+     * priority instead of the calling thread.
+     *
+     * @throws RejectedExecutionException if the lane cannot accept more work.
+     */
+    public void runOnBackground(Runnable runnable, @HttpRequest.Priority int priority) {
+        scheduler.runOnBackground(runnable, priority);
+    }
+
+    /**
+     * Runs work on the main thread, where request callbacks are notified.
+     */
+    public void runOnMain(Runnable runnable) {
+        scheduler.runOnMain(runnable);
+    }
+
+    /**
+     * Resolves DNS for, and opens a TLS connection to, the host of {@code url} on the
+     * configuration lane, so that a later request to the same host can reuse the pooled
+     * connection. Preconnects do not wait behind analytics uploads on the background lane, and
+     * run in parallel with each other. Failures are ignored; the later request simply connects on
+     * its own.
+     *
+     * @param url a url on the host to connect to.
+     */
+    public void preconnect(final String url) {
+        final URL parsedUrl;
+        try {
+            parsedUrl = new URL(url);
+        } catch (MalformedURLException e) {
+            return;
+        }
+        try {
+            scheduler.runOnBackground(() -> {
+                try {
+                    syncHttpClient.preconnect(parsedUrl, PRECONNECT_TIMEOUT_MILLIS);
+                } catch (Exception ignored) {
+                    // best effort
+                }
+            }, HttpRequest.PRIORITY_CONFIGURATION);
+        } catch (RejectedExecutionException ignored) {
+            // the configuration lane is saturated; skip warming up
+        }
     }
 
     public void sendRequest(HttpRequest request, NetworkResponseCallback callback) {
@@ -53,82 +157,249 @@ public class HttpClient {
 
     public void sendRequest(HttpRequest request, @RetryStrategy int retryStrategy,
                             NetworkResponseCallback callback) {
-        scheduleRequest(request, retryStrategy, callback);
+        sendRequest(request, getRetryPolicy(retryStrategy), callback);
+    }
+
+    /**
+     * Sends a request on a background thread and notifies the callback either on the main thread
+     * or on the background thread that finished the request.
+     *
+     * @see #sendRequest(HttpRequest, RetryPolicy, HttpCall, boolean, NetworkResponseCallback)
+     */
+    public void sendRequest(HttpRequest request, @RetryStrategy int retryStrategy,
+                            boolean notifyOnMainThread, NetworkResponseCallback callback) {
+        sendRequest(request, getRetryPolicy(retryStrategy), null, notifyOnMainThread, callback);
+    }
+
+    /**
+     * Sends a request on a background thread and notifies the callback on the main thread. Failed
+     * attempts are retried on a timer, as directed by the {@link RetryPolicy}, without holding a
+     * background thread while waiting.
+     */
+    public void sendRequest(HttpRequest request, RetryPolicy retryPolicy,
+                            NetworkResponseCallback callback) {
+        sendRequest(request, retryPolicy, null, callback);
+    }
+
+    /**
+     * Sends a request as part of an {@link HttpCall}.
+     *
+     * Once the call is cancelled the callback is never notified. Once its deadline passes the
+     * request in flight is aborted, no further retries are made and the callback is notified with
+     * an {@link HttpClientException}.
+     *
+     * @param request the request to send.
+     * @param retryPolicy decides whether and when a failed attempt is retried.
+     * @param call the call the request belongs to, or null.
+     * @param callback notified on the main thread.
+     */
+    public void sendRequest(HttpRequest request, RetryPolicy retryPolicy, HttpCall call,
+                            NetworkResponseCallback callback) {
+        sendRequest(request, retryPolicy, call, true, callback);
+    }
+
+    /**
+     * Sends a request as part of an {@link HttpCall}, notifying the callback either on the main
+     * thread or on the background thread that finished the request.
+     *
+     * Callers that hand the result to a thread of their own, such as a suspended coroutine that
+     * resumes on its own dispatcher, pass {@code false} so the result does not wait for the main
+     * thread first.
+     *
+     * @param request the request to send.
+     * @param retryPolicy decides whether and when a failed attempt is retried.
+     * @param call the call the request belongs to, or null.
+     * @param notifyOnMainThread true to notify the callback on the main thread.
+     * @param callback notified once with the result, unless the call is cancelled first.
+     */
+    public void sendRequest(HttpRequest request, RetryPolicy retryPolicy, HttpCall call,
+                            boolean notifyOnMainThread, NetworkResponseCallback callback) {
+        NetworkResponseCallback notifier = createNotifier(callback, call, notifyOnMainThread);
+        if (call != null) {
+            // a call is cancelled on behalf of a single caller, so its request is never shared
+            scheduleRequest(request, retryPolicy, call, 1, notifier);
+            scheduleDeadline(call);
+            return;
+        }
+
+        final String coalescingKey =
+                RequestCoalescer.createKey(request, syncHttpClient.getParserType());
+        if (coalescingKey == null) {
+            scheduleRequest(request, retryPolicy, null, 1, notifier);
+        } else if (requestCoalescer.join(coalescingKey, disposeOnResult(request, notifier))) {
+            // fan the single result out to every caller that joined while it was in flight; each
+            // caller's notifier delivers it on the thread that caller asked for
+            scheduleRequest(request, retryPolicy, null, 1, (response, error) -> {
+                for (NetworkResponseCallback joined : requestCoalescer.complete(coalescingKey)) {
+                    joined.onResult(response, error);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return a callback that disposes {@code request} once the shared result arrives, since the
+     * request of a caller that joined an identical request in flight is never sent itself, and
+     * then notifies {@code notifier}, if any.
+     */
+    private static NetworkResponseCallback disposeOnResult(final HttpRequest request,
+                                                           final NetworkResponseCallback notifier) {
+        return (response, error) -> {
+            request.dispose();
+            if (notifier != null) {
+                notifier.onResult(response, error);
+            }
+        };
     }
 
-    private void scheduleRequest(final HttpRequest request, @RetryStrategy final int retryStrategy,
+    /**
+     * @return a callback that notifies {@code callback} on the requested thread, unless
+     * {@code call} has been cancelled by then, or null if there is nothing to notify.
+     */
+    private NetworkResponseCallback createNotifier(final NetworkResponseCallback callback,
+                                                   final HttpCall call,
+                                                   final boolean notifyOnMainThread) {
+        if (callback == null) {
+            return null;
+        }
+        return (response, error) -> {
+            Runnable notification = () -> {
+                // the call may have been cancelled while the result was waiting to be delivered
+                if (call == null || !call.isCancelled()) {
+                    callback.onResult(response, error);
+                }
+            };
+            if (notifyOnMainThread) {
+                scheduler.runOnMain(notification);
+            } else {
+                notification.run();
+            }
+        };
+    }
+
+    private void scheduleDeadline(HttpCall call) {
+        if (call.hasDeadline() && call.markDeadlineScheduled()) {
+            scheduler.runDelayed(call::expire, call.getRemainingMillis());
+        }
+    }
+
+    private void scheduleRequest(final HttpRequest request, final RetryPolicy retryPolicy,
+                                 final HttpCall call, final int attempt,
                                  final NetworkResponseCallback callback) {
-        resetRetryCount(request);
+        try {
+            runRequestOnBackground(request, retryPolicy, call, attempt, callback);
+        } catch (RejectedExecutionException e) {
+            request.dispose();
+            String message = "Too many pending requests. Try again later.";
+            notifyError(callback, new HttpClientException(message));
+        }
+    }
 
+    private void runRequestOnBackground(final HttpRequest request, final RetryPolicy retryPolicy,
+                                        final HttpCall call, final int attempt,
+                                        final NetworkResponseCallback callback) {
         scheduler.runOnBackground(() -> {
+            if (isAborted(request, call, callback)) {
+                return;
+            }
+            HttpResponse httpResponse;
             try {
-                HttpResponse httpResponse = syncHttpClient.request(request);
-                notifySuccessOnMainThread(callback, httpResponse);
+                httpResponse = (call == null)
+                        ? syncHttpClient.request(request) : syncHttpClient.request(request, call);
             } catch (Exception e) {
-                switch (retryStrategy) {
-                    case HttpClient.NO_RETRY:
-                        notifyErrorOnMainThread(callback, e);
-                        break;
-                    case HttpClient.RETRY_MAX_3_TIMES:
-                        retryGet(request, retryStrategy, callback);
-                        break;
+                if (!isAborted(request, call, callback)) {
+                    retryOrNotifyError(request, retryPolicy, call, attempt, callback, e);
                 }
+                return;
             }
-        });
+            request.dispose();
+            notifyTimingListener(request, httpResponse);
+            notifySuccess(callback, httpResponse);
+        }, request.getPriority());
     }
 
-    private void retryGet(final HttpRequest request, @RetryStrategy final int retryStrategy,
-                          final NetworkResponseCallback callback) {
-        URL url = null;
-        try {
-            url = request.getURL();
-        } catch (MalformedURLException | URISyntaxException ignore) {
+    /**
+     * @return true, after disposing the request and notifying the callback where appropriate, if
+     * the call was cancelled or ran out of time.
+     */
+    private boolean isAborted(HttpRequest request, HttpCall call,
+                              NetworkResponseCallback callback) {
+        if (call == null) {
+            return false;
+        } else if (call.isCancelled()) {
+            request.dispose();
+            return true;
+        } else if (call.isExpired()) {
+            request.dispose();
+            notifyError(callback, createDeadlineExceededException());
+            return true;
         }
+        return false;
+    }
 
-        if (url != null) {
-            int retryCount = getNumRetriesSoFar(url);
-            boolean shouldRetry = ((retryCount + 1) < MAX_RETRY_ATTEMPTS);
-            if (shouldRetry) {
-                scheduleRequest(request, retryStrategy, callback);
-                retryCountMap.put(url, retryCount + 1);
-            } else {
-                String message = "Retry limit has been exceeded. Try again later.";
-                HttpClientException retryLimitException = new HttpClientException(message);
-                notifyErrorOnMainThread(callback, retryLimitException);
-            }
+    private void retryOrNotifyError(final HttpRequest request, final RetryPolicy retryPolicy,
+                                    final HttpCall call, final int attempt,
+                                    final NetworkResponseCallback callback, Exception error) {
+        long delayMillis;
+        try {
+            delayMillis = getRetryDelayMillis(request, retryPolicy, attempt, error);
+        } catch (Exception e) {
+            request.dispose();
+            notifyError(callback, e);
+            return;
         }
+        if (call != null && delayMillis >= call.getRemainingMillis()) {
+            // the next attempt could not start before the deadline
+            request.dispose();
+            notifyError(callback, createDeadlineExceededException());
+            return;
+        }
+        scheduler.runDelayed(
+                () -> scheduleRequest(request, retryPolicy, call, attempt + 1, callback),
+                delayMillis);
     }
 
-    private int getNumRetriesSoFar(URL url) {
-        Integer retryCount = retryCountMap.get(url);
-        if (retryCount == null) {
-            return 0;
-        }
-        return retryCount;
+    private static HttpClientException createDeadlineExceededException() {
+        return new HttpClientException("Request deadline exceeded. Try again later.");
     }
 
-    private void resetRetryCount(HttpRequest request) {
-        URL url = null;
-        try {
-            url = request.getURL();
-        } catch (MalformedURLException | URISyntaxException ignore) {
+    /**
+     * @return the delay before the next attempt.
+     * @throws Exception the original error when the request must not be retried, or an
+     * {@link HttpClientException} once the policy's attempt limit is reached.
+     */
+    private static long getRetryDelayMillis(HttpRequest request, RetryPolicy retryPolicy,
+                                            int attempt, Exception error) throws Exception {
+        long delayMillis = retryPolicy.getRetryDelayMillis(request, attempt, error);
+        if (delayMillis < 0) {
+            throw error;
+        } else if (attempt >= retryPolicy.getMaxAttempts()) {
+            String message = "Retry limit has been exceeded. Try again later.";
+            throw new HttpClientException(message);
         }
+        return delayMillis;
+    }
+
+    private RetryPolicy getRetryPolicy(@RetryStrategy int retryStrategy) {
+        return retryStrategy == RETRY_MAX_3_TIMES ? retryMax3TimesPolicy : RetryPolicy.NONE;
+    }
 
-        if (url != null) {
-            retryCountMap.remove(url);
+    private void notifyTimingListener(HttpRequest request, HttpResponse response) {
+        HttpTimingListener listener = timingListener;
+        if (listener != null && response != null) {
+            listener.onRequestTimed(request, response.getTiming());
         }
     }
 
-    private void notifySuccessOnMainThread(final NetworkResponseCallback callback,
-                                           final HttpResponse response) {
+    private static void notifySuccess(NetworkResponseCallback callback, HttpResponse response) {
         if (callback != null) {
-            scheduler.runOnMain(() -> callback.onResult(response, null));
+            callback.onResult(response, null);
         }
     }
 
-    private void notifyErrorOnMainThread(final NetworkResponseCallback callback, final Exception e) {
+    private static void notifyError(NetworkResponseCallback callback, Exception e) {
         if (callback != null) {
-            scheduler.runOnMain(() -> callback.onResult(null, e));
+            callback.onResult(null, e);
         }
     }
 }
@@ -0,0 +1,55 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how often HTTPS requests are served over a pooled keep-alive connection instead of a
+ * freshly opened (and TLS handshaked) one.
+ *
+ * Connection pooling itself is performed by the platform {@link java.net.HttpURLConnection}
+ * implementation; its idle eviction and pool size can be tuned process-wide through the
+ * {@code http.keepAlive}, {@code http.maxConnections} and {@code http.keepAliveDuration} system
+ * properties.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public class HttpConnectionMetrics {
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    void recordRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    void recordConnection() {
+        connectionCount.incrementAndGet();
+    }
+
+    /**
+     * @return the number of HTTPS requests sent.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of TLS connections opened to serve those requests.
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * @return the fraction of requests, between 0 and 1, that reused an existing connection.
+     */
+    public double getReuseRatio() {
+        long requests = requestCount.get();
+        if (requests == 0) {
+            return 0;
+        }
+        long reused = Math.max(0, requests - connectionCount.get());
+        return (double) reused / requests;
+    }
+}
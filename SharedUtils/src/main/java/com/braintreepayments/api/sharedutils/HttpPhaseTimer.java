@@ -0,0 +1,80 @@
+package com.braintreepayments.api.sharedutils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the phases of a single request on the monotonic {@link System#nanoTime()} clock. A
+ * timer is used by one request on one thread.
+ */
+class HttpPhaseTimer {
+
+    private final long startTime;
+    private final long startNanos;
+
+    private long connectedNanos;
+    private long writtenNanos;
+    private long firstByteNanos;
+    private long bodyReadNanos;
+
+    private long tlsStartNanos;
+
+    private long bytesSent;
+    private long bytesReceived = -1;
+
+    HttpPhaseTimer() {
+        startTime = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    void markConnected() {
+        connectedNanos = System.nanoTime();
+        // nothing is written when the request has no body
+        writtenNanos = connectedNanos;
+    }
+
+    /**
+     * Marks the start of a TLS handshake. The platform completes the handshake before connect()
+     * returns, so {@link #markConnected()} marks its end.
+     */
+    void markTlsHandshakeStarted() {
+        tlsStartNanos = System.nanoTime();
+    }
+
+    void markRequestWritten(long bytesSent) {
+        writtenNanos = System.nanoTime();
+        this.bytesSent = bytesSent;
+    }
+
+    void markFirstByte(long bytesReceived) {
+        firstByteNanos = System.nanoTime();
+        this.bytesReceived = bytesReceived;
+    }
+
+    void markBodyRead() {
+        bodyReadNanos = System.nanoTime();
+    }
+
+    HttpResponseTiming toTiming() {
+        long tlsHandshake = tlsStartNanos > 0 ? millisBetween(tlsStartNanos, connectedNanos) : 0;
+        // the platform connects and handshakes within the same connect() call
+        long connect = Math.max(0, millisBetween(startNanos, connectedNanos) - tlsHandshake);
+        long endTime = startTime + millisBetween(startNanos, firstByteNanos);
+
+        return new HttpResponseTiming(
+                startTime,
+                endTime,
+                connect,
+                tlsHandshake,
+                millisBetween(connectedNanos, writtenNanos),
+                millisBetween(writtenNanos, firstByteNanos),
+                millisBetween(firstByteNanos, bodyReadNanos),
+                millisBetween(startNanos, bodyReadNanos),
+                bytesSent,
+                bytesReceived
+        );
+    }
+
+    private static long millisBetween(long fromNanos, long toNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(Math.max(0, toNanos - fromNanos));
+    }
+}
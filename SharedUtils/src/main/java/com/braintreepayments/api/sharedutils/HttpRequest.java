@@ -1,8 +1,11 @@
 package com.braintreepayments.api.sharedutils;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.RestrictTo;
 
 import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -17,13 +20,37 @@ import java.util.Map;
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class HttpRequest {
 
+    /**
+     * The background lane a request is scheduled on. Each lane has its own concurrency cap and
+     * queue, so telemetry bursts can't delay requests the user is waiting on.
+     */
+    @IntDef({PRIORITY_USER_CRITICAL, PRIORITY_CONFIGURATION, PRIORITY_BACKGROUND})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+    }
+
+    public static final int PRIORITY_USER_CRITICAL = 0;
+    public static final int PRIORITY_CONFIGURATION = 1;
+    public static final int PRIORITY_BACKGROUND = 2;
+
     private static final int THIRTY_SECONDS_MS = 30000;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final int COMPRESSION_DISABLED = -1;
+
+    /**
+     * Bodies smaller than this gain little from compression, so they are sent as-is.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD_BYTES = 1024;
 
     private String path;
     private String baseUrl;
 
     private byte[] data;
     private String method;
+    private int priority;
+    private String idempotencyKey;
+    private int compressionThreshold;
+    private HttpResponseBodyDecoder bodyDecoder;
 
     private final int readTimeout;
     private final int connectTimeout;
@@ -39,6 +66,8 @@ public class HttpRequest {
         headers = null;
         additionalHeaders = new HashMap<>();
         baseUrl = "";
+        priority = PRIORITY_USER_CRITICAL;
+        compressionThreshold = COMPRESSION_DISABLED;
 
         readTimeout = THIRTY_SECONDS_MS;
         connectTimeout = THIRTY_SECONDS_MS;
@@ -64,6 +93,53 @@ public class HttpRequest {
         return this;
     }
 
+    public HttpRequest priority(@Priority int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Marks a non-idempotent request as safe to retry. The key is sent in the
+     * {@code Idempotency-Key} header so the server can de-duplicate repeated attempts; it must be
+     * unique per logical operation and stay the same across its retries.
+     *
+     * @param idempotencyKey the key identifying this operation.
+     * @return this request
+     */
+    public HttpRequest idempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+        return addHeader(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+    }
+
+    /**
+     * Sends the request body gzip compressed, with {@code Content-Encoding: gzip}, once it is at
+     * least {@code thresholdBytes} long. Only use this for endpoints that accept compressed
+     * request bodies.
+     *
+     * @param thresholdBytes the minimum body size to compress.
+     * @return this request
+     */
+    public HttpRequest compressData(int thresholdBytes) {
+        this.compressionThreshold = Math.max(0, thresholdBytes);
+        return this;
+    }
+
+    /**
+     * Decodes a successful response body with {@code bodyDecoder} as it is read from the
+     * connection. The response then carries the decoded body instead of the body as a String.
+     *
+     * @param bodyDecoder the decoder for the response body.
+     * @return this request
+     */
+    public HttpRequest bodyDecoder(HttpResponseBodyDecoder bodyDecoder) {
+        this.bodyDecoder = bodyDecoder;
+        return this;
+    }
+
+    public HttpResponseBodyDecoder getBodyDecoder() {
+        return bodyDecoder;
+    }
+
     public HttpRequest addHeader(String name, String value) {
         additionalHeaders.put(name, value);
         return this;
@@ -88,6 +164,23 @@ public class HttpRequest {
         return method;
     }
 
+    @Priority
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    /**
+     * @return true if compression was requested and the body is large enough to be compressed.
+     */
+    boolean shouldCompressData() {
+        return compressionThreshold != COMPRESSION_DISABLED
+                && data != null && data.length >= compressionThreshold;
+    }
+
     public Map<String, String> getHeaders() {
         if (headers == null) {
             headers = new HashMap<>();
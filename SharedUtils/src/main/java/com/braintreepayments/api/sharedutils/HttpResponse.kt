@@ -2,8 +2,27 @@ package com.braintreepayments.api.sharedutils
 
 import androidx.annotation.RestrictTo
 
+/**
+ * @property body the response body, or null when the server answered `304 Not Modified` or the
+ * body was decoded by the request's [HttpResponseBodyDecoder]
+ * @property timing phase-level timing of the request
+ * @property headers the response headers, looked up without regard to case
+ * @property isNotModified true when a conditional request was answered with `304 Not Modified`,
+ * meaning the caller's cached copy is still current
+ * @property decodedBody the body decoded by the request's [HttpResponseBodyDecoder], if it had one
+ */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
-data class HttpResponse(
+data class HttpResponse @JvmOverloads constructor(
     val body: String? = null,
-    val timing: HttpResponseTiming
-)
+    val timing: HttpResponseTiming,
+    val headers: Map<String, String> = emptyMap(),
+    val isNotModified: Boolean = false,
+    val decodedBody: Any? = null
+) {
+
+    /**
+     * @return the value of the response header [name], ignoring case, or null if it is absent.
+     */
+    fun getHeader(name: String): String? =
+        headers[name] ?: headers.entries.firstOrNull { it.key.equals(name, ignoreCase = true) }?.value
+}
@@ -0,0 +1,20 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+
+import java.io.InputStream;
+
+/**
+ * Decodes a successful response body straight from the connection, so the body is never read
+ * into a String first. Set on a request with {@link HttpRequest#bodyDecoder}; the result is
+ * delivered as {@link HttpResponse#getDecodedBody()}.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public interface HttpResponseBodyDecoder {
+
+    /**
+     * @param body the response body, already decompressed. It is closed by the caller.
+     * @return the decoded body
+     */
+    Object decode(InputStream body) throws Exception;
+}
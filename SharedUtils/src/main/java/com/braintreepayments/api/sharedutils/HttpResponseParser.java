@@ -2,9 +2,31 @@ package com.braintreepayments.api.sharedutils;
 
 import androidx.annotation.RestrictTo;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
 
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public interface HttpResponseParser {
     String parse(int responseCode, HttpURLConnection connection) throws Exception;
+
+    /**
+     * Parses a response whose successful body is decoded by {@code decoder}. Parsers that can
+     * read the body as a stream hand it to the decoder directly; by default the body is parsed
+     * into a String first.
+     *
+     * @return the decoded body, or null if the response has no body
+     */
+    default Object parse(int responseCode, HttpURLConnection connection,
+                         HttpResponseBodyDecoder decoder) throws Exception {
+        String responseBody = parse(responseCode, connection);
+        if (responseBody == null) {
+            return null;
+        }
+        try (InputStream in =
+                     new ByteArrayInputStream(responseBody.getBytes(StandardCharsets.UTF_8))) {
+            return decoder.decode(in);
+        }
+    }
 }
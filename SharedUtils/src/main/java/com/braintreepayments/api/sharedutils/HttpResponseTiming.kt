@@ -2,8 +2,33 @@ package com.braintreepayments.api.sharedutils
 
 import androidx.annotation.RestrictTo
 
+/**
+ * Timing of a single HTTP request. [startTime] and [endTime] are wall-clock timestamps in
+ * milliseconds, where [endTime] is the arrival of the first response byte. The phase durations are
+ * measured on a monotonic clock, also in milliseconds.
+ *
+ * @property connectDuration time spent resolving the host and opening the TCP connection, or 0 when
+ * a pooled connection was reused
+ * @property tlsHandshakeDuration time spent on the TLS handshake, or 0 when a pooled connection was
+ * reused
+ * @property requestWriteDuration time spent writing the request body
+ * @property timeToFirstByte time from the end of the request write until the response status
+ * arrived
+ * @property bodyReadDuration time spent reading and decoding the response body
+ * @property totalDuration time from the start of the request until the body was read
+ * @property bytesSent the number of request body bytes written to the connection, after compression
+ * @property bytesReceived the response Content-Length, or -1 when the server did not declare one
+ */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
-data class HttpResponseTiming(
+data class HttpResponseTiming @JvmOverloads constructor(
     var startTime: Long,
     var endTime: Long,
+    var connectDuration: Long = 0,
+    var tlsHandshakeDuration: Long = 0,
+    var requestWriteDuration: Long = 0,
+    var timeToFirstByte: Long = 0,
+    var bodyReadDuration: Long = 0,
+    var totalDuration: Long = endTime - startTime,
+    var bytesSent: Long = 0,
+    var bytesReceived: Long = -1,
 )
@@ -0,0 +1,19 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+
+/**
+ * Notified with the phase-level timing of every successful request sent by an {@link HttpClient}.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public interface HttpTimingListener {
+
+    /**
+     * Called on the thread that sent the request, before the response is delivered to its caller.
+     * Implementations should return quickly.
+     *
+     * @param request the request that completed.
+     * @param timing the timing of the attempt that succeeded.
+     */
+    void onRequestTimed(HttpRequest request, HttpResponseTiming timing);
+}
@@ -0,0 +1,99 @@
+package com.braintreepayments.api.sharedutils;
+
+import android.util.JsonReader;
+
+import androidx.annotation.RestrictTo;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds {@link JSONObject}s token by token from a stream with {@link JsonReader}, instead of
+ * reading the whole document into a String and tokenizing it again with {@code JSONObject}.
+ * Numbers are converted the same way {@code JSONObject} converts them.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class JsonStreamDecoder {
+
+    private JsonStreamDecoder() {
+    }
+
+    /**
+     * @param in a UTF-8 encoded JSON object; it is not closed.
+     * @return the object read from {@code in}
+     * @throws JSONException if {@code in} does not hold a JSON object
+     */
+    public static JSONObject readObject(InputStream in) throws JSONException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            return readObject(reader);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // JsonReader reports malformed JSON as MalformedJsonException, an IOException
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case NUMBER:
+                return readNumber(reader.nextString());
+            case STRING:
+                return reader.nextString();
+            default:
+                throw new JSONException("Unexpected " + reader.peek() + " in " + reader);
+        }
+    }
+
+    private static Object readNumber(String number) {
+        if (number.indexOf('.') == -1 && number.indexOf('e') == -1
+                && number.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(number);
+                if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException ignored) {
+                // too large for a long
+            }
+        }
+        return Double.valueOf(number);
+    }
+}
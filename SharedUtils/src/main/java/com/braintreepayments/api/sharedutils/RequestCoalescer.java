@@ -0,0 +1,94 @@
+package com.braintreepayments.api.sharedutils;
+
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight registry for idempotent GET requests. While a request is in flight, identical
+ * requests (same method, resolved URL and headers, which carry the authorization) join it instead
+ * of going to the network, and every caller is notified with the one shared result.
+ *
+ * The registry is shared process-wide because each Braintree client builds its own
+ * {@link HttpClient}.
+ */
+class RequestCoalescer {
+
+    private static volatile RequestCoalescer INSTANCE;
+
+    static RequestCoalescer getInstance() {
+        if (INSTANCE == null) {
+            synchronized (RequestCoalescer.class) {
+                // double check that instance was not created in another thread
+                if (INSTANCE == null) {
+                    INSTANCE = new RequestCoalescer();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final Map<String, List<NetworkResponseCallback>> inFlightRequests = new HashMap<>();
+    private final AtomicLong coalescedRequestCount = new AtomicLong();
+
+    /**
+     * @return the key identifying identical requests, or null if the request must not be
+     * coalesced.
+     */
+    static String createKey(HttpRequest request, Object scope) {
+        if (!"GET".equals(request.getMethod())) {
+            return null;
+        }
+        // requests whose bodies are decoded differently must not share a result
+        HttpResponseBodyDecoder bodyDecoder = request.getBodyDecoder();
+        String decoderType = bodyDecoder == null ? "" : bodyDecoder.getClass().getName();
+        try {
+            return scope + " " + decoderType + " GET " + request.getURL() + " "
+                    + new TreeMap<>(request.getHeaders());
+        } catch (MalformedURLException | URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers interest in the result of the request identified by {@code key}.
+     *
+     * @return true if no identical request is in flight and the caller must send it; false if
+     * the callback was attached to the request already in flight.
+     */
+    synchronized boolean join(String key, NetworkResponseCallback callback) {
+        List<NetworkResponseCallback> callbacks = inFlightRequests.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            coalescedRequestCount.incrementAndGet();
+            return false;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        inFlightRequests.put(key, callbacks);
+        return true;
+    }
+
+    /**
+     * Marks the request identified by {@code key} as finished.
+     *
+     * @return every callback waiting on the request.
+     */
+    synchronized List<NetworkResponseCallback> complete(String key) {
+        List<NetworkResponseCallback> callbacks = inFlightRequests.remove(key);
+        return callbacks != null ? callbacks : new ArrayList<>();
+    }
+
+    /**
+     * @return the number of requests that were served by joining an identical in-flight request
+     * instead of being sent.
+     */
+    long getCoalescedRequestCount() {
+        return coalescedRequestCount.get();
+    }
+}
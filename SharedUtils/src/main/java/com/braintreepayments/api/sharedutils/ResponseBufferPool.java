@@ -0,0 +1,115 @@
+package com.braintreepayments.api.sharedutils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayDeque;
+
+/**
+ * Buffers reused when reading response bodies. The pool holds at most {@link #MAX_POOLED_BUFFERS}
+ * read buffers and output buffers no larger than {@link #MAX_RETAINED_OUTPUT_SIZE}, shared by
+ * every thread, so retained memory stays bounded no matter how many threads read responses.
+ * Readers beyond that allocate buffers of their own, which are dropped when released to a full
+ * pool.
+ */
+final class ResponseBufferPool {
+
+    static final int READ_BUFFER_SIZE = 8 * 1024;
+    static final int DEFAULT_OUTPUT_SIZE = 8 * 1024;
+
+    // output buffers grown beyond this size are dropped after use instead of being retained
+    static final int MAX_RETAINED_OUTPUT_SIZE = 64 * 1024;
+
+    // Content-Length is only a sizing hint; don't trust it to allocate arbitrarily large buffers
+    static final int MAX_PRESIZE = 1024 * 1024;
+
+    // covers every thread of the default ThreadScheduler lanes (4 + 2 + 1) reading at once
+    static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final ArrayDeque<byte[]> READ_BUFFERS = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+    private static final ArrayDeque<ResponseBodyOutputStream> OUTPUT_STREAMS =
+            new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+    private ResponseBufferPool() {
+    }
+
+    /**
+     * @return a read buffer of {@link #READ_BUFFER_SIZE} bytes, to be handed back with
+     * {@link #releaseReadBuffer(byte[])}.
+     */
+    static byte[] acquireReadBuffer() {
+        byte[] buffer;
+        synchronized (READ_BUFFERS) {
+            buffer = READ_BUFFERS.pollFirst();
+        }
+        return buffer == null ? new byte[READ_BUFFER_SIZE] : buffer;
+    }
+
+    static void releaseReadBuffer(byte[] buffer) {
+        synchronized (READ_BUFFERS) {
+            if (READ_BUFFERS.size() < MAX_POOLED_BUFFERS) {
+                READ_BUFFERS.offerFirst(buffer);
+            }
+        }
+    }
+
+    /**
+     * @param expectedSize the expected size of the body in bytes, or -1 if unknown.
+     * @return an empty output stream with room for at least {@code expectedSize} bytes.
+     */
+    static ResponseBodyOutputStream acquireOutputStream(int expectedSize) {
+        int capacity = expectedSize > 0
+                ? Math.min(expectedSize, MAX_PRESIZE) : DEFAULT_OUTPUT_SIZE;
+
+        ResponseBodyOutputStream out;
+        synchronized (OUTPUT_STREAMS) {
+            out = OUTPUT_STREAMS.pollFirst();
+        }
+        if (out == null) {
+            return new ResponseBodyOutputStream(capacity);
+        }
+        out.ensureCapacity(capacity);
+        return out;
+    }
+
+    static void release(ResponseBodyOutputStream out) {
+        out.reset();
+        if (out.capacity() > MAX_RETAINED_OUTPUT_SIZE) {
+            return;
+        }
+        synchronized (OUTPUT_STREAMS) {
+            if (OUTPUT_STREAMS.size() < MAX_POOLED_BUFFERS) {
+                OUTPUT_STREAMS.offerFirst(out);
+            }
+        }
+    }
+
+    /**
+     * {@link ByteArrayOutputStream} that can be presized when reused and decodes its contents
+     * without first copying them into a new array.
+     */
+    static final class ResponseBodyOutputStream extends ByteArrayOutputStream {
+
+        ResponseBodyOutputStream(int size) {
+            super(size);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        void ensureCapacity(int capacity) {
+            if (capacity > buf.length && count == 0) {
+                buf = new byte[capacity];
+            }
+        }
+
+        String toUtf8String() {
+            try {
+                return toString("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
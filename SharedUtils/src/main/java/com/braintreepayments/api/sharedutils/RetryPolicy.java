@@ -0,0 +1,46 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+
+/**
+ * Decides whether, and after how long, a failed {@link HttpRequest} is sent again by
+ * {@link HttpClient}. Attempt state is owned by the caller, so a single policy instance can be
+ * shared by any number of concurrent requests.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public interface RetryPolicy {
+
+    /**
+     * Returned by {@link #getRetryDelayMillis(HttpRequest, int, Exception)} when the request
+     * must not be retried.
+     */
+    long DO_NOT_RETRY = -1;
+
+    /**
+     * A policy that never retries.
+     */
+    RetryPolicy NONE = new RetryPolicy() {
+        @Override
+        public int getMaxAttempts() {
+            return 1;
+        }
+
+        @Override
+        public long getRetryDelayMillis(HttpRequest request, int attempt, Exception error) {
+            return DO_NOT_RETRY;
+        }
+    };
+
+    /**
+     * @return the maximum number of times a request is sent, including the first attempt.
+     */
+    int getMaxAttempts();
+
+    /**
+     * @param request the request that failed.
+     * @param attempt the number of attempts made so far, starting at 1.
+     * @param error the failure of the latest attempt.
+     * @return the delay before the next attempt in milliseconds, or {@link #DO_NOT_RETRY}.
+     */
+    long getRetryDelayMillis(HttpRequest request, int attempt, Exception error);
+}
@@ -6,4 +6,14 @@ import androidx.annotation.RestrictTo;
 interface Scheduler {
     void runOnMain(Runnable runnable);
     void runOnBackground(Runnable runnable);
+
+    default void runOnBackground(Runnable runnable, @HttpRequest.Priority int priority) {
+        runOnBackground(runnable);
+    }
+
+    /**
+     * Runs a short task on a timer thread once the delay has elapsed. Long running work must be
+     * handed off to {@link #runOnBackground(Runnable, int)} from within the task.
+     */
+    void runDelayed(Runnable runnable, long delayMillis);
 }
@@ -0,0 +1,94 @@
+package com.braintreepayments.api.sharedutils;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of background threads with its own concurrency cap and queue limit. Work
+ * submitted while the queue is full is rejected instead of spawning more threads.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+class SchedulerLane {
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong startedTaskCount = new AtomicLong();
+    private final AtomicLong totalWaitTimeMillis = new AtomicLong();
+    private final AtomicLong maxWaitTimeMillis = new AtomicLong();
+
+    SchedulerLane(String name, int maxConcurrency, int maxQueueSize) {
+        this(createExecutor(name, maxConcurrency, maxQueueSize));
+    }
+
+    @VisibleForTesting
+    SchedulerLane(ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @throws RejectedExecutionException when the lane's queue is full.
+     */
+    void execute(final Runnable runnable) {
+        final long enqueueTime = System.nanoTime();
+        executor.submit(() -> {
+            recordWaitTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueueTime));
+            runnable.run();
+        });
+    }
+
+    SchedulerLaneMetrics getMetrics() {
+        long started = startedTaskCount.get();
+        long averageWaitTime = (started == 0) ? 0 : totalWaitTimeMillis.get() / started;
+        return new SchedulerLaneMetrics(
+                executor.getQueue().size(),
+                executor.getActiveCount(),
+                averageWaitTime,
+                maxWaitTimeMillis.get()
+        );
+    }
+
+    private void recordWaitTime(long waitTimeMillis) {
+        startedTaskCount.incrementAndGet();
+        totalWaitTimeMillis.addAndGet(waitTimeMillis);
+
+        long currentMax;
+        do {
+            currentMax = maxWaitTimeMillis.get();
+        } while (waitTimeMillis > currentMax
+                && !maxWaitTimeMillis.compareAndSet(currentMax, waitTimeMillis));
+    }
+
+    private static ThreadPoolExecutor createExecutor(
+            final String name, int maxConcurrency, int maxQueueSize) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, name + "-" + threadCount.incrementAndGet());
+            }
+        };
+
+        // core and max pool sizes match so the pool grows up to the cap before queueing
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxConcurrency,
+                maxConcurrency,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxQueueSize),
+                threadFactory
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
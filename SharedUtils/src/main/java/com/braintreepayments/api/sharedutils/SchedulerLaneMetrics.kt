@@ -0,0 +1,19 @@
+package com.braintreepayments.api.sharedutils
+
+import androidx.annotation.RestrictTo
+
+/**
+ * A snapshot of the load on one background scheduler lane.
+ *
+ * @property queueDepth the number of tasks waiting for a thread.
+ * @property activeCount the number of tasks currently running.
+ * @property averageWaitTimeMillis the average time tasks spent queued before they started.
+ * @property maxWaitTimeMillis the longest time a task spent queued before it started.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+data class SchedulerLaneMetrics(
+    val queueDepth: Int,
+    val activeCount: Int,
+    val averageWaitTimeMillis: Long,
+    val maxWaitTimeMillis: Long,
+)
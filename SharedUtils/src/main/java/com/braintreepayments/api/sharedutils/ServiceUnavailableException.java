@@ -8,8 +8,24 @@ import androidx.annotation.RestrictTo;
  */
 public class ServiceUnavailableException extends Exception {
 
+    private final long retryAfterMillis;
+
     @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
     ServiceUnavailableException(String message) {
+        this(message, -1);
+    }
+
+    @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+    ServiceUnavailableException(String message, long retryAfterMillis) {
         super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return how long the server asked the client to wait before trying again, in
+     * milliseconds, or -1 if the response did not include a {@code Retry-After} header.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
     }
 }
@@ -2,10 +2,17 @@ package com.braintreepayments.api.sharedutils;
 
 import androidx.annotation.RestrictTo;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.net.InetAddress;
 import java.net.URL;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
@@ -38,13 +45,40 @@ class SynchronousHttpClient {
         this.socketFactory = socketFactory;
     }
 
+    /**
+     * @return connection reuse metrics when the configured socket factory is a
+     * {@link TLSSocketFactory}, otherwise null.
+     */
+    HttpConnectionMetrics getConnectionMetrics() {
+        if (socketFactory instanceof TLSSocketFactory) {
+            return ((TLSSocketFactory) socketFactory).getConnectionMetrics();
+        }
+        return null;
+    }
+
+    /**
+     * @return the type of parser responses are read with; requests handled by different parsers
+     * must not share results.
+     */
+    Class<?> getParserType() {
+        return parser != null ? parser.getClass() : null;
+    }
+
     HttpResponse request(HttpRequest httpRequest) throws Exception {
+        return request(httpRequest, null);
+    }
+
+    /**
+     * @param call the call the request belongs to, or null. Its remaining budget caps the connect
+     * and read timeouts, and cancelling it disconnects the connection.
+     */
+    HttpResponse request(HttpRequest httpRequest, HttpCall call) throws Exception {
         if (httpRequest.getPath() == null) {
             throw new IllegalArgumentException("Path cannot be null");
         }
         URL url = httpRequest.getURL();
 
-        long startTime = System.currentTimeMillis();
+        HttpPhaseTimer timer = new HttpPhaseTimer();
 
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         if (connection instanceof HttpsURLConnection) {
@@ -52,42 +86,173 @@ class SynchronousHttpClient {
                 throw new SSLException("SSLSocketFactory was not set or failed to initialize");
             }
             ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+
+            HttpConnectionMetrics connectionMetrics = getConnectionMetrics();
+            if (connectionMetrics != null) {
+                connectionMetrics.recordRequest();
+            }
         }
 
-        String requestMethod = httpRequest.getMethod();
-        connection.setRequestMethod(requestMethod);
+        if (call != null) {
+            call.attach(connection);
+        }
 
-        connection.setReadTimeout(httpRequest.getReadTimeout());
-        connection.setConnectTimeout(httpRequest.getConnectTimeout());
+        try {
+            String requestMethod = httpRequest.getMethod();
+            connection.setRequestMethod(requestMethod);
 
-        // apply request headers
-        Map<String, String> headers = httpRequest.getHeaders();
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            connection.setRequestProperty(entry.getKey(), entry.getValue());
-        }
+            connection.setReadTimeout(capTimeout(httpRequest.getReadTimeout(), call));
+            connection.setConnectTimeout(capTimeout(httpRequest.getConnectTimeout(), call));
 
-        if (requestMethod != null && requestMethod.equals("POST")) {
-            connection.setRequestProperty("Content-Type", "application/json");
-            connection.setDoOutput(true);
+            // apply request headers
+            Map<String, String> headers = httpRequest.getHeaders();
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                connection.setRequestProperty(entry.getKey(), entry.getValue());
+            }
 
-            OutputStream outputStream = connection.getOutputStream();
-            outputStream.write(httpRequest.getData());
-            outputStream.flush();
-            outputStream.close();
+            boolean isPost = requestMethod != null && requestMethod.equals("POST");
+            boolean compressData = isPost && httpRequest.shouldCompressData();
+            if (isPost) {
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                if (compressData) {
+                    connection.setRequestProperty("Content-Encoding", "gzip");
+                }
+            }
 
-            httpRequest.dispose();
-        }
+            // connect explicitly so the connection phase (DNS lookup, TCP connect and TLS
+            // handshake) can be timed apart from writing the request
+            TLSSocketFactory.setActivePhaseTimer(timer);
+            try {
+                connection.connect();
+            } finally {
+                TLSSocketFactory.setActivePhaseTimer(null);
+            }
+            timer.markConnected();
+
+            if (isPost) {
+                byte[] data = compressData
+                        ? compress(httpRequest.getData()) : httpRequest.getData();
+
+                OutputStream outputStream = connection.getOutputStream();
+                outputStream.write(data);
+                outputStream.flush();
+                outputStream.close();
+                timer.markRequestWritten(data.length);
+
+                // a request with an idempotency key may be sent again; HttpClient disposes it
+                // once it has finished retrying
+                if (httpRequest.getIdempotencyKey() == null) {
+                    httpRequest.dispose();
+                }
+            }
 
-        try {
             int responseCode = connection.getResponseCode();
-            long endTime = System.currentTimeMillis();
+            timer.markFirstByte(connection.getContentLength());
 
-            String responseBody = parser.parse(responseCode, connection);
+            // The parser reads the response body to the end and closes the stream, which hands the
+            // underlying socket back to the platform's keep-alive pool for the next request to the
+            // same host. Calling disconnect() here would close the socket instead.
+            HttpResponseBodyDecoder bodyDecoder = httpRequest.getBodyDecoder();
+            String responseBody = null;
+            Object decodedBody = null;
+            if (bodyDecoder == null) {
+                responseBody = parser.parse(responseCode, connection);
+            } else {
+                decodedBody = parser.parse(responseCode, connection, bodyDecoder);
+            }
+            timer.markBodyRead();
 
-            HttpResponseTiming timing = new HttpResponseTiming(startTime, endTime);
-            return new HttpResponse(responseBody, timing);
+            return new HttpResponse(responseBody, timer.toTiming(), getHeaders(connection),
+                    responseCode == HttpURLConnection.HTTP_NOT_MODIFIED, decodedBody);
+        } catch (Exception e) {
+            // the response may not have been fully consumed; don't return the socket to the pool
+            connection.disconnect();
+            throw e;
         } finally {
+            if (call != null) {
+                call.detach();
+            }
+        }
+    }
+
+    /**
+     * Resolves the host of {@code url} and sends it a HEAD request, leaving the established TLS
+     * connection in the platform's keep-alive pool for the next request to the same host.
+     * <p>
+     * {@code HEAD /} is used because it is safe and idempotent: it carries no body and no
+     * authorization, changes nothing on the server and returns no payload, so whatever status the
+     * host answers with, the only effect is the open connection. The request is counted in the
+     * connection metrics like any other, so the next request reusing its connection shows up as a
+     * reuse rather than skewing the ratio.
+     *
+     * @param url the url of the host to connect to; only its scheme, host and port are used.
+     * @param timeoutMillis the connect and read timeout.
+     */
+    void preconnect(URL url, int timeoutMillis) throws Exception {
+        InetAddress.getAllByName(url.getHost());
+
+        URL rootUrl = new URL(url, "/");
+        HttpURLConnection connection = (HttpURLConnection) rootUrl.openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            if (socketFactory == null) {
+                throw new SSLException("SSLSocketFactory was not set or failed to initialize");
+            }
+            ((HttpsURLConnection) connection).setSSLSocketFactory(socketFactory);
+
+            HttpConnectionMetrics connectionMetrics = getConnectionMetrics();
+            if (connectionMetrics != null) {
+                connectionMetrics.recordRequest();
+            }
+        }
+        try {
+            connection.setRequestMethod("HEAD");
+            connection.setConnectTimeout(timeoutMillis);
+            connection.setReadTimeout(timeoutMillis);
+
+            // any status will do; closing the (empty) response stream releases the socket to the
+            // pool
+            int responseCode = connection.getResponseCode();
+            InputStream responseStream = responseCode < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream() : connection.getErrorStream();
+            if (responseStream != null) {
+                responseStream.close();
+            }
+        } catch (Exception e) {
             connection.disconnect();
+            throw e;
+        }
+    }
+
+    private static Map<String, String> getHeaders(HttpURLConnection connection) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<String, List<String>> headerFields = connection.getHeaderFields();
+        if (headerFields != null) {
+            for (String name : headerFields.keySet()) {
+                // the status line is reported under a null name
+                if (name != null) {
+                    headers.put(name, connection.getHeaderField(name));
+                }
+            }
+        }
+        return headers;
+    }
+
+    private static int capTimeout(int timeoutMillis, HttpCall call) {
+        if (call == null) {
+            return timeoutMillis;
         }
+        // a timeout of 0 means "wait forever", so never let a spent budget round down to it
+        long remainingMillis = Math.max(1, call.getRemainingMillis());
+        return (int) Math.min(timeoutMillis, remainingMillis);
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        // compressing up front gives the exact number of bytes sent over the wire
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed);
+        gzipOutputStream.write(data);
+        gzipOutputStream.close();
+        return compressed.toByteArray();
     }
 }
@@ -18,6 +18,7 @@ import java.util.Collection;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManagerFactory;
@@ -25,7 +26,17 @@ import javax.net.ssl.TrustManagerFactory;
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class TLSSocketFactory extends SSLSocketFactory {
 
+    // Cached TLS sessions let later handshakes with the same host resume instead of performing a
+    // full key exchange.
+    private static final int SESSION_CACHE_SIZE = 16;
+    private static final int SESSION_TIMEOUT_SECONDS = 60 * 60;
+
+    // The platform opens sockets on the thread that calls connect(), so the timer of the request
+    // being connected can be handed over per thread.
+    private static final ThreadLocal<HttpPhaseTimer> activePhaseTimer = new ThreadLocal<>();
+
     private final SSLSocketFactory internalSSLSocketFactory;
+    private final HttpConnectionMetrics connectionMetrics = new HttpConnectionMetrics();
 
     static TLSSocketFactory newInstance() throws SSLException {
         return new TLSSocketFactory();
@@ -35,6 +46,7 @@ public class TLSSocketFactory extends SSLSocketFactory {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, null, null); // use system security providers
+            enableSessionCaching(sslContext);
             internalSSLSocketFactory = sslContext.getSocketFactory();
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             throw new SSLException(e.getMessage());
@@ -66,6 +78,7 @@ public class TLSSocketFactory extends SSLSocketFactory {
 
             SSLContext sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, tmf.getTrustManagers(), null);
+            enableSessionCaching(sslContext);
             internalSSLSocketFactory = sslContext.getSocketFactory();
         } catch (Exception e) {
             throw new SSLException(e.getMessage());
@@ -76,6 +89,34 @@ public class TLSSocketFactory extends SSLSocketFactory {
         }
     }
 
+    private static void enableSessionCaching(SSLContext sslContext) {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(SESSION_CACHE_SIZE);
+            sessionContext.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+        }
+    }
+
+    /**
+     * @return metrics describing how many connections this factory has opened compared to the
+     * number of requests sent through it.
+     */
+    public HttpConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    /**
+     * Attributes TLS handshakes of sockets opened on the calling thread to the given timer until
+     * it is cleared with a null timer.
+     */
+    static void setActivePhaseTimer(HttpPhaseTimer timer) {
+        if (timer == null) {
+            activePhaseTimer.remove();
+        } else {
+            activePhaseTimer.set(timer);
+        }
+    }
+
     @Override
     public String[] getDefaultCipherSuites() {
         return internalSSLSocketFactory.getDefaultCipherSuites();
@@ -117,12 +158,19 @@ public class TLSSocketFactory extends SSLSocketFactory {
     }
 
     private Socket enableTLSOnSocket(Socket socket) {
+        connectionMetrics.recordConnection();
         if (socket instanceof SSLSocket) {
             ArrayList<String> supportedProtocols =
                     new ArrayList<>(Arrays.asList(((SSLSocket) socket).getSupportedProtocols()));
             supportedProtocols.retainAll(Arrays.asList("TLSv1.2", "TLSv1.3"));
 
             ((SSLSocket) socket).setEnabledProtocols(supportedProtocols.toArray(new String[supportedProtocols.size()]));
+
+            // the handshake runs later within the same connect() call, which marks its end
+            HttpPhaseTimer timer = activePhaseTimer.get();
+            if (timer != null) {
+                timer.markTlsHandshakeStarted();
+            }
         }
 
         return socket;
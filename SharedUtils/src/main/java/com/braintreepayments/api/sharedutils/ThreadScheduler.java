@@ -6,30 +6,106 @@ import android.os.Looper;
 import androidx.annotation.RestrictTo;
 import androidx.annotation.VisibleForTesting;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs work on one of three bounded background lanes, selected by {@link HttpRequest.Priority}.
+ * The lanes are shared by every {@link HttpClient} in the process, so their caps bound the
+ * SDK's total background thread usage.
+ */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 class ThreadScheduler implements Scheduler {
 
+    private static final int USER_CRITICAL_MAX_CONCURRENCY = 4;
+    private static final int USER_CRITICAL_MAX_QUEUE_SIZE = 64;
+
+    private static final int CONFIGURATION_MAX_CONCURRENCY = 2;
+    private static final int CONFIGURATION_MAX_QUEUE_SIZE = 16;
+
+    private static final int BACKGROUND_MAX_CONCURRENCY = 1;
+    private static final int BACKGROUND_MAX_QUEUE_SIZE = 128;
+
+    private static volatile ThreadScheduler INSTANCE;
+
+    static ThreadScheduler getInstance() {
+        if (INSTANCE == null) {
+            synchronized (ThreadScheduler.class) {
+                // double check that instance was not created in another thread
+                if (INSTANCE == null) {
+                    INSTANCE = new ThreadScheduler();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
     private final Handler mainThreadHandler;
-    private final ExecutorService backgroundThreadService;
+    private final SchedulerLane userCriticalLane;
+    private final SchedulerLane configurationLane;
+    private final SchedulerLane backgroundLane;
+    private final ScheduledExecutorService timer;
 
     ThreadScheduler() {
-        this(new Handler(Looper.getMainLooper()), Executors.newCachedThreadPool());
+        this(
+                new Handler(Looper.getMainLooper()),
+                new SchedulerLane("braintree-user-critical",
+                        USER_CRITICAL_MAX_CONCURRENCY, USER_CRITICAL_MAX_QUEUE_SIZE),
+                new SchedulerLane("braintree-configuration",
+                        CONFIGURATION_MAX_CONCURRENCY, CONFIGURATION_MAX_QUEUE_SIZE),
+                new SchedulerLane("braintree-background",
+                        BACKGROUND_MAX_CONCURRENCY, BACKGROUND_MAX_QUEUE_SIZE),
+                Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "braintree-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+        );
     }
 
     @VisibleForTesting
-    ThreadScheduler(Handler mainThreadHandler, ExecutorService backgroundThreadPool) {
+    ThreadScheduler(Handler mainThreadHandler, SchedulerLane userCriticalLane,
+                    SchedulerLane configurationLane, SchedulerLane backgroundLane,
+                    ScheduledExecutorService timer) {
         this.mainThreadHandler = mainThreadHandler;
-        this.backgroundThreadService = backgroundThreadPool;
+        this.userCriticalLane = userCriticalLane;
+        this.configurationLane = configurationLane;
+        this.backgroundLane = backgroundLane;
+        this.timer = timer;
     }
 
     public void runOnBackground(Runnable runnable) {
-        backgroundThreadService.submit(runnable);
+        runOnBackground(runnable, HttpRequest.PRIORITY_USER_CRITICAL);
+    }
+
+    @Override
+    public void runOnBackground(Runnable runnable, @HttpRequest.Priority int priority) {
+        getLane(priority).execute(runnable);
     }
 
     public void runOnMain(Runnable runnable) {
         mainThreadHandler.post(runnable);
     }
+
+    @Override
+    public void runDelayed(Runnable runnable, long delayMillis) {
+        timer.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    SchedulerLaneMetrics getMetrics(@HttpRequest.Priority int priority) {
+        return getLane(priority).getMetrics();
+    }
+
+    private SchedulerLane getLane(@HttpRequest.Priority int priority) {
+        switch (priority) {
+            case HttpRequest.PRIORITY_CONFIGURATION:
+                return configurationLane;
+            case HttpRequest.PRIORITY_BACKGROUND:
+                return backgroundLane;
+            case HttpRequest.PRIORITY_USER_CRITICAL:
+            default:
+                return userCriticalLane;
+        }
+    }
 }
@@ -21,11 +21,14 @@ import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
 import static java.net.HttpURLConnection.HTTP_CREATED;
 import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
 import static java.net.HttpURLConnection.HTTP_INTERNAL_ERROR;
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED;
 import static java.net.HttpURLConnection.HTTP_OK;
 import static java.net.HttpURLConnection.HTTP_UNAUTHORIZED;
 import static java.net.HttpURLConnection.HTTP_UNAVAILABLE;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -172,6 +175,58 @@ public class BaseHttpResponseParserUnitTest {
         }
     }
 
+    public static class HttpNotModifiedTest {
+
+        @Test
+        public void parse_returnsNullAndReleasesResponseStream() throws Exception {
+            InputStream inputStream = spy(new ByteArrayInputStream(new byte[0]));
+            HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getInputStream()).thenReturn(inputStream);
+
+            BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            assertNull(sut.parse(HTTP_NOT_MODIFIED, connection));
+            verify(inputStream).close();
+        }
+    }
+
+    public static class HttpDecodedBodyTest {
+
+        private static final HttpResponseBodyDecoder READ_FIRST_BYTE = body -> (char) body.read();
+
+        @Test
+        public void parse_withDecoder_decodesBodyStraightFromDecompressedStream() throws Exception {
+            InputStream inputStream = createGzippedInputStream("decoded body");
+            HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getInputStream()).thenReturn(inputStream);
+            when(connection.getContentEncoding()).thenReturn("gzip");
+
+            BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            assertEquals('d', sut.parse(HTTP_OK, connection, READ_FIRST_BYTE));
+            assertEquals(-1, inputStream.read());
+            verify(inputStream).close();
+        }
+
+        @Test
+        public void parse_withDecoder_whenNotModified_returnsNull() throws Exception {
+            HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getInputStream()).thenReturn(createPlainTextInputStream(""));
+
+            BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            assertNull(sut.parse(HTTP_NOT_MODIFIED, connection, READ_FIRST_BYTE));
+        }
+
+        @Test
+        public void parse_withDecoder_whenRequestFails_throwsWithoutDecoding() {
+            HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getErrorStream()).thenReturn(createPlainTextInputStream("error"));
+
+            BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            ServerException error = assertThrows(ServerException.class,
+                    () -> sut.parse(HTTP_INTERNAL_ERROR, connection, READ_FIRST_BYTE));
+            assertEquals("error", error.getMessage());
+        }
+    }
+
     public static class HttpTooManyRequestsTest {
 
         @Test
@@ -186,6 +241,64 @@ public class BaseHttpResponseParserUnitTest {
                     "You are being rate-limited. Please try again in a few minutes.";
             assertEquals(expectedMessage, exception.getMessage());
         }
+
+        @Test
+        public void parse_withRetryAfterSeconds_setsRetryAfterMillis() {
+            final HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getHeaderField("Retry-After")).thenReturn("7");
+
+            final BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            RateLimitException exception = assertThrows(RateLimitException.class,
+                    () -> sut.parse(429, connection));
+
+            assertEquals(7000, exception.getRetryAfterMillis());
+        }
+
+        @Test
+        public void parse_withoutRetryAfter_setsRetryAfterMillisToMinusOne() {
+            final HttpURLConnection connection = mock(HttpURLConnection.class);
+
+            final BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            RateLimitException exception = assertThrows(RateLimitException.class,
+                    () -> sut.parse(429, connection));
+
+            assertEquals(-1, exception.getRetryAfterMillis());
+        }
+    }
+
+    public static class RetryAfterTest {
+
+        @Test
+        public void parse_whenServiceUnavailableWithRetryAfter_setsRetryAfterMillis() {
+            final HttpURLConnection connection = mock(HttpURLConnection.class);
+            when(connection.getHeaderField("Retry-After")).thenReturn("2");
+
+            final BaseHttpResponseParser sut = new BaseHttpResponseParser();
+            ServiceUnavailableException exception =
+                    assertThrows(ServiceUnavailableException.class,
+                            () -> sut.parse(HTTP_UNAVAILABLE, connection));
+
+            assertEquals(2000, exception.getRetryAfterMillis());
+        }
+
+        @Test
+        public void parseRetryAfterMillis_withHttpDateInThePast_returnsZero() {
+            long result = BaseHttpResponseParser.parseRetryAfterMillis(
+                    "Wed, 21 Oct 2015 07:28:00 GMT");
+            assertEquals(0, result);
+        }
+
+        @Test
+        public void parseRetryAfterMillis_withHttpDateInTheFuture_returnsRemainingTime() {
+            long result = BaseHttpResponseParser.parseRetryAfterMillis(
+                    "Fri, 31 Dec 9999 23:59:59 GMT");
+            assertTrue(result > 0);
+        }
+
+        @Test
+        public void parseRetryAfterMillis_withMalformedValue_returnsMinusOne() {
+            assertEquals(-1, BaseHttpResponseParser.parseRetryAfterMillis("soon"));
+        }
     }
 
     private static InputStream createPlainTextInputStream(String input) {
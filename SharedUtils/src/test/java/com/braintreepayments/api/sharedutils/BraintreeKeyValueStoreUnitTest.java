@@ -0,0 +1,195 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+@RunWith(RobolectricTestRunner.class)
+public class BraintreeKeyValueStoreUnitTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private QueuedExecutor executor;
+
+    @Before
+    public void beforeEach() {
+        file = new File(temporaryFolder.getRoot(), "store");
+        executor = new QueuedExecutor();
+    }
+
+    @Test
+    public void apply_isVisibleToReadsBeforeItIsWritten() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, executor, null);
+        executor.runAll();
+
+        sut.edit().putString("string", "value").putBoolean("boolean", true).apply();
+
+        assertEquals("value", sut.getString("string", null));
+        assertTrue(sut.getBoolean("boolean", false));
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void apply_coalescesPendingEditsIntoOneWrite() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, executor, null);
+        executor.runAll();
+
+        sut.edit().putString("a", "1").apply();
+        sut.edit().putString("b", "2").apply();
+        sut.edit().putLong("c", 3L).apply();
+
+        assertEquals(1, executor.size());
+        executor.runAll();
+
+        BraintreeKeyValueStore reloaded = new BraintreeKeyValueStore(file, Runnable::run, null);
+        assertEquals("1", reloaded.getString("a", null));
+        assertEquals("2", reloaded.getString("b", null));
+        assertEquals(3L, reloaded.getLong("c", 0L));
+    }
+
+    @Test
+    public void apply_whenNothingChanges_doesNotScheduleWrite() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, Runnable::run, null);
+        sut.edit().putString("a", "1").commit();
+
+        BraintreeKeyValueStore sutWithQueue = new BraintreeKeyValueStore(file, executor, null);
+        executor.runAll();
+        sutWithQueue.edit().putString("a", "1").apply();
+
+        assertEquals(0, executor.size());
+    }
+
+    @Test
+    public void commit_writesAllTypesToDisk() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, Runnable::run, null);
+
+        boolean result = sut.edit()
+                .putString("string", "välue")
+                .putBoolean("boolean", true)
+                .putLong("long", Long.MAX_VALUE)
+                .putInt("int", 42)
+                .putFloat("float", 1.5f)
+                .putStringSet("set", Collections.singleton("item"))
+                .commit();
+
+        assertTrue(result);
+        BraintreeKeyValueStore reloaded = new BraintreeKeyValueStore(file, Runnable::run, null);
+        assertEquals("välue", reloaded.getString("string", null));
+        assertTrue(reloaded.getBoolean("boolean", false));
+        assertEquals(Long.MAX_VALUE, reloaded.getLong("long", 0L));
+        assertEquals(42, reloaded.getInt("int", 0));
+        assertEquals(1.5f, reloaded.getFloat("float", 0f), 0f);
+        assertEquals(Collections.singleton("item"), reloaded.getStringSet("set", null));
+    }
+
+    @Test
+    public void remove_andClear_removeValues() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, Runnable::run, null);
+        sut.edit().putString("a", "1").putString("b", "2").putString("c", "3").commit();
+
+        sut.edit().remove("a").putString("b", null).commit();
+        assertFalse(sut.contains("a"));
+        assertFalse(sut.contains("b"));
+        assertTrue(sut.contains("c"));
+
+        sut.edit().clear().putString("d", "4").commit();
+        assertEquals(Collections.singletonMap("d", "4"), sut.getAll());
+    }
+
+    @Test
+    public void load_whenStoreDoesNotExist_movesLegacyValuesAndClearsLegacyPreferences() {
+        SharedPreferences legacyPreferences = mock(SharedPreferences.class, RETURNS_DEEP_STUBS);
+        Map<String, Object> legacyValues = new HashMap<>();
+        legacyValues.put("InstallationGUID", "guid");
+        legacyValues.put("vaultVenmo", true);
+        when(legacyPreferences.getAll()).thenAnswer(invocation -> legacyValues);
+
+        BraintreeKeyValueStore sut =
+                new BraintreeKeyValueStore(file, Runnable::run, legacyPreferences);
+
+        assertEquals("guid", sut.getString("InstallationGUID", null));
+        assertTrue(sut.getBoolean("vaultVenmo", false));
+        assertTrue(file.exists());
+        verify(legacyPreferences.edit().clear()).apply();
+    }
+
+    @Test
+    public void load_whenStoreExists_ignoresLegacyPreferences() {
+        new BraintreeKeyValueStore(file, Runnable::run, null).edit().putString("a", "1").commit();
+        SharedPreferences legacyPreferences = mock(SharedPreferences.class);
+
+        BraintreeKeyValueStore sut =
+                new BraintreeKeyValueStore(file, Runnable::run, legacyPreferences);
+
+        assertEquals("1", sut.getString("a", null));
+        verify(legacyPreferences, never()).getAll();
+    }
+
+    @Test
+    public void load_whenFileIsCorrupt_startsEmpty() throws Exception {
+        new BraintreeKeyValueStore(file, Runnable::run, null).edit().putString("a", "1").commit();
+        java.nio.file.Files.write(file.toPath(), new byte[] {0, 0, 0, 1, 0, 0, 0, 9});
+
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, Runnable::run, null);
+
+        assertNull(sut.getString("a", null));
+    }
+
+    @Test
+    public void edit_notifiesChangeListeners() {
+        BraintreeKeyValueStore sut = new BraintreeKeyValueStore(file, Runnable::run, null);
+        SharedPreferences.OnSharedPreferenceChangeListener listener =
+                mock(SharedPreferences.OnSharedPreferenceChangeListener.class);
+        sut.registerOnSharedPreferenceChangeListener(listener);
+
+        sut.edit().putString("a", "1").apply();
+
+        verify(listener).onSharedPreferenceChanged(sut, "a");
+    }
+
+    private static class QueuedExecutor implements Executor {
+
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        int size() {
+            return queue.size();
+        }
+
+        void runAll() {
+            Runnable runnable;
+            while ((runnable = queue.poll()) != null) {
+                runnable.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class ExponentialBackoffRetryPolicyUnitTest {
+
+    private Random random;
+    private HttpRequest getRequest;
+
+    @Before
+    public void beforeEach() {
+        random = mock(Random.class);
+        getRequest = new HttpRequest().method("GET").path("https://example.com");
+    }
+
+    @Test
+    public void getRetryDelayMillis_growsCapExponentiallyWithFullJitter() {
+        when(random.nextDouble()).thenReturn(0.5);
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(5, 100, 10000, random);
+
+        Exception error = new Exception("error");
+        assertEquals(50, sut.getRetryDelayMillis(getRequest, 1, error));
+        assertEquals(100, sut.getRetryDelayMillis(getRequest, 2, error));
+        assertEquals(200, sut.getRetryDelayMillis(getRequest, 3, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_neverExceedsMaxDelay() {
+        when(random.nextDouble()).thenReturn(0.999);
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(50, 100, 1000, random);
+
+        long result = sut.getRetryDelayMillis(getRequest, 40, new Exception("error"));
+        assertTrue(result >= 900 && result <= 1000);
+    }
+
+    @Test
+    public void getRetryDelayMillis_honorsRetryAfterFromRateLimitException() {
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+
+        Exception error = new RateLimitException("rate limited", 5000);
+        assertEquals(5000, sut.getRetryDelayMillis(getRequest, 1, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_honorsRetryAfterFromServiceUnavailableException() {
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+
+        Exception error = new ServiceUnavailableException("unavailable", 2000);
+        assertEquals(2000, sut.getRetryDelayMillis(getRequest, 1, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_whenRetryAfterIsTooLong_doesNotRetry() {
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+
+        Exception error = new RateLimitException("rate limited", 60 * 60 * 1000);
+        assertEquals(RetryPolicy.DO_NOT_RETRY, sut.getRetryDelayMillis(getRequest, 1, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_whenClientError_doesNotRetry() {
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+
+        Exception error = new AuthenticationException("unauthorized");
+        assertEquals(RetryPolicy.DO_NOT_RETRY, sut.getRetryDelayMillis(getRequest, 1, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_whenPostWithoutIdempotencyKey_doesNotRetry() {
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+        HttpRequest request = new HttpRequest().method("POST").path("https://example.com");
+
+        Exception error = new Exception("error");
+        assertEquals(RetryPolicy.DO_NOT_RETRY, sut.getRetryDelayMillis(request, 1, error));
+    }
+
+    @Test
+    public void getRetryDelayMillis_whenPostWithIdempotencyKey_retries() {
+        when(random.nextDouble()).thenReturn(0.5);
+        ExponentialBackoffRetryPolicy sut =
+                new ExponentialBackoffRetryPolicy(3, 100, 1000, random);
+        HttpRequest request = new HttpRequest()
+                .method("POST")
+                .path("https://example.com")
+                .idempotencyKey("key");
+
+        assertEquals(50, sut.getRetryDelayMillis(request, 1, new Exception("error")));
+    }
+}
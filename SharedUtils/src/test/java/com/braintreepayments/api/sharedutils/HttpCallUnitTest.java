@@ -0,0 +1,76 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+
+public class HttpCallUnitTest {
+
+    @Test
+    public void cancel_disconnectsAttachedConnection() throws IOException {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        HttpCall sut = new HttpCall();
+        sut.attach(connection);
+
+        sut.cancel();
+
+        assertTrue(sut.isCancelled());
+        verify(connection).disconnect();
+    }
+
+    @Test
+    public void cancel_afterConnectionIsDetached_doesNotDisconnectIt() throws IOException {
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        HttpCall sut = new HttpCall();
+        sut.attach(connection);
+        sut.detach();
+
+        sut.cancel();
+
+        verify(connection, never()).disconnect();
+    }
+
+    @Test
+    public void attach_whenCallIsCancelled_throwsIOException() {
+        HttpCall sut = new HttpCall();
+        sut.cancel();
+
+        assertThrows(IOException.class, () -> sut.attach(mock(HttpURLConnection.class)));
+    }
+
+    @Test
+    public void expire_whenCallIsCancelled_doesNotMarkCallExpired() {
+        HttpCall sut = new HttpCall();
+        sut.cancel();
+
+        sut.expire();
+
+        assertFalse(sut.isExpired());
+    }
+
+    @Test
+    public void getRemainingMillis_withoutDeadline_returnsMaxValue() {
+        HttpCall sut = new HttpCall();
+
+        assertFalse(sut.hasDeadline());
+        assertEquals(Long.MAX_VALUE, sut.getRemainingMillis());
+    }
+
+    @Test
+    public void getRemainingMillis_withDeadline_countsDownFromTimeout() {
+        HttpCall sut = new HttpCall(1000);
+
+        assertTrue(sut.hasDeadline());
+        assertTrue(sut.getRemainingMillis() <= 1000);
+        assertFalse(sut.isExpired());
+    }
+}
@@ -1,8 +1,12 @@
 package com.braintreepayments.api.sharedutils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.reset;
@@ -16,17 +20,24 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+
 public class HttpClientUnitTest {
 
     private SynchronousHttpClient syncHttpClient;
 
     private HttpRequest httpRequest;
     private MockThreadScheduler threadScheduler;
+    private RetryPolicy noDelayRetryPolicy;
 
     @Before
     public void beforeEach() {
         syncHttpClient = mock(SynchronousHttpClient.class);
         threadScheduler = spy(new MockThreadScheduler());
+        noDelayRetryPolicy = new ExponentialBackoffRetryPolicy(HttpClient.MAX_RETRY_ATTEMPTS, 0, 0);
 
         httpRequest = new HttpRequest().path("https://example.com");
     }
@@ -44,6 +55,75 @@ public class HttpClientUnitTest {
         verify(syncHttpClient).request(httpRequest);
     }
 
+    @Test
+    public void preconnect_connectsToHostOnConfigurationLane() throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+
+        sut.preconnect("https://example.com/graphql");
+
+        verify(threadScheduler)
+                .runOnBackground(any(Runnable.class), eq(HttpRequest.PRIORITY_CONFIGURATION));
+        verifyNoInteractions(syncHttpClient);
+        threadScheduler.flushBackgroundThread();
+
+        verify(syncHttpClient).preconnect(eq(new URL("https://example.com/graphql")), anyInt());
+    }
+
+    @Test
+    public void runOnBackground_runsOnLaneOfGivenPriority() {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        Runnable runnable = mock(Runnable.class);
+
+        sut.runOnBackground(runnable, HttpRequest.PRIORITY_CONFIGURATION);
+
+        verify(threadScheduler).runOnBackground(runnable, HttpRequest.PRIORITY_CONFIGURATION);
+    }
+
+    @Test
+    public void preconnect_ignoresFailures() throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        doThrow(new IOException("error"))
+                .when(syncHttpClient).preconnect(any(URL.class), anyInt());
+
+        sut.preconnect("https://example.com");
+        threadScheduler.flushBackgroundThread();
+
+        sut.preconnect("not a url");
+        doThrow(new RejectedExecutionException())
+                .when(threadScheduler).runOnBackground(any(Runnable.class), anyInt());
+        sut.preconnect("https://example.com");
+
+        verify(syncHttpClient).preconnect(any(URL.class), anyInt());
+    }
+
+    @Test
+    public void sendRequest_schedulesRequestWithRequestPriority() {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        httpRequest.priority(HttpRequest.PRIORITY_BACKGROUND);
+
+        sut.sendRequest(httpRequest, mock(NetworkResponseCallback.class));
+
+        verify(threadScheduler)
+                .runOnBackground(any(Runnable.class), eq(HttpRequest.PRIORITY_BACKGROUND));
+    }
+
+    @Test
+    public void sendRequest_whenSchedulerRejectsRequest_notifiesErrorViaCallbackOnMainThread() {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        doThrow(new RejectedExecutionException())
+                .when(threadScheduler).runOnBackground(any(Runnable.class), anyInt());
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, callback);
+
+        threadScheduler.flushMainThread();
+
+        ArgumentCaptor<Exception> captor = ArgumentCaptor.forClass(Exception.class);
+        verify(callback).onResult((HttpResponse) isNull(), captor.capture());
+        assertEquals("Too many pending requests. Try again later.",
+                captor.getValue().getMessage());
+    }
+
     @Test
     public void sendRequest_whenBaseHttpClientThrowsException_notifiesErrorViaCallbackOnMainThread()
             throws Exception {
@@ -80,6 +160,181 @@ public class HttpClientUnitTest {
         verify(callback).onResult(response, null);
     }
 
+    @Test
+    public void sendRequest_whenNotNotifyingOnMainThread_notifiesOnBackgroundThread()
+            throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(httpRequest)).thenReturn(response);
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, RetryPolicy.NONE, null, false, callback);
+
+        threadScheduler.flushBackgroundThread();
+        verify(callback).onResult(response, null);
+        verify(threadScheduler, never()).runOnMain(any(Runnable.class));
+    }
+
+    @Test
+    public void sendRequest_whenCoalescedCallersAskForDifferentThreads_notifiesEachOnItsOwn()
+            throws Exception {
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(any(HttpRequest.class))).thenReturn(response);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        NetworkResponseCallback mainCallback = mock(NetworkResponseCallback.class);
+        NetworkResponseCallback backgroundCallback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"),
+                RetryPolicy.NONE, null, true, mainCallback);
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"),
+                RetryPolicy.NONE, null, false, backgroundCallback);
+
+        threadScheduler.flushBackgroundThread();
+        verify(backgroundCallback).onResult(response, null);
+        verify(mainCallback, never()).onResult(any(), any());
+
+        threadScheduler.flushMainThread();
+        verify(mainCallback).onResult(response, null);
+    }
+
+    @Test
+    public void sendRequest_onSuccess_notifiesTimingListenerOnBackgroundThread() throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        HttpResponseTiming timing = new HttpResponseTiming(123, 456);
+        HttpResponse response = new HttpResponse("response body", timing);
+
+        when(syncHttpClient.request(httpRequest)).thenReturn(response);
+
+        HttpTimingListener timingListener = mock(HttpTimingListener.class);
+        sut.setTimingListener(timingListener);
+        sut.sendRequest(httpRequest, mock(NetworkResponseCallback.class));
+
+        threadScheduler.flushBackgroundThread();
+        verify(timingListener).onRequestTimed(httpRequest, timing);
+    }
+
+    @Test
+    public void sendRequest_onError_doesNotNotifyTimingListener() throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        when(syncHttpClient.request(httpRequest)).thenThrow(new Exception("error"));
+
+        HttpTimingListener timingListener = mock(HttpTimingListener.class);
+        sut.setTimingListener(timingListener);
+        sut.sendRequest(httpRequest, mock(NetworkResponseCallback.class));
+
+        threadScheduler.flushBackgroundThread();
+        verify(timingListener, never()).onRequestTimed(any(), any());
+    }
+
+    @Test
+    public void sendRequest_synchronously_notifiesTimingListener() throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        HttpResponseTiming timing = new HttpResponseTiming(123, 456);
+        when(syncHttpClient.request(httpRequest))
+                .thenReturn(new HttpResponse("response body", timing));
+
+        HttpTimingListener timingListener = mock(HttpTimingListener.class);
+        sut.setTimingListener(timingListener);
+
+        assertEquals("response body", sut.sendRequest(httpRequest));
+        verify(timingListener).onRequestTimed(httpRequest, timing);
+    }
+
+    @Test
+    public void sendRequest_whenCallIsCancelledBeforeRequestRuns_doesNotSendRequest()
+            throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        HttpCall call = new HttpCall();
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, RetryPolicy.NONE, call, callback);
+        call.cancel();
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        verifyNoInteractions(syncHttpClient);
+        verifyNoInteractions(callback);
+    }
+
+    @Test
+    public void sendRequest_whenCallIsCancelledBeforeResultIsDelivered_doesNotNotifyCallback()
+            throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        HttpCall call = new HttpCall();
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(httpRequest, call)).thenReturn(response);
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, RetryPolicy.NONE, call, callback);
+
+        threadScheduler.flushBackgroundThread();
+        call.cancel();
+        threadScheduler.flushMainThread();
+
+        verifyNoInteractions(callback);
+    }
+
+    @Test
+    public void sendRequest_whenCallHasDeadline_abortsRequestAndNotifiesDeadlineExceeded()
+            throws Exception {
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler, noDelayRetryPolicy);
+        HttpCall call = new HttpCall(1000);
+        when(syncHttpClient.request(httpRequest, call)).thenAnswer(invocation -> {
+            // the deadline passes while the request is in flight
+            call.expire();
+            throw new IOException("Socket closed");
+        });
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, noDelayRetryPolicy, call, callback);
+
+        assertEquals(1, threadScheduler.getDelays().size());
+        assertTrue(threadScheduler.getDelays().get(0) <= 1000);
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        // no retry once the deadline has passed
+        verify(syncHttpClient, times(1)).request(httpRequest, call);
+        ArgumentCaptor<Exception> captor = ArgumentCaptor.forClass(Exception.class);
+        verify(callback).onResult(isNull(), captor.capture());
+        assertTrue(captor.getValue() instanceof HttpClientException);
+        assertEquals("Request deadline exceeded. Try again later.", captor.getValue().getMessage());
+    }
+
+    @Test
+    public void sendRequest_whenRetryDelayExceedsRemainingBudget_notifiesDeadlineExceeded()
+            throws Exception {
+        RetryPolicy slowRetryPolicy = new RetryPolicy() {
+            @Override
+            public int getMaxAttempts() {
+                return 3;
+            }
+
+            @Override
+            public long getRetryDelayMillis(HttpRequest request, int attempt, Exception error) {
+                return 10_000;
+            }
+        };
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler, slowRetryPolicy);
+        HttpCall call = new HttpCall(1000);
+        when(syncHttpClient.request(httpRequest, call)).thenThrow(new IOException("error"));
+
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, slowRetryPolicy, call, callback);
+
+        // run only the request; leave the deadline timer pending
+        Runnable request = threadScheduler.takeBackgroundRunnables().get(0);
+        request.run();
+        threadScheduler.flushMainThread();
+
+        verify(syncHttpClient, times(1)).request(httpRequest, call);
+        ArgumentCaptor<Exception> captor = ArgumentCaptor.forClass(Exception.class);
+        verify(callback).onResult(isNull(), captor.capture());
+        assertEquals("Request deadline exceeded. Try again later.", captor.getValue().getMessage());
+    }
+
     @Test
     public void sendRequest_whenCallbackIsNull_doesNotNotifySuccess() throws Exception {
         HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
@@ -178,4 +433,175 @@ public class HttpClientUnitTest {
         String result = sut.sendRequest(httpRequest);
         assertEquals("response body", result);
     }
+
+    @Test
+    public void sendRequest_whenRetryPolicyReturnsDelay_schedulesRetryAfterDelay() throws Exception {
+        RetryPolicy retryPolicy = mock(RetryPolicy.class);
+        when(retryPolicy.getMaxAttempts()).thenReturn(3);
+        when(retryPolicy.getRetryDelayMillis(any(HttpRequest.class), anyInt(), any(Exception.class)))
+                .thenReturn(1234L);
+        when(syncHttpClient.request(httpRequest)).thenThrow(new Exception("error"));
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        sut.sendRequest(httpRequest, retryPolicy, mock(NetworkResponseCallback.class));
+        threadScheduler.flushBackgroundThread();
+
+        assertEquals(Arrays.asList(1234L, 1234L), threadScheduler.getDelays());
+        verify(retryPolicy).getRetryDelayMillis(eq(httpRequest), eq(1), any(Exception.class));
+        verify(retryPolicy).getRetryDelayMillis(eq(httpRequest), eq(2), any(Exception.class));
+        verify(syncHttpClient, times(3)).request(httpRequest);
+    }
+
+    @Test
+    public void sendRequest_whenRetryPolicyDeclinesRetry_notifiesOriginalError() throws Exception {
+        Exception exception = new AuthenticationException("unauthorized");
+        when(syncHttpClient.request(httpRequest)).thenThrow(exception);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(httpRequest, HttpClient.RETRY_MAX_3_TIMES, callback);
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        verify(syncHttpClient, times(1)).request(httpRequest);
+        verify(callback).onResult(null, exception);
+    }
+
+    @Test
+    public void sendRequest_whenPostWithIdempotencyKeyIsRetried_keepsDataUntilFinished()
+            throws Exception {
+        HttpRequest postRequest = new HttpRequest()
+                .path("https://example.com")
+                .method("POST")
+                .data("data")
+                .idempotencyKey("key");
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(postRequest))
+                .thenThrow(new Exception("error"))
+                .thenAnswer(invocation -> {
+                    // the retry must send the original body
+                    assertEquals("data", new String(postRequest.getData(), "UTF-8"));
+                    return response;
+                });
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler, noDelayRetryPolicy);
+        NetworkResponseCallback callback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(postRequest, HttpClient.RETRY_MAX_3_TIMES, callback);
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        verify(callback).onResult(response, null);
+        assertEquals(0, postRequest.getData()[0]);
+    }
+
+    @Test
+    public void sendRequest_whenIdenticalGetIsInFlight_sharesOneNetworkCall() throws Exception {
+        HttpRequest first = new HttpRequest().method("GET").path("https://example.com");
+        HttpRequest second = new HttpRequest().method("GET").path("https://example.com");
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(any(HttpRequest.class))).thenReturn(response);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        NetworkResponseCallback firstCallback = mock(NetworkResponseCallback.class);
+        NetworkResponseCallback secondCallback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(first, firstCallback);
+        sut.sendRequest(second, secondCallback);
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        verify(syncHttpClient, times(1)).request(any(HttpRequest.class));
+        verify(firstCallback).onResult(response, null);
+        verify(secondCallback).onResult(response, null);
+        assertEquals(1, sut.getCoalescedRequestCount());
+    }
+
+    @Test
+    public void sendRequest_whenCoalescedGetCompletes_disposesEveryJoinedRequest()
+            throws Exception {
+        HttpRequest first = new HttpRequest().method("GET").path("https://example.com")
+                .data("first");
+        HttpRequest second = new HttpRequest().method("GET").path("https://example.com")
+                .data("second");
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(any(HttpRequest.class))).thenReturn(response);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        sut.sendRequest(first, mock(NetworkResponseCallback.class));
+        sut.sendRequest(second, null);
+        assertEquals('s', second.getData()[0]);
+
+        threadScheduler.flushBackgroundThread();
+
+        assertEquals(0, first.getData()[0]);
+        assertEquals(0, second.getData()[0]);
+    }
+
+    @Test
+    public void sendRequest_whenGetsDifferInHeaders_doesNotCoalesce() throws Exception {
+        HttpRequest first = new HttpRequest().method("GET").path("https://example.com")
+                .addHeader("Client-Key", "key-1");
+        HttpRequest second = new HttpRequest().method("GET").path("https://example.com")
+                .addHeader("Client-Key", "key-2");
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        sut.sendRequest(first, mock(NetworkResponseCallback.class));
+        sut.sendRequest(second, mock(NetworkResponseCallback.class));
+        threadScheduler.flushBackgroundThread();
+
+        verify(syncHttpClient).request(first);
+        verify(syncHttpClient).request(second);
+        assertEquals(0, sut.getCoalescedRequestCount());
+    }
+
+    @Test
+    public void sendRequest_whenIdenticalPostIsInFlight_doesNotCoalesce() throws Exception {
+        HttpRequest first = new HttpRequest().method("POST").path("https://example.com").data("{}");
+        HttpRequest second = new HttpRequest().method("POST").path("https://example.com").data("{}");
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        sut.sendRequest(first, mock(NetworkResponseCallback.class));
+        sut.sendRequest(second, mock(NetworkResponseCallback.class));
+        threadScheduler.flushBackgroundThread();
+
+        verify(syncHttpClient, times(2)).request(any(HttpRequest.class));
+    }
+
+    @Test
+    public void sendRequest_afterCoalescedGetCompletes_sendsNewRequest() throws Exception {
+        HttpResponse response = new HttpResponse("response body", new HttpResponseTiming(123, 456));
+        when(syncHttpClient.request(any(HttpRequest.class))).thenReturn(response);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"),
+                mock(NetworkResponseCallback.class));
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"),
+                mock(NetworkResponseCallback.class));
+        threadScheduler.flushBackgroundThread();
+
+        verify(syncHttpClient, times(2)).request(any(HttpRequest.class));
+    }
+
+    @Test
+    public void sendRequest_whenCoalescedGetFails_notifiesErrorToEveryCaller() throws Exception {
+        Exception exception = new Exception("error");
+        when(syncHttpClient.request(any(HttpRequest.class))).thenThrow(exception);
+
+        HttpClient sut = new HttpClient(syncHttpClient, threadScheduler);
+        NetworkResponseCallback firstCallback = mock(NetworkResponseCallback.class);
+        NetworkResponseCallback secondCallback = mock(NetworkResponseCallback.class);
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"), firstCallback);
+        sut.sendRequest(new HttpRequest().method("GET").path("https://example.com"), secondCallback);
+
+        threadScheduler.flushBackgroundThread();
+        threadScheduler.flushMainThread();
+
+        verify(firstCallback).onResult(null, exception);
+        verify(secondCallback).onResult(null, exception);
+    }
 }
@@ -0,0 +1,38 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class HttpConnectionMetricsUnitTest {
+
+    @Test
+    public void getReuseRatio_whenNoRequestsRecorded_returnsZero() {
+        HttpConnectionMetrics sut = new HttpConnectionMetrics();
+        assertEquals(0.0, sut.getReuseRatio(), 0.0);
+    }
+
+    @Test
+    public void getReuseRatio_returnsFractionOfRequestsThatDidNotOpenAConnection() {
+        HttpConnectionMetrics sut = new HttpConnectionMetrics();
+        sut.recordRequest();
+        sut.recordConnection();
+        sut.recordRequest();
+        sut.recordRequest();
+        sut.recordRequest();
+
+        assertEquals(4, sut.getRequestCount());
+        assertEquals(1, sut.getConnectionCount());
+        assertEquals(0.75, sut.getReuseRatio(), 0.0);
+    }
+
+    @Test
+    public void getReuseRatio_whenMoreConnectionsThanRequests_returnsZero() {
+        HttpConnectionMetrics sut = new HttpConnectionMetrics();
+        sut.recordRequest();
+        sut.recordConnection();
+        sut.recordConnection();
+
+        assertEquals(0.0, sut.getReuseRatio(), 0.0);
+    }
+}
@@ -0,0 +1,53 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpPhaseTimerUnitTest {
+
+    @Test
+    public void toTiming_whenNoTlsHandshakeWasObserved_reportsZeroHandshakeDuration() {
+        HttpPhaseTimer sut = new HttpPhaseTimer();
+        sut.markConnected();
+        sut.markRequestWritten(10);
+        sut.markFirstByte(20);
+        sut.markBodyRead();
+
+        HttpResponseTiming timing = sut.toTiming();
+        assertEquals(0, timing.getTlsHandshakeDuration());
+        assertEquals(10, timing.getBytesSent());
+        assertEquals(20, timing.getBytesReceived());
+    }
+
+    @Test
+    public void toTiming_measuresTlsHandshakeUntilConnected() throws InterruptedException {
+        HttpPhaseTimer sut = new HttpPhaseTimer();
+        sut.markTlsHandshakeStarted();
+        Thread.sleep(20);
+        sut.markConnected();
+        sut.markFirstByte(-1);
+        sut.markBodyRead();
+
+        HttpResponseTiming timing = sut.toTiming();
+        assertTrue(timing.getTlsHandshakeDuration() >= 20);
+        assertTrue(timing.getConnectDuration() < timing.getTlsHandshakeDuration());
+        assertEquals(0, timing.getRequestWriteDuration());
+        assertEquals(-1, timing.getBytesReceived());
+    }
+
+    @Test
+    public void toTiming_derivesEndTimeFromMonotonicTimeToFirstByte() throws InterruptedException {
+        HttpPhaseTimer sut = new HttpPhaseTimer();
+        sut.markConnected();
+        Thread.sleep(20);
+        sut.markFirstByte(0);
+        sut.markBodyRead();
+
+        HttpResponseTiming timing = sut.toTiming();
+        assertTrue(timing.getEndTime() - timing.getStartTime() >= 20);
+        assertTrue(timing.getTimeToFirstByte() >= 20);
+        assertTrue(timing.getTotalDuration() >= timing.getTimeToFirstByte());
+    }
+}
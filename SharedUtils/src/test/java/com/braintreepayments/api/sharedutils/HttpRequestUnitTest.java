@@ -107,6 +107,50 @@ public class HttpRequestUnitTest {
             assertEquals(30000, sut.getReadTimeout());
         }
 
+        @Test
+        public void constructor_setsPriorityToUserCriticalByDefault() {
+            HttpRequest sut = HttpRequest.newInstance();
+            assertEquals(HttpRequest.PRIORITY_USER_CRITICAL, sut.getPriority());
+        }
+
+        @Test
+        public void getPriority_returnsPriority() {
+            HttpRequest sut = HttpRequest.newInstance()
+                    .priority(HttpRequest.PRIORITY_BACKGROUND);
+            assertEquals(HttpRequest.PRIORITY_BACKGROUND, sut.getPriority());
+        }
+
+        @Test
+        public void shouldCompressData_isFalseByDefault() {
+            HttpRequest sut = HttpRequest.newInstance()
+                    .data("some data");
+            assertFalse(sut.shouldCompressData());
+        }
+
+        @Test
+        public void shouldCompressData_whenDataIsBelowThreshold_returnsFalse() {
+            HttpRequest sut = HttpRequest.newInstance()
+                    .data("1234")
+                    .compressData(5);
+            assertFalse(sut.shouldCompressData());
+        }
+
+        @Test
+        public void shouldCompressData_whenDataReachesThreshold_returnsTrue() {
+            HttpRequest sut = HttpRequest.newInstance()
+                    .data("12345")
+                    .compressData(5);
+            assertTrue(sut.shouldCompressData());
+        }
+
+        @Test
+        public void idempotencyKey_setsKeyAndIdempotencyKeyHeader() {
+            HttpRequest sut = HttpRequest.newInstance()
+                    .idempotencyKey("sample-key");
+            assertEquals("sample-key", sut.getIdempotencyKey());
+            assertEquals("sample-key", sut.getHeaders().get("Idempotency-Key"));
+        }
+
         @Test
         public void getURL_throwsMalformedURLExceptionIfBaseURLIsNull() {
             HttpRequest sut = HttpRequest.newInstance()
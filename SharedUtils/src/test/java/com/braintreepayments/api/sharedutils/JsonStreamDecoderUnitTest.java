@@ -0,0 +1,59 @@
+package com.braintreepayments.api.sharedutils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class JsonStreamDecoderUnitTest {
+
+    @Test
+    public void readObject_readsTheSameValuesAsJSONObject() throws JSONException {
+        String json = "{\"string\": \"value\", \"int\": 1, \"long\": 12345678901, "
+                + "\"double\": 1.5, \"exponent\": 1e2, \"boolean\": true, \"null\": null, "
+                + "\"array\": [1, \"two\", {\"three\": 3}], \"object\": {\"nested\": []}}";
+
+        JSONObject result = JsonStreamDecoder.readObject(toStream(json));
+
+        assertEquals(new JSONObject(json).toString(), result.toString());
+        assertEquals(Integer.class, result.get("int").getClass());
+        assertEquals(Long.class, result.get("long").getClass());
+        assertEquals(Double.class, result.get("exponent").getClass());
+        assertTrue(result.isNull("null"));
+        JSONArray array = result.getJSONArray("array");
+        assertEquals(3, array.getJSONObject(2).getInt("three"));
+    }
+
+    @Test
+    public void readObject_readsUtf8() throws JSONException {
+        JSONObject result = JsonStreamDecoder.readObject(toStream("{\"name\": \"Zoë €\"}"));
+
+        assertEquals("Zoë €", result.getString("name"));
+    }
+
+    @Test
+    public void readObject_whenJsonIsMalformed_throwsJSONException() {
+        assertThrows(JSONException.class,
+                () -> JsonStreamDecoder.readObject(toStream("{\"key\": ")));
+    }
+
+    @Test
+    public void readObject_whenJsonIsNotAnObject_throwsJSONException() {
+        assertThrows(JSONException.class, () -> JsonStreamDecoder.readObject(toStream("[1]")));
+    }
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
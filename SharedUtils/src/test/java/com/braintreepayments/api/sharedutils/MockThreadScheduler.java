@@ -9,10 +9,12 @@ class MockThreadScheduler implements Scheduler {
 
     private final List<Runnable> mainThreadRunnables;
     private final List<Runnable> backgroundThreadRunnables;
+    private final List<Long> delays;
 
     MockThreadScheduler() {
         mainThreadRunnables = new ArrayList<>();
         backgroundThreadRunnables = new ArrayList<>();
+        delays = new ArrayList<>();
     }
 
     @Override
@@ -25,6 +27,27 @@ class MockThreadScheduler implements Scheduler {
         backgroundThreadRunnables.add(runnable);
     }
 
+    @Override
+    public void runDelayed(Runnable runnable, long delayMillis) {
+        // delays are recorded but not waited for; the runnable runs with the background queue
+        delays.add(delayMillis);
+        backgroundThreadRunnables.add(runnable);
+    }
+
+    List<Long> getDelays() {
+        return delays;
+    }
+
+    /**
+     * Removes the queued background runnables without running them, so a test can run them
+     * selectively.
+     */
+    List<Runnable> takeBackgroundRunnables() {
+        List<Runnable> runnables = new ArrayList<>(backgroundThreadRunnables);
+        backgroundThreadRunnables.clear();
+        return runnables;
+    }
+
     void flushMainThread() {
         List<Runnable> remainingRunnables = new ArrayList<>(mainThreadRunnables);
         mainThreadRunnables.clear();
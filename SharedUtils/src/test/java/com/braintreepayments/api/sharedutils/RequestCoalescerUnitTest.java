@@ -0,0 +1,58 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class RequestCoalescerUnitTest {
+
+    @Test
+    public void createKey_whenRequestIsNotGet_returnsNull() {
+        HttpRequest request = new HttpRequest().method("POST").path("https://example.com");
+        assertNull(RequestCoalescer.createKey(request, null));
+    }
+
+    @Test
+    public void createKey_includesScope() {
+        HttpRequest request = new HttpRequest().method("GET").path("https://example.com");
+        assertNotEquals(RequestCoalescer.createKey(request, String.class),
+                RequestCoalescer.createKey(request, Integer.class));
+    }
+
+    @Test
+    public void createKey_includesBodyDecoder() {
+        HttpRequest request = new HttpRequest().method("GET").path("https://example.com");
+        HttpRequest decodedRequest = new HttpRequest().method("GET").path("https://example.com")
+                .bodyDecoder(body -> null);
+        assertNotEquals(RequestCoalescer.createKey(request, String.class),
+                RequestCoalescer.createKey(decodedRequest, String.class));
+    }
+
+    @Test
+    public void join_returnsTrueOnlyForTheFirstCaller() {
+        RequestCoalescer sut = new RequestCoalescer();
+
+        assertTrue(sut.join("key", mock(NetworkResponseCallback.class)));
+        assertFalse(sut.join("key", mock(NetworkResponseCallback.class)));
+        assertEquals(1, sut.getCoalescedRequestCount());
+    }
+
+    @Test
+    public void complete_returnsAllJoinedCallbacksAndClearsKey() {
+        RequestCoalescer sut = new RequestCoalescer();
+        NetworkResponseCallback first = mock(NetworkResponseCallback.class);
+        NetworkResponseCallback second = mock(NetworkResponseCallback.class);
+        sut.join("key", first);
+        sut.join("key", second);
+
+        assertEquals(Arrays.asList(first, second), sut.complete("key"));
+        assertTrue(sut.join("key", mock(NetworkResponseCallback.class)));
+    }
+}
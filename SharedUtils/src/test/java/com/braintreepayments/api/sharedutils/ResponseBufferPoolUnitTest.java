@@ -0,0 +1,115 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+public class ResponseBufferPoolUnitTest {
+
+    @Test
+    public void acquireReadBuffer_afterRelease_reusesTheReleasedBuffer() {
+        byte[] first = ResponseBufferPool.acquireReadBuffer();
+        ResponseBufferPool.releaseReadBuffer(first);
+        byte[] second = ResponseBufferPool.acquireReadBuffer();
+
+        assertSame(first, second);
+        assertEquals(ResponseBufferPool.READ_BUFFER_SIZE, first.length);
+        ResponseBufferPool.releaseReadBuffer(second);
+    }
+
+    @Test
+    public void acquireReadBuffer_whileBufferIsHeld_returnsAnotherBuffer() {
+        byte[] first = ResponseBufferPool.acquireReadBuffer();
+        byte[] second = ResponseBufferPool.acquireReadBuffer();
+
+        assertNotSame(first, second);
+        ResponseBufferPool.releaseReadBuffer(first);
+        ResponseBufferPool.releaseReadBuffer(second);
+    }
+
+    @Test
+    public void releaseReadBuffer_whenPoolIsFull_dropsTheBuffer() {
+        int count = ResponseBufferPool.MAX_POOLED_BUFFERS + 1;
+        Set<byte[]> released = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < count; i++) {
+            released.add(ResponseBufferPool.acquireReadBuffer());
+        }
+        for (byte[] buffer : released) {
+            ResponseBufferPool.releaseReadBuffer(buffer);
+        }
+
+        int reused = 0;
+        for (int i = 0; i < count; i++) {
+            if (released.contains(ResponseBufferPool.acquireReadBuffer())) {
+                reused++;
+            }
+        }
+
+        assertEquals(ResponseBufferPool.MAX_POOLED_BUFFERS, reused);
+    }
+
+    @Test
+    public void acquireOutputStream_presizesFromExpectedSize() {
+        ResponseBufferPool.ResponseBodyOutputStream out =
+                ResponseBufferPool.acquireOutputStream(20000);
+
+        assertTrue(out.capacity() >= 20000);
+        ResponseBufferPool.release(out);
+    }
+
+    @Test
+    public void acquireOutputStream_capsPresizeAtMaxPresize() {
+        ResponseBufferPool.ResponseBodyOutputStream out =
+                ResponseBufferPool.acquireOutputStream(Integer.MAX_VALUE);
+
+        assertEquals(ResponseBufferPool.MAX_PRESIZE, out.capacity());
+        ResponseBufferPool.release(out);
+    }
+
+    @Test
+    public void release_makesEmptiedStreamAvailableForReuse() {
+        ResponseBufferPool.ResponseBodyOutputStream out =
+                ResponseBufferPool.acquireOutputStream(-1);
+        out.write(1);
+        ResponseBufferPool.release(out);
+
+        ResponseBufferPool.ResponseBodyOutputStream reused =
+                ResponseBufferPool.acquireOutputStream(-1);
+
+        assertSame(out, reused);
+        assertEquals(0, reused.size());
+        ResponseBufferPool.release(reused);
+    }
+
+    @Test
+    public void release_whenStreamGrewTooLarge_doesNotRetainIt() {
+        ResponseBufferPool.ResponseBodyOutputStream out = ResponseBufferPool.acquireOutputStream(
+                ResponseBufferPool.MAX_RETAINED_OUTPUT_SIZE + 1);
+        ResponseBufferPool.release(out);
+
+        ResponseBufferPool.ResponseBodyOutputStream next =
+                ResponseBufferPool.acquireOutputStream(-1);
+
+        assertNotSame(out, next);
+        ResponseBufferPool.release(next);
+    }
+
+    @Test
+    public void toUtf8String_decodesMultiByteCharacters() {
+        ResponseBufferPool.ResponseBodyOutputStream out =
+                ResponseBufferPool.acquireOutputStream(-1);
+        byte[] bytes = "Bjärne Stroustrüp".getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+
+        assertEquals("Bjärne Stroustrüp", out.toUtf8String());
+        ResponseBufferPool.release(out);
+    }
+}
@@ -0,0 +1,76 @@
+package com.braintreepayments.api.sharedutils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class SchedulerLaneUnitTest {
+
+    @Test(timeout = 5000)
+    public void execute_runsRunnableOnBackgroundThread() throws InterruptedException {
+        SchedulerLane sut = new SchedulerLane("test-lane", 1, 1);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        sut.execute(latch::countDown);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 5000)
+    public void execute_whenQueueIsFull_throwsRejectedExecutionException()
+            throws InterruptedException {
+        SchedulerLane sut = new SchedulerLane("test-lane", 1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        sut.execute(() -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        running.await();
+
+        // occupies the only queue slot
+        sut.execute(() -> {});
+        assertEquals(1, sut.getMetrics().getQueueDepth());
+        assertEquals(1, sut.getMetrics().getActiveCount());
+
+        assertThrows(RejectedExecutionException.class, () -> sut.execute(() -> {}));
+        release.countDown();
+    }
+
+    @Test(timeout = 5000)
+    public void getMetrics_recordsTimeTasksSpentQueued() throws InterruptedException {
+        SchedulerLane sut = new SchedulerLane("test-lane", 1, 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedTaskDone = new CountDownLatch(1);
+
+        sut.execute(() -> {
+            running.countDown();
+            awaitQuietly(release);
+        });
+        running.await();
+        sut.execute(queuedTaskDone::countDown);
+
+        Thread.sleep(50);
+        release.countDown();
+        queuedTaskDone.await();
+
+        SchedulerLaneMetrics metrics = sut.getMetrics();
+        assertTrue(metrics.getMaxWaitTimeMillis() >= 50);
+        assertTrue(metrics.getAverageWaitTimeMillis() > 0);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
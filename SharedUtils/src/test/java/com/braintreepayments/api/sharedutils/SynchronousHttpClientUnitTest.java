@@ -1,9 +1,17 @@
 package com.braintreepayments.api.sharedutils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -16,12 +24,23 @@ import com.braintreepayments.api.sharedutils.TLSSocketFactory;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.function.ThrowingRunnable;
+import org.mockito.InOrder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
@@ -190,6 +209,51 @@ public class SynchronousHttpClientUnitTest {
         verify(connection).setReadTimeout(123);
     }
 
+    @Test
+    public void request_whenCallHasDeadline_capsTimeoutsToRemainingBudget() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("GET")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        sut.request(httpRequest, new HttpCall(500));
+
+        verify(connection).setReadTimeout(intThat(timeout -> timeout > 0 && timeout <= 500));
+        verify(connection).setConnectTimeout(intThat(timeout -> timeout > 0 && timeout <= 500));
+    }
+
+    @Test
+    public void request_whenCallIsCancelled_throwsWithoutConnecting() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("GET")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        HttpCall call = new HttpCall();
+        call.cancel();
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        assertThrows(IOException.class, () -> sut.request(httpRequest, call));
+
+        verify(connection, never()).connect();
+    }
+
     @Test
     public void request_setsHttpConnectionTimeout() throws Exception {
         final HttpRequest httpRequest = spy(new HttpRequest()
@@ -257,7 +321,37 @@ public class SynchronousHttpClientUnitTest {
     }
 
     @Test
-    public void request_onSuccess_closesUrlConnection() throws Exception {
+    public void request_returnsResponseHeadersAndNotModifiedStatus() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("GET")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpsURLConnection connection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        Map<String, List<String>> headerFields = new HashMap<>();
+        headerFields.put(null, Collections.singletonList("HTTP/1.1 304 Not Modified"));
+        headerFields.put("ETag", Collections.singletonList("\"abc\""));
+        when(connection.getHeaderFields()).thenReturn(headerFields);
+        when(connection.getHeaderField("ETag")).thenReturn("\"abc\"");
+        when(connection.getResponseCode()).thenReturn(304);
+        when(httpResponseParser.parse(304, connection)).thenReturn(null);
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        HttpResponse response = sut.request(httpRequest);
+
+        assertTrue(response.isNotModified());
+        assertNull(response.getBody());
+        assertEquals(1, response.getHeaders().size());
+        assertEquals("\"abc\"", response.getHeader("etag"));
+    }
+
+    @Test
+    public void request_onSuccess_keepsUrlConnectionAliveForReuse() throws Exception {
         final HttpRequest httpRequest = spy(new HttpRequest()
                 .path("sample/path")
                 .method("GET")
@@ -274,7 +368,55 @@ public class SynchronousHttpClientUnitTest {
 
         SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
         sut.request(httpRequest);
-        verify(connection).disconnect();
+        verify(connection, never()).disconnect();
+    }
+
+    @Test
+    public void request_whenSocketFactoryIsTLSSocketFactory_recordsRequestInConnectionMetrics()
+            throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("GET")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpsURLConnection connection = mock(HttpsURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+
+        TLSSocketFactory tlsSocketFactory = new TLSSocketFactory();
+        SynchronousHttpClient sut = new SynchronousHttpClient(tlsSocketFactory, httpResponseParser);
+        sut.request(httpRequest);
+        sut.request(httpRequest);
+
+        assertSame(tlsSocketFactory.getConnectionMetrics(), sut.getConnectionMetrics());
+        assertEquals(2, sut.getConnectionMetrics().getRequestCount());
+    }
+
+    @Test
+    public void preconnect_whenSocketFactoryIsTLSSocketFactory_recordsRequestInConnectionMetrics()
+            throws Exception {
+        final HttpsURLConnection connection = mock(HttpsURLConnection.class);
+        when(connection.getResponseCode()).thenReturn(200);
+        when(connection.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+        URL url = new URL("https", "localhost", 443, "/v1/configuration", new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL u) {
+                return connection;
+            }
+        });
+
+        TLSSocketFactory tlsSocketFactory = new TLSSocketFactory();
+        SynchronousHttpClient sut = new SynchronousHttpClient(tlsSocketFactory, httpResponseParser);
+        sut.preconnect(url, 1000);
+
+        verify(connection).setRequestMethod("HEAD");
+        verify(connection).setSSLSocketFactory(tlsSocketFactory);
+        assertEquals(1, sut.getConnectionMetrics().getRequestCount());
     }
 
     @Test
@@ -359,6 +501,124 @@ public class SynchronousHttpClientUnitTest {
         verify(httpRequest).dispose();
     }
 
+    @Test
+    public void request_whenPostCompressesData_writesGzippedBodyWithContentEncoding()
+            throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("POST")
+                .data("test data")
+                .compressData(0)
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(connection.getOutputStream()).thenReturn(outputStream);
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        sut.request(httpRequest);
+
+        verify(connection).setRequestProperty("Content-Encoding", "gzip");
+        GZIPInputStream decompressed =
+                new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        byte[] buffer = new byte[64];
+        int length = decompressed.read(buffer);
+        assertEquals("test data", new String(buffer, 0, length, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void request_whenPost_connectsBeforeWritingAndReportsBytesInTiming() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("POST")
+                .data("test data")
+                .compressData(0)
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(connection.getContentLength()).thenReturn(42);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        when(connection.getOutputStream()).thenReturn(outputStream);
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        HttpResponseTiming timing = sut.request(httpRequest).getTiming();
+
+        InOrder inOrder = inOrder(connection);
+        inOrder.verify(connection).connect();
+        inOrder.verify(connection).getOutputStream();
+        inOrder.verify(connection).getResponseCode();
+
+        assertEquals(outputStream.size(), timing.getBytesSent());
+        assertEquals(42, timing.getBytesReceived());
+        assertTrue(timing.getEndTime() >= timing.getStartTime());
+        assertTrue(timing.getTotalDuration() >= timing.getTimeToFirstByte());
+    }
+
+    @Test
+    public void request_whenPostDoesNotCompressData_doesNotSetContentEncoding() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("POST")
+                .data("test data")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+        when(connection.getOutputStream()).thenReturn(mock(OutputStream.class));
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        sut.request(httpRequest);
+
+        verify(connection, never()).setRequestProperty(eq("Content-Encoding"), anyString());
+    }
+
+    @Test
+    public void request_whenPostHasIdempotencyKey_doesNotDisposeRequestData() throws Exception {
+        final HttpRequest httpRequest = spy(new HttpRequest()
+                .path("sample/path")
+                .method("POST")
+                .data("test data")
+                .idempotencyKey("key")
+                .baseUrl("https://www.sample.com"));
+
+        URL url = mock(URL.class);
+        when(httpRequest.getURL()).thenReturn(url);
+
+        HttpURLConnection connection = mock(HttpURLConnection.class);
+        when(url.openConnection()).thenReturn(connection);
+
+        when(connection.getResponseCode()).thenReturn(200);
+        when(httpResponseParser.parse(200, connection)).thenReturn("http_ok");
+        when(connection.getOutputStream()).thenReturn(mock(OutputStream.class));
+
+        SynchronousHttpClient sut = new SynchronousHttpClient(sslSocketFactory, httpResponseParser);
+        sut.request(httpRequest);
+
+        verify(httpRequest, never()).dispose();
+    }
+
     @Test
     public void request_whenPost_writesUTF8CharactersToOutputStream() throws Exception {
         final HttpRequest httpRequest = spy(new HttpRequest()
@@ -2,45 +2,103 @@ package com.braintreepayments.api.sharedutils;
 
 import android.os.Handler;
 
-import com.braintreepayments.api.sharedutils.ThreadScheduler;
-
 import org.junit.Before;
 import org.junit.Test;
 
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
 
 public class ThreadSchedulerUnitTest {
 
     Handler mainThreadHandler;
-    ExecutorService backgroundThreadPool;
+    SchedulerLane userCriticalLane;
+    SchedulerLane configurationLane;
+    SchedulerLane backgroundLane;
+    ScheduledExecutorService timer;
 
     @Before
     public void beforeEach() {
         mainThreadHandler = mock(Handler.class);
-        backgroundThreadPool = mock(ExecutorService.class);
+        userCriticalLane = mock(SchedulerLane.class);
+        configurationLane = mock(SchedulerLane.class);
+        backgroundLane = mock(SchedulerLane.class);
+        timer = mock(ScheduledExecutorService.class);
     }
 
     @Test
-    public void runOnBackground_submitsRunnableToThreadPool() {
-        ThreadScheduler sut = new ThreadScheduler(mainThreadHandler, backgroundThreadPool);
+    public void runOnBackground_withoutPriority_executesRunnableOnUserCriticalLane() {
+        ThreadScheduler sut = createThreadScheduler();
         Runnable runnable = () -> {};
 
         sut.runOnBackground(runnable);
 
-        verify(backgroundThreadPool).submit(runnable);
+        verify(userCriticalLane).execute(runnable);
+        verify(configurationLane, never()).execute(any(Runnable.class));
+        verify(backgroundLane, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void runOnBackground_withConfigurationPriority_executesRunnableOnConfigurationLane() {
+        ThreadScheduler sut = createThreadScheduler();
+        Runnable runnable = () -> {};
+
+        sut.runOnBackground(runnable, HttpRequest.PRIORITY_CONFIGURATION);
+
+        verify(configurationLane).execute(runnable);
+        verify(userCriticalLane, never()).execute(any(Runnable.class));
     }
 
+    @Test
+    public void runOnBackground_withBackgroundPriority_executesRunnableOnBackgroundLane() {
+        ThreadScheduler sut = createThreadScheduler();
+        Runnable runnable = () -> {};
+
+        sut.runOnBackground(runnable, HttpRequest.PRIORITY_BACKGROUND);
+
+        verify(backgroundLane).execute(runnable);
+        verify(userCriticalLane, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void getMetrics_returnsMetricsForRequestedLane() {
+        ThreadScheduler sut = createThreadScheduler();
+        SchedulerLaneMetrics metrics = new SchedulerLaneMetrics(1, 2, 3, 4);
+        when(backgroundLane.getMetrics()).thenReturn(metrics);
+
+        assertSame(metrics, sut.getMetrics(HttpRequest.PRIORITY_BACKGROUND));
+    }
 
     @Test
     public void runOnMain_postsRunnableToHandler() {
-        ThreadScheduler sut = new ThreadScheduler(mainThreadHandler, backgroundThreadPool);
+        ThreadScheduler sut = createThreadScheduler();
         Runnable runnable = () -> {};
 
         sut.runOnMain(runnable);
 
         verify(mainThreadHandler).post(runnable);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void runDelayed_schedulesRunnableOnTimer() {
+        ThreadScheduler sut = createThreadScheduler();
+        Runnable runnable = mock(Runnable.class);
+
+        sut.runDelayed(runnable, 500);
+
+        verify(timer).schedule(runnable, 500, TimeUnit.MILLISECONDS);
+        verifyNoInteractions(userCriticalLane, configurationLane, backgroundLane);
+    }
+
+    private ThreadScheduler createThreadScheduler() {
+        return new ThreadScheduler(
+                mainThreadHandler, userCriticalLane, configurationLane, backgroundLane, timer);
+    }
+}
@@ -911,6 +911,92 @@ object Fixtures {
         }
     """
 
+    // language=JSON
+    const val CONFIGURATION_WITH_ALL_SECTIONS = """
+        {
+          "assetsUrl": "https://assets.braintreegateway.com",
+          "clientApiUrl": "https://api.sandbox.braintreegateway.com:443/merchants/integration_merchant_id/client_api",
+          "environment": "sandbox",
+          "merchantId": "integration_merchant_id",
+          "merchantAccountId": "integration_merchant_account_id",
+          "cardinalAuthenticationJWT": "cardinal_authentication_jwt",
+          "challenges": ["cvv", "postal_code"],
+          "threeDSecureEnabled": true,
+          "paypalEnabled": true,
+          "analytics": {
+            "url": "https://origin-analytics-sand.sandbox.braintree-api.com/integration_merchant_id"
+          },
+          "braintreeApi": {
+            "accessToken": "access-token-example",
+            "url": "https://payments.sandbox.braintree-api.com"
+          },
+          "creditCards": {
+            "collectDeviceData": true,
+            "supportedCardTypes": [
+              "American Express",
+              "Discover",
+              "JCB",
+              "Maestro",
+              "MasterCard",
+              "UnionPay",
+              "Visa"
+            ]
+          },
+          "androidPay": {
+            "enabled": true,
+            "displayName": "Google Pay Merchant",
+            "environment": "sandbox",
+            "googleAuthorizationFingerprint": "google-auth-fingerprint",
+            "paypalClientId": "pay-pal-client-id",
+            "supportedNetworks": ["visa", "mastercard", "amex", "discover", "jcb"]
+          },
+          "graphQL": {
+            "url": "https://payments.sandbox.braintree-api.com/graphql",
+            "features": ["tokenize_credit_cards"]
+          },
+          "paypal": {
+            "displayName": "paypal_merchant",
+            "clientId": "paypal_client_id",
+            "privacyUrl": "http://www.example.com/privacy",
+            "userAgreementUrl": "http://www.example.com/user_agreement",
+            "baseUrl": "https://assets.braintreegateway.com",
+            "assetsUrl": "https://checkout.paypal.com",
+            "directBaseUrl": null,
+            "environment": "offline",
+            "environmentNoNetwork": true,
+            "unvettedMerchant": false,
+            "braintreeClientId": "masterclient3",
+            "billingAgreementsEnabled": true,
+            "merchantAccountId": "integration_merchant_account_id",
+            "currencyIsoCode": "USD"
+          },
+          "payWithVenmo": {
+            "accessToken": "access-token",
+            "environment": "sandbox",
+            "merchantId": "venmo-merchant-id",
+            "enrichedCustomerDataEnabled": true
+          },
+          "visaCheckout": {
+            "apikey": "gwApikey",
+            "externalClientId": "gwExternalClientId",
+            "supportedCardTypes": ["American Express", "Discover", "MasterCard", "Visa"]
+          },
+          "samsungPay": {
+            "displayName": "Samsung Pay Merchant",
+            "serviceId": "samsung-pay-service-id",
+            "samsungAuthorization": "samsung-authorization",
+            "environment": "SANDBOX",
+            "supportedCardBrands": ["american_express", "discover", "mastercard", "visa"]
+          },
+          "kount": {
+            "kountMerchantId": "600000"
+          },
+          "unionPay": {
+            "enabled": true
+          }
+        }
+    """
+
     // language=JSON
     const val CONFIGURATION_WITHOUT_ACCESS_TOKEN = """
         {
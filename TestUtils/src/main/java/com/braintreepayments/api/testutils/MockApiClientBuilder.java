@@ -1,6 +1,7 @@
 package com.braintreepayments.api.testutils;
 
 import com.braintreepayments.api.core.ApiClient;
+import com.braintreepayments.api.core.CancellationHandle;
 import com.braintreepayments.api.core.PaymentMethod;
 import com.braintreepayments.api.core.TokenizeCallback;
 
@@ -54,6 +55,20 @@ public class MockApiClientBuilder {
             return null;
         }).when(apiClient).tokenizeGraphQL(any(JSONObject.class), any(TokenizeCallback.class));
 
+        doAnswer((Answer<Void>) invocation -> {
+            TokenizeCallback listener = (TokenizeCallback) invocation.getArguments()[2];
+            listener.onResult(tokenizeRESTSuccess, tokenizeRESTError);
+            return null;
+        }).when(apiClient).tokenizeREST(any(PaymentMethod.class), any(CancellationHandle.class),
+                any(TokenizeCallback.class));
+
+        doAnswer((Answer<Void>) invocation -> {
+            TokenizeCallback listener = (TokenizeCallback) invocation.getArguments()[2];
+            listener.onResult(tokenizeGraphQLSuccess, tokenizeGraphQLError);
+            return null;
+        }).when(apiClient).tokenizeGraphQL(any(JSONObject.class), any(CancellationHandle.class),
+                any(TokenizeCallback.class));
+
         return apiClient;
     }
 }
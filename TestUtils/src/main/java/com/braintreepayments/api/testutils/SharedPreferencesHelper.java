@@ -7,6 +7,7 @@ import android.util.Base64;
 
 import com.braintreepayments.api.core.Authorization;
 import com.braintreepayments.api.core.Configuration;
+import com.braintreepayments.api.core.ConfigurationStore;
 import com.braintreepayments.api.sharedutils.BraintreeSharedPreferences;
 
 public class SharedPreferencesHelper {
@@ -29,14 +30,14 @@ public class SharedPreferencesHelper {
 
         String cacheKey = Base64.encodeToString(
                 String.format("%s%s", configUrl, authorization.getBearer()).getBytes(), 0);
-        String timestampKey = String.format("%s_timestamp", cacheKey);
-        BraintreeSharedPreferences
+        ConfigurationStore
                 .getInstance(context)
-                .putStringAndLong(cacheKey, configuration.toJson(), timestampKey,
-                        System.currentTimeMillis());
+                .write(cacheKey, configuration.toJson(),
+                        new ConfigurationStore.Metadata(System.currentTimeMillis(), null, null));
     }
 
     public static void clearConfigurationCacheOverride(Context context) {
         BraintreeSharedPreferences.getInstance(context).clearSharedPreferences();
+        ConfigurationStore.getInstance(context).clear();
     }
 }
@@ -4,6 +4,7 @@ import com.braintreepayments.api.core.ApiClient
 import com.braintreepayments.api.core.ApiClient.Companion.versionedPath
 import com.braintreepayments.api.core.BraintreeClient
 import com.braintreepayments.api.core.BraintreeException
+import com.braintreepayments.api.core.CancellationHandle
 import com.braintreepayments.api.threedsecure.ThreeDSecureParams.Companion.fromJson
 import org.json.JSONException
 import org.json.JSONObject
@@ -12,16 +13,20 @@ internal class ThreeDSecureAPI(
     private val braintreeClient: BraintreeClient
 ) {
 
+    @JvmOverloads
     fun performLookup(
         request: ThreeDSecureRequest,
         cardinalConsumerSessionId: String?,
+        cancellationHandle: CancellationHandle? = null,
         callback: ThreeDSecureResultCallback
     ) {
         braintreeClient.sendPOST(
             url = versionedPath(
                 "${ApiClient.PAYMENT_METHOD_ENDPOINT}/${request.nonce}/three_d_secure/lookup"
             ),
-            data = request.build(cardinalConsumerSessionId)
+            data = request.build(cardinalConsumerSessionId),
+            additionalHeaders = emptyMap(),
+            cancellationHandle = cancellationHandle
         ) { responseBody: String?, httpError: Exception? ->
             if (responseBody != null) {
                 try {
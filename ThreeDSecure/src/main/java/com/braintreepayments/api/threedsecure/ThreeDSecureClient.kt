@@ -5,6 +5,7 @@ import androidx.annotation.RestrictTo
 import com.braintreepayments.api.core.BraintreeClient
 import com.braintreepayments.api.core.BraintreeException
 import com.braintreepayments.api.core.BuildConfig
+import com.braintreepayments.api.core.CancellationHandle
 import com.braintreepayments.api.core.Configuration
 import com.braintreepayments.api.core.InvalidArgumentException
 import com.braintreepayments.api.threedsecure.ThreeDSecureParams.Companion.fromJson
@@ -53,12 +54,15 @@ class ThreeDSecureClient internal constructor(
      * @param context  Android context
      * @param request  the [ThreeDSecureRequest] with information used for authentication.
      * @param callback [ThreeDSecureResultCallback]
+     * @return a [CancellationHandle] that aborts the lookup and suppresses [callback] when
+     * cancelled, for example when the user leaves checkout
      */
     fun createPaymentAuthRequest(
         context: Context,
         request: ThreeDSecureRequest,
         callback: ThreeDSecurePaymentAuthRequestCallback
-    ) {
+    ): CancellationHandle {
+        val cancellationHandle = CancellationHandle()
         braintreeClient.sendAnalyticsEvent(ThreeDSecureAnalytics.VERIFY_STARTED)
         if (request.amount == null || request.nonce == null) {
             callbackCreatePaymentAuthFailure(
@@ -69,10 +73,13 @@ class ThreeDSecureClient internal constructor(
                     )
                 )
             )
-            return
+            return cancellationHandle
         }
 
         braintreeClient.getConfiguration { configuration: Configuration?, error: Exception? ->
+            if (cancellationHandle.isCancelled) {
+                return@getConfiguration
+            }
             val failure = when {
                 configuration == null -> {
                     error ?: BraintreeException("Configuration is null")
@@ -93,7 +100,13 @@ class ThreeDSecureClient internal constructor(
                 }
 
                 else -> {
-                    initializeCardinalClient(context, configuration, request, callback)
+                    initializeCardinalClient(
+                        context,
+                        configuration,
+                        request,
+                        cancellationHandle,
+                        callback
+                    )
                     return@getConfiguration
                 }
             }
@@ -103,12 +116,14 @@ class ThreeDSecureClient internal constructor(
                 ThreeDSecurePaymentAuthRequest.Failure(failure)
             )
         }
+        return cancellationHandle
     }
 
     private fun initializeCardinalClient(
         context: Context,
         configuration: Configuration,
         request: ThreeDSecureRequest,
+        cancellationHandle: CancellationHandle,
         callback: ThreeDSecurePaymentAuthRequestCallback
     ) {
         try {
@@ -117,9 +132,13 @@ class ThreeDSecureClient internal constructor(
                 configuration = configuration,
                 request = request
             ) { _, _ ->
+                if (cancellationHandle.isCancelled) {
+                    return@initialize
+                }
                 api.performLookup(
                     request = request,
-                    cardinalConsumerSessionId = cardinalClient.consumerSessionId
+                    cardinalConsumerSessionId = cardinalClient.consumerSessionId,
+                    cancellationHandle = cancellationHandle
                 ) { threeDSecureResult: ThreeDSecureParams?, performLookupError: Exception? ->
                     if (threeDSecureResult != null) {
                         braintreeClient.sendAnalyticsEvent(ThreeDSecureAnalytics.LOOKUP_SUCCEEDED)
@@ -46,7 +46,7 @@ public class ThreeDSecureAPIUnitTest {
         ArgumentCaptor<String> urlCaptor = ArgumentCaptor.forClass(String.class);
         ArgumentCaptor<String> dataCaptor = ArgumentCaptor.forClass(String.class);
         verify(braintreeClient).sendPOST(urlCaptor.capture(), dataCaptor.capture(), anyMap(),
-                any(HttpResponseCallback.class));
+                isNull(), any(HttpResponseCallback.class));
 
         String url = urlCaptor.getValue();
         assertEquals("/v1/payment_methods/sample-nonce/three_d_secure/lookup", url);